@@ -16,31 +16,46 @@
  *****************************************************************************/
 package cern.c2mon.client.core.cache;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.jms.JMSException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import cern.c2mon.client.core.config.C2monClientProperties;
 import cern.c2mon.client.core.jms.ConnectionListener;
 import cern.c2mon.client.core.jms.JmsProxy;
 import cern.c2mon.client.core.jms.RequestHandler;
+import cern.c2mon.client.core.jms.TopicRegistrationDetails;
 import cern.c2mon.client.core.listener.HeartbeatListener;
+import cern.c2mon.client.core.listener.TagUpdateListener;
 import cern.c2mon.client.core.manager.SupervisionServiceImpl;
 import cern.c2mon.client.core.service.CoreSupervisionService;
 import cern.c2mon.client.core.tag.TagController;
 import cern.c2mon.client.core.tag.TagImpl;
+import cern.c2mon.client.core.tag.TagNotificationDispatcher;
 import cern.c2mon.shared.client.supervision.Heartbeat;
 import cern.c2mon.shared.client.tag.TagUpdate;
 import cern.c2mon.shared.client.tag.TagValueUpdate;
@@ -67,6 +82,9 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
    */
   private final Object refreshLiveCacheSyncLock = new Object();
 
+  /** Idle time (in seconds) after which the pipelined subscription threads are stopped */
+  private static final long SUBSCRIPTION_THREAD_KEEP_ALIVE = 60;
+
   /** Default message for a JMS connection lost exception */
   private static final String JMS_CONNECTION_LOST_MSG = "JMS connection lost.";
 
@@ -94,6 +112,9 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
   /** Reference to the supervision manager singleton */
   private final CoreSupervisionService supervisionManager;
 
+  /** Notifies the listeners of the live tags */
+  private final TagNotificationDispatcher notificationDispatcher;
+
   /**
    * <code>Map</code> reference containing all subscribed data tags which are
    * updated via the <code>JmsProxy</code>
@@ -109,6 +130,15 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
   /** Reference to the cache read lock */
   private ReadLock cacheReadLock = null;
 
+  /** Number of tags per chunk of the pipelined subscription */
+  private final int subscriptionChunkSize;
+
+  /**
+   * Processes the chunks of the pipelined subscription, or <code>null</code>
+   * if the tags are subscribed serially
+   */
+  private final ThreadPoolExecutor subscriptionExecutor;
+
   /**
    * Default Constructor used by Spring to wire in the references to the other
    * services.
@@ -120,16 +150,46 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
    *          listener
    * @param pCacheController Provides acces to the different cache instances and
    *          to the thread locks.
+   * @param pNotificationDispatcher Notifies the listeners of the live tags
+   * @param pProperties The client properties, defining the subscription mode
    */
   @Autowired
   public CacheSynchronizerImpl(JmsProxy pJmsProxy,
                                @Qualifier("coreRequestHandler") RequestHandler pRequestHandler,
                                CoreSupervisionService pSupervisionManager,
-                               CacheController pCacheController) {
+                               CacheController pCacheController,
+                               TagNotificationDispatcher pNotificationDispatcher,
+                               C2monClientProperties pProperties) {
     this.jmsProxy = pJmsProxy;
     this.tagRequestHandler = pRequestHandler;
     this.supervisionManager = pSupervisionManager;
     this.controller = pCacheController;
+    this.notificationDispatcher = pNotificationDispatcher;
+    this.subscriptionChunkSize = pProperties.getMaxTagsPerRequest();
+
+    C2monClientProperties.Subscription subscription = pProperties.getSubscription();
+    if (subscription.isPipelined()) {
+      int threads = Math.max(1, subscription.getParallelism());
+      subscriptionExecutor = new ThreadPoolExecutor(threads, threads, SUBSCRIPTION_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), new CustomizableThreadFactory("TagSubscription-"));
+      subscriptionExecutor.allowCoreThreadTimeOut(true);
+    } else {
+      subscriptionExecutor = null;
+    }
+  }
+
+  /**
+   * Creates a live tag, whose listeners are notified by the
+   * {@link TagNotificationDispatcher}.
+   *
+   * @param tagId the id of the tag
+   * @param unknown <code>true</code>, if the tag is not yet known
+   * @return the new live tag
+   */
+  private TagController createLiveTag(final Long tagId, final boolean unknown) {
+    TagController liveTag = new TagController(tagId, unknown);
+    liveTag.setNotificationDispatcher(notificationDispatcher);
+    return liveTag;
   }
 
   @PostConstruct
@@ -142,6 +202,13 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
     supervisionManager.addHeartbeatListener(this);
   }
 
+  @PreDestroy
+  protected void shutdown() {
+    if (subscriptionExecutor != null) {
+      subscriptionExecutor.shutdownNow();
+    }
+  }
+
   @Override
   public void refresh(final Set<Long> tagIds) throws CacheSynchronizationException {
     supervisionManager.refreshSupervisionStatus();
@@ -158,7 +225,7 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
       TagController cdt = null;
       for (Long tagId : tagIds) {
         if (!liveCache.containsKey(tagId)) {
-          cdt = new TagController(tagId, true);
+          cdt = createLiveTag(tagId, true);
           liveCache.put(cdt.getTagImpl().getId(), cdt);
           newTags.add(tagId);
         }
@@ -169,7 +236,11 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
       // will fetch the initial tag information from the server
       synchronized (refreshLiveCacheSyncLock) {
         try {
-          synchronizeTags(newTags);
+          if (subscriptionExecutor != null) {
+            subscribeTagsPipelined(newTags);
+          } else {
+            synchronizeTags(newTags);
+          }
         }
         catch (JMSException e) {
           throw new CacheSynchronizationException(e);
@@ -200,7 +271,7 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
           controller.getWriteLock().lock();
           try {
             if (!liveCache.containsKey(tagUpdate.getId())) {
-              TagController cdt = new TagController(tagUpdate.getId());
+              TagController cdt = createLiveTag(tagUpdate.getId(), false);
 
               cdt.update(tagUpdate);
               subscribeToSupervisionManager(cdt);
@@ -333,7 +404,7 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
               }
             }
             supervisionManager.removeSupervisionListener(liveTag);
-            final TagController unkownTag = new TagController(tagId, true);
+            final TagController unkownTag = createLiveTag(tagId, true);
             unkownTag.addUpdateListeners(liveTag.getUpdateListeners());
             liveCache.put(tagId, unkownTag);
           }
@@ -383,6 +454,165 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
     return tagsKnownByServer;
   }
 
+  /**
+   * Fetches the configurations of the new tags, registers them on their update
+   * topics and fetches their latest values, in chunks of
+   * <code>maxTagsPerRequest</code> tags processed in parallel. While a chunk
+   * waits for the server, the others are registered or updated, instead of
+   * doing each step for all tags before starting the next one. The later call
+   * to {@link #subscribeTags(Set)} then finds the tags already registered.
+   *
+   * @param tagIds the new tags, already in the live cache
+   * @throws JMSException In case of a JMS problem while requesting the tags
+   */
+  private void subscribeTagsPipelined(final Set<Long> tagIds) throws JMSException {
+    final SubscriptionProgress progress = new SubscriptionProgress(tagIds.size());
+    LOG.info("subscribeTagsPipelined() - Subscribing " + tagIds.size() + " tags in chunks of " + subscriptionChunkSize
+        + " tags, " + subscriptionExecutor.getMaximumPoolSize() + " in parallel.");
+
+    List<Future<?>> chunks = new ArrayList<>();
+    List<Long> chunk = new ArrayList<>(subscriptionChunkSize);
+    for (Long tagId : tagIds) {
+      chunk.add(tagId);
+      if (chunk.size() == subscriptionChunkSize) {
+        chunks.add(submitChunk(chunk, progress));
+        chunk = new ArrayList<>(subscriptionChunkSize);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(submitChunk(chunk, progress));
+    }
+
+    try {
+      for (Future<?> result : chunks) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancel(chunks);
+      throw new CacheSynchronizationException("Interrupted while subscribing tags", e);
+    } catch (ExecutionException e) {
+      cancel(chunks);
+      if (e.getCause() instanceof JMSException) {
+        throw (JMSException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new CacheSynchronizationException("Could not subscribe tags", e.getCause());
+    }
+
+    progress.logCompletion();
+  }
+
+  private Future<?> submitChunk(final List<Long> chunk, final SubscriptionProgress progress) {
+    return subscriptionExecutor.submit(() -> {
+      subscribeChunk(chunk);
+      progress.chunkDone(chunk.size());
+      return null;
+    });
+  }
+
+  private static void cancel(final List<Future<?>> chunks) {
+    for (Future<?> chunk : chunks) {
+      chunk.cancel(true);
+    }
+  }
+
+  /**
+   * Subscribes one chunk of the pipelined subscription. The registrations of
+   * the chunk are passed in one call to the <code>JmsProxy</code>, which
+   * subscribes each topic only once.
+   *
+   * @param chunk the tag ids of the chunk
+   * @throws JMSException In case of a JMS problem while requesting the tags
+   */
+  private void subscribeChunk(final List<Long> chunk) throws JMSException {
+    final Collection<TagUpdate> tagUpdates = tagRequestHandler.requestTags(chunk);
+    Map<TagUpdateListener, TopicRegistrationDetails> registrations = new LinkedHashMap<>();
+    Set<Long> registeredTags = new HashSet<>();
+    for (TagUpdate tagUpdate : tagUpdates) {
+      TagController liveTag = liveCache.get(tagUpdate.getId());
+      // the tag may have been unsubscribed in the meantime
+      if (liveTag == null) {
+        continue;
+      }
+      try {
+        boolean wasUnknown = !liveTag.getTagImpl().getDataTagQuality().isExistingTag();
+
+        liveTag.update(tagUpdate);
+
+        if (wasUnknown) {
+          subscribeToSupervisionManager(liveTag);
+        }
+      } catch (RuleFormatException e) {
+        LOG.error("subscribeChunk() - Received an incorrect rule tag from the server. Please check tag with id " + tagUpdate.getId(), e);
+        throw new RuntimeException("Received an incorrect rule tag from the server for tag id " + tagUpdate.getId());
+      }
+
+      if (liveTag.getTagImpl().getDataTagQuality().isExistingTag() && !jmsProxy.isRegisteredListener(liveTag)) {
+        registrations.put(liveTag, liveTag.getTagImpl());
+        registeredTags.add(tagUpdate.getId());
+      }
+    }
+
+    if (registrations.isEmpty()) {
+      return;
+    }
+
+    try {
+      jmsProxy.registerUpdateListeners(registrations);
+    } catch (JMSException e) {
+      // the JmsProxy subscribes the tags on reconnection, which refreshes the cache
+      LOG.warn("subscribeChunk() - Could not register " + registrations.size() + " tags for updates: " + e.getMessage());
+      return;
+    }
+
+    // Request the values once again, in case an update was sent before the tags were registered
+    for (TagValueUpdate tagValueUpdate : tagRequestHandler.requestTagValues(registeredTags)) {
+      TagController liveTag = liveCache.get(tagValueUpdate.getId());
+      if (liveTag != null) {
+        liveTag.update(tagValueUpdate);
+      }
+    }
+  }
+
+  /**
+   * Logs the progress of a pipelined subscription, every 10% of the tags, and
+   * its throughput once finished.
+   */
+  private static final class SubscriptionProgress {
+
+    private final int total;
+
+    private final long start = System.nanoTime();
+
+    private final AtomicInteger done = new AtomicInteger();
+
+    SubscriptionProgress(final int total) {
+      this.total = total;
+    }
+
+    void chunkDone(final int size) {
+      int after = done.addAndGet(size);
+      int before = after - size;
+      if (after < total && after * 10L / total > before * 10L / total) {
+        LOG.info(String.format("subscribeTagsPipelined() - Subscribed %d of %d tags (%d%%), %.0f tags/s",
+            after, total, after * 100L / total, throughput(after)));
+      }
+    }
+
+    void logCompletion() {
+      LOG.info(String.format("subscribeTagsPipelined() - Subscribed %d tags in %d ms, %.0f tags/s",
+          total, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), throughput(total)));
+    }
+
+    private double throughput(final int tags) {
+      long elapsed = Math.max(1, System.nanoTime() - start);
+      return tags * 1e9 / elapsed;
+    }
+  }
+
   /**
    * Subscribes to the tag value update topic and requests the values once
    * again, in a separate thread.
@@ -424,6 +654,8 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
       // Keep a reference to all newly registered tags whose values have to be
       // synchronised with a second server call.
       Set<Long> newKnownTags = new HashSet<>();
+      // With the pipelined subscription, the existing tags are registered at once
+      Map<TagUpdateListener, TopicRegistrationDetails> registrations = new LinkedHashMap<>();
       try {
         LOG.info("Subscribing to tag value update topic");
 
@@ -439,11 +671,20 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
           }
 
           // Subscribe to the value update topic of the tag
-          if (handleLiveTagRegistration(liveTag)) {
+          if (subscriptionExecutor != null && liveTag.getTagImpl().getDataTagQuality().isExistingTag()) {
+            if (!jmsProxy.isRegisteredListener(liveTag)) {
+              registrations.put(liveTag, liveTag.getTagImpl());
+              newKnownTags.add(tagId);
+            }
+          } else if (handleLiveTagRegistration(liveTag)) {
             newKnownTags.add(tagId);
           }
         }
 
+        if (!registrations.isEmpty()) {
+          jmsProxy.registerUpdateListeners(registrations);
+        }
+
         // Perform once again a tag request in order to assure that no
         // update has been missed whilst subscribing to the topic
         LOG.info("Synchronizing cache values after update topic registration");
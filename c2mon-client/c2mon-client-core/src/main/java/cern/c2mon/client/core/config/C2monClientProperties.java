@@ -39,6 +39,67 @@ public class C2monClientProperties {
    */
   private int maxRequestThreads = 5;
 
+  /**
+   * Receive the tag updates from the batch topics of the server, which groups
+   * the updates of a topic in one message. Requires the server to publish
+   * batches (c2mon.server.client.jms.tagBatching.enabled). Clients subscribed
+   * to a few tags of large processes are better served by the per-tag topics,
+   * whose messages are filtered before parsing.
+   */
+  private boolean tagBatching = false;
+
+  /**
+   * Tag subscription properties
+   */
+  private final Subscription subscription = new Subscription();
+
+  @Data
+  public static class Subscription {
+
+    /**
+     * Subscribe new tags in chunks of maxTagsPerRequest tags, processed in
+     * parallel: each chunk requests its tag configurations, registers the tags
+     * on their update topics (one registration per topic) and requests the
+     * latest values, while the other chunks are at a different step. Speeds up
+     * the subscription of large tag sets
+     */
+    private boolean pipelined = false;
+
+    /**
+     * Number of chunks processed in parallel by the pipelined subscription
+     */
+    private int parallelism = 4;
+  }
+
+  /**
+   * Tag listener notification properties
+   */
+  private final Notification notification = new Notification();
+
+  @Data
+  public static class Notification {
+
+    /**
+     * Notify the tag listeners on an executor instead of the JMS listener
+     * thread. Each listener receives the updates in order, one at a time;
+     * while it is busy, only the latest update of each tag is kept, so a slow
+     * listener skips values instead of delaying the other tags
+     */
+    private boolean async = false;
+
+    /**
+     * Number of notification threads. With 0, virtual threads are used if the
+     * JVM provides them (Java 21 and later), and 8 threads otherwise
+     */
+    private int threads = 0;
+
+    /**
+     * Lag (in ms) of a listener behind the tag updates above which a warning
+     * is logged
+     */
+    private long lagWarningThreshold = 10000;
+  }
+
   /**
    * JMS properties
    */
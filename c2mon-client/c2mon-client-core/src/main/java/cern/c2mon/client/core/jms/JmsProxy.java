@@ -34,6 +34,7 @@ package cern.c2mon.client.core.jms;
  * Author: TIM team, tim.support@cern.ch
  *****************************************************************************/
 import java.util.Collection;
+import java.util.Map;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
@@ -101,6 +102,34 @@ public interface JmsProxy {
   void registerUpdateListener(TagUpdateListener serverUpdateListener,
                                   TopicRegistrationDetails topicRegistrationDetails) throws JMSException;
 
+  /**
+   * Registers several listeners at once, as done by
+   * {@link #registerUpdateListener(TagUpdateListener, TopicRegistrationDetails)}
+   * for each of them. Implementations may group the registrations per topic,
+   * so that each topic is looked up and subscribed only once.
+   *
+   * <p>All listeners are registered, even if one of the registrations fails;
+   * the failed ones are subscribed automatically once the connection is back.
+   *
+   * @param registrations the listeners with the details needed to register
+   *                      them to the updates of their Tag
+   * @throws JMSException if there is a JMS failure in subscribing one of the listeners
+   * @throws NullPointerException if a listener or its details are null
+   */
+  default void registerUpdateListeners(Map<? extends TagUpdateListener, ? extends TopicRegistrationDetails> registrations) throws JMSException {
+    JMSException failure = null;
+    for (Map.Entry<? extends TagUpdateListener, ? extends TopicRegistrationDetails> registration : registrations.entrySet()) {
+      try {
+        registerUpdateListener(registration.getKey(), registration.getValue());
+      } catch (JMSException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
   /**
    * Unregisters a listener from receiving updates destined for the specified
    * ClientDataTag. This method will in fact "unregister if currently registered"
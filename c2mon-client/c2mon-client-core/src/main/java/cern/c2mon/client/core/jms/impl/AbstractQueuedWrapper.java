@@ -17,6 +17,8 @@
 package cern.c2mon.client.core.jms.impl;
 
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -92,6 +94,29 @@ public abstract class AbstractQueuedWrapper<U> implements Lifecycle, MessageList
    */
   protected abstract U convertMessage(Message message) throws JMSException;
 
+  /**
+   * Converts the JMS message into the events it contains. By default, a
+   * message contains a single event, converted with {@link #convertMessage}.
+   * @param message the JMS message
+   * @return the events, in order
+   * @throws JMSException if error in using the message
+   */
+  protected Collection<U> convertMessages(Message message) throws JMSException {
+    return Collections.singletonList(convertMessage(message));
+  }
+
+  /**
+   * Called before the message is converted, to discard the messages which
+   * are of no interest to the listeners without converting them. Accepts
+   * all messages by default.
+   * @param message the JMS message
+   * @return false if the message should be ignored
+   * @throws JMSException if error in reading the message properties
+   */
+  protected boolean isWanted(Message message) throws JMSException {
+    return true;
+  }
+
   /**
    * Return some human-readable version of an event. Used for logging
    * warnings.
@@ -146,21 +171,27 @@ public abstract class AbstractQueuedWrapper<U> implements Lifecycle, MessageList
     try {
       if (message instanceof TextMessage) {
 
+        if (!isWanted(message)) {
+          return;
+        }
+
         if (log.isTraceEnabled()) {
           log.trace("AbstractQueuedWrapper received message for {}: {}", this.getClass().getSimpleName(), ((TextMessage)message).getText());
         }
 
-        U event = convertMessage(message);
+        Collection<U> events = convertMessages(message);
         long lastNotificationTime = notificationTime.get();
-        if (lastNotificationTime != 0 && (System.currentTimeMillis() - lastNotificationTime) > notificationTimeBeforeWarning.get()) {
+        if (!events.isEmpty() && lastNotificationTime != 0 && (System.currentTimeMillis() - lastNotificationTime) > notificationTimeBeforeWarning.get()) {
           String warning = "Slow consumer class: " + this.getClass().getSimpleName() + ". "
                               + "C2MON client is not consuming updates correctly and should be restarted! "
-                              + " Event type: " + getDescription(event);
+                              + " Event type: " + getDescription(events.iterator().next());
           log.warn(warning);
           log.warn("No returning call from listener since {}", new Timestamp(lastNotificationTime));
           slowConsumerListener.onSlowConsumer(warning);
         }
-        eventQueue.put(event);
+        for (U event : events) {
+          eventQueue.put(event);
+        }
       } else {
         log.warn("Non-text message received for " + this.getClass().getSimpleName() + " - ignoring event");
       }
@@ -23,6 +23,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -64,6 +65,7 @@ import cern.c2mon.client.core.listener.TagUpdateListener;
 import cern.c2mon.shared.client.request.ClientRequestReport;
 import cern.c2mon.shared.client.request.ClientRequestResult;
 import cern.c2mon.shared.client.request.JsonRequest;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
 
 /**
  * Implementation of the JmsProxy singleton bean. Also see the interface for
@@ -251,6 +253,11 @@ public final class JmsProxyImpl implements JmsProxy, ExceptionListener {
    */
   private ExecutorService topicPollingExecutor;
 
+  /**
+   * Subscribe to the batch topics of the tag topics.
+   */
+  private final boolean tagBatching;
+
   @Autowired
   public JmsProxyImpl(@Qualifier("clientJmsConnectionFactory") final ConnectionFactory connectionFactory,
                       final SlowConsumerListener slowConsumerListener,
@@ -260,6 +267,7 @@ public final class JmsProxyImpl implements JmsProxy, ExceptionListener {
     this.heartbeatTopic = new ActiveMQTopic(properties.getJms().getHeartbeatTopic());;
     this.alarmTopic = new ActiveMQTopic(properties.getJms().getAlarmTopic());;
     this.adminMessageTopic = null;
+    this.tagBatching = properties.isTagBatching();
     this.slowConsumerListener = slowConsumerListener;
 
     connected = false;
@@ -563,20 +571,7 @@ public final class JmsProxyImpl implements JmsProxy, ExceptionListener {
           // null
           try {
             if (refreshSubscriptions || connected) {
-              String topicName = topicRegistrationDetails.getTopicName();
-              if (topicToWrapper.containsKey(topicName)) {
-                topicToWrapper.get(topicName).addListener(serverUpdateListener, topicRegistrationDetails.getId());
-              } else {
-                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                Topic topic = session.createTopic(topicRegistrationDetails.getTopicName());
-                MessageConsumer consumer = session.createConsumer(topic);
-                MessageListenerWrapper wrapper = new MessageListenerWrapper(topicRegistrationDetails.getId(), serverUpdateListener, HIGH_LISTENER_QUEUE_SIZE,
-                    slowConsumerListener, topicPollingExecutor);
-                wrapper.start();
-                consumer.setMessageListener(wrapper);
-                topicToWrapper.put(topicName, wrapper);
-                sessions.put(wrapper, session);
-              }
+              subscribeToTopic(topicRegistrationDetails.getTopicName(), serverUpdateListener, topicRegistrationDetails.getId());
 
               if (!refreshSubscriptions) {
                 registeredListeners.put(serverUpdateListener, topicRegistrationDetails);
@@ -602,6 +597,87 @@ public final class JmsProxyImpl implements JmsProxy, ExceptionListener {
     }
   }
 
+  @Override
+  public void registerUpdateListeners(final Map<? extends TagUpdateListener, ? extends TopicRegistrationDetails> registrations) throws JMSException {
+    Map<String, Map<TagUpdateListener, TopicRegistrationDetails>> registrationsByTopic = new HashMap<>();
+    for (Map.Entry<? extends TagUpdateListener, ? extends TopicRegistrationDetails> registration : registrations.entrySet()) {
+      if (registration.getKey() == null || registration.getValue() == null) {
+        throw new NullPointerException("Trying to register a null TagUpdateListener or null RegistrationDetails!");
+      }
+      registrationsByTopic.computeIfAbsent(registration.getValue().getTopicName(), topicName -> new LinkedHashMap<>())
+          .put(registration.getKey(), registration.getValue());
+    }
+
+    ensureConnection();
+
+    JMSException failure = null;
+    refreshLock.readLock().lock();
+    try {
+      listenerLock.lock();
+      try {
+        boolean refreshSubscriptions = refreshLock.isWriteLocked();
+
+        for (Map.Entry<String, Map<TagUpdateListener, TopicRegistrationDetails>> topicRegistrations : registrationsByTopic.entrySet()) {
+          for (Map.Entry<TagUpdateListener, TopicRegistrationDetails> registration : topicRegistrations.getValue().entrySet()) {
+            TagUpdateListener serverUpdateListener = registration.getKey();
+            if (!refreshSubscriptions && isRegisteredListener(serverUpdateListener)) {
+              continue;
+            }
+            if (failure == null) {
+              try {
+                if (refreshSubscriptions || connected) {
+                  subscribeToTopic(topicRegistrations.getKey(), serverUpdateListener, registration.getValue().getId());
+                } else {
+                  throw new JMSException("Not currently connected - will attempt to subscribe on reconnection. Attempting to reconnect.");
+                }
+              } catch (JMSException e) {
+                log.error("Failed to subscribe to topic - will do so on reconnection.", e);
+                failure = e;
+              }
+            }
+            // after a failure, the remaining listeners are only remembered for the reconnection
+            if (!refreshSubscriptions) {
+              registeredListeners.put(serverUpdateListener, registration.getValue());
+            }
+          }
+        }
+      } finally {
+        listenerLock.unlock();
+      }
+    } finally {
+      refreshLock.readLock().unlock();
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Adds the listener to the wrapper of the topic, subscribing to the topic
+   * if it is the first listener. Must be called with the listener lock held.
+   *
+   * @param topicName the name of the Tag update topic
+   * @param serverUpdateListener the listener to add
+   * @param tagId the id of the Tag the listener receives the updates of
+   * @throws JMSException if unable to subscribe to the topic
+   */
+  private void subscribeToTopic(final String topicName, final TagUpdateListener serverUpdateListener, final Long tagId) throws JMSException {
+    if (topicToWrapper.containsKey(topicName)) {
+      topicToWrapper.get(topicName).addListener(serverUpdateListener, tagId);
+    } else {
+      Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+      Topic topic = session.createTopic(tagBatching ? topicName + TagValueUpdate.BATCH_TOPIC_SUFFIX : topicName);
+      MessageConsumer consumer = session.createConsumer(topic);
+      MessageListenerWrapper wrapper = new MessageListenerWrapper(tagId, serverUpdateListener, HIGH_LISTENER_QUEUE_SIZE,
+          slowConsumerListener, topicPollingExecutor);
+      wrapper.start();
+      consumer.setMessageListener(wrapper);
+      topicToWrapper.put(topicName, wrapper);
+      sessions.put(wrapper, session);
+    }
+  }
+
   @Override
   public void replaceListener(final TagUpdateListener registeredListener, final TagUpdateListener replacementListener) {
     if (registeredListener == null && replacementListener == null) {
@@ -16,7 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.client.core.jms.impl;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -25,6 +26,7 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.TextMessage;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.extern.slf4j.Slf4j;
 
 import cern.c2mon.client.core.listener.TagUpdateListener;
@@ -47,9 +49,16 @@ import cern.c2mon.shared.client.tag.TransferTagValueImpl;
 class MessageListenerWrapper extends AbstractQueuedWrapper<TagValueUpdate> {
 
     /**
-     * Wrapped listener. Methods accessing this field are synchronized.
+     * Type of the batch messages published on the batch topics.
      */
-    private Map<Long, TagUpdateListener> listeners = new HashMap<>();
+    private static final TypeReference<Collection<TransferTagValueImpl>> BATCH_TYPE =
+        new TypeReference<Collection<TransferTagValueImpl>>() { };
+
+    /**
+     * Wrapped listener. Methods modifying this field are synchronized; it is
+     * read without locking by the JMS thread to filter the incoming messages.
+     */
+    private Map<Long, TagUpdateListener> listeners = new ConcurrentHashMap<>();
 
     /**
      * Timestamps of tag updates used to filter out older events.
@@ -101,6 +110,36 @@ class MessageListenerWrapper extends AbstractQueuedWrapper<TagValueUpdate> {
         return listeners.isEmpty();
     }
 
+    /**
+     * Discards the messages of the Tags without listener before parsing them,
+     * if the server has set the Tag id property on the message. Messages
+     * without this property are always parsed and filtered afterwards.
+     */
+    @Override
+    protected boolean isWanted(Message message) throws JMSException {
+      if (message.propertyExists(TagValueUpdate.TAG_ID_PROPERTY)) {
+        return listeners.containsKey(message.getLongProperty(TagValueUpdate.TAG_ID_PROPERTY));
+      }
+      return true;
+    }
+
+    /**
+     * Unbatches the messages of the batch topics, keeping only the updates of
+     * the Tags with a listener.
+     */
+    @Override
+    protected Collection<TagValueUpdate> convertMessages(Message message) throws JMSException {
+      if (!message.propertyExists(TagValueUpdate.BATCH_SIZE_PROPERTY)) {
+        return super.convertMessages(message);
+      }
+      Collection<TagValueUpdate> updates = TransferTagSerializer.fromCollectionJson(((TextMessage) message).getText(), BATCH_TYPE);
+      if (updates == null) {
+        return Collections.emptyList();
+      }
+      updates.removeIf(update -> !listeners.containsKey(update.getId()));
+      return updates;
+    }
+
     @Override
     protected TagValueUpdate convertMessage(Message message) throws JMSException {
       return TransferTagSerializer.fromJson(((TextMessage) message).getText(), TransferTagValueImpl.class);
@@ -66,6 +66,12 @@ public class TagController implements TagUpdateListener, SupervisionListener {
    */
   private Map<String, Object> metadata = new HashMap<>();
 
+  /**
+   * Notifies the listeners asynchronously, if set and enabled. Otherwise the
+   * listeners are notified on the updating thread.
+   */
+  private TagNotificationDispatcher notificationDispatcher;
+
   public TagController() {
     this.tagImpl = new TagImpl();
   }
@@ -238,10 +244,18 @@ public class TagController implements TagUpdateListener, SupervisionListener {
    * Private method to notify all registered <code>DataTagUpdateListener</code> instances.
    * Please avoid calling this method within a WRITELOCK block since it could be a potential
    * candidate for risking a deadlocks.
+   * If a {@link TagNotificationDispatcher} is enabled, the listeners are only
+   * queued for notification on its executor.
    *
    * @param Please only provide a clone of this tag
    */
   public synchronized void notifyListeners(final Tag clone) {
+    if (notificationDispatcher != null && notificationDispatcher.isEnabled()) {
+      for (BaseTagListener updateListener : listeners) {
+        notificationDispatcher.dispatch(updateListener, clone);
+      }
+      return;
+    }
     for (BaseTagListener updateListener : listeners) {
       try {
         updateListener.onUpdate(clone);
@@ -0,0 +1,357 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.tag;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.client.common.listener.BaseTagListener;
+import cern.c2mon.client.common.tag.Tag;
+import cern.c2mon.client.core.config.C2monClientProperties;
+
+/**
+ * Notifies the {@link BaseTagListener}s of the live tags on an executor
+ * instead of the JMS listener thread, if enabled with
+ * <code>c2mon.client.notification.async</code>.
+ *
+ * <p>Each listener has its own queue of pending tag updates, drained by at
+ * most one task at a time, so a listener is never called concurrently by the
+ * dispatcher and receives the updates of a tag in order. While a listener is
+ * busy, the pending update of a tag is replaced by the newer ones: a slow
+ * listener skips the intermediate values instead of backing up the JMS
+ * topics of all other tags.
+ *
+ * <p>The executor uses virtual threads if the JVM provides them, and a fixed
+ * pool of platform threads otherwise (or if a number of threads is
+ * configured). The lag of a listener is the time its oldest pending update
+ * has been waiting; a warning is logged if it exceeds the configured
+ * threshold.
+ */
+@Slf4j
+@Component
+@ManagedResource(objectName = "cern.c2mon:type=Notification,name=TagNotificationDispatcher")
+public class TagNotificationDispatcher {
+
+  /**
+   * Pool size used if no number of threads is configured and the JVM has no
+   * virtual threads
+   */
+  private static final int DEFAULT_THREADS = 8;
+
+  /**
+   * Maximum number of updates delivered by one task, before the task is
+   * rescheduled to give the other listeners a chance on a bounded pool
+   */
+  private static final int MAX_DELIVERIES_PER_TASK = 100;
+
+  private final boolean enabled;
+
+  private final long lagWarningThreshold;
+
+  private final ExecutorService executor;
+
+  /**
+   * The queues of the listeners with pending updates, removed once empty
+   */
+  private final Map<ListenerKey, ListenerQueue> queues = new ConcurrentHashMap<>();
+
+  private final AtomicLong dispatchedUpdates = new AtomicLong();
+
+  private final AtomicLong coalescedUpdates = new AtomicLong();
+
+  private final AtomicLong deliveredUpdates = new AtomicLong();
+
+  private final AtomicLong maxLag = new AtomicLong();
+
+  @Autowired
+  public TagNotificationDispatcher(final C2monClientProperties properties) {
+    C2monClientProperties.Notification notification = properties.getNotification();
+    this.enabled = notification.isAsync();
+    this.lagWarningThreshold = notification.getLagWarningThreshold();
+    this.executor = enabled ? createExecutor(notification.getThreads()) : null;
+    if (enabled) {
+      log.info("Tag listeners are notified asynchronously");
+    }
+  }
+
+  /**
+   * Creates a virtual thread per task executor if the number of threads is
+   * not configured and the JVM supports it (Java 21 and later), and a fixed
+   * pool of daemon threads otherwise.
+   */
+  private static ExecutorService createExecutor(final int threads) {
+    if (threads <= 0) {
+      try {
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        log.debug("No virtual threads available - using a pool of {} threads", DEFAULT_THREADS);
+      }
+    }
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("TagNotification-");
+    threadFactory.setDaemon(true);
+    return Executors.newFixedThreadPool(threads > 0 ? threads : DEFAULT_THREADS, threadFactory);
+  }
+
+  /**
+   * @return <code>true</code>, if the listeners are notified asynchronously
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Queues the tag update for the listener, replacing the pending update of
+   * the same tag if any.
+   *
+   * @param listener the listener to notify
+   * @param clone a copy of the updated tag, not modified afterwards
+   */
+  public void dispatch(final BaseTagListener listener, final Tag clone) {
+    dispatchedUpdates.incrementAndGet();
+    ListenerKey key = new ListenerKey(listener);
+    while (true) {
+      ListenerQueue queue = queues.computeIfAbsent(key, k -> new ListenerQueue(k));
+      switch (queue.offer(clone)) {
+        case STARTED:
+          try {
+            executor.execute(queue);
+          } catch (RuntimeException e) {
+            log.warn("Could not schedule the notification of listener {} - its pending updates are dropped", listener, e);
+            queue.abandon();
+          }
+          return;
+        case QUEUED:
+          return;
+        default:
+          // closed by its task in the meantime
+          queues.remove(key, queue);
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @ManagedOperation(description = "Returns the number of tag updates waiting to be notified")
+  public int getPendingUpdates() {
+    int pending = 0;
+    for (ListenerQueue queue : queues.values()) {
+      pending += queue.size();
+    }
+    return pending;
+  }
+
+  @ManagedOperation(description = "Returns the current lag (in ms) of the listeners with pending updates")
+  public Map<String, Long> getListenerLags() {
+    Map<String, Long> lags = new LinkedHashMap<>();
+    long now = System.nanoTime();
+    for (ListenerQueue queue : queues.values()) {
+      lags.put(queue.key.listener.toString(), TimeUnit.NANOSECONDS.toMillis(queue.lag(now)));
+    }
+    return lags;
+  }
+
+  @ManagedOperation(description = "Returns the maximum lag (in ms) of a notified update since the start")
+  public long getMaxLag() {
+    return maxLag.get();
+  }
+
+  @ManagedOperation(description = "Returns the number of tag updates queued for the listeners since the start")
+  public long getDispatchedUpdates() {
+    return dispatchedUpdates.get();
+  }
+
+  @ManagedOperation(description = "Returns the number of tag updates replaced by a newer update of the same tag before notification")
+  public long getCoalescedUpdates() {
+    return coalescedUpdates.get();
+  }
+
+  @ManagedOperation(description = "Returns the number of tag updates notified to the listeners since the start")
+  public long getDeliveredUpdates() {
+    return deliveredUpdates.get();
+  }
+
+  private enum OfferResult {
+    STARTED, QUEUED, CLOSED
+  }
+
+  /**
+   * Identity key of a listener, as the listeners are registered by identity
+   * on the tags.
+   */
+  private static final class ListenerKey {
+
+    private final BaseTagListener listener;
+
+    ListenerKey(final BaseTagListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      return other instanceof ListenerKey && ((ListenerKey) other).listener == listener;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(listener);
+    }
+  }
+
+  private static final class PendingUpdate {
+
+    private Tag tag;
+
+    private final long queuedAt = System.nanoTime();
+
+    PendingUpdate(final Tag tag) {
+      this.tag = tag;
+    }
+  }
+
+  /**
+   * The pending updates of a listener, by tag id in queuing order. Drained by
+   * at most one task at a time; closed when empty.
+   */
+  private final class ListenerQueue implements Runnable {
+
+    private final ListenerKey key;
+
+    private final LinkedHashMap<Long, PendingUpdate> pending = new LinkedHashMap<>();
+
+    private boolean running;
+
+    private boolean closed;
+
+    private boolean lagWarned;
+
+    ListenerQueue(final ListenerKey key) {
+      this.key = key;
+    }
+
+    synchronized OfferResult offer(final Tag clone) {
+      if (closed) {
+        return OfferResult.CLOSED;
+      }
+      PendingUpdate update = pending.get(clone.getId());
+      if (update != null) {
+        update.tag = clone;
+        coalescedUpdates.incrementAndGet();
+      } else {
+        pending.put(clone.getId(), new PendingUpdate(clone));
+      }
+      if (running) {
+        return OfferResult.QUEUED;
+      }
+      running = true;
+      return OfferResult.STARTED;
+    }
+
+    synchronized int size() {
+      return pending.size();
+    }
+
+    synchronized long lag(final long now) {
+      Iterator<PendingUpdate> updates = pending.values().iterator();
+      return updates.hasNext() ? now - updates.next().queuedAt : 0;
+    }
+
+    /**
+     * @return the oldest pending update, or <code>null</code> after closing
+     *         the empty queue
+     */
+    private synchronized PendingUpdate poll() {
+      Iterator<PendingUpdate> updates = pending.values().iterator();
+      if (!updates.hasNext()) {
+        running = false;
+        closed = true;
+        return null;
+      }
+      PendingUpdate update = updates.next();
+      updates.remove();
+      return update;
+    }
+
+    @Override
+    public void run() {
+      for (int delivered = 0; delivered < MAX_DELIVERIES_PER_TASK; delivered++) {
+        PendingUpdate update = poll();
+        if (update == null) {
+          queues.remove(key, this);
+          return;
+        }
+        notify(update);
+      }
+      try {
+        executor.execute(this);
+      } catch (RuntimeException e) {
+        log.warn("Could not reschedule the notification of listener {} - its pending updates are dropped", key.listener, e);
+        abandon();
+      }
+    }
+
+    /**
+     * Drops the pending updates and closes the queue after its task could not
+     * be scheduled, so that the next update of the listener starts a new queue.
+     */
+    private void abandon() {
+      synchronized (this) {
+        pending.clear();
+        running = false;
+        closed = true;
+      }
+      queues.remove(key, this);
+    }
+
+    private void notify(final PendingUpdate update) {
+      long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - update.queuedAt);
+      maxLag.accumulateAndGet(lag, Math::max);
+      if (lag > lagWarningThreshold && !lagWarned) {
+        lagWarned = true;
+        log.warn("Listener {} is {} ms behind the tag updates ({} updates pending) - intermediate values are skipped",
+            key.listener, lag, size());
+      }
+      try {
+        key.listener.onUpdate(update.tag);
+      } catch (Exception e) {
+        log.error("notify() : error notifying listener of tag {}", update.tag.getId(), e);
+      }
+      deliveredUpdates.incrementAndGet();
+    }
+  }
+}
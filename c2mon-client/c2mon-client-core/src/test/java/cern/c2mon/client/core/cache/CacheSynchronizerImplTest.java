@@ -0,0 +1,195 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.cache;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.JMSException;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.client.core.config.C2monClientProperties;
+import cern.c2mon.client.core.jms.JmsProxy;
+import cern.c2mon.client.core.jms.RequestHandler;
+import cern.c2mon.client.core.jms.TopicRegistrationDetails;
+import cern.c2mon.client.core.listener.TagUpdateListener;
+import cern.c2mon.client.core.service.CoreSupervisionService;
+import cern.c2mon.client.core.tag.TagController;
+import cern.c2mon.client.core.tag.TagNotificationDispatcher;
+import cern.c2mon.shared.client.tag.TagMode;
+import cern.c2mon.shared.client.tag.TagUpdate;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
+import cern.c2mon.shared.client.tag.TransferTagImpl;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CacheSynchronizerImplTest {
+
+  private static final int CHUNK_SIZE = 10;
+
+  private JmsProxy jmsProxy;
+
+  private RequestHandler requestHandler;
+
+  private CacheControllerImpl controller;
+
+  private CacheSynchronizerImpl synchronizer;
+
+  /** The registrations passed to the JmsProxy, one map per call */
+  private final List<Map<? extends TagUpdateListener, ? extends TopicRegistrationDetails>> registrations = new CopyOnWriteArrayList<>();
+
+  /** The tag ids whose values were requested */
+  private final Set<Long> requestedValues = Collections.synchronizedSet(new HashSet<>());
+
+  @Before
+  public void setUp() throws Exception {
+    C2monClientProperties properties = new C2monClientProperties();
+    properties.setMaxTagsPerRequest(CHUNK_SIZE);
+    properties.getSubscription().setPipelined(true);
+
+    jmsProxy = EasyMock.createNiceMock(JmsProxy.class);
+    requestHandler = EasyMock.createNiceMock(RequestHandler.class);
+    controller = new CacheControllerImpl();
+    CoreSupervisionService supervisionService = EasyMock.createNiceMock(CoreSupervisionService.class);
+    EasyMock.replay(supervisionService);
+    synchronizer = new CacheSynchronizerImpl(jmsProxy, requestHandler, supervisionService, controller,
+        new TagNotificationDispatcher(properties), properties);
+    synchronizer.init();
+
+    jmsProxy.registerUpdateListeners(EasyMock.anyObject());
+    EasyMock.expectLastCall().andAnswer(() -> {
+      registrations.add((Map<? extends TagUpdateListener, ? extends TopicRegistrationDetails>) EasyMock.getCurrentArguments()[0]);
+      return null;
+    }).anyTimes();
+    EasyMock.expect(requestHandler.requestTagValues(EasyMock.anyObject())).andAnswer(() -> {
+      Collection<TagValueUpdate> values = new ArrayList<>();
+      for (Long tagId : (Collection<Long>) EasyMock.getCurrentArguments()[0]) {
+        requestedValues.add(tagId);
+        values.add(createTransferTag(tagId, 2.0f, System.currentTimeMillis() + 1000L));
+      }
+      return values;
+    }).anyTimes();
+  }
+
+  @After
+  public void tearDown() {
+    synchronizer.shutdown();
+  }
+
+  /**
+   * Only the even tags are known by the server, on three topics.
+   */
+  private void expectTagRequests() throws Exception {
+    EasyMock.expect(requestHandler.requestTags(EasyMock.anyObject())).andAnswer(() -> {
+      Collection<TagUpdate> tags = new ArrayList<>();
+      for (Long tagId : (Collection<Long>) EasyMock.getCurrentArguments()[0]) {
+        if (tagId % 2 == 0) {
+          tags.add(createTransferTag(tagId, 1.0f, System.currentTimeMillis()));
+        }
+      }
+      return tags;
+    }).anyTimes();
+  }
+
+  @Test
+  public void testPipelinedInitTags() throws Exception {
+    expectTagRequests();
+    EasyMock.replay(jmsProxy, requestHandler);
+
+    Set<Long> tagIds = new HashSet<>();
+    for (long tagId = 0; tagId < 95; tagId++) {
+      tagIds.add(tagId);
+    }
+    assertEquals(tagIds, synchronizer.initTags(tagIds));
+
+    // one registration call per chunk, with the known tags only
+    assertEquals(10, registrations.size());
+    Set<Long> registeredTags = new HashSet<>();
+    for (Map<? extends TagUpdateListener, ? extends TopicRegistrationDetails> chunk : registrations) {
+      assertTrue(chunk.size() <= CHUNK_SIZE / 2);
+      for (TopicRegistrationDetails details : chunk.values()) {
+        assertEquals("topic." + details.getId() % 3, details.getTopicName());
+        assertTrue(registeredTags.add(details.getId()));
+      }
+    }
+    assertEquals(48, registeredTags.size());
+    assertEquals(registeredTags, requestedValues);
+
+    for (Long tagId : tagIds) {
+      TagController liveTag = controller.getLiveCache().get(tagId);
+      if (tagId % 2 == 0) {
+        assertTrue(liveTag.getTagImpl().getDataTagQuality().isExistingTag());
+        assertEquals(2.0f, liveTag.getTagImpl().getValue());
+      } else {
+        assertFalse(liveTag.getTagImpl().getDataTagQuality().isExistingTag());
+      }
+    }
+  }
+
+  @Test
+  public void testPipelinedInitTagsSkipsRegisteredTags() throws Exception {
+    expectTagRequests();
+    EasyMock.expect(jmsProxy.isRegisteredListener(EasyMock.anyObject())).andReturn(true).anyTimes();
+    EasyMock.replay(jmsProxy, requestHandler);
+
+    Set<Long> tagIds = new HashSet<>();
+    for (long tagId = 0; tagId < 25; tagId++) {
+      tagIds.add(tagId);
+    }
+    synchronizer.initTags(tagIds);
+
+    assertTrue(registrations.isEmpty());
+    assertTrue(requestedValues.isEmpty());
+    assertEquals(1.0f, controller.getLiveCache().get(0L).getTagImpl().getValue());
+  }
+
+  @Test(expected = CacheSynchronizationException.class)
+  public void testPipelinedInitTagsFailure() throws Exception {
+    EasyMock.expect(requestHandler.requestTags(EasyMock.anyObject())).andThrow(new JMSException("connection lost")).anyTimes();
+    EasyMock.replay(jmsProxy, requestHandler);
+
+    Set<Long> tagIds = new HashSet<>();
+    for (long tagId = 0; tagId < 25; tagId++) {
+      tagIds.add(tagId);
+    }
+    synchronizer.initTags(tagIds);
+  }
+
+  private static TransferTagImpl createTransferTag(final Long tagId, final Float value, final long serverTime) {
+    DataTagQualityImpl tagQuality = new DataTagQualityImpl();
+    tagQuality.validate();
+    TransferTagImpl tagUpdate = new TransferTagImpl(tagId, value, "test value desc", tagQuality, TagMode.TEST,
+        new Timestamp(serverTime - 10000L), new Timestamp(serverTime - 5000L), new Timestamp(serverTime),
+        "Test description", "tag" + tagId, "topic." + tagId % 3);
+    tagUpdate.setValueClassName(Float.class.getName());
+    return tagUpdate;
+  }
+}
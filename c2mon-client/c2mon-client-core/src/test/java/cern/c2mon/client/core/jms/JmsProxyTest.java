@@ -19,6 +19,8 @@ package cern.c2mon.client.core.jms;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 import javax.jms.*;
@@ -169,6 +171,50 @@ public class JmsProxyTest {
     Assert.assertTrue(jmsProxy.isRegisteredListener(listener));
   }
 
+  /**
+   * Tests the registration of several listeners at once, on two topics.
+   * @throws JMSException
+   * @throws InterruptedException
+   */
+  @Test
+  public void testRegisterUpdateListeners() throws JMSException, InterruptedException {
+    Map<TagUpdateListener, TopicRegistrationDetails> registrations = new HashMap<>();
+    for (long i = 10; i < 14; i++) {
+      final Long tagId = i;
+      TagUpdateListener listener = EasyMock.createMock(TagUpdateListener.class);
+      EasyMock.expect(listener.onUpdate(EasyMock.isA(TransferTagValueImpl.class))).andReturn(true);
+      EasyMock.replay(listener);
+      registrations.put(listener, new TopicRegistrationDetails() {
+        @Override
+        public String getTopicName() {
+          return "c2mon.JmsProxy.test.topic.registrations." + tagId % 2;
+        }
+
+        @Override
+        public Long getId() {
+          return tagId;
+        }
+      });
+    }
+
+    jmsProxy.registerUpdateListeners(registrations);
+
+    for (Map.Entry<TagUpdateListener, TopicRegistrationDetails> registration : registrations.entrySet()) {
+      Assert.assertTrue(jmsProxy.isRegisteredListener(registration.getKey()));
+      TopicRegistrationDetails tag = registration.getValue();
+      jmsSender.sendToTopic(TransferTagSerializer.toJson(new TransferTagValueImpl(tag.getId(), 10L, "value description",
+          new DataTagQualityImpl(), TagMode.TEST, new Timestamp(System.currentTimeMillis()),
+          new Timestamp(System.currentTimeMillis()), new Timestamp(System.currentTimeMillis()), "description")),
+          tag.getTopicName());
+    }
+
+    Thread.sleep(200);
+    for (TagUpdateListener listener : registrations.keySet()) {
+      EasyMock.verify(listener);
+      jmsProxy.unregisterUpdateListener(listener);
+    }
+  }
+
   /**
    * Tests notifications are made to registered update listeners by sending JMS message.
    * (values are not checked, just notification).
@@ -0,0 +1,120 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.jms.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.JMSException;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.client.tag.TagMode;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
+import cern.c2mon.shared.client.tag.TransferTagValueImpl;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+
+/**
+ * Measures the CPU time spent by the JMS consumer thread of a
+ * {@link MessageListenerWrapper} subscribed to a few Tags of a large process
+ * topic, with messages carrying the Tag id property (filtered before parsing)
+ * and without it (parsed, then filtered).
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE, or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.client.core.jms.impl.MessageListenerWrapperBenchmark
+ * -Dexec.args="100000 10 5"</code> (tags on the topic, subscribed tags, runs).
+ */
+public class MessageListenerWrapperBenchmark {
+
+  private final List<ActiveMQTextMessage> withTagId = new ArrayList<>();
+
+  private final List<ActiveMQTextMessage> withoutTagId = new ArrayList<>();
+
+  private final AtomicLong notified = new AtomicLong();
+
+  private final MessageListenerWrapper wrapper;
+
+  public MessageListenerWrapperBenchmark(final int tagCount, final int subscribedCount, final ExecutorService executor)
+      throws JMSException {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    for (long id = 1; id <= tagCount; id++) {
+      TransferTagValueImpl update = new TransferTagValueImpl(id, id * 0.5, "value description",
+          new DataTagQualityImpl(), TagMode.OPERATIONAL, now, now, now, "description of tag " + id);
+      update.setValueClassName(Double.class.getName());
+      String json = TransferTagSerializer.toJson(update);
+      ActiveMQTextMessage message = new ActiveMQTextMessage();
+      message.setText(json);
+      withoutTagId.add(message);
+      message = new ActiveMQTextMessage();
+      message.setText(json);
+      message.setLongProperty(TagValueUpdate.TAG_ID_PROPERTY, id);
+      withTagId.add(message);
+    }
+
+    wrapper = new MessageListenerWrapper(1L, update -> notified.incrementAndGet() > 0, 10000, warning -> { }, executor);
+    for (long id = 2; id <= subscribedCount; id++) {
+      wrapper.addListener(update -> notified.incrementAndGet() > 0, id * (tagCount / subscribedCount));
+    }
+    wrapper.start();
+  }
+
+  public static void main(String[] args) throws JMSException {
+    int tagCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int subscribedCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    MessageListenerWrapperBenchmark benchmark = new MessageListenerWrapperBenchmark(tagCount, subscribedCount, executor);
+    System.out.printf("%d tags on the topic, %d subscribed, %d runs%n", tagCount, subscribedCount, runs);
+    try {
+      // warm-up
+      benchmark.run("without tag id", benchmark.withoutTagId, false);
+      benchmark.run("with tag id", benchmark.withTagId, false);
+      for (int i = 0; i < runs; i++) {
+        benchmark.run("without tag id", benchmark.withoutTagId, true);
+        benchmark.run("with tag id", benchmark.withTagId, true);
+      }
+    } finally {
+      benchmark.wrapper.stop();
+      executor.shutdown();
+    }
+  }
+
+  private void run(final String mode, final List<ActiveMQTextMessage> messages, final boolean print) {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    notified.set(0);
+    long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+    long start = System.nanoTime();
+    for (ActiveMQTextMessage message : messages) {
+      wrapper.onMessage(message);
+    }
+    long cpu = threadMXBean.getCurrentThreadCpuTime() - cpuStart;
+    long elapsed = System.nanoTime() - start;
+    if (print) {
+      System.out.printf("%-15s consumer thread CPU %8.1f ms (%6.2f us/message), elapsed %8.1f ms%n",
+          mode, cpu / 1e6, cpu / 1e3 / messages.size(), elapsed / 1e6);
+    }
+  }
+}
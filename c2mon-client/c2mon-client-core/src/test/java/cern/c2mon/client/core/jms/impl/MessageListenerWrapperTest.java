@@ -0,0 +1,124 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.jms.impl;
+
+import java.sql.Timestamp;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.client.tag.TagMode;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
+import cern.c2mon.shared.client.tag.TransferTagValueImpl;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test of the filtering of the MessageListenerWrapper.
+ */
+public class MessageListenerWrapperTest {
+
+  private ExecutorService executor;
+
+  private MessageListenerWrapper wrapper;
+
+  private LinkedBlockingQueue<TagValueUpdate> updates = new LinkedBlockingQueue<>();
+
+  @Before
+  public void beforeTest() {
+    executor = Executors.newSingleThreadExecutor();
+    wrapper = new MessageListenerWrapper(1L, updates::add, 100, EasyMock.createNiceMock(SlowConsumerListener.class), executor);
+    wrapper.start();
+  }
+
+  @After
+  public void afterTest() {
+    wrapper.stop();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testMessagesOfOtherTagsAreNotParsed() throws Exception {
+    TextMessage otherTag = EasyMock.createStrictMock(TextMessage.class);
+    EasyMock.expect(otherTag.propertyExists(TagValueUpdate.TAG_ID_PROPERTY)).andReturn(true);
+    EasyMock.expect(otherTag.getLongProperty(TagValueUpdate.TAG_ID_PROPERTY)).andReturn(2L);
+    EasyMock.replay(otherTag);
+
+    wrapper.onMessage(otherTag);
+    wrapper.onMessage(message(1L, true));
+
+    assertEquals(Long.valueOf(1L), updates.poll(2, TimeUnit.SECONDS).getId());
+    EasyMock.verify(otherTag);
+  }
+
+  @Test
+  public void testMessagesWithoutTagIdAreParsedAndFiltered() throws Exception {
+    wrapper.addListener(updates::add, 3L);
+    wrapper.onMessage(message(2L, false));
+    wrapper.onMessage(message(3L, false));
+    assertEquals(Long.valueOf(3L), updates.poll(2, TimeUnit.SECONDS).getId());
+
+    wrapper.removeListener(3L);
+    wrapper.onMessage(message(3L, true));
+    wrapper.onMessage(message(1L, false));
+    assertEquals(Long.valueOf(1L), updates.poll(2, TimeUnit.SECONDS).getId());
+    assertNull(updates.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testBatchMessagesAreUnbatched() throws Exception {
+    wrapper.addListener(updates::add, 3L);
+    ActiveMQTextMessage batch = new ActiveMQTextMessage();
+    batch.setText("[" + ((TextMessage) message(3L, false)).getText() + "," + ((TextMessage) message(2L, false)).getText()
+        + "," + ((TextMessage) message(1L, false)).getText() + "]");
+    batch.setIntProperty(TagValueUpdate.BATCH_SIZE_PROPERTY, 3);
+
+    wrapper.onMessage(batch);
+
+    assertEquals(Long.valueOf(3L), updates.poll(2, TimeUnit.SECONDS).getId());
+    TagValueUpdate update = updates.poll(2, TimeUnit.SECONDS);
+    assertEquals(Long.valueOf(1L), update.getId());
+    assertEquals(1L, update.getValue());
+    assertNull(updates.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  private static TextMessage message(final Long tagId, final boolean withTagIdProperty) throws JMSException {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    TransferTagValueImpl update = new TransferTagValueImpl(tagId, 1L, "value description", new DataTagQualityImpl(),
+        TagMode.OPERATIONAL, now, now, now, "description");
+    update.setValueClassName(Long.class.getName());
+    ActiveMQTextMessage message = new ActiveMQTextMessage();
+    message.setText(TransferTagSerializer.toJson(update));
+    if (withTagIdProperty) {
+      message.setLongProperty(TagValueUpdate.TAG_ID_PROPERTY, tagId);
+    }
+    return message;
+  }
+}
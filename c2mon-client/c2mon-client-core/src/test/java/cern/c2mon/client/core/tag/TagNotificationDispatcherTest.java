@@ -0,0 +1,231 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.tag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cern.c2mon.client.common.listener.BaseTagListener;
+import cern.c2mon.client.common.tag.Tag;
+import cern.c2mon.client.core.config.C2monClientProperties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TagNotificationDispatcherTest {
+
+  private TagNotificationDispatcher dispatcher;
+
+  @After
+  public void tearDown() {
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+  }
+
+  private static TagNotificationDispatcher createDispatcher(final boolean async) {
+    C2monClientProperties properties = new C2monClientProperties();
+    properties.getNotification().setAsync(async);
+    properties.getNotification().setThreads(2);
+    return new TagNotificationDispatcher(properties);
+  }
+
+  private static Tag tag(final long id, final Object value) {
+    TagImpl tag = new TagImpl(id);
+    tag.setTagValue(value);
+    return tag;
+  }
+
+  private static void await(final CountDownLatch latch) throws InterruptedException {
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Blocks in its first notification until released, and records the values
+   * it receives.
+   */
+  private static final class BlockingListener implements BaseTagListener {
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<Object> values = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger concurrentCalls = new AtomicInteger();
+
+    private volatile boolean calledConcurrently;
+
+    @Override
+    public void onUpdate(final Tag tagUpdate) {
+      if (concurrentCalls.incrementAndGet() > 1) {
+        calledConcurrently = true;
+      }
+      blocked.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      values.add(tagUpdate.getId() + "=" + tagUpdate.getValue());
+      concurrentCalls.decrementAndGet();
+    }
+  }
+
+  private void awaitDelivered(final long count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getDeliveredUpdates() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(count, dispatcher.getDeliveredUpdates());
+  }
+
+  @Test
+  public void testSlowListenerDoesNotDelayOthers() throws InterruptedException {
+    dispatcher = createDispatcher(true);
+    BlockingListener slow = new BlockingListener();
+    CountDownLatch fastNotified = new CountDownLatch(1);
+    BaseTagListener fast = tagUpdate -> fastNotified.countDown();
+
+    dispatcher.dispatch(slow, tag(1L, 1));
+    await(slow.blocked);
+    dispatcher.dispatch(fast, tag(1L, 1));
+
+    await(fastNotified);
+    slow.release.countDown();
+  }
+
+  @Test
+  public void testUpdatesAreCoalescedWhileListenerIsBusy() throws InterruptedException {
+    dispatcher = createDispatcher(true);
+    BlockingListener listener = new BlockingListener();
+
+    dispatcher.dispatch(listener, tag(1L, 0));
+    await(listener.blocked);
+    for (int value = 1; value <= 10; value++) {
+      dispatcher.dispatch(listener, tag(1L, value));
+      dispatcher.dispatch(listener, tag(2L, value));
+    }
+    assertEquals(2, dispatcher.getPendingUpdates());
+    assertEquals(1, dispatcher.getListenerLags().size());
+
+    listener.release.countDown();
+    awaitDelivered(3);
+
+    List<Object> expected = new ArrayList<>();
+    expected.add("1=0");
+    expected.add("1=10");
+    expected.add("2=10");
+    assertEquals(expected, listener.values);
+    assertEquals(18, dispatcher.getCoalescedUpdates());
+    assertEquals(21, dispatcher.getDispatchedUpdates());
+    assertFalse(listener.calledConcurrently);
+  }
+
+  @Test
+  public void testUpdatesOfATagAreDeliveredInOrder() throws InterruptedException {
+    dispatcher = createDispatcher(true);
+    List<Object> values = new CopyOnWriteArrayList<>();
+    BaseTagListener listener = tagUpdate -> values.add(tagUpdate.getValue());
+
+    for (int value = 0; value < 1000; value++) {
+      dispatcher.dispatch(listener, tag(1L, value));
+    }
+    awaitDelivered(1000 - dispatcher.getCoalescedUpdates());
+
+    for (int i = 1; i < values.size(); i++) {
+      assertTrue((Integer) values.get(i) > (Integer) values.get(i - 1));
+    }
+    assertEquals(999, values.get(values.size() - 1));
+    assertTrue(dispatcher.getListenerLags().isEmpty());
+  }
+
+  @Test
+  public void testListenerExceptionDoesNotStopNotification() throws InterruptedException {
+    dispatcher = createDispatcher(true);
+    CountDownLatch notified = new CountDownLatch(2);
+    BaseTagListener listener = tagUpdate -> {
+      notified.countDown();
+      throw new IllegalStateException("listener failure");
+    };
+
+    dispatcher.dispatch(listener, tag(1L, 1));
+    dispatcher.dispatch(listener, tag(2L, 1));
+    await(notified);
+  }
+
+  @Test
+  public void testUpdatesAreDroppedIfTheTaskCannotBeScheduled() throws InterruptedException {
+    dispatcher = createDispatcher(true);
+    BlockingListener listener = new BlockingListener();
+    dispatcher.dispatch(listener, tag(0L, 0));
+    await(listener.blocked);
+    for (long id = 1; id <= 150; id++) {
+      dispatcher.dispatch(listener, tag(id, 0));
+    }
+
+    // the task cannot be rescheduled after its first 100 deliveries
+    dispatcher.shutdown();
+    awaitDelivered(100);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getPendingUpdates() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(0, dispatcher.getPendingUpdates());
+
+    // a later update is dropped as well instead of being queued for ever
+    dispatcher.dispatch(listener, tag(1L, 1));
+    assertEquals(0, dispatcher.getPendingUpdates());
+  }
+
+  @Test
+  public void testTagControllerNotifiesSynchronouslyByDefault() {
+    dispatcher = createDispatcher(false);
+    assertFalse(dispatcher.isEnabled());
+
+    TagController tagController = new TagController(1L);
+    tagController.setNotificationDispatcher(dispatcher);
+    List<Object> values = new ArrayList<>();
+    tagController.getListeners().add(tagUpdate -> values.add(tagUpdate.getValue()));
+
+    tagController.notifyListeners(tag(1L, 42));
+    assertEquals(1, values.size());
+    assertEquals(0, dispatcher.getDispatchedUpdates());
+  }
+
+  @Test
+  public void testTagControllerDispatchesToAllListeners() throws InterruptedException {
+    dispatcher = createDispatcher(true);
+    TagController tagController = new TagController(1L);
+    tagController.setNotificationDispatcher(dispatcher);
+    CountDownLatch notified = new CountDownLatch(2);
+    tagController.getListeners().add(tagUpdate -> notified.countDown());
+    tagController.getListeners().add(tagUpdate -> notified.countDown());
+
+    tagController.notifyListeners(tag(1L, 42));
+    await(notified);
+    assertEquals(2, dispatcher.getDispatchedUpdates());
+  }
+}
@@ -48,6 +48,8 @@ import cern.c2mon.shared.common.process.ProcessConfiguration;
 import cern.c2mon.shared.common.process.SubEquipmentConfiguration;
 import cern.c2mon.shared.daq.config.*;
 import cern.c2mon.shared.daq.config.ChangeReport.CHANGE_STATE;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateBinaryCodec;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateConverter;
 import cern.c2mon.shared.daq.process.ProcessConfigurationResponse;
 import cern.c2mon.shared.daq.process.ProcessConnectionResponse;
 
@@ -101,6 +103,13 @@ public class ConfigurationController {
   @Autowired
   private EquipmentConfigurationFactory equipmentConfigurationFactory;
 
+  /**
+   * Converter of the updates sent to the primary server, switched to the
+   * binary format if the server accepts it. Can be null!
+   */
+  @Autowired(required = false)
+  private DataTagValueUpdateConverter dataTagValueUpdateConverter;
+
   /**
    * Map of data tag changers. It maps equipment id - > changer.
    */
@@ -175,6 +184,22 @@ public class ConfigurationController {
     processConfiguration.setprocessPIK(processConnectionResponse.getProcessPIK());
 
     ProcessConfigurationHolder.setInstance(processConfiguration);
+
+    selectUpdateFormat(processConnectionResponse);
+  }
+
+  /**
+   * Sends the updates in binary format if it is enabled and the server
+   * accepts the format version of this DAQ, in JSON otherwise.
+   */
+  private void selectUpdateFormat(final ProcessConnectionResponse processConnectionResponse) {
+    if (dataTagValueUpdateConverter == null) {
+      return;
+    }
+    boolean binary = properties.getJms().isBinaryUpdates()
+        && processConnectionResponse.getBinaryFormatVersion() >= DataTagValueUpdateBinaryCodec.FORMAT_VERSION;
+    dataTagValueUpdateConverter.setBinaryFormat(binary);
+    log.info("Sending tag updates to the server in {} format", binary ? "binary" : "JSON");
   }
 
   /**
@@ -27,15 +27,14 @@ import cern.c2mon.shared.common.filter.FilteredDataTagValue.FilterType;
 import cern.c2mon.shared.common.type.TypeConverter;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
- * The SourceDataTagTimeDeadbandScheduler class models threads responsible for
- * handling source time deadband filtering. It will work with the Static TimeDeadband
+ * The SourceDataTagTimeDeadbandScheduler class models tasks responsible for
+ * handling source time deadband filtering. It will work with the Static TimeDeadband.
+ * The tasks of all tags are run by a shared {@link TimeDeadbandWheel}, which
+ * also sends the values of the tags run in the same tick together.
  */
 @Slf4j
-public class SDTTimeDeadbandScheduler extends TimerTask {
+public class SDTTimeDeadbandScheduler implements Runnable {
 
   /**
    * The process message sender takes the messages actually send to the server.
@@ -68,9 +67,14 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
   private DataTagValueFilter dataTagValueFilter;
 
   /**
-   * The timer to schedule this task on
+   * The wheel to schedule this task on
+   */
+  private TimeDeadbandWheel timeDeadbandWheel;
+
+  /**
+   * True once the task is cancelled, the wheel then drops it
    */
-  private Timer timeDeadbandTimer;
+  private volatile boolean cancelled = false;
 
   /**
    * The dynamic time dead band filterer for recording the current source data tag
@@ -93,14 +97,14 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
    * @param sourceDataTag               The source data tag controlled by this object.
    * @param processMessageSender        Takes the messages sent to the server
    * @param equipmentSenderValid        Used to send messages to the server.
-   * @param timeDeadbandTimer           The timer to schedule this task on.
+   * @param timeDeadbandWheel           The wheel to schedule this task on.
    * @param valueChecker                Value checker object to avoid repeated values.
    * @param dynamicTimeDeadbandFilterer The dynamic time dead band filterer for recording the current source data tag
    */
   public SDTTimeDeadbandScheduler(final SourceDataTag sourceDataTag,
                                   final IProcessMessageSender processMessageSender,
                                   final EquipmentSenderFilterModule equipmentSenderFilterModule,
-                                  final Timer timeDeadbandTimer,
+                                  final TimeDeadbandWheel timeDeadbandWheel,
                                   final DataTagValueFilter dataTagValueFilter,
                                   final IDynamicTimeDeadbandFilterer dynamicTimeDeadbandFilterer) {
     this.dataTagValueFilter = dataTagValueFilter;
@@ -108,7 +112,7 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
     this.equipmentSenderFilterModule = equipmentSenderFilterModule;
     this.dynamicTimeDeadbandFilterer = dynamicTimeDeadbandFilterer;
 
-    this.timeDeadbandTimer = timeDeadbandTimer;
+    this.timeDeadbandWheel = timeDeadbandWheel;
 
     log.debug("creating time-deadband scheduler for tag : " + sourceDataTag.getId());
 
@@ -126,12 +130,33 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
               + this.sourceDataTag.getAddress().getTimeDeadband() + " miliseconds");
       }
 
-      this.timeDeadbandTimer.scheduleAtFixedRate(this, 0, this.sourceDataTag.getAddress().getTimeDeadband());
+      this.timeDeadbandWheel.schedule(this, this.sourceDataTag.getAddress().getTimeDeadband());
 
       log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : setting scheduled");
     }
   }
 
+  /**
+   * Stops the periodic runs of this task.
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * @return the id of the source data tag controlled by this object
+   */
+  long getTagId() {
+    return this.sourceDataTag.getId();
+  }
+
+  /**
+   * @return true if the task has been cancelled
+   */
+  boolean isCancelled() {
+    return cancelled;
+  }
+
   /**
    * flushes and resets the scheduler
    */
@@ -155,7 +180,7 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
   }
 
   /**
-   * The run method called from the timer.
+   * The run method called from the wheel.
    */
   @Override
   public void run() {
@@ -191,8 +216,8 @@ public class SDTTimeDeadbandScheduler extends TimerTask {
             this.lastSourceDataTag = this.sourceDataTag.clone();
 
             currentSDValue.setValueDescription("Time-deadband filtering enabled. " + currentSDValue.getValueDescription());
-            // Add the value sent
-            this.processMessageSender.addValue(currentSDValue);
+            // Add the value sent, with the values of the other tags run in the same tick
+            this.timeDeadbandWheel.send(this.processMessageSender, currentSDValue);
 
             log.debug("\tscheduler[" + this.sourceDataTag.getId() + "] : sending value: " + currentSDValue.getValue());
           }
@@ -0,0 +1,364 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.daq.common.messaging.IProcessMessageSender;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+/**
+ * Hashed timing wheel running the {@link SDTTimeDeadbandScheduler}s at the
+ * fixed rate of their time deadband.
+ *
+ * <p>The wheel is made of {@link #DEFAULT_WHEEL_SIZE} buckets of
+ * {@link #DEFAULT_TICK_MILLIS} ms each. A single thread wakes up once per tick,
+ * takes all schedulers due in the buckets of the elapsed ticks and runs them in
+ * one pass, before putting them back into the bucket of their next run. Adding
+ * and cancelling a scheduler are constant time operations (cancelled schedulers
+ * are dropped the next time their bucket is visited), whereas a
+ * {@link java.util.Timer} keeps a binary heap of all tasks and re-sorts it at
+ * every run.
+ *
+ * <p>The schedulers run at most one tick late, and are not run several times
+ * to catch up if the wheel thread was delayed. The first run of a scheduler is
+ * delayed by an offset derived from its tag id, between 0 and its period, so
+ * the tags started together are spread over the buckets instead of all running
+ * in the same tick.
+ *
+ * <p>The values sent by the schedulers during a tick are collected, and passed
+ * to each {@link IProcessMessageSender} in a single call at the end of the tick.
+ * A value sent by a scheduler flushed from another thread while a tick is in
+ * progress is added to the batch of the tick, so the values of a tag are always
+ * sent in order. The senders are never called while holding the batch lock: a
+ * sender blocked on a full lane only delays the wheel thread, not the threads
+ * flushing the schedulers.
+ */
+@Slf4j
+class TimeDeadbandWheel {
+
+  /** Default duration of a tick */
+  static final long DEFAULT_TICK_MILLIS = 10;
+
+  /** Default number of buckets (must be a power of two) */
+  static final int DEFAULT_WHEEL_SIZE = 1024;
+
+  private final String name;
+
+  private final long tickNanos;
+
+  /** Bucket index mask (number of buckets - 1) */
+  private final int mask;
+
+  /** Only accessed by the wheel thread */
+  private final List<Entry>[] buckets;
+
+  /** Schedulers added since the last tick */
+  private final Queue<Entry> newEntries = new ConcurrentLinkedQueue<>();
+
+  /** Reference of the tick numbering */
+  private final long startNanos = System.nanoTime();
+
+  /** Last tick processed by the wheel thread */
+  private long lastTick = -1;
+
+  private volatile ScheduledExecutorService executor;
+
+  /** Number of scheduler runs, for the statistics */
+  private final AtomicLong runs = new AtomicLong();
+
+  /** Guards {@link #batch} */
+  private final Object batchLock = new Object();
+
+  /**
+   * Values sent during the current tick by sender; null between the ticks,
+   * once the wheel thread has sent all values of the tick
+   */
+  private Map<IProcessMessageSender, List<SourceDataTagValue>> batch;
+
+  /**
+   * @param name name of the wheel thread
+   * @param tickMillis duration of a tick, which is also the scheduling precision
+   * @param wheelSize number of buckets, rounded up to a power of two
+   */
+  @SuppressWarnings("unchecked")
+  TimeDeadbandWheel(final String name, final long tickMillis, final int wheelSize) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("The tick duration must be positive");
+    }
+    this.name = name;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+    this.mask = size - 1;
+    this.buckets = new List[size];
+    for (int i = 0; i < size; i++) {
+      buckets[i] = new ArrayList<>();
+    }
+  }
+
+  /**
+   * Creates a wheel with the default tick duration and size.
+   *
+   * @param name name of the wheel thread
+   */
+  TimeDeadbandWheel(final String name) {
+    this(name, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * Runs the scheduler after its initial offset and then every period, until
+   * it is cancelled.
+   *
+   * @param scheduler the scheduler to run
+   * @param periodMillis the period of the scheduler
+   */
+  void schedule(final SDTTimeDeadbandScheduler scheduler, final long periodMillis) {
+    long period = TimeUnit.MILLISECONDS.toNanos(Math.max(1, periodMillis));
+    schedule(scheduler, period, initialDelay(scheduler.getTagId(), period));
+  }
+
+  /**
+   * Runs the scheduler after the given delay and then every period, until it
+   * is cancelled.
+   *
+   * @param scheduler the scheduler to run
+   * @param periodNanos the period of the scheduler, in nanoseconds
+   * @param delayNanos the delay of the first run, in nanoseconds
+   */
+  void schedule(final SDTTimeDeadbandScheduler scheduler, final long periodNanos, final long delayNanos) {
+    newEntries.add(new Entry(scheduler, periodNanos, delayNanos));
+    if (executor == null) {
+      start();
+    }
+  }
+
+  /**
+   * Spreads the first runs of the tags over the ticks of their period, in
+   * turn by tag id. The tags of a tick then keep the creation order of their
+   * schedulers, which is cheaper to run than a random order.
+   *
+   * @param tagId the tag id of the scheduler
+   * @param periodNanos the period of the scheduler, in nanoseconds
+   * @return the delay of the first run, between 0 and the period
+   */
+  long initialDelay(final long tagId, final long periodNanos) {
+    long ticksPerPeriod = periodNanos / tickNanos;
+    return ticksPerPeriod <= 1 ? 0 : Math.floorMod(tagId, ticksPerPeriod) * tickNanos;
+  }
+
+  /**
+   * Passes the value to the sender: at the end of the current tick if a tick
+   * is in progress, or straight away otherwise.
+   *
+   * @param sender the sender of the scheduler
+   * @param value the value to send
+   */
+  void send(final IProcessMessageSender sender, final SourceDataTagValue value) {
+    synchronized (batchLock) {
+      if (batch != null) {
+        batch.computeIfAbsent(sender, key -> new ArrayList<>()).add(value);
+        return;
+      }
+    }
+    sender.addValue(value);
+  }
+
+  /**
+   * @return the number of scheduler runs since the wheel was created
+   */
+  long getRuns() {
+    return runs.get();
+  }
+
+  private synchronized void start() {
+    if (executor == null) {
+      ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+      });
+      newExecutor.scheduleAtFixedRate(this::tick, 0, tickNanos, TimeUnit.NANOSECONDS);
+      executor = newExecutor;
+    }
+  }
+
+  /**
+   * Stops the wheel thread. The schedulers still on the wheel are not run anymore.
+   */
+  synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Runs all schedulers due since the last tick.
+   */
+  void tick() {
+    try {
+      long now = System.nanoTime() - startNanos;
+      long currentTick = now / tickNanos;
+
+      List<Entry> due = new ArrayList<>();
+      Entry entry;
+      while ((entry = newEntries.poll()) != null) {
+        entry.deadline = now + entry.delay;
+        if (entry.delay == 0) {
+          due.add(entry);
+        } else {
+          add(entry, currentTick);
+        }
+      }
+
+      // a full round at most, if the thread was delayed by more than the wheel length
+      long fromTick = Math.max(lastTick + 1, currentTick - mask);
+      for (long tick = fromTick; tick <= currentTick; tick++) {
+        collectDueEntries(tick, due);
+      }
+      lastTick = currentTick;
+
+      runDueEntries(due);
+
+      for (Entry dueEntry : due) {
+        if (!dueEntry.scheduler.isCancelled()) {
+          dueEntry.deadline += dueEntry.period;
+          if (dueEntry.deadline <= now) {
+            // late: skip the missed runs, keeping the offset of the scheduler in its period
+            dueEntry.deadline += ((now - dueEntry.deadline) / dueEntry.period + 1) * dueEntry.period;
+          }
+          add(dueEntry, currentTick);
+        }
+      }
+    } catch (Exception e) {
+      log.error("Unexpected exception caught in the time deadband wheel", e);
+    }
+  }
+
+  /**
+   * Runs the schedulers and sends the values they produced, one call per
+   * sender.
+   */
+  private void runDueEntries(final List<Entry> due) {
+    if (due.isEmpty()) {
+      return;
+    }
+    synchronized (batchLock) {
+      batch = new IdentityHashMap<>();
+    }
+    try {
+      for (Entry dueEntry : due) {
+        if (!dueEntry.scheduler.isCancelled()) {
+          dueEntry.scheduler.run();
+          runs.incrementAndGet();
+        }
+      }
+    } finally {
+      sendBatch();
+    }
+  }
+
+  /**
+   * Sends the values of the tick outside the batch lock. The values sent by
+   * other threads in the meantime are collected in a new batch and sent after
+   * them, until no value is left.
+   */
+  private void sendBatch() {
+    while (true) {
+      Map<IProcessMessageSender, List<SourceDataTagValue>> values;
+      synchronized (batchLock) {
+        values = batch;
+        if (values.isEmpty()) {
+          batch = null;
+          return;
+        }
+        batch = new IdentityHashMap<>();
+      }
+      for (Map.Entry<IProcessMessageSender, List<SourceDataTagValue>> senderValues : values.entrySet()) {
+        try {
+          if (senderValues.getValue().size() == 1) {
+            senderValues.getKey().addValue(senderValues.getValue().get(0));
+          } else {
+            senderValues.getKey().addValues(senderValues.getValue());
+          }
+        } catch (RuntimeException e) {
+          log.error("Unexpected exception caught while sending the time deadband values", e);
+        }
+      }
+    }
+  }
+
+  private void collectDueEntries(final long tick, final List<Entry> due) {
+    List<Entry> bucket = buckets[(int) (tick & mask)];
+    int kept = 0;
+    for (int i = 0; i < bucket.size(); i++) {
+      Entry entry = bucket.get(i);
+      if (entry.scheduler.isCancelled()) {
+        continue;
+      }
+      if (entry.deadline / tickNanos <= tick) {
+        due.add(entry);
+      } else {
+        bucket.set(kept++, entry);
+      }
+    }
+    bucket.subList(kept, bucket.size()).clear();
+  }
+
+  /**
+   * Puts the entry into the bucket of its deadline, or of the next tick
+   * if the deadline is in the current tick.
+   */
+  private void add(final Entry entry, final long currentTick) {
+    long tick = Math.max(entry.deadline / tickNanos, currentTick + 1);
+    buckets[(int) (tick & mask)].add(entry);
+  }
+
+  /**
+   * A scheduler on the wheel.
+   */
+  private static final class Entry {
+
+    private final SDTTimeDeadbandScheduler scheduler;
+
+    /** Period in nanoseconds */
+    private final long period;
+
+    /** Delay of the first run in nanoseconds */
+    private final long delay;
+
+    /** Time of the next run, in nanoseconds since {@link #startNanos} */
+    private long deadline;
+
+    Entry(final SDTTimeDeadbandScheduler scheduler, final long period, final long delay) {
+      this.scheduler = scheduler;
+      this.period = period;
+      this.delay = delay;
+    }
+  }
+}
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.daq.common.messaging;
 
+import java.util.List;
+
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 
 /**
@@ -39,6 +41,16 @@ public interface IProcessMessageSender {
      */
     void addValue(SourceDataTagValue dataTagValue);
 
+    /**
+     * Adds several values in one call, for instance all values of the time
+     * deadband schedulers run at the same time. Each value is sent or
+     * buffered according to its priority, like in {@link #addValue}.
+     *
+     * @param dataTagValues
+     *            the SourceDataTagValue objects, in sending order
+     */
+    void addValues(List<SourceDataTagValue> dataTagValues);
+
     /**
      * Sends a communication fault tag message.
      * @param tagId The tag ID to use.
@@ -16,10 +16,13 @@
  *****************************************************************************/
 package cern.c2mon.daq.common.messaging.impl;
 
+import javax.jms.DeliveryMode;
 import javax.jms.JMSException;
+import javax.jms.Message;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.ProducerCallback;
 
 import cern.c2mon.daq.common.conf.core.ProcessConfigurationHolder;
 import cern.c2mon.daq.common.messaging.JmsSender;
@@ -31,6 +34,13 @@ import cern.c2mon.shared.common.process.ProcessConfiguration;
  * Implementation of the JMSSender interface for sending update messages to
  * ActiveMQ brokers.
  *
+ * The sender is called concurrently by the send lanes of the
+ * {@link ProcessMessageSender}, so the QoS settings of the values are passed
+ * with each send instead of being set on the shared {@link JmsTemplate}. As
+ * with the template, they are only applied if explicit QoS is enabled on it.
+ * The producers are reused if the template is backed by a caching connection
+ * factory.
+ *
  * @author mbrightw
  */
 @Slf4j
@@ -94,23 +104,8 @@ public class ActiveJmsSender implements JmsSender {
 
       log.trace("not in test mode.");
 
-      // set message properties
-      jmsTemplate.setPriority(sourceDataTagValue.getPriority());
-      jmsTemplate.setTimeToLive(sourceDataTagValue.getTimeToLive());
-
-      // set appropriate priority
-      if (sourceDataTagValue.isGuaranteedDelivery()) {
-        log.debug("\t sending PERSISTENT message");
-        // set message delivery mode
-        jmsTemplate.setDeliveryMode(javax.jms.DeliveryMode.PERSISTENT);
-      } else {
-        log.debug("\t sending NON-PERSISTENT message");
-        // send the message (put it into the queue)
-        jmsTemplate.setDeliveryMode(javax.jms.DeliveryMode.NON_PERSISTENT);
-      } // else
-
-      // send the message
-      jmsTemplate.convertAndSend(dataTagValueUpdate);
+      // send the message with the QoS of the value
+      send(dataTagValueUpdate, sourceDataTagValue);
     }
     log.debug("leaving processValue()");
   }
@@ -137,27 +132,10 @@ public class ActiveJmsSender implements JmsSender {
       // The message's alive-time will be also set by taking the value
       SourceDataTagValue sdtValue = dataTagValueUpdate.getValues().iterator().next();
 
-      // set priority and TTL from the first value in the message
-      // (priority is always LOW for values
-      // put in the synchrobuffer)
-      jmsTemplate.setPriority(sdtValue.getPriority());
-      jmsTemplate.setTimeToLive(sdtValue.getTimeToLive());
-
-      if (sdtValue.isGuaranteedDelivery()) {
-        log.debug("\t sending PERSISTENT message");
-
-        // set message delivery mode
-        jmsTemplate.setDeliveryMode(javax.jms.DeliveryMode.PERSISTENT);
-
-      } else {
-        log.debug("\t sending NON-PERSISTENT message");
-
-        // set message delivery NON-PERSISTENT
-        jmsTemplate.setDeliveryMode(javax.jms.DeliveryMode.NON_PERSISTENT);
-      }
-
-      // convert and send the collection of updates
-      jmsTemplate.convertAndSend(dataTagValueUpdate);
+      // convert and send the collection of updates, with the priority, TTL
+      // and persistence of the first value in the message (all values of a
+      // send lane have the same priority and persistence)
+      send(dataTagValueUpdate, sdtValue);
 
     } else {
       log.debug("DAQ in test mode; not sending the value to JMS");
@@ -166,6 +144,34 @@ public class ActiveJmsSender implements JmsSender {
     log.debug("leaving processValues()");
   }
 
+  /**
+   * Converts and sends the update to the default destination of the template,
+   * with the QoS settings of the given value.
+   *
+   * @param dataTagValueUpdate the update to send
+   * @param qosValue the value giving the priority, TTL and persistence
+   */
+  private void send(final DataTagValueUpdate dataTagValueUpdate, final SourceDataTagValue qosValue) {
+    int deliveryMode;
+    if (qosValue.isGuaranteedDelivery()) {
+      log.debug("\t sending PERSISTENT message");
+      deliveryMode = DeliveryMode.PERSISTENT;
+    } else {
+      log.debug("\t sending NON-PERSISTENT message");
+      deliveryMode = DeliveryMode.NON_PERSISTENT;
+    }
+
+    jmsTemplate.execute((ProducerCallback<Void>) (session, producer) -> {
+      Message message = jmsTemplate.getMessageConverter().toMessage(dataTagValueUpdate, session);
+      if (jmsTemplate.isExplicitQosEnabled()) {
+        producer.send(message, deliveryMode, qosValue.getPriority(), qosValue.getTimeToLive());
+      } else {
+        producer.send(message);
+      }
+      return null;
+    });
+  }
+
   /**
    * @param jmsTemplate the jmsTemplate to set
    */
@@ -16,13 +16,21 @@
  *****************************************************************************/
 package cern.c2mon.daq.common.messaging.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
 
 import javax.jms.JMSException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 
 import cern.c2mon.daq.common.conf.core.ProcessConfigurationHolder;
 import cern.c2mon.daq.common.messaging.IProcessMessageSender;
@@ -32,9 +40,9 @@ import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
 import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 import cern.c2mon.shared.common.process.ProcessConfiguration;
+import cern.c2mon.shared.util.buffer.ConcurrentSynchroBuffer;
 import cern.c2mon.shared.util.buffer.PullEvent;
 import cern.c2mon.shared.util.buffer.PullException;
-import cern.c2mon.shared.util.buffer.SynchroBuffer;
 import cern.c2mon.shared.util.buffer.SynchroBufferListener;
 
 /**
@@ -50,18 +58,49 @@ import cern.c2mon.shared.util.buffer.SynchroBufferListener;
  *
  * For low priority messages, two synchrobuffer's are used (one for persistent,
  * the other for non-persistent messages).
+ *
+ * The values are sent to the JMS senders by four {@link SendLane}s, one per
+ * priority (high or low) and persistence class, and the alive and commfault
+ * tags by a fifth control lane, so they never wait behind the data values of
+ * a full high priority lane. Each lane has its own sending
+ * thread and a bounded window of values waiting to be sent, so a slow send
+ * only delays the values of its lane and never blocks the threads adding the
+ * values, unless the window is full. The values queued in a lane while a send
+ * is in progress are sent together in the next message.
  */
+@ManagedResource(objectName = "cern.c2mon.daq:name=processMessageSender")
 public class ProcessMessageSender implements IProcessMessageSender {
 
   /**
    * The buffer for non-persistent SourceDataTags objects
    */
-  private SynchroBuffer dataTagsBuffer;
+  private ConcurrentSynchroBuffer dataTagsBuffer;
 
   /**
    * The buffer for persistent SourceDataTags objects
    */
-  private SynchroBuffer persistentTagsBuffer;
+  private ConcurrentSynchroBuffer persistentTagsBuffer;
+
+  /**
+   * The send lanes, by priority and persistence class
+   */
+  private SendLane highPriorityLane;
+
+  private SendLane persistentHighPriorityLane;
+
+  private SendLane lowPriorityLane;
+
+  private SendLane persistentLowPriorityLane;
+
+  /**
+   * The send lane of the alive and commfault tags
+   */
+  private SendLane controlLane;
+
+  /**
+   * Maximum number of values waiting to be sent in each send lane
+   */
+  private int sendWindow = 10000;
 
   /**
    * The reference for the AliveTimer object
@@ -83,19 +122,29 @@ public class ProcessMessageSender implements IProcessMessageSender {
     aliveTimer = new AliveTimer(this);
 
     ProcessConfiguration processConfiguration = ProcessConfigurationHolder.getInstance();
+    highPriorityLane = createLane("high");
+    persistentHighPriorityLane = createLane("high-persistent");
+    lowPriorityLane = createLane("low");
+    persistentLowPriorityLane = createLane("low-persistent");
+    controlLane = createLane("control");
+
     // TODO move the min window size to properties or database
     // create and initialize dataTagsBuffer for non-persistent tags
-    dataTagsBuffer = new SynchroBuffer(200, processConfiguration.getMaxMessageDelay(), 100, SynchroBuffer.DUPLICATE_OK);
+    dataTagsBuffer = new ConcurrentSynchroBuffer(200, processConfiguration.getMaxMessageDelay(), 100, ConcurrentSynchroBuffer.DUPLICATE_OK);
     // create and initialize dataTagsBuffer for persistent tags
-    persistentTagsBuffer = new SynchroBuffer(200, processConfiguration.getMaxMessageDelay(), 100, SynchroBuffer.DUPLICATE_OK);
+    persistentTagsBuffer = new ConcurrentSynchroBuffer(200, processConfiguration.getMaxMessageDelay(), 100, ConcurrentSynchroBuffer.DUPLICATE_OK);
 
-    dataTagsBuffer.setSynchroBufferListener(new SynchroBufferEventsListener());
-    persistentTagsBuffer.setSynchroBufferListener(new SynchroBufferEventsListener());
+    dataTagsBuffer.setSynchroBufferListener(new SynchroBufferEventsListener(lowPriorityLane));
+    persistentTagsBuffer.setSynchroBufferListener(new SynchroBufferEventsListener(persistentLowPriorityLane));
 
     dataTagsBuffer.enable();
     persistentTagsBuffer.enable();
   }
 
+  private SendLane createLane(final String name) {
+    return new SendLane(name, sendWindow, () -> (int) ProcessConfigurationHolder.getInstance().getMaxMessageSize(), this::send);
+  }
+
   /**
    * This method initializes and starts the AliveTimer. Since it's initialized
    * it periodically takes action to send AliveTag to TIM server (using
@@ -142,10 +191,7 @@ public class ProcessMessageSender implements IProcessMessageSender {
       /* DataTagAddress.PRIORITY_HIGH */9, // set the highest possible
                                            // prority
           false, null, 3 * processConfiguration.getAliveInterval());
-      distributeValue(aliveTagValue);
-    }
-    catch (JMSException ex) {
-      LOGGER.error("sendAlive : JMSException caught :" + ex.getMessage());
+      controlLane.add(aliveTagValue);
     }
     catch (Throwable e) {
       LOGGER.error("sendAlive : Unexpected Exception caught :", e);
@@ -181,12 +227,7 @@ public class ProcessMessageSender implements IProcessMessageSender {
                                                       pDescription,
                                                       9999999);
 
-    try {
-      distributeValue(commfaultTagValue);
-    }
-    catch (JMSException ex) {
-      LOGGER.error("sendCommfaultTag : JMSException caught :" + ex.getMessage());
-    }
+    controlLane.add(commfaultTagValue);
   }
 
   @Override
@@ -195,11 +236,11 @@ public class ProcessMessageSender implements IProcessMessageSender {
     LOGGER.debug("adding data tag " + dataTagValue.getId() + " to a sending buffer");
     if (dataTagValue.getPriority() == DataTagAddress.PRIORITY_HIGH) {
       LOGGER.debug("\t sourceDataTagValue priority is HIGH");
-      try {
-        this.distributeValue(dataTagValue);
+      if (dataTagValue.isGuaranteedDelivery()) {
+        this.persistentHighPriorityLane.add(dataTagValue);
       }
-      catch (JMSException ex) {
-        LOGGER.error("addValue : JMSException caught :" + ex.getMessage());
+      else {
+        this.highPriorityLane.add(dataTagValue);
       }
     }
     else {
@@ -224,6 +265,36 @@ public class ProcessMessageSender implements IProcessMessageSender {
     LOGGER.debug("leaving addValue()");
   }
 
+  /**
+   * The high priority values are queued in their send lane one by one, and the
+   * low priority values are pushed to their synchrobuffer in one call.
+   */
+  @Override
+  public final void addValues(final List<SourceDataTagValue> dataTagValues) {
+    LOGGER.debug("adding {} data tag values to the sending buffers", dataTagValues.size());
+    List<SourceDataTagValue> lowPriorityValues = new ArrayList<>();
+    List<SourceDataTagValue> persistentLowPriorityValues = new ArrayList<>();
+    for (SourceDataTagValue dataTagValue : dataTagValues) {
+      if (dataTagValue.getPriority() == DataTagAddress.PRIORITY_HIGH) {
+        if (dataTagValue.isGuaranteedDelivery()) {
+          this.persistentHighPriorityLane.add(dataTagValue);
+        }
+        else {
+          this.highPriorityLane.add(dataTagValue);
+        }
+      }
+      else if (dataTagValue.isGuaranteedDelivery()) {
+        persistentLowPriorityValues.add(dataTagValue);
+      }
+      else {
+        lowPriorityValues.add(dataTagValue);
+      }
+    }
+    // note : synchrobuffer's push method is thread-safety and ignores empty collections
+    this.persistentTagsBuffer.push(persistentLowPriorityValues);
+    this.dataTagsBuffer.push(lowPriorityValues);
+  }
+
   /**
    * Connects to all the registered brokers (individual JMSSenders should
    * implement this on separate threads if the connection is unessential).
@@ -237,13 +308,43 @@ public class ProcessMessageSender implements IProcessMessageSender {
 
   /**
    * This methods gently closes and disables ProcessMessageSender's
-   * synchrobuffers.
+   * synchrobuffers, and stops the send lanes once their queued values are
+   * sent.
    */
   public final void closeSourceDataTagsBuffers() {
     dataTagsBuffer.disable();
     dataTagsBuffer.close();
     persistentTagsBuffer.disable();
     persistentTagsBuffer.close();
+    for (SendLane lane : getLanes()) {
+      lane.stop();
+    }
+  }
+
+  /**
+   * Sends the values taken from a send lane, in one message if there are
+   * several.
+   *
+   * @param values the values to send, all of the same priority and persistence
+   */
+  private void send(final List<SourceDataTagValue> values) {
+    try {
+      if (values.size() == 1) {
+        distributeValue(values.get(0));
+      }
+      else {
+        ProcessConfiguration processConfiguration = ProcessConfigurationHolder.getInstance();
+        DataTagValueUpdate dataTagValueUpdate = new DataTagValueUpdate(processConfiguration.getProcessID(), processConfiguration.getprocessPIK());
+        for (SourceDataTagValue value : values) {
+          dataTagValueUpdate.addValue(value);
+        }
+        distributeValues(dataTagValueUpdate);
+        LOGGER.debug("\t sent " + values.size() + " SourceDataTagValue objects");
+      }
+    }
+    catch (JMSException ex) {
+      LOGGER.error("send : JMSException caught :" + ex.getMessage());
+    }
   }
 
   /**
@@ -292,6 +393,63 @@ public class ProcessMessageSender implements IProcessMessageSender {
     this.jmsSenders = jmsSenders;
   }
 
+  /**
+   * Setter method, to be called before {@link #init()}.
+   *
+   * @param sendWindow the maximum number of values waiting to be sent in each
+   *                   send lane
+   */
+  public final void setSendWindow(final int sendWindow) {
+    this.sendWindow = sendWindow;
+  }
+
+  private List<SendLane> getLanes() {
+    return Arrays.asList(controlLane, highPriorityLane, persistentHighPriorityLane, lowPriorityLane, persistentLowPriorityLane);
+  }
+
+  private Map<String, Long> laneStatistic(final ToLongFunction<SendLane> statistic) {
+    Map<String, Long> statistics = new LinkedHashMap<>();
+    for (SendLane lane : getLanes()) {
+      statistics.put(lane.getName(), statistic.applyAsLong(lane));
+    }
+    return statistics;
+  }
+
+  @ManagedOperation(description = "Returns the number of values waiting to be sent, per send lane")
+  public Map<String, Long> getLaneQueueSizes() {
+    return laneStatistic(SendLane::getQueueSize);
+  }
+
+  @ManagedOperation(description = "Returns the number of messages sent since the DAQ started, per send lane")
+  public Map<String, Long> getLaneSentMessages() {
+    return laneStatistic(SendLane::getSentMessages);
+  }
+
+  @ManagedOperation(description = "Returns the number of values sent since the DAQ started, per send lane")
+  public Map<String, Long> getLaneSentValues() {
+    return laneStatistic(SendLane::getSentValues);
+  }
+
+  @ManagedOperation(description = "Returns the number of messages that failed with an unexpected exception, per send lane")
+  public Map<String, Long> getLaneFailedMessages() {
+    return laneStatistic(SendLane::getFailedMessages);
+  }
+
+  @ManagedOperation(description = "Returns the number of values that had to wait for a full send lane, per send lane")
+  public Map<String, Long> getLaneBlockedAdds() {
+    return laneStatistic(SendLane::getBlockedAdds);
+  }
+
+  @ManagedOperation(description = "Returns the average time (in ms) from the queuing of a value until its send completed, per send lane")
+  public Map<String, Long> getLaneAverageLatencies() {
+    return laneStatistic(SendLane::getAverageLatency);
+  }
+
+  @ManagedOperation(description = "Returns the maximum time (in ms) from the queuing of a value until its send completed, per send lane")
+  public Map<String, Long> getLaneMaxLatencies() {
+    return laneStatistic(SendLane::getMaxLatency);
+  }
+
   /**
    * This class implements SynchroBuffer's SychroBufferListener, so that both
    * ProcessMessageSender's tag buffers (for persistent and non-persistent) tags
@@ -299,8 +457,19 @@ public class ProcessMessageSender implements IProcessMessageSender {
    */
   class SynchroBufferEventsListener implements SynchroBufferListener {
 
+    /**
+     * The lane sending the values of the buffer
+     */
+    private final SendLane lane;
+
+    SynchroBufferEventsListener(final SendLane lane) {
+      this.lane = lane;
+    }
+
     /**
      * This method is called by Synchorbuffer, each time a PullEvent occurs.
+     * Passes the values that did not expire to the send lane of the buffer,
+     * which sends them in messages of at most the maximum message size.
      *
      * @param event the pull event, containing the collection of objects to be
      *          sent
@@ -309,62 +478,17 @@ public class ProcessMessageSender implements IProcessMessageSender {
     @SuppressWarnings("unchecked")
     @Override
     public void pull(PullEvent event) throws PullException {
-      ProcessConfiguration processConfiguration = ProcessConfigurationHolder.getInstance();
       LOGGER.debug("entering pull()..");
       LOGGER.debug("\t Number of pulled objects : " + event.getPulled().size());
 
-      // We add the PIK to our communication process
-      DataTagValueUpdate dataTagValueUpdate;
-      dataTagValueUpdate = new DataTagValueUpdate(processConfiguration.getProcessID(), processConfiguration.getprocessPIK());
-
-      long currentMsgSize = 0;
-
       for (SourceDataTagValue sdtValue : (Collection<SourceDataTagValue>) event.getPulled()) {
-
-        // check if the maximum allowed message size has been reached
-        if (currentMsgSize == processConfiguration.getMaxMessageSize()) {
-          try {
-            // send the message
-            distributeValues(dataTagValueUpdate);
-            // clear the dataTagValueUpdate object reference !!
-            dataTagValueUpdate = null;
-            LOGGER.debug("\t sent " + currentMsgSize + " SourceDataTagValue objects");
-          }
-          catch (JMSException ex) {
-            LOGGER.error("\tpull : JMSException caught while invoking processValues methods :" + ex.getMessage());
-          }
-
-          // clear the message size counter
-          currentMsgSize = 0;
-
-          // create new dataTagValueUpdate object
-
-          // We add the PIK to our communication process
-          dataTagValueUpdate = new DataTagValueUpdate(processConfiguration.getProcessID(), processConfiguration.getprocessPIK());
-        } // if
-
         if (!isMessageExpired(sdtValue)) {
-          // append next SourceDataTagValue object to the message
-          dataTagValueUpdate.addValue(sdtValue);
-          // increase the message size counter
-          currentMsgSize++;
+          lane.add(sdtValue);
         }
         else {
           LOGGER.debug("\t pull : Discarded value update for tag id " + sdtValue.getId() + ", because TTL was exceeded.");
         }
-      } // while
-
-      // find out if there'was something left inside dataTagValueUpdate
-      // if yes - prepare the message and send it too
-      if (dataTagValueUpdate != null && currentMsgSize > 0) {
-        try {
-          distributeValues(dataTagValueUpdate);
-          LOGGER.debug("\t sent " + dataTagValueUpdate.getValues().size() + " SourceDataTagValue objects");
-        }
-        catch (JMSException ex) {
-          LOGGER.error("\t pull : JMSException caught while invoking processValues methods :" + ex.getMessage());
-        }
-      } // if
+      }
 
       LOGGER.debug("leaving pull method");
     }
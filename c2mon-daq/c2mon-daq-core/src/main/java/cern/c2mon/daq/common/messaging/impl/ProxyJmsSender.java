@@ -24,11 +24,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cern.c2mon.daq.common.messaging.JmsSender;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
 import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 import cern.c2mon.shared.util.buffer.PullEvent;
 import cern.c2mon.shared.util.buffer.PullException;
-import cern.c2mon.shared.util.buffer.SynchroBuffer;
+import cern.c2mon.shared.util.buffer.ConcurrentSynchroBuffer;
 import cern.c2mon.shared.util.buffer.SynchroBufferListener;
 
 /**
@@ -57,16 +58,16 @@ public class ProxyJmsSender implements JmsSender {
   private final JmsSender wrappedSender;
 
   /**
-   * Buffer storing the high priority messages
-   * (sent with processValue).
+   * Buffer storing the high priority messages (the single values sent
+   * with processValue and the high priority collections of updates).
    */
-  private SynchroBuffer highPriorityBuffer;
+  private ConcurrentSynchroBuffer highPriorityBuffer;
 
   /**
-   * Buffer storing the low priority messages
+   * Buffer storing the low priority collections of updates
    * (sent with processValues).
    */
-  private SynchroBuffer lowPriorityBuffer;
+  private ConcurrentSynchroBuffer lowPriorityBuffer;
 
   public ProxyJmsSender(final JmsSender wrappedSender) {
     this.wrappedSender = wrappedSender;
@@ -78,11 +79,11 @@ public class ProxyJmsSender implements JmsSender {
    */
   private void init() {
     //initialize high priority buffer
-    highPriorityBuffer = new SynchroBuffer(100, 200, 100, SynchroBuffer.DUPLICATE_OK, 10000);
+    highPriorityBuffer = new ConcurrentSynchroBuffer(100, 200, 100, ConcurrentSynchroBuffer.DUPLICATE_OK, 10000);
     highPriorityBuffer.setSynchroBufferListener(new HighPriorityListener());
     highPriorityBuffer.enable();
 
-    lowPriorityBuffer = new SynchroBuffer(100, 500, 100, SynchroBuffer.DUPLICATE_OK, 10000);
+    lowPriorityBuffer = new ConcurrentSynchroBuffer(100, 500, 100, ConcurrentSynchroBuffer.DUPLICATE_OK, 10000);
     lowPriorityBuffer.setSynchroBufferListener(new LowPriorityListener());
     lowPriorityBuffer.enable();
   }
@@ -124,6 +125,9 @@ public class ProxyJmsSender implements JmsSender {
   }
 
   /**
+   * Push the collection of updates into the buffer of its priority (all
+   * values of a collection have the same priority).
+   *
    * @param dataTagValueUpdate the collection of updates to process
    * @throws JMSException not used in proxy
    */
@@ -132,7 +136,12 @@ public class ProxyJmsSender implements JmsSender {
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace("pushing DataTagValueUpdate into proxy buffer");
     }
-    lowPriorityBuffer.push(dataTagValueUpdate);
+    Iterator<SourceDataTagValue> values = dataTagValueUpdate.getValues().iterator();
+    if (values.hasNext() && values.next().getPriority() == DataTagAddress.PRIORITY_HIGH) {
+      highPriorityBuffer.push(dataTagValueUpdate);
+    } else {
+      lowPriorityBuffer.push(dataTagValueUpdate);
+    }
   }
 
   /**
@@ -174,7 +183,8 @@ public class ProxyJmsSender implements JmsSender {
   }
 
   /**
-   * The buffer used to store the single data tag source values.
+   * The buffer used to store the single data tag source values and
+   * the high priority collections of updates.
    * @author mbrightw
    *
    */
@@ -184,7 +194,8 @@ public class ProxyJmsSender implements JmsSender {
      * Method called when the buffer triggers and event.
      *
      * Simply call the processValue method on the wrapped JMSSender for each
-     * {@link SourceDataTagValue} in the buffer.
+     * {@link SourceDataTagValue} in the buffer, and the processValues method
+     * for each {@link DataTagValueUpdate}.
      * @param event the pull event
      * @throws PullException not used in this case
      */
@@ -195,12 +206,17 @@ public class ProxyJmsSender implements JmsSender {
         LOGGER.trace("\t Number of pulled objects : " + event.getPulled().size());
       }
 
-      Iterator<SourceDataTagValue> it = event.getPulled().iterator();
+      Iterator<Object> it = event.getPulled().iterator();
 
       while (it.hasNext()) {
         //catch and log JMSExceptions (proxy should shield DAQ)
         try {
-          wrappedSender.processValue(it.next());
+          Object pulled = it.next();
+          if (pulled instanceof DataTagValueUpdate) {
+            wrappedSender.processValues((DataTagValueUpdate) pulled);
+          } else {
+            wrappedSender.processValue((SourceDataTagValue) pulled);
+          }
         }
         catch (Exception ex) {
           LOGGER.error("Exception caught when calling the proxied JMSSender's processValue method: " , ex);
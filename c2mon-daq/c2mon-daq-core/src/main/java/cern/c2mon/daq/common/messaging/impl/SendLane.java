@@ -0,0 +1,249 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.messaging.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+/**
+ * A send lane of the {@link ProcessMessageSender}: a bounded queue of values
+ * of one priority and persistence class, sent in order by a dedicated thread.
+ *
+ * <p>The threads adding the values only wait if the queue (the in-flight
+ * window of the lane) is full, so a slow send does not block the acquisition
+ * of the values. The values queued while a send is in progress are sent
+ * together in the next message, up to the given maximum batch size.
+ *
+ * <p>The lane keeps the number of sent messages and values, and the latency
+ * of the sent values (from the time they were queued until their send
+ * completed).
+ */
+@Slf4j
+final class SendLane {
+
+  /**
+   * Time (in ms) after which the sending thread checks whether the lane was
+   * stopped, if no value arrives
+   */
+  private static final long POLL_INTERVAL = 100;
+
+  /**
+   * Time (in ms) given to the sending thread to send the queued values on
+   * stop
+   */
+  private static final long STOP_TIMEOUT = 5000;
+
+  private final String name;
+
+  private final BlockingQueue<QueuedValue> queue;
+
+  private final IntSupplier maxBatchSize;
+
+  private final Consumer<List<SourceDataTagValue>> sender;
+
+  private final Thread sendingThread;
+
+  private volatile boolean running = true;
+
+  private final AtomicLong sentMessages = new AtomicLong();
+
+  private final AtomicLong sentValues = new AtomicLong();
+
+  private final AtomicLong failedMessages = new AtomicLong();
+
+  private final AtomicLong totalLatency = new AtomicLong();
+
+  private final AtomicLong maxLatency = new AtomicLong();
+
+  private final AtomicLong blockedAdds = new AtomicLong();
+
+  /**
+   * Creates and starts the lane.
+   *
+   * @param name the name of the lane, used in the thread name and the logs
+   * @param capacity the maximum number of values waiting to be sent
+   * @param maxBatchSize the maximum number of values sent in one message
+   * @param sender sends a list of values (in one message if possible); must
+   *               handle the send failures itself
+   */
+  SendLane(final String name, final int capacity, final IntSupplier maxBatchSize,
+           final Consumer<List<SourceDataTagValue>> sender) {
+    this.name = name;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.maxBatchSize = maxBatchSize;
+    this.sender = sender;
+    this.sendingThread = new Thread(this::sendQueuedValues, "SendLane-" + name);
+    this.sendingThread.setDaemon(true);
+    this.sendingThread.start();
+  }
+
+  /**
+   * Queues the value for sending. Waits if the in-flight window of the lane is
+   * full. Once the lane is stopped, the value is sent on the calling thread.
+   *
+   * @param value the value to send
+   */
+  void add(final SourceDataTagValue value) {
+    if (!running) {
+      sender.accept(Collections.singletonList(value));
+      return;
+    }
+    QueuedValue queuedValue = new QueuedValue(value);
+    if (!queue.offer(queuedValue)) {
+      blockedAdds.incrementAndGet();
+      log.warn("Send lane {} is full ({} values waiting) - waiting for the sends to complete", name, queue.size());
+      try {
+        queue.put(queuedValue);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.error("Interrupted while waiting to queue the value of tag {} in send lane {} - the value update will be lost",
+            value.getId(), name);
+        return;
+      }
+    }
+    // stopped in the meantime: the sending thread may have left
+    if (!running && queue.remove(queuedValue)) {
+      sender.accept(Collections.singletonList(value));
+    }
+  }
+
+  private void sendQueuedValues() {
+    List<QueuedValue> batch = new ArrayList<>();
+    List<SourceDataTagValue> values = new ArrayList<>();
+    while (running || !queue.isEmpty()) {
+      try {
+        QueuedValue first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, Math.max(1, maxBatchSize.getAsInt()) - 1);
+        for (QueuedValue queuedValue : batch) {
+          values.add(queuedValue.value);
+        }
+        send(values, first.queuedAt);
+      } catch (InterruptedException e) {
+        log.warn("Send lane {} interrupted - {} values are not sent", name, queue.size());
+        return;
+      } finally {
+        batch.clear();
+        values.clear();
+      }
+    }
+  }
+
+  private void send(final List<SourceDataTagValue> values, final long oldestQueuedAt) {
+    try {
+      sender.accept(values);
+      sentMessages.incrementAndGet();
+      sentValues.addAndGet(values.size());
+    } catch (RuntimeException e) {
+      failedMessages.incrementAndGet();
+      log.error("Unexpected exception caught while sending {} values in send lane {} - the value updates will be lost",
+          values.size(), name, e);
+    }
+    long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldestQueuedAt);
+    totalLatency.addAndGet(latency);
+    maxLatency.accumulateAndGet(latency, Math::max);
+  }
+
+  /**
+   * Stops accepting values and waits (a limited time) for the queued values
+   * to be sent.
+   */
+  void stop() {
+    running = false;
+    try {
+      sendingThread.join(STOP_TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (sendingThread.isAlive()) {
+      sendingThread.interrupt();
+    }
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of values waiting to be sent
+   */
+  int getQueueSize() {
+    return queue.size();
+  }
+
+  long getSentMessages() {
+    return sentMessages.get();
+  }
+
+  long getSentValues() {
+    return sentValues.get();
+  }
+
+  long getFailedMessages() {
+    return failedMessages.get();
+  }
+
+  /**
+   * @return the number of times a value could only be queued after waiting
+   *         for the window to free up
+   */
+  long getBlockedAdds() {
+    return blockedAdds.get();
+  }
+
+  /**
+   * @return the average time (in ms) from the queuing of the oldest value of a
+   *         message until its send completed
+   */
+  long getAverageLatency() {
+    long messages = sentMessages.get() + failedMessages.get();
+    return messages == 0 ? 0 : totalLatency.get() / messages;
+  }
+
+  /**
+   * @return the maximum time (in ms) from the queuing of the oldest value of a
+   *         message until its send completed
+   */
+  long getMaxLatency() {
+    return maxLatency.get();
+  }
+
+  private static final class QueuedValue {
+
+    private final SourceDataTagValue value;
+
+    private final long queuedAt = System.nanoTime();
+
+    QueuedValue(final SourceDataTagValue value) {
+      this.value = value;
+    }
+  }
+}
@@ -63,6 +63,20 @@ public class DaqProperties {
      * running in double publication mode)
      */
     private String secondaryUrl = "tcp://0.0.0.0:61617";
+
+    /**
+     * Send the tag updates to the primary server in the compact binary format,
+     * if the server accepts it (JSON otherwise)
+     */
+    private boolean binaryUpdates = true;
+
+    /**
+     * Maximum number of tag values waiting to be sent in each send lane (one
+     * lane per priority and persistence class, plus one for the alive and
+     * commfault tags). If a lane is full, the
+     * threads adding values wait for its sends to complete
+     */
+    private int sendWindow = 10000;
   }
 
   /**
@@ -1,10 +1,13 @@
 package cern.c2mon.daq.config;
 
+import javax.jms.ConnectionFactory;
+
 import cern.c2mon.shared.daq.datatag.DataTagValueUpdateConverter;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.command.ActiveMQQueue;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
+import org.springframework.jms.connection.CachingConnectionFactory;
 import org.springframework.jms.connection.SingleConnectionFactory;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
@@ -30,14 +33,44 @@ public class JmsConfig {
     return new SingleConnectionFactory(activeMQConnectionFactory());
   }
 
+  /**
+   * Shares the connection of the {@link #singleConnectionFactory()}, caching
+   * the sessions and producers used by the send lanes of the
+   * {@link cern.c2mon.daq.common.messaging.impl.ProcessMessageSender}.
+   */
+  @Bean
+  public CachingConnectionFactory sourceUpdateConnectionFactory() {
+    return cachingConnectionFactory(singleConnectionFactory());
+  }
+
+  private static CachingConnectionFactory cachingConnectionFactory(final ConnectionFactory connectionFactory) {
+    CachingConnectionFactory factory = new CachingConnectionFactory(connectionFactory);
+    // one session per send lane
+    factory.setSessionCacheSize(5);
+    factory.setCacheConsumers(false);
+    // reconnection is handled by the shared connection
+    factory.setReconnectOnException(false);
+    return factory;
+  }
+
   @Bean
   public JmsTemplate sourceUpdateJmsTemplate() {
-    JmsTemplate template = new JmsTemplate(singleConnectionFactory());
+    JmsTemplate template = new JmsTemplate(sourceUpdateConnectionFactory());
     template.setDefaultDestination(new ActiveMQQueue(properties.getJms().getQueuePrefix() + ".update." + properties.getName()));
-    template.setMessageConverter(new DataTagValueUpdateConverter());
+    template.setMessageConverter(dataTagValueUpdateConverter());
     return template;
   }
 
+  /**
+   * Converter of the updates sent to the primary server. Switched to the binary
+   * format by the {@link cern.c2mon.daq.common.conf.core.ConfigurationController}
+   * if the server accepts it.
+   */
+  @Bean
+  public DataTagValueUpdateConverter dataTagValueUpdateConverter() {
+    return new DataTagValueUpdateConverter();
+  }
+
   @Bean
   public JmsTemplate processRequestJmsTemplate() {
     String queueTrunk = properties.getJms().getQueuePrefix();
@@ -96,9 +129,14 @@ public class JmsConfig {
     return new SingleConnectionFactory(secondActiveMQConnectionFactory());
   }
 
+  @Bean
+  public CachingConnectionFactory secondSourceUpdateConnectionFactory() {
+    return cachingConnectionFactory(secondSingleConnectionFactory());
+  }
+
   @Bean
   public JmsTemplate secondSourceUpdateJmsTemplate() {
-    JmsTemplate template = new JmsTemplate(secondSingleConnectionFactory());
+    JmsTemplate template = new JmsTemplate(secondSourceUpdateConnectionFactory());
     template.setDefaultDestination(new ActiveMQQueue(properties.getJms().getQueuePrefix() + ".update." + properties.getName()));
     template.setMessageConverter(new DataTagValueUpdateConverter());
     return template;
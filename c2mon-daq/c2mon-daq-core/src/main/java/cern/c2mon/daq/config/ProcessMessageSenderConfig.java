@@ -18,6 +18,7 @@ package cern.c2mon.daq.config;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -71,24 +72,25 @@ public class ProcessMessageSenderConfig {
   @Bean
   @Profile("single")
   public ProcessMessageSender singleMessageSender() {
-    ProcessMessageSender processMessageSender = new ProcessMessageSender();
-    processMessageSender.setJmsSenders(Collections.singletonList(activeJmsSender()));
-    return processMessageSender;
+    return processMessageSender(Collections.singletonList(activeJmsSender()));
   }
 
   @Bean
   @Profile("double")
   public ProcessMessageSender doubleMessageSender() {
-    ProcessMessageSender processMessageSender = new ProcessMessageSender();
-    processMessageSender.setJmsSenders(Arrays.asList(activeJmsSender(), proxyJmsSender()));
-    return processMessageSender;
+    return processMessageSender(Arrays.asList(activeJmsSender(), proxyJmsSender()));
   }
 
   @Bean
   @Profile("test")
   public ProcessMessageSender testMessageSender() {
+    return processMessageSender(Collections.singletonList(dummyJmsSender()));
+  }
+
+  private ProcessMessageSender processMessageSender(final List<JmsSender> jmsSenders) {
     ProcessMessageSender processMessageSender = new ProcessMessageSender();
-    processMessageSender.setJmsSenders(Collections.singletonList(dummyJmsSender()));
+    processMessageSender.setJmsSenders(jmsSenders);
+    processMessageSender.setSendWindow(properties.getJms().getSendWindow());
     return processMessageSender;
   }
 
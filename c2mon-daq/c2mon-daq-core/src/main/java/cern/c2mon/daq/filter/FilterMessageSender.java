@@ -30,7 +30,7 @@ import cern.c2mon.shared.common.process.ProcessConfiguration;
 import cern.c2mon.shared.daq.filter.FilteredDataTagValueUpdate;
 import cern.c2mon.shared.util.buffer.PullEvent;
 import cern.c2mon.shared.util.buffer.PullException;
-import cern.c2mon.shared.util.buffer.SynchroBuffer;
+import cern.c2mon.shared.util.buffer.ConcurrentSynchroBuffer;
 import cern.c2mon.shared.util.buffer.SynchroBufferListener;
 
 
@@ -70,7 +70,7 @@ public abstract class FilterMessageSender implements IFilterMessageSender {
   /**
    * The buffer used for collecting the tag update values before sending.
    */
-  private SynchroBuffer tagBuffer;
+  private ConcurrentSynchroBuffer tagBuffer;
 
   private DaqProperties properties;
 
@@ -96,7 +96,7 @@ public abstract class FilterMessageSender implements IFilterMessageSender {
     // set up and enable the synchrobuffer for storing the tags
     log.debug("initializing filtering synchrobuffer with max delay :" + MAX_MESSAGE_DELAY + " and capacity : " + bufferCapacity);
 
-    tagBuffer = new SynchroBuffer(MIN_WINDOW_SIZE, MAX_MESSAGE_DELAY, WINDOW_GROWTH_FACTOR, SynchroBuffer.DUPLICATE_OK, bufferCapacity,
+    tagBuffer = new ConcurrentSynchroBuffer(MIN_WINDOW_SIZE, MAX_MESSAGE_DELAY, WINDOW_GROWTH_FACTOR, ConcurrentSynchroBuffer.DUPLICATE_OK, bufferCapacity,
         true);
     tagBuffer.setSynchroBufferListener(new SynchroBufferEventsListener());
     tagBuffer.enable();
@@ -18,6 +18,7 @@ package cern.c2mon.daq.common.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 
 import cern.c2mon.daq.common.timer.FreshnessMonitor;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -1491,7 +1492,8 @@ public class EquipmentMessageSenderTest {
       mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
       mapper.enable(DeserializationFeature.USE_JAVA_ARRAY_FOR_JSON_ARRAY);
 
-      File tempOut = new File("temp.json");
+      File tempOut = Files.createTempFile("temp", ".json").toFile();
+      tempOut.deleteOnExit();
 
       // Test Integer:
       SourceDataTagValue valueToWrite = sdt3.update(new ValueUpdate(1, "test", System.currentTimeMillis()));
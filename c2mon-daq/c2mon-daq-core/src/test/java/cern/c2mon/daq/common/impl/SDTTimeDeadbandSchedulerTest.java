@@ -17,7 +17,6 @@
 package cern.c2mon.daq.common.impl;
 
 import java.lang.Thread.UncaughtExceptionHandler;
-import java.util.Timer;
 
 import cern.c2mon.daq.common.timer.FreshnessMonitor;
 import org.easymock.EasyMock;
@@ -137,7 +136,7 @@ public class SDTTimeDeadbandSchedulerTest {
     this.equipmentSenderFilterModule = new EquipmentSenderFilterModule(this.filterMessageSenderMock);
 
     //        EquipmentLogger equipmentLogger = new EquipmentLogger("asd", "asd", "asd");
-    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new Timer(true), this
+    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new TimeDeadbandWheel("Test time deadband timer"), this
         .dataTagValueFilter, this.dynamicTimeDeadbandFiltererMock);
 
     this.scheduler.scheduleValueForSending();
@@ -179,7 +178,7 @@ public class SDTTimeDeadbandSchedulerTest {
     this.equipmentSenderFilterModule = new EquipmentSenderFilterModule(this.filterMessageSenderMock);
 
     //        EquipmentLogger equipmentLogger = new EquipmentLogger("asd", "asd", "asd");
-    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new Timer(true), this
+    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new TimeDeadbandWheel("Test time deadband timer"), this
         .dataTagValueFilter, this.dynamicTimeDeadbandFiltererMock);
 
     this.scheduler.scheduleValueForSending();
@@ -228,7 +227,7 @@ public class SDTTimeDeadbandSchedulerTest {
     this.equipmentSenderFilterModule = new EquipmentSenderFilterModule(this.filterMessageSenderMock);
 
 //     EquipmentLogger equipmentLogger = new EquipmentLogger("asd", "asd", "asd");
-    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new Timer(true), this
+    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new TimeDeadbandWheel("Test time deadband timer"), this
         .dataTagValueFilter, this.dynamicTimeDeadbandFiltererMock);
 
     this.scheduler.scheduleValueForSending();
@@ -275,7 +274,7 @@ public class SDTTimeDeadbandSchedulerTest {
     this.equipmentSenderFilterModule = new EquipmentSenderFilterModule(this.filterMessageSenderMock);
 
 //     EquipmentLogger equipmentLogger = new EquipmentLogger("asd", "asd", "asd");
-    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new Timer(true), this
+    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new TimeDeadbandWheel("Test time deadband timer"), this
         .dataTagValueFilter, this.dynamicTimeDeadbandFiltererMock);
 
     this.scheduler.scheduleValueForSending();
@@ -284,7 +283,7 @@ public class SDTTimeDeadbandSchedulerTest {
     // FlushAndReset
     this.scheduler.flushAndCancel();
     // Start the new task
-    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new Timer(true), this
+    this.scheduler = new SDTTimeDeadbandScheduler(tag, this.processMessageSenderMock, this.equipmentSenderFilterModule, new TimeDeadbandWheel("Test time deadband timer"), this
         .dataTagValueFilter, this.dynamicTimeDeadbandFiltererMock);
 
     // Repeated value (should pass cause it was flush and reset)
@@ -0,0 +1,222 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+
+/**
+ * Compares the CPU use and the send jitter of the time deadband scheduling
+ * on a {@link java.util.Timer} (one {@link TimerTask} per tag, as before)
+ * and on the {@link TimeDeadbandWheel}.
+ *
+ * <p>The schedulers only lock their tag and record the time of the run, so
+ * the measured CPU time is the scheduling overhead (the filtering and sending
+ * is the same for both implementations). The jitter is the difference between
+ * the measured and the configured interval between two runs of a tag.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE, or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.daq.common.impl.TimeDeadbandSchedulerBenchmark
+ * -Dexec.args="100000 100 20"</code> (tags, time deadband in ms, duration in s).
+ */
+public class TimeDeadbandSchedulerBenchmark {
+
+  /** Jitter histogram resolution */
+  private static final long BUCKET_MICROS = 100;
+
+  /** Jitter histogram range: 0 to 1 s */
+  private static final int BUCKETS = 10000;
+
+  private final int tagCount;
+
+  private final long period;
+
+  private final long durationMillis;
+
+  public TimeDeadbandSchedulerBenchmark(final int tagCount, final long period, final long durationMillis) {
+    this.tagCount = tagCount;
+    this.period = period;
+    this.durationMillis = durationMillis;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int tagCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    long period = args.length > 1 ? Long.parseLong(args[1]) : 100;
+    long duration = TimeUnit.SECONDS.toMillis(args.length > 2 ? Long.parseLong(args[2]) : 20);
+
+    TimeDeadbandSchedulerBenchmark benchmark = new TimeDeadbandSchedulerBenchmark(tagCount, period, duration);
+    System.out.printf("%d tags, time deadband %d ms, %d s per run%n", tagCount, period, TimeUnit.MILLISECONDS.toSeconds(duration));
+    benchmark.runTimer();
+    benchmark.runWheel();
+  }
+
+  private void runTimer() throws InterruptedException {
+    Timer timer = new Timer("Time deadband timer", true);
+    Result result = new Result("java.util.Timer");
+    List<RecordingScheduler> schedulers = createSchedulers(result);
+    for (final RecordingScheduler scheduler : schedulers) {
+      timer.scheduleAtFixedRate(new TimerTask() {
+        @Override
+        public void run() {
+          scheduler.run();
+        }
+      }, 0, period);
+    }
+    measure(result, "Time deadband timer");
+    timer.cancel();
+  }
+
+  private void runWheel() throws InterruptedException {
+    TimeDeadbandWheel wheel = new TimeDeadbandWheel("Time deadband wheel");
+    Result result = new Result("TimeDeadbandWheel");
+    List<RecordingScheduler> schedulers = createSchedulers(result);
+    for (RecordingScheduler scheduler : schedulers) {
+      wheel.schedule(scheduler, period);
+    }
+    measure(result, "Time deadband wheel");
+    wheel.stop();
+  }
+
+  private List<RecordingScheduler> createSchedulers(final Result result) {
+    List<RecordingScheduler> schedulers = new ArrayList<>(tagCount);
+    for (long id = 0; id < tagCount; id++) {
+      schedulers.add(new RecordingScheduler(new SourceDataTag(id, "tag" + id, false), period, result));
+    }
+    return schedulers;
+  }
+
+  /**
+   * Lets the schedulers run for the configured duration, ignoring the first
+   * seconds (start-up and JIT compilation), and prints the results.
+   */
+  private void measure(final Result result, final String threadName) throws InterruptedException {
+    Thread.sleep(Math.min(5000, durationMillis / 4));
+    result.reset();
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    long threadId = findThread(threadName);
+    long cpuStart = threadMXBean.getThreadCpuTime(threadId);
+    long start = System.nanoTime();
+
+    Thread.sleep(durationMillis);
+
+    long cpu = threadMXBean.getThreadCpuTime(threadId) - cpuStart;
+    long elapsed = System.nanoTime() - start;
+    result.print(cpu, elapsed);
+  }
+
+  private static long findThread(final String name) {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals(name)) {
+        return thread.getId();
+      }
+    }
+    throw new IllegalStateException("Thread not found: " + name);
+  }
+
+  /**
+   * Jitter statistics of one implementation.
+   */
+  private static final class Result {
+
+    private final String name;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS + 1);
+
+    Result(final String name) {
+      this.name = name;
+    }
+
+    void record(final long jitterNanos) {
+      int bucket = (int) Math.min(BUCKETS, TimeUnit.NANOSECONDS.toMicros(jitterNanos) / BUCKET_MICROS);
+      histogram.incrementAndGet(bucket);
+    }
+
+    void reset() {
+      for (int i = 0; i <= BUCKETS; i++) {
+        histogram.set(i, 0);
+      }
+    }
+
+    void print(final long cpuNanos, final long elapsedNanos) {
+      long count = 0;
+      double sum = 0;
+      for (int i = 0; i <= BUCKETS; i++) {
+        count += histogram.get(i);
+        sum += histogram.get(i) * (i + 0.5) * BUCKET_MICROS;
+      }
+      System.out.printf("%-18s runs/s %10.0f | scheduler thread CPU %5.1f %% | jitter mean %8.0f us, p50 %6d us, p99 %6d us, max %6d us%n",
+          name,
+          count / (elapsedNanos / 1e9),
+          100.0 * cpuNanos / elapsedNanos,
+          count == 0 ? 0 : sum / count,
+          percentile(count, 0.5), percentile(count, 0.99), percentile(count, 1.0));
+    }
+
+    private long percentile(final long count, final double fraction) {
+      long target = (long) Math.ceil(count * fraction);
+      long seen = 0;
+      for (int i = 0; i <= BUCKETS; i++) {
+        seen += histogram.get(i);
+        if (seen >= target && seen > 0) {
+          return (i + 1) * BUCKET_MICROS;
+        }
+      }
+      return 0;
+    }
+  }
+
+  /**
+   * Locks the tag like the real scheduler and records the interval jitter.
+   */
+  private static final class RecordingScheduler extends SDTTimeDeadbandScheduler {
+
+    private final SourceDataTag tag;
+
+    private final long periodNanos;
+
+    private final Result result;
+
+    private long lastRun = -1;
+
+    RecordingScheduler(final SourceDataTag tag, final long period, final Result result) {
+      super(tag, null, null, null, null, null);
+      this.tag = tag;
+      this.periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+      this.result = result;
+    }
+
+    @Override
+    public void run() {
+      long now = System.nanoTime();
+      synchronized (tag) {
+        if (lastRun >= 0) {
+          result.record(Math.abs(now - lastRun - periodNanos));
+        }
+        lastRun = now;
+      }
+    }
+  }
+}
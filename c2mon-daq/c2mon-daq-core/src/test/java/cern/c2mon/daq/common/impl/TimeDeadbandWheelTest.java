@@ -0,0 +1,258 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.daq.common.messaging.IProcessMessageSender;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeDeadbandWheelTest {
+
+  private TimeDeadbandWheel wheel;
+
+  @Before
+  public void setUp() {
+    wheel = new TimeDeadbandWheel("Test time deadband timer", 5, 16);
+  }
+
+  @After
+  public void tearDown() {
+    wheel.stop();
+  }
+
+  @Test
+  public void testSchedulerRunsImmediatelyThenPeriodically() throws Exception {
+    CountingScheduler scheduler = new CountingScheduler(1L);
+    scheduleWithoutDelay(scheduler, 50);
+
+    Thread.sleep(25);
+    assertEquals(1, scheduler.runs.get());
+
+    Thread.sleep(200);
+    int runs = scheduler.runs.get();
+    assertTrue("Unexpected number of runs: " + runs, runs >= 4 && runs <= 6);
+  }
+
+  @Test
+  public void testPeriodsLongerThanOneRound() throws Exception {
+    // the wheel covers 16 * 5 ms = 80 ms
+    CountingScheduler scheduler = new CountingScheduler(1L);
+    scheduleWithoutDelay(scheduler, 150);
+
+    Thread.sleep(100);
+    assertEquals(1, scheduler.runs.get());
+    Thread.sleep(100);
+    assertEquals(2, scheduler.runs.get());
+  }
+
+  @Test
+  public void testCancelledSchedulerIsNotRunAnymore() throws Exception {
+    CountingScheduler cancelled = new CountingScheduler(1L);
+    CountingScheduler running = new CountingScheduler(2L);
+    scheduleWithoutDelay(cancelled, 10);
+    scheduleWithoutDelay(running, 10);
+
+    Thread.sleep(50);
+    cancelled.cancel();
+    int runs = cancelled.runs.get();
+    Thread.sleep(100);
+
+    assertEquals(runs, cancelled.runs.get());
+    assertTrue(running.runs.get() > runs);
+  }
+
+  @Test
+  public void testPeriodShorterThanTick() throws Exception {
+    CountingScheduler scheduler = new CountingScheduler(1L);
+    scheduleWithoutDelay(scheduler, 1);
+
+    Thread.sleep(100);
+    // at most once per tick
+    assertTrue(scheduler.runs.get() <= 21);
+    assertTrue(scheduler.runs.get() >= 5);
+  }
+
+  @Test
+  public void testInitialDelaysAreSpreadOverThePeriod() {
+    // 16 buckets of 5 ms
+    long period = TimeUnit.MILLISECONDS.toNanos(80);
+    long tick = TimeUnit.MILLISECONDS.toNanos(5);
+    Set<Long> firstTicks = new HashSet<>();
+    for (long tagId = 1; tagId <= 64; tagId++) {
+      long delay = wheel.initialDelay(tagId, period);
+      assertTrue(delay >= 0 && delay < period);
+      firstTicks.add(delay / tick);
+    }
+    assertEquals(16, firstTicks.size());
+  }
+
+  @Test
+  public void testScheduledSchedulerRunsWithinItsFirstPeriod() throws Exception {
+    CountingScheduler scheduler = new CountingScheduler(1L);
+    wheel.schedule(scheduler, 50);
+
+    long delay = wheel.initialDelay(1L, TimeUnit.MILLISECONDS.toNanos(50));
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(delay) + 25);
+    assertEquals(1, scheduler.runs.get());
+  }
+
+  @Test
+  public void testValuesOfOneTickAreSentInOneCall() throws Exception {
+    // holds the wheel thread, so that the schedulers below start in the same tick
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    scheduleWithoutDelay(new CountingScheduler(100L) {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, 10000);
+    assertTrue(started.await(1, TimeUnit.SECONDS));
+
+    RecordingSender sender = new RecordingSender();
+    for (long tagId = 1; tagId <= 3; tagId++) {
+      scheduleWithoutDelay(new SendingScheduler(tagId, sender), 10000);
+    }
+    release.countDown();
+
+    Thread.sleep(50);
+    assertEquals(1, sender.batches.size());
+    assertEquals(3, sender.batches.get(0).size());
+    assertTrue(sender.singleValues.isEmpty());
+
+    // outside of a tick, the value is passed straight away
+    new SendingScheduler(4L, sender).run();
+    assertEquals(1, sender.singleValues.size());
+  }
+
+  @Test
+  public void testBlockedSenderDoesNotBlockTheOtherThreads() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingSender blockingSender = new RecordingSender() {
+      @Override
+      public void addValue(final SourceDataTagValue dataTagValue) {
+        blocked.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.addValue(dataTagValue);
+      }
+    };
+    scheduleWithoutDelay(new SendingScheduler(1L, blockingSender), 10000);
+    assertTrue(blocked.await(1, TimeUnit.SECONDS));
+
+    // the wheel thread is blocked in the sender: a flush from another thread does not wait for it
+    RecordingSender sender = new RecordingSender();
+    Thread flushingThread = new Thread(() -> new SendingScheduler(2L, sender).run());
+    flushingThread.start();
+    flushingThread.join(1000);
+    assertFalse(flushingThread.isAlive());
+
+    // the flushed value is sent by the wheel thread, after the values of the tick
+    assertTrue(sender.singleValues.isEmpty());
+    release.countDown();
+    Thread.sleep(50);
+    assertEquals(1, blockingSender.singleValues.size());
+    assertEquals(1, sender.singleValues.size());
+  }
+
+  private void scheduleWithoutDelay(final SDTTimeDeadbandScheduler scheduler, final long periodMillis) {
+    wheel.schedule(scheduler, TimeUnit.MILLISECONDS.toNanos(periodMillis), 0);
+  }
+
+  private final class SendingScheduler extends SDTTimeDeadbandScheduler {
+
+    private final IProcessMessageSender sender;
+
+    SendingScheduler(final Long id, final IProcessMessageSender sender) {
+      super(new SourceDataTag(id, "tag" + id, false), sender, null, wheel, null, null);
+      this.sender = sender;
+    }
+
+    @Override
+    public void run() {
+      wheel.send(sender, new SourceDataTagValue(getTagId(), "tag" + getTagId(), false, Boolean.TRUE, new SourceDataTagQuality(),
+          System.currentTimeMillis(), DataTagAddress.PRIORITY_LOW, false, null, 9999999));
+    }
+  }
+
+  private static class RecordingSender implements IProcessMessageSender {
+
+    private final List<SourceDataTagValue> singleValues = new CopyOnWriteArrayList<>();
+
+    private final List<List<SourceDataTagValue>> batches = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void addValue(final SourceDataTagValue dataTagValue) {
+      singleValues.add(dataTagValue);
+    }
+
+    @Override
+    public void addValues(final List<SourceDataTagValue> dataTagValues) {
+      batches.add(new ArrayList<>(dataTagValues));
+    }
+
+    @Override
+    public void sendCommfaultTag(final long tagId, final String tagName, final boolean commOK, final String description) {
+    }
+
+    @Override
+    public void sendAlive() {
+    }
+  }
+
+  private static class CountingScheduler extends SDTTimeDeadbandScheduler {
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    CountingScheduler(final Long id) {
+      super(new SourceDataTag(id, "tag" + id, false), null, null, null, null, null);
+    }
+
+    @Override
+    public void run() {
+      runs.incrementAndGet();
+    }
+  }
+}
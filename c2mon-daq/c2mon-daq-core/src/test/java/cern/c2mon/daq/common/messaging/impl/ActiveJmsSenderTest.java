@@ -0,0 +1,116 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.messaging.impl;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.ProducerCallback;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+public class ActiveJmsSenderTest {
+
+  private JmsTemplate jmsTemplate;
+
+  private MessageConverter converter;
+
+  private Session session;
+
+  private MessageProducer producer;
+
+  private Message message;
+
+  private ActiveJmsSender sender;
+
+  @Before
+  public void setUp() {
+    jmsTemplate = EasyMock.createMock(JmsTemplate.class);
+    converter = EasyMock.createMock(MessageConverter.class);
+    session = EasyMock.createMock(Session.class);
+    producer = EasyMock.createMock(MessageProducer.class);
+    message = EasyMock.createMock(Message.class);
+    sender = new ActiveJmsSender(jmsTemplate);
+  }
+
+  private DataTagValueUpdate update(final boolean persistent) {
+    DataTagValueUpdate update = new DataTagValueUpdate(1L);
+    update.addValue(new SourceDataTagValue(1L, "tag1", false, 1, null, System.currentTimeMillis(),
+        DataTagAddress.PRIORITY_LOW, persistent, null, 60000));
+    update.addValue(new SourceDataTagValue(2L, "tag2", false, 2, null, System.currentTimeMillis(),
+        DataTagAddress.PRIORITY_LOW, persistent, null, 60000));
+    return update;
+  }
+
+  /**
+   * Runs the producer callback passed to the template with the mock session
+   * and producer.
+   */
+  private void expectExecute(final boolean explicitQos, final DataTagValueUpdate update) throws JMSException {
+    Capture<ProducerCallback<Object>> callback = Capture.newInstance();
+    EasyMock.expect(jmsTemplate.execute(EasyMock.capture(callback))).andAnswer(() -> callback.getValue().doInJms(session, producer));
+    EasyMock.expect(jmsTemplate.getMessageConverter()).andReturn(converter);
+    EasyMock.expect(jmsTemplate.isExplicitQosEnabled()).andReturn(explicitQos);
+    EasyMock.expect(converter.toMessage(update, session)).andReturn(message);
+  }
+
+  @Test
+  public void testValuesAreSentWithTheirQos() throws JMSException {
+    DataTagValueUpdate update = update(false);
+    expectExecute(true, update);
+    producer.send(message, DeliveryMode.NON_PERSISTENT, DataTagAddress.PRIORITY_LOW, 60000);
+    EasyMock.replay(jmsTemplate, converter, session, producer, message);
+
+    sender.processValues(update);
+
+    // the shared template is not modified
+    EasyMock.verify(jmsTemplate, converter, session, producer, message);
+  }
+
+  @Test
+  public void testProducerDefaultsWithoutExplicitQos() throws JMSException {
+    DataTagValueUpdate update = update(true);
+    expectExecute(false, update);
+    producer.send(message);
+    EasyMock.replay(jmsTemplate, converter, session, producer, message);
+
+    sender.processValues(update);
+
+    EasyMock.verify(jmsTemplate, converter, session, producer, message);
+  }
+
+  @Test
+  public void testNothingIsSentWhenDisabled() throws JMSException {
+    EasyMock.replay(jmsTemplate, converter, session, producer, message);
+    sender.setEnabled(false);
+
+    sender.processValues(update(true));
+
+    EasyMock.verify(jmsTemplate, converter, session, producer, message);
+  }
+}
@@ -0,0 +1,168 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.common.messaging.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SendLaneTest {
+
+  private final List<List<Long>> sentMessages = new CopyOnWriteArrayList<>();
+
+  private final CountDownLatch firstSendStarted = new CountDownLatch(1);
+
+  private final CountDownLatch releaseSends = new CountDownLatch(1);
+
+  private SendLane lane;
+
+  @After
+  public void tearDown() {
+    releaseSends.countDown();
+    if (lane != null) {
+      lane.stop();
+    }
+  }
+
+  /**
+   * Records the sent tag ids; blocks until the sends are released.
+   */
+  private void slowSend(final List<SourceDataTagValue> values) {
+    firstSendStarted.countDown();
+    try {
+      releaseSends.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    List<Long> ids = new ArrayList<>();
+    for (SourceDataTagValue value : values) {
+      ids.add(value.getId());
+    }
+    sentMessages.add(ids);
+  }
+
+  private static SourceDataTagValue value(final long id) {
+    return new SourceDataTagValue(id, "tag" + id, false, id, null, System.currentTimeMillis(),
+        DataTagAddress.PRIORITY_HIGH, false, null, DataTagAddress.TTL_FOREVER);
+  }
+
+  private void awaitSentValues(final long count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (lane.getSentValues() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(count, lane.getSentValues());
+  }
+
+  @Test
+  public void testValuesQueuedDuringSendAreSentTogether() throws InterruptedException {
+    lane = new SendLane("test", 100, () -> 3, this::slowSend);
+
+    lane.add(value(0));
+    assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+    for (long id = 1; id <= 5; id++) {
+      lane.add(value(id));
+    }
+    assertEquals(5, lane.getQueueSize());
+    releaseSends.countDown();
+
+    awaitSentValues(6);
+    assertEquals(3, sentMessages.size());
+    assertEquals(1, sentMessages.get(0).size());
+    assertEquals(3, sentMessages.get(1).size());
+    List<Long> ids = new ArrayList<>();
+    for (List<Long> message : sentMessages) {
+      ids.addAll(message);
+    }
+    for (int i = 0; i < 6; i++) {
+      assertEquals(Long.valueOf(i), ids.get(i));
+    }
+    assertEquals(3, lane.getSentMessages());
+    assertEquals(0, lane.getQueueSize());
+  }
+
+  @Test
+  public void testFullWindowBlocksUntilSendCompletes() throws InterruptedException {
+    lane = new SendLane("test", 2, () -> 100, this::slowSend);
+
+    lane.add(value(0));
+    assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+    lane.add(value(1));
+    lane.add(value(2));
+
+    CountDownLatch added = new CountDownLatch(1);
+    Thread producer = new Thread(() -> {
+      lane.add(value(3));
+      added.countDown();
+    });
+    producer.start();
+    assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+
+    releaseSends.countDown();
+    assertTrue(added.await(5, TimeUnit.SECONDS));
+    awaitSentValues(4);
+    assertEquals(1, lane.getBlockedAdds());
+    assertTrue(lane.getMaxLatency() >= 200);
+  }
+
+  @Test
+  public void testStopSendsQueuedValues() throws InterruptedException {
+    lane = new SendLane("test", 100, () -> 100, this::slowSend);
+    lane.add(value(0));
+    assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+    lane.add(value(1));
+    lane.add(value(2));
+
+    releaseSends.countDown();
+    lane.stop();
+    assertEquals(3, lane.getSentValues());
+
+    // sent on the calling thread once stopped
+    lane.add(value(3));
+    assertEquals(3, sentMessages.size());
+    assertEquals(Long.valueOf(3), sentMessages.get(2).get(0));
+  }
+
+  @Test
+  public void testFailedSendDoesNotStopTheLane() throws InterruptedException {
+    List<Long> sent = new CopyOnWriteArrayList<>();
+    lane = new SendLane("test", 100, () -> 1, values -> {
+      if (values.get(0).getId() == 0) {
+        throw new IllegalStateException("send failure");
+      }
+      sent.add(values.get(0).getId());
+    });
+    lane.add(value(0));
+    lane.add(value(1));
+
+    awaitSentValues(1);
+    assertEquals(1, lane.getFailedMessages());
+    assertEquals(Long.valueOf(1), sent.get(0));
+  }
+}
@@ -17,6 +17,7 @@
 package cern.c2mon.server.alarm.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.PostConstruct;
@@ -145,6 +146,19 @@ public class AlarmAggregatorImpl implements AlarmAggregator, C2monCacheListener<
     evaluateAlarms(tag);
   }
 
+  /**
+   * Evaluates the alarms of a batch of tags affected by the same supervision
+   * change, with a single log message for the whole batch.
+   */
+  @Override
+  public void onSupervisionChange(final Collection<? extends Tag> tags) {
+    log.trace("Evaluating alarms for " + tags.size() + " tags due to supervision status notification.");
+
+    for (Tag tag : tags) {
+      evaluateAlarms(tag);
+    }
+  }
+
   private List<Alarm> evaluateAlarms(final Tag tag) {
     List<Alarm> alarmList = null;
     if (!tag.getAlarmIds().isEmpty()) {
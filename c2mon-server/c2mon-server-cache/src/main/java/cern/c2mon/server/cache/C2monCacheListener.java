@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.cache;
 
+import java.util.Collection;
+
 import cern.c2mon.shared.common.Cacheable;
 
 
@@ -37,7 +39,20 @@ public interface C2monCacheListener<T extends Cacheable> {
    * 
    */
   void notifyElementUpdated(T cacheable);
-  
+
+  /**
+   * Callback when several cache objects were modified together (e.g. all
+   * the tags of an incoming DAQ message). By default, calls
+   * {@link #notifyElementUpdated(Cacheable)} for each object in turn.
+   *
+   * @param cacheables the objects in the cache that have been updated
+   */
+  default void notifyElementsUpdated(Collection<? extends T> cacheables) {
+    for (T cacheable : cacheables) {
+      notifyElementUpdated(cacheable);
+    }
+  }
+
   /**
    * Callback used for confirming the value of the cache object. This is
    * used in particular during a system recovery after a crash. Guaranteed
@@ -16,6 +16,9 @@
  *****************************************************************************/
 package cern.c2mon.server.cache;
 
+import java.util.Map;
+import java.util.function.Predicate;
+
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.shared.common.Cacheable;
@@ -41,6 +44,19 @@ public interface C2monCacheWithListeners<K, T extends Cacheable> extends C2monCa
    * @param timCacheListener
    */
   void registerSynchronousListener(C2monCacheListener<? super T> timCacheListener);
+
+  /**
+   * As {@link #registerSynchronousListener(C2monCacheListener)}, but the
+   * listener is only notified of the cache objects matching the interest
+   * predicate (for instance the tags with rules, or the tags with ids in a
+   * given set). The predicate is evaluated on the cache object itself,
+   * within the cache lock, before the copy passed to the listeners is made:
+   * it must be fast and must not modify the object.
+   *
+   * @param timCacheListener the listener to register
+   * @param interest selects the cache objects the listener is notified of
+   */
+  void registerSynchronousListener(C2monCacheListener<? super T> timCacheListener, Predicate<? super T> interest);
   
   /**
    * Registers the C2monCacheListener as listener to this cache. The listener
@@ -115,6 +131,15 @@ public interface C2monCacheWithListeners<K, T extends Cacheable> extends C2monCa
    * (a copy is passed; should not be modified as shared across listeners)
    */
   void notifyListenersOfUpdate(T cacheable);
+
+  /**
+   * Puts the objects into the cache and notifies the listeners of all of
+   * them with a single {@link C2monCacheListener#notifyElementsUpdated(java.util.Collection)}
+   * call. Should be called with the write locks on all keys held.
+   *
+   * @param values the objects to put, by key
+   */
+  void putAll(Map<K, T> values);
   
   /**
    * Loads the cache element from the DB into the cache. Any existing cache element will
@@ -17,6 +17,8 @@
 package cern.c2mon.server.cache;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
 
 import cern.c2mon.server.common.tag.Tag;
 
@@ -32,6 +34,17 @@ import cern.c2mon.server.common.tag.Tag;
  */
 public interface C2monCacheWithSupervision<K, T extends Tag> extends C2monCacheWithListeners<K, T> {
 
+  /** Name of the index of the tags by process id (see {@link Tag#getProcessIds()}) */
+  String PROCESS_INDEX = "processId";
+
+  /** Name of the index of the tags by equipment id (see {@link Tag#getEquipmentIds()}) */
+  String EQUIPMENT_INDEX = "equipmentId";
+
+  /** Name of the index of the tags by sub-equipment id (see {@link Tag#getSubEquipmentIds()}) */
+  String SUB_EQUIPMENT_INDEX = "subEquipmentId";
+
+  /** Name of the index of the tags by metadata (key, value) entry (see {@link Tag#getMetadata()}) */
+  String METADATA_INDEX = "metadata";
   
   /**
    * Register a listener to be notified of supervision invalidations/validation callbacks
@@ -66,6 +79,16 @@ public interface C2monCacheWithSupervision<K, T extends Tag> extends C2monCacheW
    *        status applied
    */
   void notifyListenersOfSupervisionChange(T tag);
+
+  /**
+   * Calls all listeners notified for supervision invalidation messages once
+   * for all the passed tags. As for single tags, a tag is filtered out if the
+   * value in the cache is more recent.
+   *
+   * @param tags the tags affected by the supervision change, *with* the
+   *        supervision status applied
+   */
+  void notifyListenersOfSupervisionChange(Collection<? extends T> tags);
   
   /**
    * Check whether the cache contains a tag with
@@ -107,4 +130,56 @@ public interface C2monCacheWithSupervision<K, T extends Tag> extends C2monCacheW
    * @see #get(String)
    */
   Collection<T> findByNameWildcard(String regex);
+
+  /**
+   * Registers a secondary index of the tags of this cache. The index maps
+   * each key returned by the key extractor for a tag to the ids of the tags
+   * having this key. It is kept up to date when tags are put into or removed
+   * from the cache, and is queried with {@link #findTagIdsByIndex(String, Object)}.
+   *
+   * <p>If the secondary indexes are disabled (see
+   * <code>c2mon.server.cache.secondaryIndexes</code>), the queries scan the
+   * cache using the key extractor.
+   *
+   * @param name the name of the index, unique in this cache
+   * @param keyExtractor returns the index keys of a tag (null or empty if none);
+   *        it must not lock or access the cache
+   * @throws IllegalArgumentException if an index with this name is already registered
+   */
+  void registerIndex(String name, Function<? super T, ? extends Collection<?>> keyExtractor);
+
+  /**
+   * Returns the ids of the tags having the given key in a secondary index.
+   *
+   * @param indexName the name of the index, e.g. {@link #EQUIPMENT_INDEX}
+   * @param key the index key
+   * @return the ids of the matching tags, in a new modifiable list
+   * @throws IllegalArgumentException if there is no index with this name
+   */
+  List<Long> findTagIdsByIndex(String indexName, Object key);
+
+  /**
+   * @param processId the process id
+   * @return the ids of the tags attached to the process (for rules: depending on it)
+   */
+  List<Long> findTagIdsByProcessId(Long processId);
+
+  /**
+   * @param equipmentId the equipment id
+   * @return the ids of the tags attached to the equipment (for rules: depending on it)
+   */
+  List<Long> findTagIdsByEquipmentId(Long equipmentId);
+
+  /**
+   * @param subEquipmentId the sub-equipment id
+   * @return the ids of the tags attached to the sub-equipment (for rules: depending on it)
+   */
+  List<Long> findTagIdsBySubEquipmentId(Long subEquipmentId);
+
+  /**
+   * @param key the metadata key
+   * @param value the metadata value
+   * @return the ids of the tags having this metadata value
+   */
+  List<Long> findTagIdsByMetadata(String key, Object value);
 }
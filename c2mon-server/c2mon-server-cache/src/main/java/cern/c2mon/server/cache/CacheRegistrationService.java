@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.cache;
 
+import java.util.function.Predicate;
+
 import cern.c2mon.server.common.alarm.Alarm;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.server.common.datatag.DataTag;
@@ -76,6 +78,18 @@ public interface CacheRegistrationService {
    *          and the stop() at the beginning of its own stop method
    */
   Lifecycle registerToAllTags(C2monCacheListener<Tag> tagCacheListener, int nbThreads);
+
+  /**
+   * As {@link #registerToAllTags(C2monCacheListener, int)}, but only for the
+   * tags matching the interest predicate. The predicate is evaluated on the
+   * cache thread before the tag is copied, so the tags the listener is not
+   * interested in cost no copy and no queueing.
+   * @param tagCacheListener the listener to notify of the updates
+   * @param nbThreads the number of threads used to call the listener
+   * @param interest selects the tags the listener is notified of
+   * @return a Lifecycle object to allow the registered listener to stop/start its thread as required
+   */
+  Lifecycle registerToAllTags(C2monCacheListener<Tag> tagCacheListener, int nbThreads, Predicate<Tag> interest);
   
   /**
    * Register to be notified of updates to the DataTag cache only.
@@ -131,6 +145,14 @@ public interface CacheRegistrationService {
    */
   void registerSynchronousToAllTags(C2monCacheListener<Tag> tagCacheListener);
 
+  /**
+   * As {@link #registerSynchronousToAllTags(C2monCacheListener)}, but only
+   * for the tags matching the interest predicate.
+   * @param tagCacheListener the listener to register
+   * @param interest selects the tags the listener is notified of
+   */
+  void registerSynchronousToAllTags(C2monCacheListener<Tag> tagCacheListener, Predicate<Tag> interest);
+
   /**
    * Registers the listener to all Tag caches (listener is called on separate threads for each cache;
    * a single thread per listener; no order guaranteed).
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.cache;
 
+import java.util.Collection;
+
 import cern.c2mon.server.common.tag.Tag;
 
 /**
@@ -47,5 +49,20 @@ public interface CacheSupervisionListener<T extends Tag> {
    * @param tag a copy of the Tag with new status applied
    */
   void onSupervisionChange(T tag);
-  
+
+  /**
+   * Called with a batch of Tags affected by the same supervision
+   * status change (e.g. all the Tags of an Equipment going down).
+   *
+   * <p>Listeners with a cheaper way of handling many Tags at once
+   * can override this method; by default, {@link #onSupervisionChange(Tag)}
+   * is called for each of them.
+   *
+   * @param tags copies of the Tags with new status applied
+   */
+  default void onSupervisionChange(Collection<? extends T> tags) {
+    for (T tag : tags) {
+      onSupervisionChange(tag);
+    }
+  }
 }
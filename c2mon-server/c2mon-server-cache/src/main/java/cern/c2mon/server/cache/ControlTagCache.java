@@ -17,6 +17,7 @@
 package cern.c2mon.server.cache;
 
 import java.util.Collection;
+import java.util.List;
 
 import cern.c2mon.server.common.control.ControlTag;
 import cern.c2mon.server.common.tag.Tag;
@@ -82,4 +83,19 @@ public interface ControlTagCache extends C2monCacheWithListeners<Long, ControlTa
    * @see #get(String)
    */
   Collection<ControlTag> findByNameWildcard(String regex);
+
+  /**
+   * @param processId the process id
+   * @return the ids of the control tags attached to the process
+   * @see C2monCacheWithSupervision#findTagIdsByProcessId(Long)
+   */
+  List<Long> findTagIdsByProcessId(Long processId);
+
+  /**
+   * @param key the metadata key
+   * @param value the metadata value
+   * @return the ids of the control tags having this metadata value
+   * @see C2monCacheWithSupervision#findTagIdsByMetadata(String, Object)
+   */
+  List<Long> findTagIdsByMetadata(String key, Object value);
 }
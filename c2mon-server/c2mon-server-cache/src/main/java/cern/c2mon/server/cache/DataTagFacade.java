@@ -17,6 +17,8 @@
 package cern.c2mon.server.cache;
 
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Properties;
 
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
@@ -69,6 +71,23 @@ public interface DataTagFacade extends CommonTagFacade<DataTag> {
    * @throws CacheElementNotFoundException if the Tag cannot be found in the cache
    */
   Event<Boolean> updateFromSource(Long dataTagId, SourceDataTagValue sourceDataTagValue);
+
+  /**
+   * Updates the DataTags in the cache from all values of an incoming DAQ message
+   * (see {@link #updateFromSource(Long, SourceDataTagValue)}).
+   *
+   * <p>If the message contains several values for the same tag, only the one
+   * with the latest timestamp is applied (the last one received if the timestamps
+   * are equal). The tags are locked in the order of their ids and all tags updated
+   * under the same locks are notified to the cache listeners with a single
+   * {@link C2monCacheListener#notifyElementsUpdated(Collection)} call.
+   *
+   * @param sourceDataTagValues the values received from the data acquisition layer
+   * @return for each tag found in the cache, whether it was updated, together with
+   * the cache timestamp of the update; tags which cannot be found in the cache
+   * are not contained in the result
+   */
+  Map<Long, Event<Boolean>> updateFromSource(Collection<SourceDataTagValue> sourceDataTagValues);
   
   /**
    * Same as other updateAndValidate method but takes a tag id as parameter and does the cache lookup
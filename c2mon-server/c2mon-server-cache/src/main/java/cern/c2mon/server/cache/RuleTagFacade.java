@@ -17,6 +17,8 @@
 package cern.c2mon.server.cache;
 
 import java.sql.Timestamp;
+import java.util.Collection;
+
 import cern.c2mon.server.common.rule.RuleTag;
 
 /**
@@ -45,6 +47,21 @@ public interface RuleTagFacade extends CommonTagFacade<RuleTag> {
    * @param timestamp new timestamp
    */
   void updateAndValidate(Long id, Object value, String valueDescription, Timestamp timestamp);
+
+  /**
+   * Writes several rule evaluation results to the cache: the valid values as
+   * in {@link #updateAndValidate(Long, Object, String, Timestamp)}, the
+   * invalidations as in {@link #setQuality}.
+   *
+   * <p>If the collection contains several updates of the same rule, only the
+   * last one is applied. The rules are locked in the order of their ids and
+   * all rules updated under the same locks are notified to the cache listeners
+   * with a single call. Rules which cannot be found in the cache (e.g. during a
+   * reconfiguration) are skipped.
+   *
+   * @param updates the evaluation results
+   */
+  void update(Collection<RuleTagUpdate> updates);
   
   /**
    * Creates a cache object from the provided properties.
@@ -0,0 +1,92 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+/**
+ * Result of a rule evaluation to be written to the rule cache, see
+ * {@link RuleTagFacade#update(Collection)}: either a valid value, or the
+ * quality flags to set on the rule.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class RuleTagUpdate {
+
+  /** Id of the rule */
+  private final Long id;
+
+  /** New value; null for an invalidation */
+  private final Object value;
+
+  /** New value description; null for an invalidation */
+  private final String valueDescription;
+
+  /** Quality flags to add; empty for a valid value */
+  private final Collection<TagQualityStatus> invalidQualityStates;
+
+  /** Description of each quality flag to add */
+  private final Map<TagQualityStatus, String> qualityDescriptions;
+
+  /** Time of the evaluation */
+  private final Timestamp timestamp;
+
+  private RuleTagUpdate(final Long id, final Object value, final String valueDescription,
+                        final Collection<TagQualityStatus> invalidQualityStates,
+                        final Map<TagQualityStatus, String> qualityDescriptions, final Timestamp timestamp) {
+    this.id = id;
+    this.value = value;
+    this.valueDescription = valueDescription;
+    this.invalidQualityStates = invalidQualityStates;
+    this.qualityDescriptions = qualityDescriptions;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * @return an update setting the rule quality to good with the new value
+   *         (see {@link RuleTagFacade#updateAndValidate})
+   */
+  public static RuleTagUpdate valid(final Long id, final Object value, final String valueDescription, final Timestamp timestamp) {
+    return new RuleTagUpdate(id, value, valueDescription, Collections.emptySet(), Collections.emptyMap(), timestamp);
+  }
+
+  /**
+   * @return an update adding the quality flags to the rule (see
+   *         {@link CommonTagFacade#setQuality})
+   */
+  public static RuleTagUpdate invalid(final Long id, final Collection<TagQualityStatus> invalidQualityStates,
+                                      final Map<TagQualityStatus, String> qualityDescriptions, final Timestamp timestamp) {
+    return new RuleTagUpdate(id, null, null, invalidQualityStates, qualityDescriptions, timestamp);
+  }
+
+  /**
+   * @return true if the update sets a valid value, false if it invalidates the rule
+   */
+  public boolean isValid() {
+    return invalidQualityStates.isEmpty();
+  }
+}
@@ -95,6 +95,27 @@ public interface TagLocationService {
    * @see #get(String)
    */
   Collection<Tag> findByNameWildcard(String regex);
+
+  /**
+   * Returns the ids of all tags (data, rule and control tags) attached to
+   * the given process, including the rules depending on it.
+   *
+   * @param processId the process id
+   * @return the ids of the tags of the process
+   * @see C2monCacheWithSupervision#findTagIdsByProcessId(Long)
+   */
+  Collection<Long> findTagIdsByProcessId(Long processId);
+
+  /**
+   * Returns the ids of all tags (data, rule and control tags) having the
+   * given metadata value.
+   *
+   * @param key the metadata key
+   * @param value the metadata value
+   * @return the ids of the tags with this metadata value
+   * @see C2monCacheWithSupervision#findTagIdsByMetadata(String, Object)
+   */
+  Collection<Long> findTagIdsByMetadata(String key, Object value);
   
   /**
    * Determines whether one of the tag caches already contains
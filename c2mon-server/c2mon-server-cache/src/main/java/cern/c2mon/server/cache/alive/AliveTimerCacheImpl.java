@@ -21,6 +21,9 @@ import javax.annotation.PostConstruct;
 import cern.c2mon.server.cache.config.CacheProperties;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import net.sf.ehcache.event.NotificationScope;
 import net.sf.ehcache.loader.CacheLoader;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,6 +33,7 @@ import org.springframework.stereotype.Service;
 import cern.c2mon.server.cache.AliveTimerCache;
 import cern.c2mon.server.cache.ClusterCache;
 import cern.c2mon.server.cache.common.AbstractCache;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.cache.loading.common.C2monCacheLoader;
 import cern.c2mon.server.cache.loading.SimpleCacheLoaderDAO;
 import cern.c2mon.server.common.alive.AliveTimer;
@@ -38,20 +42,34 @@ import cern.c2mon.server.common.config.C2monCacheName;
 /**
  * Implementation of the AliveTimer cache.
  *
+ * <p>The alive timers started, updated or stopped on the other servers of
+ * the cluster are scheduled on (or cancelled from) the {@link AliveTimerWheel}
+ * of this server, so that each server can follow the expiry times of all
+ * active alive timers. The local updates are scheduled by the
+ * {@link AliveTimerFacadeImpl}.
+ *
  * @author Mark Brightwell
  */
 @Slf4j
 @Service("aliveTimerCache")
 public class AliveTimerCacheImpl extends AbstractCache<Long, AliveTimer> implements AliveTimerCache {
 
+  /**
+   * Expiry times of the active alive timers.
+   */
+  private final AliveTimerWheel aliveTimerWheel;
+
   @Autowired
   public AliveTimerCacheImpl(final ClusterCache clusterCache,
                              @Qualifier("aliveTimerEhcache") final Ehcache ehcache,
                              @Qualifier("aliveTimerEhcacheLoader") final CacheLoader cacheLoader,
                              @Qualifier("aliveTimerCacheLoader") final C2monCacheLoader c2monCacheLoader,
                              @Qualifier("aliveTimerDAO") final SimpleCacheLoaderDAO<AliveTimer> cacheLoaderDAO,
-                             final CacheProperties properties) {
+                             final CacheProperties properties,
+                             final AliveTimerWheel aliveTimerWheel) {
     super(clusterCache, ehcache, cacheLoader, c2monCacheLoader, cacheLoaderDAO, properties);
+    this.aliveTimerWheel = aliveTimerWheel;
+    ehcache.getCacheEventNotificationService().registerListener(new RemoteUpdateListener(), NotificationScope.REMOTE);
   }
 
   /**
@@ -81,4 +99,39 @@ public class AliveTimerCacheImpl extends AbstractCache<Long, AliveTimer> impleme
     return cacheInitializedKey;
   }
 
+  /**
+   * Keeps the wheel up to date with the puts made on another server. The
+   * alive timer is read from the cache, since the events of the clustered
+   * cache may not carry the value.
+   */
+  private final class RemoteUpdateListener extends CacheEventListenerAdapter {
+
+    @Override
+    public void notifyElementPut(final Ehcache ehcache, final Element element) {
+      notifyRemoteUpdate(element);
+    }
+
+    @Override
+    public void notifyElementUpdated(final Ehcache ehcache, final Element element) {
+      notifyRemoteUpdate(element);
+    }
+
+    private void notifyRemoteUpdate(final Element element) {
+      Long id = (Long) element.getObjectKey();
+      acquireReadLockOnKey(id);
+      try {
+        AliveTimer aliveTimer = get(id);
+        if (aliveTimer.isActive()) {
+          aliveTimerWheel.schedule(aliveTimer);
+        } else {
+          aliveTimerWheel.cancel(id);
+        }
+      } catch (CacheElementNotFoundException e) {
+        log.debug("Alive timer " + id + " updated on another server is no longer in the cache.");
+      } finally {
+        releaseReadLockOnKey(id);
+      }
+    }
+  }
+
 }
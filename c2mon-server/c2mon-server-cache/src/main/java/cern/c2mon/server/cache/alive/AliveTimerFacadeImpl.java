@@ -32,6 +32,10 @@ import cern.c2mon.server.common.process.Process;
 /**
  * Implementation of the AliverTimerFacade.
  *
+ * <p>Active alive timers are also scheduled on the {@link AliveTimerWheel}, which
+ * is rescheduled on each update, so that expired timers can be found without
+ * checking all the alive timers of the cache.
+ *
  * @author Mark Brightwell
  *
  */
@@ -41,10 +45,13 @@ public class AliveTimerFacadeImpl implements AliveTimerFacade {
 
   private AliveTimerCache aliveTimerCache;
 
+  private AliveTimerWheel aliveTimerWheel;
+
   @Autowired
-  public AliveTimerFacadeImpl(AliveTimerCache aliveTimerCache) {
+  public AliveTimerFacadeImpl(AliveTimerCache aliveTimerCache, AliveTimerWheel aliveTimerWheel) {
     super();
     this.aliveTimerCache = aliveTimerCache;
+    this.aliveTimerWheel = aliveTimerWheel;
   }
 
   @Override
@@ -81,6 +88,7 @@ public class AliveTimerFacadeImpl implements AliveTimerFacade {
 
     aliveTimer.setActive(true);
     aliveTimer.setLastUpdate(System.currentTimeMillis());
+    aliveTimerWheel.schedule(aliveTimer);
     if (log.isDebugEnabled()) {
       StringBuffer str = new StringBuffer("Updated alive timer for ");
       str.append(AliveTimer.ALIVE_TYPE_PROCESS + " ");
@@ -120,6 +128,10 @@ public class AliveTimerFacadeImpl implements AliveTimerFacade {
       }
       aliveTimer.setActive(true);
       aliveTimer.setLastUpdate(System.currentTimeMillis());
+      aliveTimerWheel.schedule(aliveTimer);
+    } else if (!aliveTimerWheel.isScheduled(aliveTimer.getId())) {
+      // started by another server of the cluster
+      aliveTimerWheel.schedule(aliveTimer);
     }
   }
 
@@ -161,6 +173,7 @@ public class AliveTimerFacadeImpl implements AliveTimerFacade {
       aliveTimer.setActive(false);
       aliveTimer.setLastUpdate(System.currentTimeMillis());
     }
+    aliveTimerWheel.cancel(aliveTimer.getId());
   }
 
   /**
@@ -173,7 +186,7 @@ public class AliveTimerFacadeImpl implements AliveTimerFacade {
     aliveTimerCache.acquireReadLockOnKey(aliveTimerId);
     try {
         AliveTimer aliveTimer = aliveTimerCache.get(aliveTimerId);
-        return (System.currentTimeMillis() - aliveTimer.getLastUpdate() > aliveTimer.getAliveInterval() + aliveTimer.getAliveInterval() / 3);
+        return System.currentTimeMillis() > AliveTimerWheel.expiryTime(aliveTimer);
     } finally {
       aliveTimerCache.releaseReadLockOnKey(aliveTimerId);
     }
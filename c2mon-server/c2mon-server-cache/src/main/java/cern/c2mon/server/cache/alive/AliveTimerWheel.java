@@ -0,0 +1,232 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.alive;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.common.alive.AliveTimer;
+
+/**
+ * Deadline index of the active alive timers of this server: a hashed timing
+ * wheel keyed on the time at which the next alive is overdue (see
+ * {@link #expiryTime(AliveTimer)}).
+ *
+ * <p>The wheel is made of {@link #WHEEL_SIZE} buckets of {@link #TICK_MILLIS} ms.
+ * Timers further away than one revolution stay in their bucket until the round
+ * they are due in. Rescheduling a timer to a later deadline (the normal case when
+ * an alive arrives) only records the new deadline: the timer is moved to its new
+ * bucket when the old one is reached. Moving a deadline earlier, starting and
+ * cancelling a timer are also constant time operations, so the cost of the
+ * expiry check only depends on the number of timers actually reaching their
+ * (previous) deadline, not on the number of timers in the cache.
+ *
+ * <p>The wheel is passive: expired timers are collected, at most one tick late,
+ * by calling {@link #pollExpired(long)} regularly. It only knows the alives
+ * received by this server, so the expiry of a polled timer must be confirmed
+ * against the (clustered) alive timer cache before acting on it.
+ */
+@Component
+public class AliveTimerWheel {
+
+  /** Duration of a tick, which is also the precision of the expiry time */
+  static final long TICK_MILLIS = 1000;
+
+  /** Number of buckets (about 17 minutes per revolution) */
+  static final int WHEEL_SIZE = 1024;
+
+  private final long tickMillis;
+
+  private final List<Entry>[] buckets;
+
+  /** Scheduled timers, by id */
+  private final Map<Long, Entry> entries = new HashMap<>();
+
+  /** First tick not polled yet */
+  private long nextTick;
+
+  public AliveTimerWheel() {
+    this(TICK_MILLIS, WHEEL_SIZE, System.currentTimeMillis());
+  }
+
+  /**
+   * @param tickMillis duration of a tick
+   * @param wheelSize number of buckets
+   * @param startTime current time in milliseconds
+   */
+  @SuppressWarnings("unchecked")
+  AliveTimerWheel(final long tickMillis, final int wheelSize, final long startTime) {
+    if (tickMillis <= 0 || wheelSize <= 0) {
+      throw new IllegalArgumentException("The tick duration and the wheel size must be positive");
+    }
+    this.tickMillis = tickMillis;
+    this.buckets = new List[wheelSize];
+    for (int i = 0; i < wheelSize; i++) {
+      buckets[i] = new ArrayList<>();
+    }
+    this.nextTick = startTime / tickMillis;
+  }
+
+  /**
+   * Time from which the alive timer is considered as expired: the last update
+   * plus the alive interval plus a third of the alive interval of tolerance.
+   *
+   * @param aliveTimer the alive timer
+   * @return the expiry time in milliseconds
+   */
+  public static long expiryTime(final AliveTimer aliveTimer) {
+    return aliveTimer.getLastUpdate() + aliveTimer.getAliveInterval() + aliveTimer.getAliveInterval() / 3;
+  }
+
+  /**
+   * Schedules the timer, or reschedules it if already scheduled.
+   *
+   * @param aliveTimer an active alive timer
+   */
+  public void schedule(final AliveTimer aliveTimer) {
+    schedule(aliveTimer.getId(), expiryTime(aliveTimer));
+  }
+
+  /**
+   * Schedules the timer, or reschedules it if already scheduled.
+   *
+   * @param id the alive timer id
+   * @param expiryTime the time at which the timer expires if not rescheduled before
+   */
+  public synchronized void schedule(final Long id, final long expiryTime) {
+    Entry entry = entries.get(id);
+    if (entry == null) {
+      entry = new Entry(id);
+      entries.put(id, entry);
+      entry.expiryTime = expiryTime;
+      place(entry);
+    } else {
+      entry.expiryTime = expiryTime;
+      if (tick(expiryTime) < entry.tick) {
+        // the entry left in the later bucket is skipped as stale
+        place(entry);
+      }
+    }
+  }
+
+  /**
+   * Removes the timer from the wheel (e.g. when it is stopped).
+   *
+   * @param id the alive timer id
+   */
+  public synchronized void cancel(final Long id) {
+    Entry entry = entries.remove(id);
+    if (entry != null) {
+      entry.cancelled = true;
+    }
+  }
+
+  /**
+   * @param id the alive timer id
+   * @return true if the timer is scheduled
+   */
+  public synchronized boolean isScheduled(final Long id) {
+    return entries.containsKey(id);
+  }
+
+  /**
+   * @return the number of scheduled timers
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Removes and returns the timers whose expiry time is before the given time.
+   * Only the buckets of the ticks elapsed since the last call are visited.
+   *
+   * @param now the current time in milliseconds
+   * @return the ids of the expired timers, which are no longer scheduled
+   */
+  public synchronized List<Long> pollExpired(final long now) {
+    List<Long> expired = new ArrayList<>();
+    long nowTick = tick(now);
+    // after a long pause, visiting each bucket once is enough
+    long firstTick = Math.max(nextTick, nowTick - buckets.length + 1);
+    // from now on, timers are placed in the buckets of the next polls
+    nextTick = Math.max(nextTick, nowTick + 1);
+    for (long t = firstTick; t <= nowTick; t++) {
+      int index = index(t);
+      List<Entry> bucket = buckets[index];
+      buckets[index] = new ArrayList<>();
+      for (Entry entry : bucket) {
+        if (entry.cancelled || entry.bucket != index || entry.visitedTick == t) {
+          continue; // moved, cancelled, or second copy of an entry moved within the same bucket
+        }
+        entry.visitedTick = t;
+        if (entry.tick > nowTick) {
+          buckets[index].add(entry); // later round
+        } else if (entry.expiryTime < now) {
+          entries.remove(entry.id);
+          entry.cancelled = true;
+          expired.add(entry.id);
+        } else {
+          place(entry); // rescheduled since it was put here
+        }
+      }
+    }
+    return expired;
+  }
+
+  private void place(final Entry entry) {
+    // a timer is never placed in an already visited bucket
+    entry.tick = Math.max(tick(entry.expiryTime), nextTick);
+    entry.bucket = index(entry.tick);
+    buckets[entry.bucket].add(entry);
+  }
+
+  private long tick(final long time) {
+    return time / tickMillis;
+  }
+
+  private int index(final long tick) {
+    return (int) (tick % buckets.length);
+  }
+
+  /**
+   * Scheduled alive timer, guarded by the wheel lock.
+   */
+  private static final class Entry {
+
+    private final Long id;
+
+    private long expiryTime;
+
+    /** Tick of the bucket the entry was last placed in */
+    private long tick;
+
+    private int bucket;
+
+    /** Last tick the entry was visited in, to skip stale copies */
+    private long visitedTick = -1;
+
+    private boolean cancelled;
+
+    Entry(final Long id) {
+      this.id = id;
+    }
+  }
+}
@@ -16,13 +16,14 @@
  *****************************************************************************/
 package cern.c2mon.server.cache.common;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 
 import cern.c2mon.server.cache.config.CacheProperties;
 import cern.c2mon.server.cache.loading.common.C2monCacheLoader;
@@ -42,8 +43,10 @@ import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.cache.listener.BufferedKeyCacheListener;
 import cern.c2mon.server.cache.listener.CacheListener;
 import cern.c2mon.server.cache.listener.DefaultBufferedCacheListener;
+import cern.c2mon.server.cache.listener.KeyedMultiThreadedCacheListener;
 import cern.c2mon.server.cache.listener.MultiThreadedCacheListener;
 import cern.c2mon.server.cache.loading.SimpleCacheLoaderDAO;
+import cern.c2mon.server.cache.util.CacheObjectCopier;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.server.common.config.C2monCacheName;
 import cern.c2mon.shared.common.Cacheable;
@@ -91,9 +94,10 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
   private final C2monCacheLoader c2monCacheLoader;
 
   /**
-   * Reference to the Ehcache event listeners
+   * The registered C2MON cache listeners, with the cache objects they are
+   * interested in
    */
-  private LinkedBlockingDeque<C2monCacheListener<? super T>> cacheListeners = new LinkedBlockingDeque<>();
+  private final CopyOnWriteArrayList<CacheListenerRegistration<T>> cacheListeners = new CopyOnWriteArrayList<>();
 
   /**
    * the RegisteredEventListeners instance for this cache which is used
@@ -184,7 +188,10 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
 
   /**
    * Find an object in the cache given the object id and create a deep copy.
-   * The copy is relealized through serialization and NOT by cloning.
+   * The copy is realized by the hand-written deep copy of the cache object if
+   * it supports one (see {@link cern.c2mon.shared.common.DeepCopyable}), and
+   * through serialization otherwise or if the
+   * <code>c2mon.server.cache.serializationCopy</code> property is set.
    *
    * @param id the unique id of the cache object (should not be NULL)
    * @return Copy to the {@link Cacheable} object
@@ -193,20 +200,17 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
    * @throws UnsupportedOperationException If something goes wrong whilst creating a deep clone
    *         through serialization
    */
-  @SuppressWarnings("unchecked")
   public final T getCopy(final K id) {
     if (id != null) {
       cache.acquireReadLockOnKey(id);
 
       try {
         T reference = get(id);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(reference);
-
-        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        return (T) ois.readObject();
+        if (properties.isSerializationCopy()) {
+          return CacheObjectCopier.serializedCopy(reference);
+        } else {
+          return CacheObjectCopier.copy(reference);
+        }
       } catch (CacheElementNotFoundException cenfe) {
         throw cenfe;
       }
@@ -244,6 +248,71 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
     notifyListenersOfUpdate(value);
   }
 
+  /**
+   * Puts the objects into the cache, notifying the listeners once for all of them.
+   * The value objects themselves are put into the cache (not copies).
+   *
+   * @param values the objects to put, by key
+   */
+  public void putAll(final Map<K, T> values) {
+    if (values.isEmpty()) {
+      return;
+    }
+    List<T> updated = new ArrayList<>(values.size());
+    for (Map.Entry<K, T> entry : values.entrySet()) {
+      super.put(entry.getKey(), entry.getValue());
+      registeredEventListeners.notifyElementUpdated(new Element(entry.getKey(), null), false); //only for monitoring
+      updated.add(entry.getValue());
+    }
+
+    // clones are created on first use and shared by all listeners
+    List<T> cloned = new ArrayList<>(updated.size());
+    for (int i = 0; i < updated.size(); i++) {
+      cloned.add(null);
+    }
+    List<T> allCloned = null;
+    for (CacheListenerRegistration<T> registration : cacheListeners) {
+      if (!registration.isFiltered()) {
+        if (allCloned == null) {
+          for (int i = 0; i < updated.size(); i++) {
+            cloneAt(updated, cloned, i);
+          }
+          allCloned = cloned;
+        }
+        registration.notifyElementsUpdated(allCloned);
+      } else {
+        List<T> selection = new ArrayList<>();
+        for (int i = 0; i < updated.size(); i++) {
+          if (registration.isInterestedIn(updated.get(i))) {
+            selection.add(cloneAt(updated, cloned, i));
+          }
+        }
+        if (!selection.isEmpty()) {
+          registration.notifyElementsUpdated(selection);
+        }
+      }
+    }
+  }
+
+  private T cloneAt(final List<T> updated, final List<T> cloned, final int index) {
+    T clone = cloned.get(index);
+    if (clone == null) {
+      clone = cloneForListeners(updated.get(index));
+      cloned.set(index, clone);
+    }
+    return clone;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T cloneForListeners(final T cacheable) {
+    try {
+      return (T) cacheable.clone();
+    } catch (CloneNotSupportedException e) {
+      log.error("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
+      throw new RuntimeException("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
+    }
+  }
+
   public void notifyListenersOfUpdate(final K id) {
     notifyListenersOfUpdate(this.getCopy(id));
   }
@@ -256,60 +325,65 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
    * be called *within a lock on the cache object* so the object is not modified
    * before being passed to the listeners (using a clone).
    *
+   * <p>The clone is only created if at least one listener is interested
+   * in the object, and is shared by all listeners.
+   *
    * @param cacheable the cache object that has been updated
    */
   public void notifyListenersOfUpdate(final T cacheable) {
     registeredEventListeners.notifyElementUpdated(new Element(cacheable.getId(), null), false); //only for monitoring via Ehcache: not using Ehcache listeners o.w.
-    try {
-      @SuppressWarnings("unchecked")
-      T cloned = (T) cacheable.clone();
-      for (C2monCacheListener< ? super T> listener : cacheListeners) {
-        listener.notifyElementUpdated(cloned);
+    T cloned = null;
+    for (CacheListenerRegistration<T> registration : cacheListeners) {
+      if (registration.isInterestedIn(cacheable)) {
+        if (cloned == null) {
+          cloned = cloneForListeners(cacheable);
+        }
+        registration.notifyElementUpdated(cloned);
       }
-    } catch (CloneNotSupportedException e) {
-      log.error("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
-      throw new RuntimeException("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
     }
   }
 
   public void notifyListenerStatusConfirmation(final T cacheable, final long timestamp) {
-    try {
-      @SuppressWarnings("unchecked")
-      T cloned = (T) cacheable.clone();
-      for (C2monCacheListener< ? super T> listener : cacheListeners) {
-        listener.confirmStatus(cloned);
+    T cloned = null;
+    for (CacheListenerRegistration<T> registration : cacheListeners) {
+      if (registration.isInterestedIn(cacheable)) {
+        if (cloned == null) {
+          cloned = cloneForListeners(cacheable);
+        }
+        registration.confirmStatus(cloned);
       }
-    } catch (CloneNotSupportedException e) {
-      log.error("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
-      throw new RuntimeException("CloneNotSupportedException caught while cloning a cache element - this should never happen!", e);
     }
   }
 
   public void registerSynchronousListener(C2monCacheListener<? super T> cacheListener) {
-    cacheListeners.add(cacheListener);
+    cacheListeners.add(new CacheListenerRegistration<>(cacheListener, null));
+  }
+
+  public void registerSynchronousListener(C2monCacheListener<? super T> cacheListener, Predicate<? super T> interest) {
+    cacheListeners.add(new CacheListenerRegistration<>(cacheListener, interest));
   }
 
   public Lifecycle registerListener(C2monCacheListener<? super T> cacheListener) {
     CacheListener<? super T> wrappedCacheListener = new CacheListener<>(cacheListener);
-    cacheListeners.add(wrappedCacheListener);
+    cacheListeners.add(new CacheListenerRegistration<>(wrappedCacheListener, null));
     return wrappedCacheListener;
   }
 
   public Lifecycle registerThreadedListener(C2monCacheListener<? super T> cacheListener, int queueCapacity, int threadPoolSize) {
     MultiThreadedCacheListener<? super T> threadedCacheListener = new MultiThreadedCacheListener<>(cacheListener, queueCapacity, threadPoolSize);
-    cacheListeners.add(threadedCacheListener);
+    cacheListeners.add(new CacheListenerRegistration<>(threadedCacheListener, null));
     return threadedCacheListener;
   }
 
   public Lifecycle registerBufferedListener(final C2monBufferedCacheListener c2monBufferedCacheListener, int frequency) {
     DefaultBufferedCacheListener bufferedCacheListener = new DefaultBufferedCacheListener(c2monBufferedCacheListener, frequency);
-    cacheListeners.add(bufferedCacheListener);
+    cacheListeners.add(new CacheListenerRegistration<>(bufferedCacheListener, null));
     return bufferedCacheListener;
   }
 
   public Lifecycle registerKeyBufferedListener(final C2monBufferedCacheListener<Long> bufferedCacheListener, int frequency) {
     BufferedKeyCacheListener<T> bufferedKeyCacheListener = new BufferedKeyCacheListener<T>(bufferedCacheListener, frequency);
-    cacheListeners.add(bufferedKeyCacheListener);
+    cacheListeners.add(new CacheListenerRegistration<>(bufferedKeyCacheListener, null));
     return bufferedKeyCacheListener;
   }
 
@@ -329,8 +403,38 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
     return c2monCacheLoader;
   }
 
-  public LinkedBlockingDeque<C2monCacheListener<? super T>> getCacheListeners() {
-    return cacheListeners;
+  /**
+   * @return a view of the registered listeners; removing a listener from
+   *         it unregisters the listener
+   */
+  public Collection<C2monCacheListener<? super T>> getCacheListeners() {
+    return new AbstractCollection<C2monCacheListener<? super T>>() {
+      @Override
+      public Iterator<C2monCacheListener<? super T>> iterator() {
+        final Iterator<CacheListenerRegistration<T>> registrations = cacheListeners.iterator();
+        return new Iterator<C2monCacheListener<? super T>>() {
+          @Override
+          public boolean hasNext() {
+            return registrations.hasNext();
+          }
+
+          @Override
+          public C2monCacheListener<? super T> next() {
+            return registrations.next().getListener();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return cacheListeners.size();
+      }
+
+      @Override
+      public boolean remove(final Object listener) {
+        return cacheListeners.removeIf(registration -> registration.getListener().equals(listener));
+      }
+    };
   }
 
   /**
@@ -408,9 +512,11 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
   @ManagedOperation(description="Get listener queue sizes.")
   public List<Integer> getListenerTaskQueueSizes() {
     ArrayList<Integer> queueSizes = new ArrayList<Integer>();
-    for (C2monCacheListener listener : cacheListeners) {
+    for (C2monCacheListener listener : getCacheListeners()) {
       if (listener instanceof MultiThreadedCacheListener) {
         queueSizes.add(((MultiThreadedCacheListener) listener).getTaskQueueSize());
+      } else if (listener instanceof KeyedMultiThreadedCacheListener) {
+        queueSizes.add(((KeyedMultiThreadedCacheListener) listener).getTaskQueueSize());
       } else if (listener instanceof CacheListener) {
         queueSizes.add(((CacheListener) listener).getTaskQueueSize());
       }
@@ -425,13 +531,61 @@ public abstract class AbstractCache<K, T extends Cacheable> extends BasicCache<K
   @ManagedOperation(description="Get listener active thread number.")
   public List<Integer> getActiveThreadNumber() {
     ArrayList<Integer> threadPoolSizes = new ArrayList<Integer>();
-    for (C2monCacheListener listener : cacheListeners) {
+    for (C2monCacheListener listener : getCacheListeners()) {
       if (listener instanceof MultiThreadedCacheListener) {
         threadPoolSizes.add(((MultiThreadedCacheListener) listener).getActiveThreadPoolNumber());
+      } else if (listener instanceof KeyedMultiThreadedCacheListener) {
+        threadPoolSizes.add(((KeyedMultiThreadedCacheListener) listener).getActiveThreadPoolNumber());
       }
     }
     return threadPoolSizes;
   }
 
+  /**
+   * For management purposes.
+   * @return for each listener, the number of cache objects passed to it, the
+   *         number of updated objects it was not interested in and the time
+   *         spent in the notification calls
+   */
+  @ManagedOperation(description="Get the number of objects passed to each listener, the number it was not interested in, and the time spent in the listener.")
+  public List<String> getListenerDispatchStatistics() {
+    List<String> statistics = new ArrayList<>(cacheListeners.size());
+    for (CacheListenerRegistration<T> registration : cacheListeners) {
+      statistics.add(registration.toString());
+    }
+    return statistics;
+  }
+
+  /**
+   * For management purposes.
+   * @return the queue size of each thread of the keyed multi-threaded listeners
+   */
+  @ManagedOperation(description="Get keyed listener queue sizes per thread.")
+  public List<List<Integer>> getKeyedListenerShardQueueSizes() {
+    List<List<Integer>> queueSizes = new ArrayList<>();
+    for (C2monCacheListener listener : getCacheListeners()) {
+      if (listener instanceof KeyedMultiThreadedCacheListener) {
+        queueSizes.add(((KeyedMultiThreadedCacheListener) listener).getShardQueueSizes());
+      }
+    }
+    return queueSizes;
+  }
+
+  /**
+   * For management purposes.
+   * @return the average waiting time (in microseconds) of the updates
+   *         on each thread of the keyed multi-threaded listeners
+   */
+  @ManagedOperation(description="Get keyed listener average update latencies (us) per thread.")
+  public List<List<Long>> getKeyedListenerShardLatencies() {
+    List<List<Long>> latencies = new ArrayList<>();
+    for (C2monCacheListener listener : getCacheListeners()) {
+      if (listener instanceof KeyedMultiThreadedCacheListener) {
+        latencies.add(((KeyedMultiThreadedCacheListener) listener).getShardAverageLatencies());
+      }
+    }
+    return latencies;
+  }
+
 
 }
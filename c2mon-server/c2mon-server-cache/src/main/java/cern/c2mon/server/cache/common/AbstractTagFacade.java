@@ -346,10 +346,28 @@ public abstract class AbstractTagFacade<T extends Tag> extends AbstractFacade<T>
     }
   }
 
+  /**
+   * Puts the updated tags back into the cache, notifying the listeners once, and
+   * releases the locks. Clears both collections.
+   */
+  protected void putAndRelease(final List<Long> lockedIds, final Map<Long, T> updatedTags) {
+    try {
+      if (!updatedTags.isEmpty()) {
+        tagCache.putAll(updatedTags);
+      }
+    } finally {
+      for (int i = lockedIds.size() - 1; i >= 0; i--) {
+        tagCache.releaseWriteLockOnKey(lockedIds.get(i));
+      }
+      lockedIds.clear();
+      updatedTags.clear();
+    }
+  }
+
   /**
    * Locking of the tag is handled within the public wrapper methods.
    */
-  private void doSetQuality(final T tag,
+  protected void doSetQuality(final T tag,
                             final Collection<TagQualityStatus> flagsToAdd,
                             final Collection<TagQualityStatus> flagsToRemove,
                             final Map<TagQualityStatus, String> qualityDescription,
@@ -0,0 +1,107 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.common;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import cern.c2mon.server.cache.C2monCacheListener;
+import cern.c2mon.shared.common.Cacheable;
+
+/**
+ * A listener registered to an {@link AbstractCache}, with the cache objects
+ * it is interested in and its dispatch statistics.
+ *
+ * @param <T> the cache object type
+ */
+final class CacheListenerRegistration<T extends Cacheable> {
+
+  private final C2monCacheListener<? super T> listener;
+
+  /** Null if the listener is interested in all cache objects */
+  private final Predicate<? super T> interest;
+
+  private final AtomicLong dispatched = new AtomicLong();
+
+  private final AtomicLong skipped = new AtomicLong();
+
+  private final AtomicLong dispatchNanos = new AtomicLong();
+
+  CacheListenerRegistration(final C2monCacheListener<? super T> listener, final Predicate<? super T> interest) {
+    this.listener = listener;
+    this.interest = interest;
+  }
+
+  C2monCacheListener<? super T> getListener() {
+    return listener;
+  }
+
+  boolean isFiltered() {
+    return interest != null;
+  }
+
+  /**
+   * Evaluated on the cache object itself, before it is cloned.
+   */
+  boolean isInterestedIn(final T cacheable) {
+    if (interest == null || interest.test(cacheable)) {
+      return true;
+    }
+    skipped.incrementAndGet();
+    return false;
+  }
+
+  void notifyElementUpdated(final T cloned) {
+    long start = System.nanoTime();
+    try {
+      listener.notifyElementUpdated(cloned);
+    } finally {
+      record(1, start);
+    }
+  }
+
+  void notifyElementsUpdated(final Collection<T> cloned) {
+    long start = System.nanoTime();
+    try {
+      listener.notifyElementsUpdated(cloned);
+    } finally {
+      record(cloned.size(), start);
+    }
+  }
+
+  void confirmStatus(final T cloned) {
+    long start = System.nanoTime();
+    try {
+      listener.confirmStatus(cloned);
+    } finally {
+      record(1, start);
+    }
+  }
+
+  private void record(final int count, final long start) {
+    dispatchNanos.addAndGet(System.nanoTime() - start);
+    dispatched.addAndGet(count);
+  }
+
+  @Override
+  public String toString() {
+    return listener + ": dispatched=" + dispatched.get() + ", skipped=" + skipped.get()
+        + ", time=" + TimeUnit.NANOSECONDS.toMillis(dispatchNanos.get()) + "ms";
+  }
+}
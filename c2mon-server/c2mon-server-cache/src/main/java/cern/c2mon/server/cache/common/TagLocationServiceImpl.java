@@ -124,6 +124,22 @@ public class TagLocationServiceImpl implements TagLocationService {
     
     return resultList;
   }
+
+  @Override
+  public Collection<Long> findTagIdsByProcessId(final Long processId) {
+    Collection<Long> tagIds = dataTagCache.findTagIdsByProcessId(processId);
+    tagIds.addAll(ruleTagCache.findTagIdsByProcessId(processId));
+    tagIds.addAll(controlTagCache.findTagIdsByProcessId(processId));
+    return tagIds;
+  }
+
+  @Override
+  public Collection<Long> findTagIdsByMetadata(final String key, final Object value) {
+    Collection<Long> tagIds = dataTagCache.findTagIdsByMetadata(key, value);
+    tagIds.addAll(ruleTagCache.findTagIdsByMetadata(key, value));
+    tagIds.addAll(controlTagCache.findTagIdsByMetadata(key, value));
+    return tagIds;
+  }
   
   @Override
   public void put(Tag tag) {
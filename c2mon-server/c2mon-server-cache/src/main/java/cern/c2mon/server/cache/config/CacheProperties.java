@@ -3,6 +3,8 @@ package cern.c2mon.server.cache.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import cern.c2mon.server.cache.listener.BackpressurePolicy;
+
 /**
  * @author Justin Lewis Salmon
  */
@@ -39,4 +41,43 @@ public class CacheProperties {
    * How long (in ms) the buffered cache listener should sleep between pulls
    */
   private int bufferedListenerPullFrequency = 5000;
+
+  /**
+   * Create all cache copies through Java serialization, instead of using the
+   * hand-written deep copy of the cache objects supporting it
+   */
+  private boolean serializationCopy = false;
+
+  /**
+   * Dispatch the updates to the multi-threaded tag listeners (such as the rule
+   * evaluation) by tag id, so that the updates of a tag are processed in
+   * order. If false, all threads share one queue and the order is not kept
+   */
+  private boolean keyedListenerDispatch = true;
+
+  /**
+   * Maximum number of updates waiting per thread of a keyed listener
+   */
+  private int keyedListenerQueueCapacity = Integer.MAX_VALUE;
+
+  /**
+   * What a keyed listener does with an update when the queue of its thread is
+   * full: BLOCK the cache update, DROP_OLDEST waiting update, or COALESCE the
+   * update with a waiting update of the same tag
+   */
+  private BackpressurePolicy keyedListenerBackpressure = BackpressurePolicy.BLOCK;
+
+  /**
+   * Answer the tag name lookups (exact and with wildcards) of the tag caches
+   * from an in-memory index of the tag names, instead of the Ehcache search.
+   * Ignored in "multi" mode
+   */
+  private boolean nameIndex = true;
+
+  /**
+   * Maintain in-memory secondary indexes of the tag caches (by process,
+   * equipment and sub-equipment id, and by metadata). If false, the queries
+   * on these relations scan the caches. Ignored in "multi" mode
+   */
+  private boolean secondaryIndexes = true;
 }
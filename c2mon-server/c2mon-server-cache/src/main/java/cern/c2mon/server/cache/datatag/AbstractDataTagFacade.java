@@ -17,7 +17,14 @@
 package cern.c2mon.server.cache.datatag;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -389,16 +396,7 @@ public abstract class AbstractDataTagFacade<T extends DataTag> extends AbstractT
     tagCache.acquireWriteLockOnKey(dataTagId);
     try {
       T dataTag = tagCache.get(dataTagId);
-
-      // Before updating the new value to the cache convert the value to the proper type.
-      // In the process of the deserialization the dataType can still divert from the defined dataType.
-      // If the dataType is an arbitrary object do nothing because the server don't work with this kind of values at all.
-      if(sourceDataTagValue != null
-          && sourceDataTagValue.getValue() != null
-          && isKnownClass(dataTag.getDataType())){
-        Object convertedValue = TypeConverter.cast(sourceDataTagValue.getValue(), dataTag.getDataType());
-        sourceDataTagValue.setValue(convertedValue);
-      }
+      convertValue(dataTag, sourceDataTagValue);
 
       Event<Boolean> returnEvent = updateFromSource(dataTag, sourceDataTagValue);
       if (returnEvent.getReturnValue()) {
@@ -410,6 +408,95 @@ public abstract class AbstractDataTagFacade<T extends DataTag> extends AbstractT
     }
   }
 
+  /**
+   * Updates the tags from all values of an incoming DAQ message, keeping only the
+   * latest value of each tag.
+   *
+   * <p>The write locks are taken in the order of the tag ids. Further locks are only
+   * taken if they are free: if a lock is held by another thread, the tags locked
+   * so far are put back into the cache and notified, and their locks released,
+   * before waiting for it. A thread therefore never waits for a lock while holding
+   * others, which excludes deadlocks with threads locking the same tags (or tags
+   * sharing the same lock stripe) in another order.
+   *
+   * @param sourceDataTagValues the values received from the data acquisition layer
+   * @return for each tag found in the cache, whether it was updated
+   */
+  public final Map<Long, Event<Boolean>> updateFromSource(final Collection<SourceDataTagValue> sourceDataTagValues) {
+    TreeMap<Long, SourceDataTagValue> latestValues = new TreeMap<>();
+    for (SourceDataTagValue sourceDataTagValue : sourceDataTagValues) {
+      if (sourceDataTagValue == null || sourceDataTagValue.getId() == null) {
+        log.error("Attempting to update a dataTag with a null source value or id - ignoring update.");
+        continue;
+      }
+      SourceDataTagValue previous = latestValues.get(sourceDataTagValue.getId());
+      if (previous == null || !isOlder(sourceDataTagValue, previous)) {
+        latestValues.put(sourceDataTagValue.getId(), sourceDataTagValue);
+      }
+    }
+
+    Map<Long, Event<Boolean>> results = new HashMap<>();
+    List<Long> lockedIds = new ArrayList<>();
+    Map<Long, T> updatedTags = new LinkedHashMap<>();
+    try {
+      for (SourceDataTagValue sourceDataTagValue : latestValues.values()) {
+        Long dataTagId = sourceDataTagValue.getId();
+        if (lockedIds.isEmpty()) {
+          tagCache.acquireWriteLockOnKey(dataTagId);
+        } else if (!tagCache.tryWriteLockOnKey(dataTagId, 0L)) {
+          putAndRelease(lockedIds, updatedTags);
+          tagCache.acquireWriteLockOnKey(dataTagId);
+        }
+        lockedIds.add(dataTagId);
+
+        try {
+          T dataTag = tagCache.get(dataTagId);
+          convertValue(dataTag, sourceDataTagValue);
+          Event<Boolean> event = updateFromSource(dataTag, sourceDataTagValue);
+          if (event.getReturnValue()) {
+            updatedTags.put(dataTagId, dataTag);
+          }
+          results.put(dataTagId, event);
+        } catch (CacheElementNotFoundException e) {
+          log.trace("Tag #{} not found in the cache", dataTagId);
+        }
+      }
+    } finally {
+      putAndRelease(lockedIds, updatedTags);
+    }
+    return results;
+  }
+
+  /**
+   * Compares two values of the same tag in the same way as the cache object
+   * is compared to the incoming value (DAQ timestamps if both are set, source
+   * timestamps otherwise).
+   *
+   * @return true if the value is older than the other one
+   */
+  private static boolean isOlder(final SourceDataTagValue value, final SourceDataTagValue other) {
+    if (value.getDaqTimestamp() != null && other.getDaqTimestamp() != null) {
+      return value.getDaqTimestamp().before(other.getDaqTimestamp());
+    } else if (value.getTimestamp() != null && other.getTimestamp() != null) {
+      return value.getTimestamp().before(other.getTimestamp());
+    }
+    return false;
+  }
+
+  /**
+   * Before updating the new value to the cache convert the value to the proper type.
+   * In the process of the deserialization the dataType can still divert from the defined dataType.
+   * If the dataType is an arbitrary object do nothing because the server don't work with this kind of values at all.
+   */
+  private void convertValue(final T dataTag, final SourceDataTagValue sourceDataTagValue) {
+    if (sourceDataTagValue != null
+        && sourceDataTagValue.getValue() != null
+        && isKnownClass(dataTag.getDataType())) {
+      Object convertedValue = TypeConverter.cast(sourceDataTagValue.getValue(), dataTag.getDataType());
+      sourceDataTagValue.setValue(convertedValue);
+    }
+  }
+
   /**
    * To be called internally only within a dataTag synchronized block. Should not be made public.
    */
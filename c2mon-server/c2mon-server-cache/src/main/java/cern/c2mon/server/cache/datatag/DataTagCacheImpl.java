@@ -96,11 +96,17 @@ public class DataTagCacheImpl extends AbstractTagCache<DataTag> implements DataT
 
   @Override
   public List<Long> getDataTagIdsByEquipmentId(Long equipmentId) {
+    if (equipmentId != null && isIndexesMaintained()) {
+      return findTagIdsByEquipmentId(equipmentId);
+    }
     return getDataTagIds(equipmentId, "equipmentId");
   }
 
   @Override
   public List<Long> getDataTagIdsBySubEquipmentId(Long subEquipmentId) {
+    if (subEquipmentId != null && isIndexesMaintained()) {
+      return findTagIdsBySubEquipmentId(subEquipmentId);
+    }
     return getDataTagIds(subEquipmentId, "subEquipmentId");
   }
 
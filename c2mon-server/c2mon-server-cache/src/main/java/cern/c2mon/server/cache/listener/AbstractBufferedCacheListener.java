@@ -117,7 +117,8 @@ public abstract class AbstractBufferedCacheListener<T extends Cacheable, S> impl
    * A simple wrapper method around {@link AbstractBufferedCacheListener#notifyElementUpdated(Cacheable)}
    * @param cacheableList A list of {@link Cacheable} objects
    */
-  public void notifyElementsUpdated(Collection<T> cacheableList) {
+  @Override
+  public void notifyElementsUpdated(Collection<? extends T> cacheableList) {
     for (T cacheable : cacheableList) {
       notifyElementUpdated(cacheable);
     }
@@ -0,0 +1,45 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.listener;
+
+/**
+ * What a {@link KeyedMultiThreadedCacheListener} does with a new update when
+ * the queue of the worker thread in charge of the tag is full.
+ */
+public enum BackpressurePolicy {
+
+  /**
+   * The cache notification thread waits until the worker has made space
+   * in its queue. No update is lost, but a slow listener slows down the
+   * cache updates.
+   */
+  BLOCK,
+
+  /**
+   * The oldest update waiting in the queue of the worker is dropped to make
+   * space for the new one. The cache notification thread never waits.
+   */
+  DROP_OLDEST,
+
+  /**
+   * An update still waiting in the queue is replaced by the newer update of
+   * the same tag, so the listener only sees the latest state of a tag. The
+   * cache notification thread only waits if the queue is full of distinct
+   * tags.
+   */
+  COALESCE
+}
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.cache.listener;
 
+import java.util.function.Predicate;
+
 import cern.c2mon.server.cache.config.CacheProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
@@ -41,8 +43,9 @@ import cern.c2mon.shared.util.threadhandler.ThreadHandler;
  *
  * <p>Internally, registration on a single thread uses the
  * {@link ThreadHandler} implementation while registrations
- * on several threads use the {@link MultiThreadedCacheListener}
- * and the Java concurrency library.
+ * on several threads use the {@link KeyedMultiThreadedCacheListener}
+ * (or the {@link MultiThreadedCacheListener} if the updates of a tag
+ * need not be kept in order) and the Java concurrency library.
  *
  * @author Mark Brightwell
  *
@@ -107,11 +110,23 @@ public class CacheRegistrationServiceImpl implements CacheRegistrationService {
 
   @Override
   public Lifecycle registerToAllTags(final C2monCacheListener<Tag> tagCacheListener, final int threads) {
+    return registerToAllTags(tagCacheListener, threads, null);
+  }
+
+  @Override
+  public Lifecycle registerToAllTags(final C2monCacheListener<Tag> tagCacheListener, final int threads, final Predicate<Tag> interest) {
     if (threads == 1) {
-      return registerToAllTags(tagCacheListener);
+      CacheListener<Tag> wrappedCacheListener = new CacheListener<Tag>(tagCacheListener);
+      registerListenerToTags(wrappedCacheListener, interest);
+      return wrappedCacheListener;
+    } else if (properties.isKeyedListenerDispatch()) {
+      KeyedMultiThreadedCacheListener<Tag> keyedCacheListener = new KeyedMultiThreadedCacheListener<>(tagCacheListener,
+          properties.getKeyedListenerQueueCapacity(), threads, properties.getKeyedListenerBackpressure());
+      registerListenerToTags(keyedCacheListener, interest);
+      return keyedCacheListener;
     } else {
       MultiThreadedCacheListener<Tag> threadedCacheListener = new MultiThreadedCacheListener<Tag>(tagCacheListener, QUEUE_SIZE_DEFAULT, threads);
-      registerListenerToTags(threadedCacheListener);
+      registerListenerToTags(threadedCacheListener, interest);
       return threadedCacheListener;
     }
   }
@@ -136,6 +151,11 @@ public class CacheRegistrationServiceImpl implements CacheRegistrationService {
     registerListenerToTags(tagCacheListener);
   }
 
+  @Override
+  public void registerSynchronousToAllTags(final C2monCacheListener<Tag> tagCacheListener, final Predicate<Tag> interest) {
+    registerListenerToTags(tagCacheListener, interest);
+  }
+
   //TODO needs testing
   @Override
   public Lifecycle registerToDataTags(final C2monCacheListener<DataTag> dataTagCacheListener) {
@@ -185,4 +205,17 @@ public class CacheRegistrationServiceImpl implements CacheRegistrationService {
     ruleTagCache.registerSynchronousListener(cacheListener);
   }
 
+  /**
+   * @param interest null if the listener is interested in all tags
+   */
+  private void registerListenerToTags(C2monCacheListener<Tag> cacheListener, Predicate<Tag> interest) {
+    if (interest == null) {
+      registerListenerToTags(cacheListener);
+    } else {
+      dataTagCache.registerSynchronousListener(cacheListener, interest);
+      controlTagCache.registerSynchronousListener(cacheListener, interest);
+      ruleTagCache.registerSynchronousListener(cacheListener, interest);
+    }
+  }
+
 }
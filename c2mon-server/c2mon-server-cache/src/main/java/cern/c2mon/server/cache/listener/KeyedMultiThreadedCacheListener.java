@@ -0,0 +1,469 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.server.cache.C2monCacheListener;
+import cern.c2mon.server.common.component.Lifecycle;
+import cern.c2mon.shared.common.Cacheable;
+
+/**
+ * Multi-threaded cache listener that keeps the updates of a given cache
+ * object in order.
+ *
+ * <p>Unlike the {@link MultiThreadedCacheListener}, where all threads take
+ * the updates from a single shared queue, each worker thread has its own
+ * lock-free queue, and the updates are dispatched to the workers by hashing
+ * the id of the cache object. All updates of a tag are therefore passed to
+ * the wrapped listener on the same thread, in the order of the cache updates,
+ * and the cache threads do not contend on a single queue lock.
+ *
+ * <p>What happens when the queue of a worker is full is decided by the
+ * {@link BackpressurePolicy}.
+ *
+ * <p>The queue depth and the waiting time of the updates are recorded per
+ * worker for monitoring.
+ *
+ * @param <T> type of cache object expected by listener
+ */
+@Slf4j
+public class KeyedMultiThreadedCacheListener<T extends Cacheable> implements C2monCacheListener<T>, Lifecycle {
+
+  /**
+   * The number of milliseconds an idle thread waits between checking for shutdown requests.
+   */
+  private static final long THREAD_SHUTDOWN_CHECK_INTERVAL = 2000;
+
+  /**
+   * How long a blocked cache thread waits before checking the queue again.
+   */
+  private static final long BLOCKED_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  /**
+   * The wrapped listener.
+   */
+  private final C2monCacheListener<? super T> c2monCacheListener;
+
+  /**
+   * Maximum number of updates waiting per worker thread.
+   */
+  private final int queueCapacity;
+
+  private final BackpressurePolicy backpressurePolicy;
+
+  /**
+   * One shard per worker thread.
+   */
+  private final Shard[] shards;
+
+  /**
+   * Shutdown request made.
+   */
+  private volatile boolean shutdownRequestMade = false;
+
+  /**
+   * The listener can only be started and stopped once.
+   */
+  private volatile boolean running = false;
+
+  /**
+   * Constructor.
+   * @param c2monCacheListener the listener wrapped by this class
+   *        (the module listener)
+   * @param queueCapacity the maximum number of updates waiting for
+   *        each thread
+   * @param threadPoolSize the number of threads that the module
+   *        should be called on
+   * @param backpressurePolicy what to do with an update when the
+   *        queue of its thread is full
+   */
+  public KeyedMultiThreadedCacheListener(final C2monCacheListener<? super T> c2monCacheListener, final int queueCapacity,
+                                         final int threadPoolSize, final BackpressurePolicy backpressurePolicy) {
+    if (queueCapacity < 1 || threadPoolSize < 1) {
+      throw new IllegalArgumentException("The queue capacity and the number of threads must be positive");
+    }
+    this.c2monCacheListener = c2monCacheListener;
+    this.queueCapacity = queueCapacity;
+    this.backpressurePolicy = backpressurePolicy;
+    this.shards = new KeyedMultiThreadedCacheListener.Shard[threadPoolSize];
+    for (int i = 0; i < threadPoolSize; i++) {
+      shards[i] = new Shard();
+      Thread thread = new Thread(shards[i], "KeyedCacheListener-" + c2monCacheListener.getClass().getSimpleName() + "-" + i);
+      thread.setDaemon(true);
+      shards[i].thread = thread;
+      thread.start();
+    }
+  }
+
+  @Override
+  public void notifyElementUpdated(final T cacheable) {
+    dispatch(cacheable, true);
+  }
+
+  @Override
+  public void confirmStatus(final T cacheable) {
+    dispatch(cacheable, false);
+  }
+
+  private void dispatch(final T cacheable, final boolean update) {
+    if (shutdownRequestMade) {
+      log.warn("Attempt at notifying of element update after shutdown started "
+          + "- should not happen and indicates incorrect shutdown sequence!");
+      return;
+    }
+    shardFor(cacheable.getId()).enqueue(cacheable, update);
+  }
+
+  private Shard shardFor(final Long id) {
+    if (id == null) {
+      return shards[0];
+    }
+    int hash = id.hashCode();
+    hash ^= hash >>> 16;
+    return shards[(hash & Integer.MAX_VALUE) % shards.length];
+  }
+
+  /**
+   * Is running until a shutdown request is made.
+   */
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Can only be started once at server start-up.
+   */
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  /**
+   * Lets the threads process all waiting updates, then stops them.
+   * Should be called when the cache is closed on server shutdown.
+   * Will have no effect if called a second time.
+   */
+  @Override
+  public synchronized void stop() {
+    if (running) {
+      log.debug("Shutting down keyed multithreaded cache listener.");
+      running = false;
+      shutdownRequestMade = true;
+      for (Shard shard : shards) {
+        LockSupport.unpark(shard.thread);
+      }
+      for (Shard shard : shards) {
+        try {
+          shard.thread.join(THREAD_SHUTDOWN_CHECK_INTERVAL);
+        } catch (InterruptedException ex) {
+          log.error("Interrupted while waiting for shutdown to complete", ex);
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * For management purposes.
+   * @return the number of threads currently notifying the listener
+   */
+  public int getActiveThreadPoolNumber() {
+    int active = 0;
+    for (Shard shard : shards) {
+      if (!shard.waiting && shard.thread.isAlive()) {
+        active++;
+      }
+    }
+    return active;
+  }
+
+  /**
+   * For management purposes.
+   * @return the number of updates waiting on all threads
+   */
+  public int getTaskQueueSize() {
+    int size = 0;
+    for (Shard shard : shards) {
+      size += shard.size.get();
+    }
+    return size;
+  }
+
+  /**
+   * For management purposes.
+   * @return the number of updates waiting, per thread
+   */
+  public List<Integer> getShardQueueSizes() {
+    List<Integer> sizes = new ArrayList<>(shards.length);
+    for (Shard shard : shards) {
+      sizes.add(shard.size.get());
+    }
+    return sizes;
+  }
+
+  /**
+   * For management purposes.
+   * @return the average time (in microseconds) the updates waited
+   *         before being passed to the listener, per thread
+   */
+  public List<Long> getShardAverageLatencies() {
+    List<Long> latencies = new ArrayList<>(shards.length);
+    for (Shard shard : shards) {
+      long processed = shard.processed.get();
+      latencies.add(processed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(shard.totalLatency.get() / processed));
+    }
+    return latencies;
+  }
+
+  /**
+   * For management purposes.
+   * @return the longest time (in microseconds) an update waited before
+   *         being passed to the listener, per thread
+   */
+  public List<Long> getShardMaxLatencies() {
+    List<Long> latencies = new ArrayList<>(shards.length);
+    for (Shard shard : shards) {
+      latencies.add(TimeUnit.NANOSECONDS.toMicros(shard.maxLatency));
+    }
+    return latencies;
+  }
+
+  /**
+   * @return the number of updates dropped with the {@link BackpressurePolicy#DROP_OLDEST} policy
+   */
+  public long getDroppedCount() {
+    long dropped = 0;
+    for (Shard shard : shards) {
+      dropped += shard.dropped.get();
+    }
+    return dropped;
+  }
+
+  /**
+   * @return the number of updates merged into a waiting update of the same
+   *         tag with the {@link BackpressurePolicy#COALESCE} policy
+   */
+  public long getCoalescedCount() {
+    long coalesced = 0;
+    for (Shard shard : shards) {
+      coalesced += shard.coalesced.get();
+    }
+    return coalesced;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[" + c2monCacheListener + "]";
+  }
+
+  /**
+   * An update waiting to be passed to the listener.
+   */
+  private final class Task {
+
+    private final Long key;
+
+    private final long enqueueTime = System.nanoTime();
+
+    /**
+     * With the {@link BackpressurePolicy#COALESCE} policy, these two fields
+     * are only modified and read under the lock of the pending map entry.
+     */
+    private T cacheable;
+
+    private boolean update;
+
+    private Task(final T cacheable, final boolean update) {
+      this.key = cacheable.getId();
+      this.cacheable = cacheable;
+      this.update = update;
+    }
+
+    /**
+     * A status confirmation followed by an update, or the other way round,
+     * is passed as an update of the latest object.
+     */
+    private Task merge(final T newer, final boolean newerIsUpdate) {
+      cacheable = newer;
+      update |= newerIsUpdate;
+      return this;
+    }
+  }
+
+  /**
+   * The queue and the thread of one worker.
+   */
+  private final class Shard implements Runnable {
+
+    private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The waiting update of each tag, only used with the
+     * {@link BackpressurePolicy#COALESCE} policy.
+     */
+    private final ConcurrentHashMap<Long, Task> pending =
+        backpressurePolicy == BackpressurePolicy.COALESCE ? new ConcurrentHashMap<>() : null;
+
+    /**
+     * The number of updates in the queue, including the ones about to be added.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Only written by the worker thread.
+     */
+    private volatile long maxLatency;
+
+    /**
+     * Set while the worker thread is parked on an empty queue.
+     */
+    private volatile boolean waiting;
+
+    private Thread thread;
+
+    private void enqueue(final T cacheable, final boolean update) {
+      Long key = cacheable.getId();
+      if (pending != null && key != null) {
+        if (pending.computeIfPresent(key, (k, waitingTask) -> waitingTask.merge(cacheable, update)) != null) {
+          coalesced.incrementAndGet();
+          return;
+        }
+        if (!reserve()) {
+          return;
+        }
+        Task task = new Task(cacheable, update);
+        if (pending.merge(key, task, (waitingTask, newTask) -> waitingTask.merge(cacheable, update)) != task) {
+          // merged into an update added in the meantime by another thread
+          size.decrementAndGet();
+          coalesced.incrementAndGet();
+          return;
+        }
+        offer(task);
+      } else if (reserve()) {
+        offer(new Task(cacheable, update));
+      }
+    }
+
+    /**
+     * Makes space for one more update in the queue, applying the
+     * backpressure policy if the queue is full.
+     * @return false if the update must be discarded
+     */
+    private boolean reserve() {
+      while (true) {
+        int current = size.get();
+        if (current < queueCapacity || shutdownRequestMade) {
+          if (size.compareAndSet(current, current + 1)) {
+            return true;
+          }
+        } else if (backpressurePolicy == BackpressurePolicy.DROP_OLDEST) {
+          if (queue.poll() != null) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+          } else {
+            Thread.yield();
+          }
+        } else {
+          LockSupport.parkNanos(this, BLOCKED_WAIT_NANOS);
+          if (Thread.currentThread().isInterrupted()) {
+            log.error("Interrupted while waiting for the queue of listener {} to free space: the update is lost",
+                c2monCacheListener.getClass().getSimpleName());
+            return false;
+          }
+        }
+      }
+    }
+
+    private void offer(final Task task) {
+      queue.offer(task);
+      if (waiting) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    /**
+     * Runs from start up to shutdown and passes the updates of the queue
+     * to the listener.
+     */
+    @Override
+    public void run() {
+      while (!shutdownRequestMade) {
+        Task task = queue.poll();
+        if (task != null) {
+          process(task);
+        } else {
+          waiting = true;
+          if (queue.isEmpty() && !shutdownRequestMade) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(THREAD_SHUTDOWN_CHECK_INTERVAL));
+          }
+          waiting = false;
+        }
+      }
+
+      //empty the queue before shutting down
+      Task task;
+      while ((task = queue.poll()) != null) {
+        process(task);
+      }
+    }
+
+    private void process(final Task task) {
+      if (pending != null && task.key != null) {
+        // no update can be merged into the task after this
+        pending.remove(task.key, task);
+      }
+      size.decrementAndGet();
+
+      long latency = System.nanoTime() - task.enqueueTime;
+      totalLatency.addAndGet(latency);
+      if (latency > maxLatency) {
+        maxLatency = latency;
+      }
+
+      try {
+        if (task.update) {
+          c2monCacheListener.notifyElementUpdated(task.cacheable);
+        } else {
+          c2monCacheListener.confirmStatus(task.cacheable);
+        }
+      } catch (Exception e) {
+        log.error("Exception caught when notifying listener: the update could not be processed.", e);
+      }
+      processed.incrementAndGet();
+    }
+  }
+}
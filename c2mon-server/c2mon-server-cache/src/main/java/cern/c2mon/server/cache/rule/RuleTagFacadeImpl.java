@@ -17,7 +17,13 @@
 package cern.c2mon.server.cache.rule;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
@@ -29,6 +35,7 @@ import cern.c2mon.server.cache.AlarmCache;
 import cern.c2mon.server.cache.AlarmFacade;
 import cern.c2mon.server.cache.RuleTagCache;
 import cern.c2mon.server.cache.RuleTagFacade;
+import cern.c2mon.server.cache.RuleTagUpdate;
 import cern.c2mon.server.cache.common.AbstractTagFacade;
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.common.rule.RuleTag;
@@ -161,6 +168,49 @@ public class RuleTagFacadeImpl extends AbstractTagFacade<RuleTag> implements Rul
     }
   }
 
+  @Override
+  public void update(final Collection<RuleTagUpdate> updates) {
+    TreeMap<Long, RuleTagUpdate> latestUpdates = new TreeMap<>();
+    for (RuleTagUpdate update : updates) {
+      latestUpdates.put(update.getId(), update);
+    }
+
+    List<Long> lockedIds = new ArrayList<>();
+    Map<Long, RuleTag> updatedRules = new LinkedHashMap<>();
+    try {
+      for (RuleTagUpdate update : latestUpdates.values()) {
+        Long id = update.getId();
+        if (lockedIds.isEmpty()) {
+          tagCache.acquireWriteLockOnKey(id);
+        } else if (!tagCache.tryWriteLockOnKey(id, 0L)) {
+          putAndRelease(lockedIds, updatedRules);
+          tagCache.acquireWriteLockOnKey(id);
+        }
+        lockedIds.add(id);
+
+        try {
+          RuleTag ruleTag = tagCache.get(id);
+          if (!update.isValid()) {
+            doSetQuality(ruleTag, update.getInvalidQualityStates(), null, update.getQualityDescriptions(), update.getTimestamp());
+            updatedRules.put(id, ruleTag);
+          } else if (!filterout(ruleTag, update.getValue(), update.getValueDescription(), null, null, update.getTimestamp())) {
+            ruleTagCacheObjectFacade.validate(ruleTag);
+            ruleTagCacheObjectFacade.update(ruleTag, update.getValue(), update.getValueDescription(), update.getTimestamp());
+            updatedRules.put(id, ruleTag);
+            updateCount++;
+            log((RuleTagCacheObject) ruleTag);
+          } else {
+            log.trace("Filtering out repeated update for rule {}", id);
+          }
+        } catch (CacheElementNotFoundException cacheEx) {
+          log.warn("Unable to locate rule #{} in cache (can happen during rule reconfiguration) - no update performed.", id);
+        }
+      }
+    } finally {
+      putAndRelease(lockedIds, updatedRules);
+    }
+  }
+
   /**
    * For rules, sets the rule text field (which in turn parses the rule expression and
    * set the corresponding field). Also sets the parent equipments and processes for this
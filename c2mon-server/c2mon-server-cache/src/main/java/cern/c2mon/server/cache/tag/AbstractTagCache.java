@@ -16,22 +16,36 @@
  *****************************************************************************/
 package cern.c2mon.server.cache.tag;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
 import cern.c2mon.server.cache.config.CacheProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedOperation;
 
 import cern.c2mon.server.cache.C2monCacheWithSupervision;
 import cern.c2mon.server.cache.CacheSupervisionListener;
 import cern.c2mon.server.cache.ClusterCache;
 import cern.c2mon.server.cache.common.AbstractCache;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.cache.loading.common.C2monCacheLoader;
 import cern.c2mon.server.cache.loading.SimpleCacheLoaderDAO;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.metadata.Metadata;
 import cern.c2mon.server.common.tag.AbstractTagCacheObject;
 import cern.c2mon.server.common.tag.Tag;
 import net.sf.ehcache.Ehcache;
@@ -65,6 +79,42 @@ public abstract class AbstractTagCache<T extends Tag> extends AbstractCache<Long
   private final List<CacheSupervisionListener< ? super T>> listenersWithSupervision;
   private final ReentrantReadWriteLock listenerLock;
 
+  /**
+   * Index of the tag names, used instead of the Ehcache search for the name
+   * lookups; null if disabled
+   */
+  private final TagNameIndex nameIndex;
+
+  /**
+   * Secondary indexes of the tags, by index name
+   */
+  private final Map<String, TagIndex<T>> indexes = new ConcurrentHashMap<>();
+
+  /**
+   * Indexes registered with {@link #registerIndex}: their keys can depend on
+   * any tag field, so they are not covered by the indexed keys snapshots
+   */
+  private final List<TagIndex<T>> registeredIndexes = new CopyOnWriteArrayList<>();
+
+  /**
+   * Snapshot of the name and of the built-in index keys of each indexed tag,
+   * used to skip the re-indexing when they did not change (the usual case
+   * for the value updates)
+   */
+  private final Map<Long, IndexedKeys> indexedKeys = new ConcurrentHashMap<>();
+
+  /**
+   * Whether the secondary indexes are maintained; if not, they are only used
+   * to extract the index keys when scanning the cache
+   */
+  private final boolean indexesMaintained;
+
+  /**
+   * Set once the indexes have been built from the cache: an index registered
+   * later has to be built at registration
+   */
+  private volatile boolean indexesBuilt;
+
   /**
    * Constructor.
    */
@@ -77,6 +127,207 @@ public abstract class AbstractTagCache<T extends Tag> extends AbstractCache<Long
     super(clusterCache, ehcache, cacheLoader, c2monCacheLoader, cacheLoaderDAO, properties);
     listenersWithSupervision = new ArrayList<>();
     listenerLock = new ReentrantReadWriteLock();
+    // in multi-server mode, the index of a server would miss the changes made by the others
+    if (properties != null && properties.isNameIndex() && !"multi".equalsIgnoreCase(properties.getMode())) {
+      nameIndex = new TagNameIndex();
+    } else {
+      nameIndex = null;
+    }
+    indexesMaintained = properties != null && properties.isSecondaryIndexes() && !"multi".equalsIgnoreCase(properties.getMode());
+    indexes.put(PROCESS_INDEX, new TagIndex<>(PROCESS_INDEX, Tag::getProcessIds));
+    indexes.put(EQUIPMENT_INDEX, new TagIndex<>(EQUIPMENT_INDEX, Tag::getEquipmentIds));
+    indexes.put(SUB_EQUIPMENT_INDEX, new TagIndex<>(SUB_EQUIPMENT_INDEX, Tag::getSubEquipmentIds));
+    indexes.put(METADATA_INDEX, new TagIndex<>(METADATA_INDEX, AbstractTagCache::metadataEntries));
+  }
+
+  /**
+   * Builds the tag indexes from the (preloaded) cache after the common
+   * initialization.
+   */
+  @Override
+  protected void commonInit() {
+    super.commonInit();
+    rebuildIndexes();
+  }
+
+  /**
+   * Rebuilds the tag name index and the secondary indexes from the tags
+   * currently in the cache. Needed after the tags have been put directly into
+   * the Ehcache, as done by the cache preloading.
+   */
+  @ManagedOperation(description = "Rebuild the tag name index and the secondary indexes from the cache")
+  public void rebuildIndexes() {
+    if (nameIndex == null && !indexesMaintained) {
+      return;
+    }
+    if (nameIndex != null) {
+      nameIndex.clear();
+    }
+    if (indexesMaintained) {
+      indexes.values().forEach(TagIndex::clear);
+    }
+    indexedKeys.clear();
+    int count = 0;
+    for (Long key : getKeys()) {
+      try {
+        updateIndexes(get(key));
+        count++;
+      } catch (CacheElementNotFoundException e) {
+        log.debug("Tag " + key + " removed from the cache while building the indexes");
+      }
+    }
+    indexesBuilt = true;
+    log.info(String.format("Indexed %d tags in %s cache", count, getCacheName()));
+  }
+
+  @Override
+  public void registerIndex(final String name, final Function<? super T, ? extends Collection<?>> keyExtractor) {
+    TagIndex<T> index = new TagIndex<>(name, keyExtractor);
+    if (indexes.putIfAbsent(name, index) != null) {
+      throw new IllegalArgumentException("An index named " + name + " is already registered in " + getCacheName() + " cache");
+    }
+    registeredIndexes.add(index);
+    if (indexesMaintained && indexesBuilt) {
+      for (Long key : getKeys()) {
+        acquireReadLockOnKey(key);
+        try {
+          index.put(get(key));
+        } catch (CacheElementNotFoundException e) {
+          log.debug("Tag " + key + " removed from the cache while building index " + name);
+        } finally {
+          releaseReadLockOnKey(key);
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<Long> findTagIdsByIndex(final String indexName, final Object key) {
+    TagIndex<T> index = indexes.get(indexName);
+    if (index == null) {
+      throw new IllegalArgumentException("No index named " + indexName + " in " + getCacheName() + " cache");
+    }
+    if (indexesMaintained) {
+      return index.get(key);
+    }
+    List<Long> ids = new ArrayList<>();
+    for (Long id : getKeys()) {
+      try {
+        if (index.extractKeys(get(id)).contains(key)) {
+          ids.add(id);
+        }
+      } catch (CacheElementNotFoundException e) {
+        log.debug("Tag " + id + " removed from the cache during the scan of index " + indexName);
+      }
+    }
+    return ids;
+  }
+
+  @Override
+  public List<Long> findTagIdsByProcessId(final Long processId) {
+    return findTagIdsByIndex(PROCESS_INDEX, processId);
+  }
+
+  @Override
+  public List<Long> findTagIdsByEquipmentId(final Long equipmentId) {
+    return findTagIdsByIndex(EQUIPMENT_INDEX, equipmentId);
+  }
+
+  @Override
+  public List<Long> findTagIdsBySubEquipmentId(final Long subEquipmentId) {
+    return findTagIdsByIndex(SUB_EQUIPMENT_INDEX, subEquipmentId);
+  }
+
+  @Override
+  public List<Long> findTagIdsByMetadata(final String key, final Object value) {
+    return findTagIdsByIndex(METADATA_INDEX, new AbstractMap.SimpleImmutableEntry<>(key, value));
+  }
+
+  /**
+   * @return true if the secondary indexes are maintained, false if the
+   *         queries on them scan the cache
+   */
+  protected boolean isIndexesMaintained() {
+    return indexesMaintained;
+  }
+
+  @Override
+  public void putQuiet(final T value) {
+    super.putQuiet(value);
+    updateIndexes(value);
+  }
+
+  @Override
+  public void put(final Long key, final T value) {
+    super.put(key, value);
+    updateIndexes(value);
+  }
+
+  @Override
+  public void putAll(final Map<Long, T> values) {
+    super.putAll(values);
+    for (T value : values.values()) {
+      updateIndexes(value);
+    }
+  }
+
+  @Override
+  public boolean remove(final Long id) {
+    boolean removed = super.remove(id);
+    indexedKeys.remove(id);
+    if (nameIndex != null) {
+      nameIndex.remove(id);
+    }
+    if (indexesMaintained) {
+      for (TagIndex<T> index : indexes.values()) {
+        index.remove(id);
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Indexes the tag. The name index and the built-in indexes are only
+   * updated if the name, the process/equipment/sub-equipment ids or the
+   * metadata of the tag changed since it was last indexed.
+   */
+  private void updateIndexes(final T tag) {
+    if (nameIndex == null && !indexesMaintained) {
+      return;
+    }
+    IndexedKeys previous = indexedKeys.get(tag.getId());
+    if (previous == null || !previous.matches(tag)) {
+      if (nameIndex != null) {
+        nameIndex.put(tag.getId(), tag.getName());
+      }
+      if (indexesMaintained) {
+        indexes.get(PROCESS_INDEX).put(tag);
+        indexes.get(EQUIPMENT_INDEX).put(tag);
+        indexes.get(SUB_EQUIPMENT_INDEX).put(tag);
+        indexes.get(METADATA_INDEX).put(tag);
+      }
+      indexedKeys.put(tag.getId(), new IndexedKeys(tag));
+    }
+    if (indexesMaintained) {
+      for (TagIndex<T> index : registeredIndexes) {
+        index.put(tag);
+      }
+    }
+  }
+
+  /**
+   * @return the metadata of the tag as immutable (key, value) entries
+   */
+  private static Collection<Map.Entry<String, Object>> metadataEntries(final Tag tag) {
+    Metadata metadata = tag.getMetadata();
+    if (metadata == null || metadata.getMetadata() == null || metadata.getMetadata().isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Map.Entry<String, Object>> entries = new ArrayList<>(metadata.getMetadata().size());
+    for (Map.Entry<String, Object> entry : metadata.getMetadata().entrySet()) {
+      entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+    }
+    return entries;
   }
 
 
@@ -90,6 +341,38 @@ public abstract class AbstractTagCache<T extends Tag> extends AbstractCache<Long
     }
   }
 
+  /**
+   * Filters out the tags with a more recent value in the cache, then passes the
+   * others to each listener in one call. The cache timestamp is read from the
+   * cache object itself, so no copy of the cached tags is made.
+   */
+  @Override
+  public void notifyListenersOfSupervisionChange(final Collection<? extends T> tags) {
+    List<T> notified = new ArrayList<>(tags.size());
+    for (T tag : tags) {
+      try {
+        if (!get(tag.getId()).getCacheTimestamp().after(tag.getCacheTimestamp())) {
+          notified.add(tag);
+        } else {
+          log.info("Filtering out Tag supervison notification as newer value in cache - tag id is " + tag.getId());
+        }
+      } catch (CacheElementNotFoundException e) {
+        log.warn("Tag " + tag.getId() + " removed from the cache during supervision notification - ignoring it");
+      }
+    }
+    if (notified.isEmpty()) {
+      return;
+    }
+    listenerLock.readLock().lock();
+    try {
+      for (CacheSupervisionListener< ? super T> cacheListener : listenersWithSupervision) {
+        cacheListener.onSupervisionChange(notified);
+      }
+    } finally {
+      listenerLock.readLock().unlock();
+    }
+  }
+
   /**
    * Private method for notifying all listeners registered for supervision changes
    * to Tags (i.e. they get a Tag update call on a supervision change also)
@@ -131,6 +414,10 @@ public abstract class AbstractTagCache<T extends Tag> extends AbstractCache<Long
       name = name.replace("?", "\\?");
     }
 
+    if (nameIndex != null) {
+      return !nameIndex.find(name, 1).isEmpty();
+    }
+
     Results results = null;
 
     try {
@@ -187,7 +474,8 @@ public abstract class AbstractTagCache<T extends Tag> extends AbstractCache<Long
    * The search is always case insensitive.
    * <p>
    * WARN: Expressions starting with a leading wildcard character are
-   * potentially very expensive (ie. full scan) for indexed caches
+   * potentially very expensive (ie. full scan) for indexed caches, unless the
+   * tag name index is enabled (see {@link TagNameIndex})
    *
    * @param regex The regular expression including '?' and '*'
    * @param maxResults the maximum amount of results that shall be returned
@@ -204,7 +492,19 @@ public abstract class AbstractTagCache<T extends Tag> extends AbstractCache<Long
       throw new IllegalArgumentException("Attempting to retrieve a Tag from the cache with a NULL or empty name parameter.");
     }
 
-    if (regex.equals("*")) {
+    if (nameIndex != null) {
+      for (Long key : nameIndex.find(regex, maxResults)) {
+        try {
+          resultList.add(get(key));
+        } catch (CacheElementNotFoundException e) {
+          log.debug(String.format("findByNameWildcard() - Tag %d removed from cache %s during the search", key, getCacheName()));
+        }
+      }
+      if (regex.equals("*") && resultList.size() >= maxResults) {
+        log.warn(String.format("findByNameWildcard() - Reached maximum result size %d when retrieving all (*) entries of cache %s", maxResults, getCacheName()));
+      }
+    }
+    else if (regex.equals("*")) {
       int counter = 0;
       for (Long  key : getKeys()) {
         resultList.add(get(key));
@@ -249,4 +549,63 @@ public abstract class AbstractTagCache<T extends Tag> extends AbstractCache<Long
 
     return resultList;
   }
+
+  /**
+   * Copy of the indexed fields of a tag. The comparison with a tag does not
+   * allocate for the data tags, whose id getters return new sets.
+   */
+  private static final class IndexedKeys {
+
+    private final String name;
+
+    private final Set<Long> processIds;
+
+    private final Set<Long> equipmentIds;
+
+    private final Set<Long> subEquipmentIds;
+
+    /** null if the tag has no metadata */
+    private final Map<String, Object> metadata;
+
+    IndexedKeys(final Tag tag) {
+      this.name = tag.getName();
+      this.processIds = new HashSet<>(tag.getProcessIds());
+      this.equipmentIds = new HashSet<>(tag.getEquipmentIds());
+      this.subEquipmentIds = new HashSet<>(tag.getSubEquipmentIds());
+      Map<String, Object> tagMetadata = metadataOf(tag);
+      this.metadata = tagMetadata == null ? null : new HashMap<>(tagMetadata);
+    }
+
+    boolean matches(final Tag tag) {
+      if (!Objects.equals(name, tag.getName())) {
+        return false;
+      }
+      if (tag instanceof DataTag) {
+        DataTag dataTag = (DataTag) tag;
+        if (!sameId(processIds, dataTag.getProcessId())
+            || !sameId(equipmentIds, dataTag.getEquipmentId())
+            || !sameId(subEquipmentIds, dataTag.getSubEquipmentId())) {
+          return false;
+        }
+      } else if (!processIds.equals(tag.getProcessIds())
+          || !equipmentIds.equals(tag.getEquipmentIds())
+          || !subEquipmentIds.equals(tag.getSubEquipmentIds())) {
+        return false;
+      }
+      Map<String, Object> tagMetadata = metadataOf(tag);
+      return metadata == null ? tagMetadata == null : metadata.equals(tagMetadata);
+    }
+
+    private static boolean sameId(final Set<Long> ids, final Long id) {
+      return id == null ? ids.isEmpty() : ids.size() == 1 && ids.contains(id);
+    }
+
+    private static Map<String, Object> metadataOf(final Tag tag) {
+      Metadata metadata = tag.getMetadata();
+      if (metadata == null || metadata.getMetadata() == null || metadata.getMetadata().isEmpty()) {
+        return null;
+      }
+      return metadata.getMetadata();
+    }
+  }
 }
@@ -0,0 +1,226 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.tag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import cern.c2mon.server.common.tag.Tag;
+
+/**
+ * In-memory secondary index of the tags of a tag cache: maps each index key
+ * to the ids of the tags having it. The index keys of a tag are extracted by
+ * a function (e.g. its equipment ids, or its metadata entries), and a tag can
+ * have any number of keys.
+ *
+ * <p>The keys of each tag are remembered, so that re-indexing a tag only
+ * touches the keys which changed, and does nothing if none did (the usual
+ * case for the tag value updates). This also makes the index correct if the
+ * tag was modified in place before being put again into the cache. Lookups
+ * share a read lock, changes take the write lock; a lookup copies the ids,
+ * so its cost only depends on the number of returned ids.
+ *
+ * @param <T> the type of the indexed tags
+ */
+final class TagIndex<T extends Tag> {
+
+  private final String name;
+
+  private final Function<? super T, ? extends Collection<?>> keyExtractor;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Index keys of the indexed tags, by tag id: the key itself if the tag has
+   * one key, an Object[] if it has several (tags without key are not stored)
+   */
+  private final Map<Long, Object> keysById = new HashMap<>();
+
+  private final Map<Object, Set<Long>> idsByKey = new HashMap<>();
+
+  /**
+   * @param name the name of the index
+   * @param keyExtractor returns the index keys of a tag; null or empty if none
+   */
+  TagIndex(final String name, final Function<? super T, ? extends Collection<?>> keyExtractor) {
+    this.name = name;
+    this.keyExtractor = keyExtractor;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /**
+   * @return the index keys of the tag, without the null keys
+   */
+  Collection<?> extractKeys(final T tag) {
+    Collection<?> keys = keyExtractor.apply(tag);
+    if (keys == null || keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (keys.contains(null)) {
+      List<Object> nonNull = new ArrayList<>(keys);
+      nonNull.removeIf(key -> key == null);
+      return nonNull;
+    }
+    return keys;
+  }
+
+  /**
+   * Indexes the tag, replacing its previous index keys.
+   *
+   * @param tag the tag to index
+   */
+  void put(final T tag) {
+    Collection<?> keys = extractKeys(tag);
+    lock.readLock().lock();
+    try {
+      if (sameKeys(keysById.get(tag.getId()), keys)) {
+        return;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    lock.writeLock().lock();
+    try {
+      Set<Object> newKeys = new HashSet<>(keys);
+      Object oldKeys = keysById.remove(tag.getId());
+      if (oldKeys instanceof Object[]) {
+        for (Object oldKey : (Object[]) oldKeys) {
+          if (!newKeys.remove(oldKey)) {
+            removeId(oldKey, tag.getId());
+          }
+        }
+      } else if (oldKeys != null && !newKeys.remove(oldKeys)) {
+        removeId(oldKeys, tag.getId());
+      }
+      for (Object newKey : newKeys) {
+        idsByKey.computeIfAbsent(newKey, key -> new HashSet<>(4)).add(tag.getId());
+      }
+      if (keys.size() == 1) {
+        keysById.put(tag.getId(), keys.iterator().next());
+      } else if (!keys.isEmpty()) {
+        keysById.put(tag.getId(), new HashSet<>(keys).toArray());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes a tag from the index.
+   *
+   * @param id the tag id
+   */
+  void remove(final Long id) {
+    lock.writeLock().lock();
+    try {
+      Object oldKeys = keysById.remove(id);
+      if (oldKeys instanceof Object[]) {
+        for (Object oldKey : (Object[]) oldKeys) {
+          removeId(oldKey, id);
+        }
+      } else if (oldKeys != null) {
+        removeId(oldKeys, id);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes all tags from the index.
+   */
+  void clear() {
+    lock.writeLock().lock();
+    try {
+      keysById.clear();
+      idsByKey.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param key the index key
+   * @return the ids of the tags with this key (a new list)
+   */
+  List<Long> get(final Object key) {
+    lock.readLock().lock();
+    try {
+      Set<Long> ids = idsByKey.get(key);
+      return ids == null ? new ArrayList<>() : new ArrayList<>(ids);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of distinct keys in the index
+   */
+  int keyCount() {
+    lock.readLock().lock();
+    try {
+      return idsByKey.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void removeId(final Object key, final Long id) {
+    Set<Long> ids = idsByKey.get(key);
+    if (ids != null) {
+      ids.remove(id);
+      if (ids.isEmpty()) {
+        idsByKey.remove(key);
+      }
+    }
+  }
+
+  private static boolean sameKeys(final Object storedKeys, final Collection<?> keys) {
+    if (storedKeys == null) {
+      return keys.isEmpty();
+    }
+    if (!(storedKeys instanceof Object[])) {
+      return keys.size() == 1 && storedKeys.equals(keys.iterator().next());
+    }
+    Object[] stored = (Object[]) storedKeys;
+    if (keys.size() < stored.length) {
+      return false;
+    }
+    // the stored keys are distinct, the keys may contain duplicates
+    Collection<?> distinct = keys instanceof Set ? keys : new HashSet<>(keys);
+    if (distinct.size() != stored.length) {
+      return false;
+    }
+    for (Object key : stored) {
+      if (!distinct.contains(key)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,526 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of the names of the tags of a tag cache, answering the
+ * exact and wildcard name lookups of {@link AbstractTagCache} without
+ * scanning the cache.
+ *
+ * <p>The patterns and the case folding are those of the Ehcache
+ * {@link net.sf.ehcache.search.expression.ILike} search used without the index:
+ * '?' matches one character, '*' any number of characters, a '\' escapes the
+ * following '?', '*' or '\', and the names and the literal characters of the
+ * pattern are compared in lower case.
+ *
+ * <p>Each indexed tag has a slot holding its id and its folded name. The slots
+ * are found through:
+ * <ul>
+ * <li>a sorted map of the folded names, used for the exact lookups and for the
+ * patterns starting with a literal prefix (a range of the map);
+ * <li>the posting lists of the trigrams (three consecutive characters) of the
+ * folded names, used for the patterns containing three or more literal
+ * characters in a row anywhere: the tags having the rarest trigrams of the
+ * pattern are the candidates, which are then matched against the pattern.
+ * </ul>
+ * Only the patterns without such literal part (such as "*" or "?A*") are
+ * matched against all the names, which are held by the index, so the cache is
+ * not accessed either.
+ *
+ * <p>Slots are only added at the end, which keeps the posting lists sorted.
+ * Removing or renaming a tag frees its old slot; the slots are compacted when
+ * more than half of them are free. Lookups share a read lock, changes take
+ * the write lock.
+ */
+final class TagNameIndex {
+
+  /** Minimum number of free slots before compacting */
+  private static final int MIN_COMPACTION = 1024;
+
+  /** Maximum number of posting lists intersected to find the candidates of a pattern */
+  private static final int MAX_INTERSECTED = 3;
+
+  /** Below this number of candidates, no further posting list is intersected */
+  private static final int MIN_CANDIDATES_TO_INTERSECT = 64;
+
+  private static final int[] NO_SLOT = new int[0];
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Tag ids, by slot */
+  private long[] ids;
+
+  /** Tag names as put, by slot; null for a free slot */
+  private String[] names;
+
+  /** Folded tag names, by slot; null for a free slot */
+  private String[] foldedNames;
+
+  /** Number of used slots (including the free ones) */
+  private int slotCount;
+
+  private int freeCount;
+
+  private final Map<Long, Integer> slotById = new HashMap<>();
+
+  /** Slots by folded name (more than one if names only differ by case) */
+  private final TreeMap<String, int[]> slotsByName = new TreeMap<>();
+
+  /** Sorted slots containing a trigram, by trigram (see {@link #trigram(String, int)}) */
+  private final Map<Long, IntList> postings = new HashMap<>();
+
+  TagNameIndex() {
+    reset(16);
+  }
+
+  /**
+   * Indexes the name of a tag, replacing its previous name.
+   * Does nothing if the name did not change, which is the usual case for
+   * the tag value updates.
+   *
+   * @param id the tag id
+   * @param name the tag name; a null name removes the tag from the index
+   */
+  void put(final Long id, final String name) {
+    lock.readLock().lock();
+    try {
+      Integer slot = slotById.get(id);
+      if (slot != null ? name != null && name.equals(names[slot]) : name == null) {
+        return;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    lock.writeLock().lock();
+    try {
+      Integer slot = slotById.remove(id);
+      if (slot != null) {
+        free(slot);
+      }
+      if (name != null) {
+        slotById.put(id, add(id, name));
+      }
+      compactIfNeeded();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes a tag from the index.
+   *
+   * @param id the tag id
+   */
+  void remove(final Long id) {
+    lock.writeLock().lock();
+    try {
+      Integer slot = slotById.remove(id);
+      if (slot != null) {
+        free(slot);
+        compactIfNeeded();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes all tags from the index.
+   */
+  void clear() {
+    lock.writeLock().lock();
+    try {
+      slotById.clear();
+      reset(16);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of indexed tags
+   */
+  int size() {
+    lock.readLock().lock();
+    try {
+      return slotById.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the ids of the tags with a name matching the pattern.
+   *
+   * @param pattern name pattern, as for the Ehcache ILike search
+   * @param maxResults maximum number of ids to return
+   * @return the matching tag ids (not sorted), at most <code>maxResults</code>
+   * @throws IllegalArgumentException if the pattern is empty or contains an illegal escape sequence
+   */
+  List<Long> find(final String pattern, final int maxResults) {
+    NamePattern namePattern = new NamePattern(pattern);
+    List<Long> result = new ArrayList<>();
+    if (maxResults <= 0) {
+      return result;
+    }
+    lock.readLock().lock();
+    try {
+      if (!namePattern.hasWildcards()) {
+        addSlots(slotsByName.get(namePattern.prefix), result, maxResults);
+      } else if (namePattern.isPrefixOnly() && !namePattern.prefix.isEmpty()) {
+        for (int[] slots : prefixRange(namePattern.prefix)) {
+          if (!addSlots(slots, result, maxResults)) {
+            break;
+          }
+        }
+      } else {
+        int[] candidates = trigramCandidates(namePattern);
+        if (candidates != null) {
+          for (int slot : candidates) {
+            if (!addIfMatching(slot, namePattern, result, maxResults)) {
+              break;
+            }
+          }
+        } else if (!namePattern.prefix.isEmpty()) {
+          rangeLoop:
+          for (int[] slots : prefixRange(namePattern.prefix)) {
+            for (int slot : slots) {
+              if (!addIfMatching(slot, namePattern, result, maxResults)) {
+                break rangeLoop;
+              }
+            }
+          }
+        } else {
+          for (int slot = 0; slot < slotCount; slot++) {
+            if (!addIfMatching(slot, namePattern, result, maxResults)) {
+              break;
+            }
+          }
+        }
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private Iterable<int[]> prefixRange(final String prefix) {
+    return slotsByName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+  }
+
+  /**
+   * @return false if the maximum number of results is reached
+   */
+  private boolean addSlots(final int[] slots, final List<Long> result, final int maxResults) {
+    if (slots != null) {
+      for (int slot : slots) {
+        result.add(ids[slot]);
+        if (result.size() >= maxResults) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return false if the maximum number of results is reached
+   */
+  private boolean addIfMatching(final int slot, final NamePattern namePattern, final List<Long> result, final int maxResults) {
+    String foldedName = foldedNames[slot];
+    if (foldedName != null && namePattern.matches(foldedName)) {
+      result.add(ids[slot]);
+      return result.size() < maxResults;
+    }
+    return true;
+  }
+
+  /**
+   * Intersects the posting lists of the rarest trigrams of the literal parts
+   * of the pattern.
+   *
+   * @return the sorted candidate slots, or null if the pattern has no trigram
+   */
+  private int[] trigramCandidates(final NamePattern namePattern) {
+    Set<Long> trigrams = new LinkedHashSet<>();
+    for (String literal : namePattern.literals) {
+      for (int i = 0; i + 3 <= literal.length(); i++) {
+        trigrams.add(trigram(literal, i));
+      }
+    }
+    if (trigrams.isEmpty()) {
+      return null;
+    }
+    List<IntList> lists = new ArrayList<>(trigrams.size());
+    for (Long trigram : trigrams) {
+      IntList list = postings.get(trigram);
+      if (list == null) {
+        return NO_SLOT;
+      }
+      lists.add(list);
+    }
+    Collections.sort(lists, Comparator.comparingInt(IntList::size));
+
+    int[] candidates = lists.get(0).toArray();
+    for (int i = 1; i < lists.size() && i < MAX_INTERSECTED && candidates.length >= MIN_CANDIDATES_TO_INTERSECT; i++) {
+      candidates = lists.get(i).retainAll(candidates);
+    }
+    return candidates;
+  }
+
+  private int add(final long id, final String name) {
+    if (slotCount == ids.length) {
+      int capacity = ids.length * 2;
+      ids = Arrays.copyOf(ids, capacity);
+      names = Arrays.copyOf(names, capacity);
+      foldedNames = Arrays.copyOf(foldedNames, capacity);
+    }
+    int slot = slotCount++;
+    String foldedName = name.toLowerCase();
+    ids[slot] = id;
+    names[slot] = name;
+    foldedNames[slot] = foldedName;
+
+    int[] sameName = slotsByName.get(foldedName);
+    if (sameName == null) {
+      slotsByName.put(foldedName, new int[] {slot});
+    } else {
+      int[] slots = Arrays.copyOf(sameName, sameName.length + 1);
+      slots[sameName.length] = slot;
+      slotsByName.put(foldedName, slots);
+    }
+    for (int i = 0; i + 3 <= foldedName.length(); i++) {
+      IntList list = postings.get(trigram(foldedName, i));
+      if (list == null) {
+        list = new IntList();
+        postings.put(trigram(foldedName, i), list);
+      }
+      list.addUnlessLast(slot);
+    }
+    return slot;
+  }
+
+  /**
+   * Frees a slot. Its trigram postings are only removed by the next compaction.
+   */
+  private void free(final int slot) {
+    String foldedName = foldedNames[slot];
+    int[] sameName = slotsByName.get(foldedName);
+    if (sameName.length == 1) {
+      slotsByName.remove(foldedName);
+    } else {
+      int[] slots = new int[sameName.length - 1];
+      int i = 0;
+      for (int other : sameName) {
+        if (other != slot) {
+          slots[i++] = other;
+        }
+      }
+      slotsByName.put(foldedName, slots);
+    }
+    names[slot] = null;
+    foldedNames[slot] = null;
+    freeCount++;
+  }
+
+  private void compactIfNeeded() {
+    if (freeCount < MIN_COMPACTION || freeCount * 2 < slotCount) {
+      return;
+    }
+    long[] oldIds = ids;
+    String[] oldNames = names;
+    int oldSlotCount = slotCount;
+    reset(Math.max(16, Integer.highestOneBit(Math.max(1, oldSlotCount - freeCount)) * 2));
+    for (int slot = 0; slot < oldSlotCount; slot++) {
+      if (oldNames[slot] != null) {
+        slotById.put(oldIds[slot], add(oldIds[slot], oldNames[slot]));
+      }
+    }
+  }
+
+  private void reset(final int capacity) {
+    ids = new long[capacity];
+    names = new String[capacity];
+    foldedNames = new String[capacity];
+    slotCount = 0;
+    freeCount = 0;
+    slotsByName.clear();
+    postings.clear();
+  }
+
+  /**
+   * @return the three characters of the string starting at the given index, packed in a long
+   */
+  private static long trigram(final String s, final int index) {
+    return ((long) s.charAt(index) << 32) | ((long) s.charAt(index + 1) << 16) | s.charAt(index + 2);
+  }
+
+  /**
+   * A name pattern, split into its literal parts.
+   */
+  private static final class NamePattern {
+
+    /** Folded literal characters before the first wildcard (the whole name if there is no wildcard) */
+    private final String prefix;
+
+    /** Folded literal parts between the wildcards */
+    private final List<String> literals = new ArrayList<>();
+
+    private final Pattern regex;
+
+    private int wildcardCount;
+
+    private boolean endsWithStar;
+
+    private boolean hasSingleCharacterWildcard;
+
+    NamePattern(final String pattern) {
+      String trimmed = pattern.trim();
+      if (trimmed.isEmpty()) {
+        throw new IllegalArgumentException("Empty tag name pattern");
+      }
+      StringBuilder regexBuilder = new StringBuilder();
+      StringBuilder literal = new StringBuilder();
+      String firstLiteral = null;
+      for (int i = 0; i < trimmed.length(); i++) {
+        char c = trimmed.charAt(i);
+        endsWithStar = false;
+        if (c == '*' || c == '?') {
+          if (firstLiteral == null) {
+            firstLiteral = literal.toString();
+          }
+          endLiteral(literal, regexBuilder);
+          regexBuilder.append(c == '*' ? ".*" : ".");
+          wildcardCount++;
+          endsWithStar = c == '*';
+          hasSingleCharacterWildcard |= c == '?';
+          continue;
+        }
+        if (c == '\\') {
+          i++;
+          if (i == trimmed.length() || "*?\\".indexOf(trimmed.charAt(i)) < 0) {
+            throw new IllegalArgumentException("Illegal escape sequence in tag name pattern: " + pattern);
+          }
+          c = trimmed.charAt(i);
+        }
+        // folded character by character, like the ILike search
+        literal.append(Character.toString(c).toLowerCase());
+      }
+      if (firstLiteral == null) {
+        firstLiteral = literal.toString();
+      }
+      endLiteral(literal, regexBuilder);
+      prefix = firstLiteral;
+      regex = Pattern.compile(regexBuilder.toString(), Pattern.DOTALL);
+    }
+
+    private void endLiteral(final StringBuilder literal, final StringBuilder regexBuilder) {
+      if (literal.length() > 0) {
+        literals.add(literal.toString());
+        regexBuilder.append(Pattern.quote(literal.toString()));
+        literal.setLength(0);
+      }
+    }
+
+    boolean hasWildcards() {
+      return wildcardCount > 0;
+    }
+
+    /**
+     * @return true if the pattern is a literal prefix followed by a single '*'
+     */
+    boolean isPrefixOnly() {
+      return wildcardCount == 1 && endsWithStar;
+    }
+
+    /**
+     * @return true if the pattern is only made of '*'
+     */
+    boolean matchesAll() {
+      return literals.isEmpty() && !hasSingleCharacterWildcard;
+    }
+
+    boolean matches(final String foldedName) {
+      return matchesAll() || regex.matcher(foldedName).matches();
+    }
+  }
+
+  /**
+   * Growable sorted list of slots.
+   */
+  private static final class IntList {
+
+    private int[] values = new int[4];
+
+    private int size;
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * Adds a slot, unless it is already the last one (a trigram occurring
+     * more than once in a name).
+     */
+    void addUnlessLast(final int slot) {
+      if (size > 0 && values[size - 1] == slot) {
+        return;
+      }
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size + (size >> 1) + 1);
+      }
+      values[size++] = slot;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @param sortedSlots sorted slots
+     * @return the slots which are also in this list
+     */
+    int[] retainAll(final int[] sortedSlots) {
+      int[] retained = new int[sortedSlots.length];
+      int count = 0;
+      int from = 0;
+      for (int slot : sortedSlots) {
+        int index = Arrays.binarySearch(values, from, size, slot);
+        if (index >= 0) {
+          retained[count++] = slot;
+          from = index + 1;
+        } else {
+          from = -index - 1;
+        }
+      }
+      return Arrays.copyOf(retained, count);
+    }
+  }
+}
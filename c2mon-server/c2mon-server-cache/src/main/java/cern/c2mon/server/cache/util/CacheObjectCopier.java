@@ -0,0 +1,87 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.shared.common.Cacheable;
+import cern.c2mon.shared.common.DeepCopyable;
+
+/**
+ * Creates the deep copies of cache objects returned by
+ * {@link cern.c2mon.server.cache.common.AbstractCache#getCopy(Object)}.
+ *
+ * <p>Cache objects implementing {@link DeepCopyable} are copied by hand, all
+ * others (and the instances refusing a hand-written copy) go through Java
+ * serialization.
+ */
+@Slf4j
+public final class CacheObjectCopier {
+
+  private CacheObjectCopier() {
+    // static helper methods only
+  }
+
+  /**
+   * Creates a deep copy of the cache object, preferring the hand-written copy
+   * if supported and falling back to {@link #serializedCopy(Cacheable)}.
+   *
+   * @param cacheable the object to copy
+   * @param <T> the cache object type
+   * @return the copy
+   * @throws IOException if the fallback serialization fails
+   * @throws ClassNotFoundException if the fallback deserialization fails
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Cacheable> T copy(final T cacheable) throws IOException, ClassNotFoundException {
+    if (cacheable instanceof DeepCopyable) {
+      try {
+        return ((DeepCopyable<T>) cacheable).deepCopy();
+      } catch (CloneNotSupportedException e) {
+        log.trace("Falling back to serialization for copying cache object {}: {}", cacheable.getId(), e.getMessage());
+      }
+    }
+    return serializedCopy(cacheable);
+  }
+
+  /**
+   * Creates a deep copy of the cache object by writing it to and reading it
+   * back from a Java object stream.
+   *
+   * @param cacheable the object to copy
+   * @param <T> the cache object type
+   * @return the copy
+   * @throws IOException if the object is not serializable
+   * @throws ClassNotFoundException if the object cannot be read back
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Cacheable> T serializedCopy(final T cacheable) throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(baos);
+    oos.writeObject(cacheable);
+
+    ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+    ObjectInputStream ois = new ObjectInputStream(bais);
+    return (T) ois.readObject();
+  }
+}
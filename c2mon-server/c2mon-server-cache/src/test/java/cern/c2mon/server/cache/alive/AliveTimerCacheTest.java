@@ -17,12 +17,15 @@
 package cern.c2mon.server.cache.alive;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
 import java.util.List;
 
 import cern.c2mon.server.cache.AbstractCacheIntegrationTest;
+import net.sf.ehcache.Element;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -47,6 +50,9 @@ public class AliveTimerCacheTest extends AbstractCacheIntegrationTest {
   
   @Autowired
   AliveTimerCacheImpl aliveTimerCache;
+
+  @Autowired
+  AliveTimerWheel aliveTimerWheel;
   
   @Test
   public void testCacheLoading() throws InterruptedException {
@@ -65,4 +71,25 @@ public class AliveTimerCacheTest extends AbstractCacheIntegrationTest {
     }
   }
   
+  @Test
+  public void testRemoteUpdatesScheduledOnTheWheel() {
+    Long id = aliveTimerMapper.getAll().get(0).getId();
+    AliveTimer aliveTimer = aliveTimerCache.getCopy(id);
+    aliveTimer.setActive(true);
+    aliveTimer.setLastUpdate(System.currentTimeMillis());
+    aliveTimerCache.putQuiet(aliveTimer);
+
+    // local updates are scheduled by the facade
+    aliveTimerCache.getCache().getCacheEventNotificationService().notifyElementUpdated(new Element(id, null), false);
+    assertFalse(aliveTimerWheel.isScheduled(id));
+
+    aliveTimerCache.getCache().getCacheEventNotificationService().notifyElementUpdated(new Element(id, null), true);
+    assertTrue(aliveTimerWheel.isScheduled(id));
+
+    aliveTimer.setActive(false);
+    aliveTimerCache.putQuiet(aliveTimer);
+    aliveTimerCache.getCache().getCacheEventNotificationService().notifyElementUpdated(new Element(id, null), true);
+    assertFalse(aliveTimerWheel.isScheduled(id));
+  }
+
 }
@@ -0,0 +1,125 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.alive;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import cern.c2mon.server.common.alive.AliveTimer;
+import cern.c2mon.server.common.alive.AliveTimerCacheObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AliveTimerWheelTest {
+
+  /** 100 ms ticks, 8 buckets: one revolution is 800 ms */
+  private final AliveTimerWheel wheel = new AliveTimerWheel(100, 8, 0);
+
+  @Test
+  public void testTimerExpiresInTheTickAfterItsExpiryTime() {
+    wheel.schedule(1L, 250);
+
+    assertTrue(wheel.pollExpired(200).isEmpty());
+    assertTrue(wheel.pollExpired(290).isEmpty());
+    assertEquals(Arrays.asList(1L), wheel.pollExpired(300));
+    assertFalse(wheel.isScheduled(1L));
+    assertTrue(wheel.pollExpired(1000).isEmpty());
+  }
+
+  @Test
+  public void testRescheduledTimerDoesNotExpire() {
+    wheel.schedule(1L, 250);
+    wheel.schedule(1L, 550);
+
+    assertTrue(wheel.pollExpired(400).isEmpty());
+    assertTrue(wheel.isScheduled(1L));
+    assertEquals(Arrays.asList(1L), wheel.pollExpired(600));
+  }
+
+  @Test
+  public void testTimerMovedEarlierExpiresOnce() {
+    wheel.schedule(1L, 550);
+    wheel.schedule(1L, 250);
+
+    assertEquals(Arrays.asList(1L), wheel.pollExpired(300));
+    assertTrue(wheel.pollExpired(700).isEmpty());
+  }
+
+  @Test
+  public void testTimerMovedEarlierByOneRevolutionExpiresOnce() {
+    wheel.schedule(1L, 1050);
+    wheel.schedule(1L, 250);
+    wheel.schedule(1L, 1050);
+
+    assertTrue(wheel.pollExpired(300).isEmpty());
+    assertEquals(1, wheel.size());
+    assertEquals(Arrays.asList(1L), wheel.pollExpired(1100));
+    assertTrue(wheel.pollExpired(2000).isEmpty());
+  }
+
+  @Test
+  public void testTimersLongerThanOneRevolution() {
+    wheel.schedule(1L, 2050);
+
+    for (long now = 100; now <= 2000; now += 100) {
+      assertTrue(wheel.pollExpired(now).isEmpty());
+    }
+    assertEquals(Arrays.asList(1L), wheel.pollExpired(2100));
+  }
+
+  @Test
+  public void testLatePollExpiresAllDueTimers() {
+    wheel.schedule(1L, 150);
+    wheel.schedule(2L, 650);
+    wheel.schedule(3L, 5000);
+
+    List<Long> expired = wheel.pollExpired(3000);
+    Collections.sort(expired);
+    assertEquals(Arrays.asList(1L, 2L), expired);
+    assertEquals(Arrays.asList(3L), wheel.pollExpired(5100));
+  }
+
+  @Test
+  public void testCancelledTimerDoesNotExpire() {
+    wheel.schedule(1L, 150);
+    wheel.cancel(1L);
+
+    assertTrue(wheel.pollExpired(500).isEmpty());
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void testPastExpiryTimeExpiresAtNextTick() {
+    wheel.pollExpired(1000);
+    wheel.schedule(1L, 500);
+
+    assertTrue(wheel.pollExpired(1050).isEmpty());
+    assertEquals(Arrays.asList(1L), wheel.pollExpired(1100));
+  }
+
+  @Test
+  public void testExpiryTimeOfAliveTimer() {
+    AliveTimer aliveTimer = new AliveTimerCacheObject(1L, 2L, "P_TEST", 3L, AliveTimer.ALIVE_TYPE_PROCESS, 30000);
+    aliveTimer.setLastUpdate(1000);
+    assertEquals(1000 + 30000 + 10000, AliveTimerWheel.expiryTime(aliveTimer));
+  }
+}
@@ -16,25 +16,41 @@
  *****************************************************************************/
 package cern.c2mon.server.cache.datatag;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import cern.c2mon.server.cache.config.CacheProperties;
 import net.sf.ehcache.Cache;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import net.sf.ehcache.event.RegisteredEventListeners;
 import net.sf.ehcache.loader.CacheLoader;
 
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
 import org.junit.Before;
+import org.junit.Test;
 
 import cern.c2mon.server.cache.CacheSupervisionListener;
 import cern.c2mon.server.cache.ClusterCache;
 import cern.c2mon.server.cache.DataTagCache;
 import cern.c2mon.server.cache.C2monCacheListener;
+import cern.c2mon.server.cache.common.AbstractCache;
 import cern.c2mon.server.cache.loading.common.C2monCacheLoader;
 import cern.c2mon.server.cache.loading.CacheLoaderDAO;
 import cern.c2mon.server.cache.supervision.SupervisionAppender;
 import cern.c2mon.server.common.datatag.DataTag;
 import cern.c2mon.server.common.datatag.DataTagCacheObject;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Unit test of registration methods in cache class (use DataTagCache implementation).
  *
@@ -100,5 +116,177 @@ public class DataTagCacheRegistrationTest {
     mockControl.verify();
   }
 
+  /**
+   * Initializes the cache with nice mocks for the Ehcache and the loaders.
+   */
+  private void initWithNiceMocks() {
+    IMocksControl niceControl = EasyMock.createNiceControl();
+    Ehcache ehcache = niceControl.createMock(Ehcache.class);
+    EasyMock.expect(ehcache.getCacheEventNotificationService()).andReturn(new RegisteredEventListeners(cache)).anyTimes();
+    EasyMock.expect(ehcache.getKeys()).andReturn(new ArrayList<>()).anyTimes();
+    dataTagCache = new DataTagCacheImpl(niceControl.createMock(ClusterCache.class), ehcache, cacheLoader,
+        niceControl.createMock(C2monCacheLoader.class), cacheLoaderDAO, new CacheProperties());
+    niceControl.replay();
+    ((DataTagCacheImpl) dataTagCache).init();
+  }
+
+  @Test
+  public void testListenerOnlyNotifiedOfInterestingTags() {
+    initWithNiceMocks();
+    RecordingListener all = new RecordingListener();
+    RecordingListener withRules = new RecordingListener();
+    dataTagCache.registerSynchronousListener(all);
+    dataTagCache.registerSynchronousListener(withRules, tag -> !tag.getRuleIds().isEmpty());
+
+    CountingDataTag tagWithRule = new CountingDataTag(1L);
+    tagWithRule.getRuleIds().add(10L);
+    dataTagCache.notifyListenersOfUpdate(tagWithRule);
+    dataTagCache.notifyListenersOfUpdate(new CountingDataTag(2L));
+
+    assertEquals(2, all.received.size());
+    assertEquals(1, withRules.received.size());
+    assertEquals(Long.valueOf(1L), withRules.received.get(0).getId());
+    // one clone shared by all listeners
+    assertSame(all.received.get(0), withRules.received.get(0));
+    assertEquals(1, tagWithRule.clones);
+
+    List<String> statistics = ((AbstractCache<?, ?>) dataTagCache).getListenerDispatchStatistics();
+    assertTrue(statistics.get(1), statistics.get(1).contains("dispatched=1, skipped=1"));
+  }
+
+  @Test
+  public void testNoCloneIfNoListenerIsInterested() {
+    initWithNiceMocks();
+    RecordingListener withRules = new RecordingListener();
+    dataTagCache.registerSynchronousListener(withRules, tag -> !tag.getRuleIds().isEmpty());
+
+    CountingDataTag tag = new CountingDataTag(1L);
+    dataTagCache.notifyListenersOfUpdate(tag);
+    dataTagCache.notifyListenerStatusConfirmation(tag, System.currentTimeMillis());
+
+    assertEquals(0, tag.clones);
+    assertTrue(withRules.received.isEmpty());
+  }
+
+  @Test
+  public void testPutAllOnlyPassesInterestingTags() {
+    initWithNiceMocks();
+    RecordingListener all = new RecordingListener();
+    RecordingListener even = new RecordingListener();
+    dataTagCache.registerSynchronousListener(all);
+    dataTagCache.registerSynchronousListener(even, tag -> tag.getId() % 2 == 0);
+
+    Map<Long, DataTag> tags = new LinkedHashMap<>();
+    List<CountingDataTag> counted = new ArrayList<>();
+    for (long id = 1; id <= 4; id++) {
+      CountingDataTag tag = new CountingDataTag(id);
+      counted.add(tag);
+      tags.put(id, tag);
+    }
+    dataTagCache.putAll(tags);
+
+    assertEquals(1, all.batches);
+    assertEquals(4, all.received.size());
+    assertEquals(1, even.batches);
+    assertEquals(2, even.received.size());
+    assertSame(all.received.get(1), even.received.get(0));
+    for (CountingDataTag tag : counted) {
+      assertEquals(1, tag.clones);
+    }
+  }
+
+  @Test
+  public void testRemovingFromListenerViewUnregisters() {
+    initWithNiceMocks();
+    RecordingListener listener = new RecordingListener();
+    dataTagCache.registerSynchronousListener(listener);
+    Collection<?> listeners = ((AbstractCache<?, ?>) dataTagCache).getCacheListeners();
+    assertTrue(listeners.contains(listener));
 
+    listeners.remove(listener);
+    dataTagCache.notifyListenersOfUpdate(new CountingDataTag(1L));
+    assertTrue(listener.received.isEmpty());
+  }
+
+  /**
+   * Supervision listeners receive all tags in one call, without the tags
+   * with a more recent value in the cache or removed from it.
+   */
+  @Test
+  public void testBatchedSupervisionNotification() {
+    IMocksControl niceControl = EasyMock.createNiceControl();
+    Ehcache ehcache = niceControl.createMock(Ehcache.class);
+    DataTagCacheObject cached1 = new DataTagCacheObject(1L);
+    cached1.setCacheTimestamp(new Timestamp(1000));
+    DataTagCacheObject cached2 = new DataTagCacheObject(2L);
+    cached2.setCacheTimestamp(new Timestamp(3000));
+    EasyMock.expect(ehcache.get((Object) 1L)).andReturn(new Element(1L, cached1)).anyTimes();
+    EasyMock.expect(ehcache.get((Object) 2L)).andReturn(new Element(2L, cached2)).anyTimes();
+    dataTagCache = new DataTagCacheImpl(niceControl.createMock(ClusterCache.class), ehcache, cacheLoader,
+        niceControl.createMock(C2monCacheLoader.class), cacheLoaderDAO, new CacheProperties());
+    niceControl.replay();
+
+    List<Collection<? extends DataTag>> batches = new ArrayList<>();
+    dataTagCache.registerListenerWithSupervision(new CacheSupervisionListener<DataTag>() {
+      @Override
+      public void onSupervisionChange(DataTag tag) {
+        batches.add(Arrays.asList(tag));
+      }
+
+      @Override
+      public void onSupervisionChange(Collection<? extends DataTag> tags) {
+        batches.add(tags);
+      }
+    });
+
+    DataTagCacheObject copy1 = new DataTagCacheObject(1L);
+    copy1.setCacheTimestamp(new Timestamp(1000));
+    DataTagCacheObject copy2 = new DataTagCacheObject(2L);
+    copy2.setCacheTimestamp(new Timestamp(2000));
+    DataTagCacheObject removed = new DataTagCacheObject(3L);
+    removed.setCacheTimestamp(new Timestamp(1000));
+    dataTagCache.notifyListenersOfSupervisionChange(Arrays.asList(copy1, copy2, removed));
+
+    assertEquals(1, batches.size());
+    assertEquals(1, batches.get(0).size());
+    assertSame(copy1, batches.get(0).iterator().next());
+  }
+
+  private static class RecordingListener implements C2monCacheListener<DataTag> {
+
+    private final List<DataTag> received = new ArrayList<>();
+
+    private int batches;
+
+    @Override
+    public void notifyElementUpdated(DataTag cacheable) {
+      received.add(cacheable);
+    }
+
+    @Override
+    public void notifyElementsUpdated(Collection<? extends DataTag> cacheables) {
+      batches++;
+      received.addAll(cacheables);
+    }
+
+    @Override
+    public void confirmStatus(DataTag cacheable) {
+      received.add(cacheable);
+    }
+  }
+
+  private static class CountingDataTag extends DataTagCacheObject {
+
+    private int clones;
+
+    CountingDataTag(final Long id) {
+      super(id);
+    }
+
+    @Override
+    public DataTagCacheObject clone() throws CloneNotSupportedException {
+      clones++;
+      return super.clone();
+    }
+  }
 }
@@ -17,6 +17,10 @@
 package cern.c2mon.server.cache.datatag;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.easymock.EasyMock;
@@ -25,8 +29,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import cern.c2mon.server.cache.*;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.common.datatag.DataTag;
 import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.thread.Event;
 import cern.c2mon.server.test.CacheObjectCreation;
 import cern.c2mon.shared.common.ConfigurationException;
 import cern.c2mon.shared.common.datatag.*;
@@ -358,6 +364,82 @@ public class DataTagFacadeImplTest {
     control.verify();
   }
 
+  /**
+   * Only the latest value of each tag is applied, the tags are locked in the order
+   * of their ids and the updated tags are put back into the cache at once.
+   */
+  @Test
+  public void testBatchUpdateFromSource() {
+    long now = System.currentTimeMillis();
+    DataTagCacheObject tag2 = new DataTagCacheObject(2L, "tag 2", "Float", DataTagConstants.MODE_OPERATIONAL);
+    DataTagCacheObject tag3 = new DataTagCacheObject(3L, "tag 3", "Integer", DataTagConstants.MODE_OPERATIONAL);
+
+    SourceDataTagValue newer3 = createSourceValue(3L, 30, now);
+    SourceDataTagValue older3 = createSourceValue(3L, 20, now - 1000);
+    SourceDataTagValue value2 = createSourceValue(2L, 1.5f, now);
+    SourceDataTagValue unknown = createSourceValue(5L, 1, now);
+
+    Map<Long, DataTag> updated = new HashMap<>();
+    updated.put(2L, tag2);
+    updated.put(3L, tag3);
+
+    dataTagCache.acquireWriteLockOnKey(2L);
+    EasyMock.expect(dataTagCache.get(2L)).andReturn(tag2);
+    EasyMock.expect(dataTagCache.tryWriteLockOnKey(3L, 0L)).andReturn(true);
+    EasyMock.expect(dataTagCache.get(3L)).andReturn(tag3);
+    EasyMock.expect(dataTagCache.tryWriteLockOnKey(5L, 0L)).andReturn(true);
+    EasyMock.expect(dataTagCache.get(5L)).andThrow(new CacheElementNotFoundException());
+    dataTagCache.putAll(updated);
+    dataTagCache.releaseWriteLockOnKey(5L);
+    dataTagCache.releaseWriteLockOnKey(3L);
+    dataTagCache.releaseWriteLockOnKey(2L);
+    control.replay();
+
+    Map<Long, Event<Boolean>> results = dataTagFacade.updateFromSource(Arrays.asList(newer3, unknown, value2, older3));
+
+    control.verify();
+    assertEquals(2, results.size());
+    assertTrue(results.get(2L).getReturnValue());
+    assertTrue(results.get(3L).getReturnValue());
+    assertEquals(30, tag3.getValue());
+    assertEquals(1.5f, tag2.getValue());
+  }
+
+  /**
+   * If a lock is held by another thread, the tags locked so far are released
+   * before waiting for it.
+   */
+  @Test
+  public void testBatchUpdateFromSourceWithLockedTag() {
+    long now = System.currentTimeMillis();
+    DataTagCacheObject tag2 = new DataTagCacheObject(2L, "tag 2", "Float", DataTagConstants.MODE_OPERATIONAL);
+    DataTagCacheObject tag3 = new DataTagCacheObject(3L, "tag 3", "Float", DataTagConstants.MODE_OPERATIONAL);
+
+    dataTagCache.acquireWriteLockOnKey(2L);
+    EasyMock.expect(dataTagCache.get(2L)).andReturn(tag2);
+    EasyMock.expect(dataTagCache.tryWriteLockOnKey(3L, 0L)).andReturn(false);
+    dataTagCache.putAll(Collections.<Long, DataTag>singletonMap(2L, tag2));
+    dataTagCache.releaseWriteLockOnKey(2L);
+    dataTagCache.acquireWriteLockOnKey(3L);
+    EasyMock.expect(dataTagCache.get(3L)).andReturn(tag3);
+    dataTagCache.putAll(Collections.<Long, DataTag>singletonMap(3L, tag3));
+    dataTagCache.releaseWriteLockOnKey(3L);
+    control.replay();
+
+    Map<Long, Event<Boolean>> results = dataTagFacade.updateFromSource(
+        Arrays.asList(createSourceValue(3L, 3f, now), createSourceValue(2L, 2f, now)));
+
+    control.verify();
+    assertEquals(2, results.size());
+  }
+
+  private static SourceDataTagValue createSourceValue(final Long id, final Object value, final long timestamp) {
+    SourceDataTagValue sourceValue = new SourceDataTagValue(id, "tag " + id, false, value, new SourceDataTagQuality(),
+        timestamp, DataTagAddress.PRIORITY_LOW, false, null, DataTagAddress.TTL_FOREVER);
+    sourceValue.setDaqTimestamp(new Timestamp(timestamp));
+    return sourceValue;
+  }
+
   @Test
   public void testCreateCacheObject() throws IllegalAccessException {
     Properties properties = new Properties();
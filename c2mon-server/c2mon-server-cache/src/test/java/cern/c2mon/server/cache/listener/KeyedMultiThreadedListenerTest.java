@@ -0,0 +1,278 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cern.c2mon.server.cache.C2monCacheListener;
+import cern.c2mon.shared.common.Cacheable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the KeyedMultiThreadedCacheListener class
+ * (so no Spring context).
+ */
+public class KeyedMultiThreadedListenerTest {
+
+  private KeyedMultiThreadedCacheListener<Update> keyedListener;
+
+  @After
+  public void shutdown() {
+    if (keyedListener != null) {
+      keyedListener.start();
+      keyedListener.stop();
+    }
+  }
+
+  @Test
+  public void testUpdatesOfATagAreKeptInOrder() throws InterruptedException {
+    final int tags = 50;
+    final int updatesPerTag = 200;
+    final Map<Long, List<Integer>> received = new ConcurrentHashMap<>();
+    final CountDownLatch latch = new CountDownLatch(tags * updatesPerTag);
+    keyedListener = new KeyedMultiThreadedCacheListener<>(new RecordingListener(received, latch, 0), Integer.MAX_VALUE,
+        4, BackpressurePolicy.BLOCK);
+
+    for (int sequence = 0; sequence < updatesPerTag; sequence++) {
+      for (long id = 0; id < tags; id++) {
+        keyedListener.notifyElementUpdated(new Update(id, sequence));
+      }
+    }
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    for (long id = 0; id < tags; id++) {
+      List<Integer> sequences = received.get(id);
+      assertEquals(updatesPerTag, sequences.size());
+      for (int i = 0; i < updatesPerTag; i++) {
+        assertEquals(Integer.valueOf(i), sequences.get(i));
+      }
+    }
+    assertEquals(0, keyedListener.getTaskQueueSize());
+    assertEquals(4, keyedListener.getShardQueueSizes().size());
+  }
+
+  @Test
+  public void testCoalesceKeepsTheLatestUpdateOfATag() throws InterruptedException {
+    final Map<Long, List<Integer>> received = new ConcurrentHashMap<>();
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final CountDownLatch latch = new CountDownLatch(2);
+    keyedListener = new KeyedMultiThreadedCacheListener<>(new RecordingListener(received, latch, 0) {
+      @Override
+      public void notifyElementUpdated(Update update) {
+        awaitQuietly(blocker);
+        super.notifyElementUpdated(update);
+      }
+    }, 10, 1, BackpressurePolicy.COALESCE);
+
+    // the first update is taken by the worker, which then waits
+    keyedListener.notifyElementUpdated(new Update(1L, 0));
+    waitForEmptyQueue();
+    for (int sequence = 1; sequence <= 100; sequence++) {
+      keyedListener.notifyElementUpdated(new Update(1L, sequence));
+    }
+    assertEquals(1, keyedListener.getTaskQueueSize());
+    blocker.countDown();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(99, keyedListener.getCoalescedCount());
+    List<Integer> sequences = received.get(1L);
+    assertEquals(2, sequences.size());
+    assertEquals(Integer.valueOf(100), sequences.get(1));
+  }
+
+  @Test
+  public void testCoalescedStatusConfirmationStaysAnUpdate() throws InterruptedException {
+    final Map<Long, List<Integer>> received = new ConcurrentHashMap<>();
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final CountDownLatch latch = new CountDownLatch(2);
+    keyedListener = new KeyedMultiThreadedCacheListener<>(new RecordingListener(received, latch, 0) {
+      @Override
+      public void notifyElementUpdated(Update update) {
+        awaitQuietly(blocker);
+        super.notifyElementUpdated(update);
+      }
+    }, 10, 1, BackpressurePolicy.COALESCE);
+
+    keyedListener.notifyElementUpdated(new Update(1L, 0));
+    waitForEmptyQueue();
+    keyedListener.notifyElementUpdated(new Update(1L, 1));
+    keyedListener.confirmStatus(new Update(1L, 2));
+    blocker.countDown();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(Integer.valueOf(2), received.get(1L).get(1));
+  }
+
+  @Test
+  public void testDropOldestDoesNotBlock() throws InterruptedException {
+    final Map<Long, List<Integer>> received = new ConcurrentHashMap<>();
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final CountDownLatch latch = new CountDownLatch(3);
+    keyedListener = new KeyedMultiThreadedCacheListener<>(new RecordingListener(received, latch, 0) {
+      @Override
+      public void notifyElementUpdated(Update update) {
+        awaitQuietly(blocker);
+        super.notifyElementUpdated(update);
+      }
+    }, 2, 1, BackpressurePolicy.DROP_OLDEST);
+
+    keyedListener.notifyElementUpdated(new Update(1L, 0));
+    waitForEmptyQueue();
+    for (int sequence = 1; sequence <= 10; sequence++) {
+      keyedListener.notifyElementUpdated(new Update(1L, sequence));
+    }
+    assertEquals(2, keyedListener.getTaskQueueSize());
+    assertEquals(8, keyedListener.getDroppedCount());
+    blocker.countDown();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    List<Integer> sequences = received.get(1L);
+    assertEquals(Integer.valueOf(0), sequences.get(0));
+    assertEquals(Integer.valueOf(9), sequences.get(1));
+    assertEquals(Integer.valueOf(10), sequences.get(2));
+  }
+
+  @Test
+  public void testBlockWaitsForSpace() throws InterruptedException {
+    final Map<Long, List<Integer>> received = new ConcurrentHashMap<>();
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final CountDownLatch latch = new CountDownLatch(3);
+    keyedListener = new KeyedMultiThreadedCacheListener<>(new RecordingListener(received, latch, 0) {
+      @Override
+      public void notifyElementUpdated(Update update) {
+        awaitQuietly(blocker);
+        super.notifyElementUpdated(update);
+      }
+    }, 1, 1, BackpressurePolicy.BLOCK);
+
+    keyedListener.notifyElementUpdated(new Update(1L, 0));
+    waitForEmptyQueue();
+    keyedListener.notifyElementUpdated(new Update(1L, 1));
+
+    Thread producer = new Thread(() -> keyedListener.notifyElementUpdated(new Update(1L, 2)));
+    producer.start();
+    producer.join(200);
+    assertTrue(producer.isAlive());
+
+    blocker.countDown();
+    producer.join(5000);
+    assertFalse(producer.isAlive());
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(3, received.get(1L).size());
+    assertEquals(0, keyedListener.getDroppedCount());
+  }
+
+  @Test
+  public void testStopProcessesWaitingUpdates() {
+    final Map<Long, List<Integer>> received = new ConcurrentHashMap<>();
+    keyedListener = new KeyedMultiThreadedCacheListener<>(new RecordingListener(received, new CountDownLatch(0), 1),
+        Integer.MAX_VALUE, 2, BackpressurePolicy.BLOCK);
+    keyedListener.start();
+    for (long id = 0; id < 10; id++) {
+      keyedListener.notifyElementUpdated(new Update(id, 0));
+    }
+    keyedListener.stop();
+    assertEquals(10, received.size());
+
+    // is allowed but logs a warning
+    keyedListener.notifyElementUpdated(new Update(1L, 1));
+    assertEquals(1, received.get(1L).size());
+  }
+
+  private void waitForEmptyQueue() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (keyedListener.getTaskQueueSize() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(0, keyedListener.getTaskQueueSize());
+  }
+
+  private static void awaitQuietly(final CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class RecordingListener implements C2monCacheListener<Update> {
+
+    private final Map<Long, List<Integer>> received;
+
+    private final CountDownLatch latch;
+
+    private final long sleep;
+
+    RecordingListener(final Map<Long, List<Integer>> received, final CountDownLatch latch, final long sleep) {
+      this.received = received;
+      this.latch = latch;
+      this.sleep = sleep;
+    }
+
+    @Override
+    public void notifyElementUpdated(Update update) {
+      if (sleep > 0) {
+        try {
+          Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      // only one thread updates the list of a given tag
+      received.computeIfAbsent(update.id, id -> new ArrayList<>()).add(update.sequence);
+      latch.countDown();
+    }
+
+    @Override
+    public void confirmStatus(Update update) {
+      notifyElementUpdated(update);
+    }
+  }
+
+  private static final class Update implements Cacheable {
+
+    private final Long id;
+
+    private final int sequence;
+
+    Update(final Long id, final int sequence) {
+      this.id = id;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+
+    @Override
+    public Update clone() {
+      return this;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.rule;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.easymock.IMocksControl;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.cache.AlarmCache;
+import cern.c2mon.server.cache.AlarmFacade;
+import cern.c2mon.server.cache.RuleTagCache;
+import cern.c2mon.server.cache.RuleTagFacade;
+import cern.c2mon.server.cache.RuleTagUpdate;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.common.rule.RuleTag;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the batch update of the RuleTagFacade. The caches are mocked.
+ */
+public class RuleTagFacadeImplTest {
+
+  private RuleTagFacade ruleTagFacade;
+
+  private RuleTagCache ruleTagCache;
+
+  private IMocksControl control = EasyMock.createControl();
+
+  @Before
+  public void setUp() {
+    ruleTagCache = control.createMock(RuleTagCache.class);
+    ruleTagFacade = new RuleTagFacadeImpl(ruleTagCache, new RuleTagCacheObjectFacade(),
+        control.createMock(AlarmFacade.class), control.createMock(AlarmCache.class));
+  }
+
+  /**
+   * Only the last update of each rule is applied, the rules are locked in the
+   * order of their ids and the updated rules are put back into the cache at once.
+   */
+  @Test
+  public void testBatchUpdate() {
+    Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+    RuleTagCacheObject rule1 = rule(1L);
+    RuleTagCacheObject rule2 = rule(2L);
+
+    Map<Long, RuleTag> updated = new HashMap<>();
+    updated.put(1L, rule1);
+    updated.put(2L, rule2);
+
+    ruleTagCache.acquireWriteLockOnKey(1L);
+    EasyMock.expect(ruleTagCache.get(1L)).andReturn(rule1);
+    EasyMock.expect(ruleTagCache.tryWriteLockOnKey(2L, 0L)).andReturn(true);
+    EasyMock.expect(ruleTagCache.get(2L)).andReturn(rule2);
+    EasyMock.expect(ruleTagCache.tryWriteLockOnKey(3L, 0L)).andReturn(true);
+    EasyMock.expect(ruleTagCache.get(3L)).andThrow(new CacheElementNotFoundException());
+    ruleTagCache.putAll(updated);
+    ruleTagCache.releaseWriteLockOnKey(3L);
+    ruleTagCache.releaseWriteLockOnKey(2L);
+    ruleTagCache.releaseWriteLockOnKey(1L);
+    control.replay();
+
+    ruleTagFacade.update(Arrays.asList(
+        RuleTagUpdate.valid(2L, 1, "old", timestamp),
+        RuleTagUpdate.valid(3L, 3, "unknown", timestamp),
+        RuleTagUpdate.valid(1L, 10, "value", timestamp),
+        RuleTagUpdate.invalid(2L, Collections.singleton(TagQualityStatus.INACCESSIBLE),
+            Collections.singletonMap(TagQualityStatus.INACCESSIBLE, "inaccessible"), timestamp)));
+
+    control.verify();
+    assertEquals(10, rule1.getValue());
+    assertEquals("value", rule1.getValueDescription());
+    assertTrue(rule1.isValid());
+    assertFalse(rule2.isValid());
+    assertTrue(rule2.getDataTagQuality().isInvalidStatusSet(TagQualityStatus.INACCESSIBLE));
+  }
+
+  /**
+   * A repeated value is filtered out and not put back into the cache.
+   */
+  @Test
+  public void testRepeatedValueIsFilteredOut() {
+    Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+    RuleTagCacheObject rule1 = rule(1L);
+    rule1.setValue(10);
+    rule1.setValueDescription("value");
+    rule1.getDataTagQuality().validate();
+
+    ruleTagCache.acquireWriteLockOnKey(1L);
+    EasyMock.expect(ruleTagCache.get(1L)).andReturn(rule1);
+    ruleTagCache.releaseWriteLockOnKey(1L);
+    control.replay();
+
+    ruleTagFacade.update(Collections.singletonList(RuleTagUpdate.valid(1L, 10, "value", timestamp)));
+
+    control.verify();
+  }
+
+  private static RuleTagCacheObject rule(final Long id) {
+    RuleTagCacheObject rule = new RuleTagCacheObject(id);
+    rule.setDataType(Integer.class.getName());
+    return rule;
+  }
+}
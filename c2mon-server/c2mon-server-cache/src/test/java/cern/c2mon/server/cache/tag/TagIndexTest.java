@@ -0,0 +1,186 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.tag;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.cache.config.CacheProperties;
+import cern.c2mon.server.cache.datatag.DataTagCacheImpl;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TagIndexTest {
+
+  private CacheManager cacheManager;
+
+  @Before
+  public void setUp() {
+    cacheManager = new CacheManager(new Configuration().name("TagIndexTest"));
+  }
+
+  @After
+  public void tearDown() {
+    cacheManager.shutdown();
+  }
+
+  @Test
+  public void testKeysAreReplacedOnPut() {
+    TagIndex<DataTag> index = new TagIndex<>("equipmentId", DataTag::getEquipmentIds);
+    DataTagCacheObject tag = tag(1L, 10L);
+    index.put(tag);
+    index.put(tag(2L, 10L));
+    assertEquals(ids(1L, 2L), new HashSet<>(index.get(10L)));
+
+    tag.setEquipmentId(20L);
+    index.put(tag);
+    assertEquals(ids(2L), new HashSet<>(index.get(10L)));
+    assertEquals(ids(1L), new HashSet<>(index.get(20L)));
+
+    index.remove(1L);
+    index.remove(2L);
+    assertTrue(index.get(10L).isEmpty());
+    assertTrue(index.get(20L).isEmpty());
+    assertEquals(0, index.keyCount());
+  }
+
+  @Test
+  public void testMultipleAndNullKeys() {
+    TagIndex<DataTag> index = new TagIndex<>("multi", tag -> Arrays.asList(tag.getId() % 2, null, tag.getId() % 3, tag.getId() % 2));
+    for (long id = 1; id <= 6; id++) {
+      index.put(tag(id, null));
+    }
+    assertEquals(ids(2L, 4L, 6L, 3L), new HashSet<>(index.get(0L)));
+    assertEquals(ids(1L, 3L, 5L, 4L), new HashSet<>(index.get(1L)));
+    assertEquals(ids(2L, 5L), new HashSet<>(index.get(2L)));
+
+    TagIndex<DataTag> empty = new TagIndex<>("empty", tag -> null);
+    empty.put(tag(1L, 10L));
+    assertEquals(0, empty.keyCount());
+  }
+
+  @Test
+  public void testIndexesAreMaintainedByTheCache() {
+    DataTagCacheImpl cache = createCache(new CacheProperties());
+    for (long id = 0; id < 10; id++) {
+      DataTagCacheObject tag = tag(id, id < 5 ? 1L : 2L);
+      tag.setProcessId(100L);
+      if (id == 3) {
+        tag.setSubEquipmentId(30L);
+        tag.getMetadata().addMetadata("responsible", "alice");
+      }
+      cache.putQuiet(tag);
+    }
+    assertEquals(ids(0L, 1L, 2L, 3L, 4L), new HashSet<>(cache.getDataTagIdsByEquipmentId(1L)));
+    assertEquals(ids(3L), new HashSet<>(cache.getDataTagIdsBySubEquipmentId(30L)));
+    assertEquals(10, cache.findTagIdsByProcessId(100L).size());
+    assertEquals(ids(3L), new HashSet<>(cache.findTagIdsByMetadata("responsible", "alice")));
+
+    // reconfiguration: the handlers put a modified copy
+    DataTagCacheObject copy = (DataTagCacheObject) cache.getCopy(3L);
+    copy.setEquipmentId(2L);
+    copy.setSubEquipmentId(null);
+    copy.getMetadata().addMetadata("responsible", "bob");
+    cache.putQuiet(copy);
+    assertEquals(ids(0L, 1L, 2L, 4L), new HashSet<>(cache.getDataTagIdsByEquipmentId(1L)));
+    assertTrue(cache.getDataTagIdsBySubEquipmentId(30L).isEmpty());
+    assertTrue(cache.findTagIdsByMetadata("responsible", "alice").isEmpty());
+    assertEquals(ids(3L), new HashSet<>(cache.findTagIdsByMetadata("responsible", "bob")));
+
+    // in-place modification, then put (as done for the rule parent ids)
+    DataTagCacheObject reference = (DataTagCacheObject) cache.get(4L);
+    reference.setEquipmentId(2L);
+    cache.putQuiet(reference);
+    assertEquals(ids(0L, 1L, 2L), new HashSet<>(cache.getDataTagIdsByEquipmentId(1L)));
+    reference.getMetadata().addMetadata("responsible", "bob");
+    cache.putQuiet(reference);
+    assertEquals(ids(3L, 4L), new HashSet<>(cache.findTagIdsByMetadata("responsible", "bob")));
+
+    // value update: the indexes are unchanged
+    reference.setValue(42);
+    cache.putQuiet(reference);
+    assertEquals(ids(3L, 4L), new HashSet<>(cache.findTagIdsByMetadata("responsible", "bob")));
+    assertEquals(10, cache.findTagIdsByProcessId(100L).size());
+
+    cache.remove(0L);
+    assertEquals(ids(1L, 2L), new HashSet<>(cache.getDataTagIdsByEquipmentId(1L)));
+    assertEquals(9, cache.findTagIdsByProcessId(100L).size());
+  }
+
+  @Test
+  public void testIndexRegisteredAfterInitializationIsBuilt() {
+    DataTagCacheImpl cache = createCache(new CacheProperties());
+    for (long id = 0; id < 10; id++) {
+      cache.putQuiet(tag(id, 1L));
+    }
+    cache.rebuildIndexes();
+
+    cache.registerIndex("parity", tag -> Collections.singleton(tag.getId() % 2 == 0));
+    assertEquals(ids(0L, 2L, 4L, 6L, 8L), new HashSet<>(cache.findTagIdsByIndex("parity", true)));
+    cache.putQuiet(tag(10L, 1L));
+    assertEquals(6, cache.findTagIdsByIndex("parity", true).size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIndexNamesAreUnique() {
+    createCache(new CacheProperties()).registerIndex(DataTagCacheImpl.EQUIPMENT_INDEX, DataTag::getEquipmentIds);
+  }
+
+  @Test
+  public void testQueriesScanTheCacheIfIndexesAreDisabled() {
+    CacheProperties properties = new CacheProperties();
+    properties.setSecondaryIndexes(false);
+    DataTagCacheImpl cache = createCache(properties);
+    for (long id = 0; id < 10; id++) {
+      DataTagCacheObject tag = tag(id, 1L);
+      tag.getMetadata().addMetadata("index", (int) id % 3);
+      cache.putQuiet(tag);
+    }
+    cache.registerIndex("parity", tag -> Collections.singleton(tag.getId() % 2 == 0));
+    assertEquals(ids(0L, 3L, 6L, 9L), new HashSet<>(cache.findTagIdsByMetadata("index", 0)));
+    assertEquals(ids(1L, 3L, 5L, 7L, 9L), new HashSet<>(cache.findTagIdsByIndex("parity", false)));
+  }
+
+  private DataTagCacheImpl createCache(final CacheProperties properties) {
+    Cache ehcache = new Cache(new CacheConfiguration("dataTagCache" + cacheManager.getCacheNames().length, 0).eternal(true));
+    cacheManager.addCache(ehcache);
+    return new DataTagCacheImpl(null, ehcache, null, null, null, properties);
+  }
+
+  private static DataTagCacheObject tag(final Long id, final Long equipmentId) {
+    DataTagCacheObject tag = new DataTagCacheObject(id, "TAG_" + id, Integer.class.getName(), (short) 0);
+    tag.setEquipmentId(equipmentId);
+    return tag;
+  }
+
+  private static HashSet<Long> ids(final Long... ids) {
+    return new HashSet<>(Arrays.asList(ids));
+  }
+}
@@ -0,0 +1,146 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.tag;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+
+import cern.c2mon.server.cache.config.CacheProperties;
+import cern.c2mon.server.cache.datatag.DataTagCacheImpl;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+
+/**
+ * Measures the latency of the tag name lookups of a large DataTag cache, with
+ * the {@link TagNameIndex} and with the Ehcache search.
+ *
+ * <p>Both DataTag caches are the real cache implementation, on top of the same
+ * searchable in-memory Ehcache. The tags are named
+ * <code>P_BENCH_&lt;process&gt;:EQ_&lt;equipment&gt;:TAG_&lt;id&gt;</code>,
+ * with 100 equipments per process and 100 tags per equipment.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE, or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.server.cache.tag.TagNameIndexBenchmark
+ * -Dexec.args="1000000 5"</code> (tags, runs of the Ehcache search), with
+ * enough heap for the cache (-Xmx4g for 1M tags).
+ */
+public class TagNameIndexBenchmark {
+
+  private static final String[][] QUERIES = {
+      {"exact", "P_BENCH_42:EQ_4217:TAG_421742"},
+      {"exact (no match)", "P_BENCH_42:EQ_4217:TAG_X"},
+      {"prefix", "P_BENCH_42:EQ_4217:*"},
+      {"prefix + ?", "P_BENCH_42:EQ_421?:TAG_*"},
+      {"infix", "*:EQ_4217:*"},
+      {"leading *", "*TAG_421742"},
+      {"leading ?", "?_BENCH_42:EQ_4217:TAG_421742"},
+      {"no literal", "*1*"},
+      {"all", "*"}
+  };
+
+  private final int tagCount;
+
+  private final CacheManager cacheManager;
+
+  private final DataTagCacheImpl indexedCache;
+
+  private final DataTagCacheImpl searchedCache;
+
+  public TagNameIndexBenchmark(final int tagCount) {
+    this.tagCount = tagCount;
+    cacheManager = new CacheManager(new Configuration().name("TagNameIndexBenchmark"));
+    Searchable searchable = new Searchable();
+    searchable.addSearchAttribute(new SearchAttribute().name("tagName").expression("value.getName()"));
+    Cache cache = new Cache(new CacheConfiguration("dataTagCache", 0).eternal(true).searchable(searchable));
+    cacheManager.addCache(cache);
+
+    CacheProperties indexed = new CacheProperties();
+    CacheProperties searched = new CacheProperties();
+    searched.setNameIndex(false);
+    indexedCache = new DataTagCacheImpl(null, cache, null, null, null, indexed);
+    searchedCache = new DataTagCacheImpl(null, cache, null, null, null, searched);
+  }
+
+  public static void main(String[] args) {
+    int tagCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    TagNameIndexBenchmark benchmark = new TagNameIndexBenchmark(tagCount);
+    try {
+      benchmark.fillCache();
+      System.out.printf("%-18s %-32s %8s %14s %14s%n", "query", "pattern", "results", "index (us)", "Ehcache (us)");
+      for (String[] query : QUERIES) {
+        benchmark.run(query[0], query[1], runs);
+      }
+    } finally {
+      benchmark.cacheManager.shutdown();
+    }
+  }
+
+  /**
+   * Puts the tags in the Ehcache, then builds the index as after a preload,
+   * printing the build time and the heap used by the index.
+   */
+  private void fillCache() {
+    for (long id = 0; id < tagCount; id++) {
+      long equipment = id / 100;
+      DataTagCacheObject tag = new DataTagCacheObject(id,
+          String.format("P_BENCH_%d:EQ_%d:TAG_%d", equipment / 100, equipment, id), Integer.class.getName(), (short) 0);
+      indexedCache.getCache().putQuiet(new Element(id, tag));
+    }
+    long heapBefore = usedHeap();
+    long start = System.nanoTime();
+    indexedCache.rebuildIndexes();
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("%d tags indexed in %.0f ms, index heap about %d MB%n", tagCount, elapsed / 1e6,
+        (usedHeap() - heapBefore) / (1024 * 1024));
+  }
+
+  private void run(final String name, final String pattern, final int runs) {
+    int results = indexedCache.findByNameWildcard(pattern).size();
+    int searchResults = searchedCache.findByNameWildcard(pattern).size();
+    if (results != searchResults) {
+      throw new IllegalStateException(String.format("%s: %d results with the index, %d with the Ehcache search",
+          pattern, results, searchResults));
+    }
+    // the index is fast enough to be measured over many more runs
+    double indexMicros = measure(indexedCache, pattern, Math.max(runs, 1000000 / Math.max(1, results * 10)));
+    double searchMicros = measure(searchedCache, pattern, runs);
+    System.out.printf("%-18s %-32s %8d %14.1f %14.1f%n", name, pattern, results, indexMicros, searchMicros);
+  }
+
+  private static double measure(final DataTagCacheImpl cache, final String pattern, final int runs) {
+    long start = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      cache.findByNameWildcard(pattern);
+    }
+    return (System.nanoTime() - start) / 1e3 / runs;
+  }
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
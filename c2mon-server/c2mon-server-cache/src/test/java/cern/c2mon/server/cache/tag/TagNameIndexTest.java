@@ -0,0 +1,173 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.tag;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.SearchAttribute;
+import net.sf.ehcache.config.Searchable;
+import net.sf.ehcache.search.Attribute;
+import net.sf.ehcache.search.Result;
+import net.sf.ehcache.search.Results;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TagNameIndexTest {
+
+  private TagNameIndex index;
+
+  @Before
+  public void setUp() {
+    index = new TagNameIndex();
+    index.put(1L, "P_TEST:EQ1:TEMPERATURE");
+    index.put(2L, "P_TEST:EQ1:PRESSURE");
+    index.put(3L, "P_TEST:EQ2:TEMPERATURE");
+    index.put(4L, "p_other:eq1:temperature");
+    index.put(5L, "A*B?C\\D");
+  }
+
+  @Test
+  public void testExactLookupIsCaseInsensitive() {
+    assertEquals(Arrays.asList(2L), index.find("p_test:eq1:pressure", 10));
+    assertEquals(Arrays.asList(4L), index.find("P_OTHER:EQ1:TEMPERATURE", 10));
+    assertTrue(index.find("P_TEST:EQ1", 10).isEmpty());
+  }
+
+  @Test
+  public void testPrefixLookup() {
+    assertEquals(ids(1L, 2L, 3L), new HashSet<>(index.find("P_TEST:*", 10)));
+    assertEquals(ids(1L, 2L), new HashSet<>(index.find("p_test:eq1*", 10)));
+    assertEquals(1, index.find("P_TEST:*", 1).size());
+  }
+
+  @Test
+  public void testInfixAndSingleCharacterWildcards() {
+    assertEquals(ids(1L, 3L, 4L), new HashSet<>(index.find("*temperature", 10)));
+    assertEquals(ids(1L, 3L), new HashSet<>(index.find("P_TEST:EQ?:TEMP*", 10)));
+    assertEquals(ids(1L, 2L, 4L), new HashSet<>(index.find("*:EQ1:*", 10)));
+    assertEquals(ids(2L), new HashSet<>(index.find("*SS*", 10)));
+    assertEquals(ids(1L, 2L, 3L, 4L, 5L), new HashSet<>(index.find("*", 10)));
+    assertEquals(ids(5L), new HashSet<>(index.find("?\\*B*", 10)));
+  }
+
+  @Test
+  public void testEscapedWildcardsAreLiterals() {
+    assertEquals(Arrays.asList(5L), index.find("a\\*b\\?c\\\\d", 10));
+    assertTrue(index.find("A\\*BXC\\\\D", 10).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIllegalEscapeIsRejected() {
+    index.find("P_TEST\\:*", 10);
+  }
+
+  @Test
+  public void testRenameAndRemove() {
+    index.put(2L, "P_TEST:EQ1:FLOW");
+    assertTrue(index.find("*PRESSURE", 10).isEmpty());
+    assertEquals(Arrays.asList(2L), index.find("*flow", 10));
+
+    index.remove(1L);
+    index.put(3L, null);
+    assertEquals(ids(4L), new HashSet<>(index.find("*TEMPERATURE", 10)));
+    assertEquals(3, index.size());
+  }
+
+  @Test
+  public void testCompactionKeepsTheIndexConsistent() {
+    for (long id = 100; id < 5000; id++) {
+      index.put(id, "TAG_" + id);
+    }
+    for (long id = 100; id < 5000; id++) {
+      if (id % 10 != 0) {
+        index.put(id, id % 3 == 0 ? "RENAMED_" + id : null);
+      }
+    }
+    for (long id = 100; id < 5000; id++) {
+      List<Long> found = index.find("*_" + id, 10);
+      if (id % 10 == 0 || id % 3 == 0) {
+        assertEquals(Arrays.asList(id), found);
+      } else {
+        assertTrue(found.isEmpty());
+      }
+    }
+    assertEquals(ids(1L, 3L, 4L), new HashSet<>(index.find("*TEMPERATURE", 10)));
+  }
+
+  /**
+   * Compares the index with the Ehcache ILike search it replaces, on random
+   * names and patterns.
+   */
+  @Test
+  public void testSameResultsAsEhcacheSearch() {
+    CacheManager cacheManager = new CacheManager(new Configuration().name("TagNameIndexTest"));
+    try {
+      Searchable searchable = new Searchable();
+      searchable.addSearchAttribute(new SearchAttribute().name("tagName").expression("value.getName()"));
+      Cache cache = new Cache(new CacheConfiguration("tags", 0).eternal(true).searchable(searchable));
+      cacheManager.addCache(cache);
+      Attribute<String> tagName = cache.getSearchAttribute("tagName");
+
+      Random random = new Random(42);
+      TagNameIndex randomIndex = new TagNameIndex();
+      for (long id = 0; id < 2000; id++) {
+        String name = randomString(random, "abAB_:.", 3 + random.nextInt(10));
+        cache.put(new Element(id, new DataTagCacheObject(id, name, "Integer", (short) 0)));
+        randomIndex.put(id, name);
+      }
+
+      for (int i = 0; i < 500; i++) {
+        String pattern = randomString(random, "aAbB_:*?", 1 + random.nextInt(6));
+        Results results = cache.createQuery().includeKeys().addCriteria(tagName.ilike(pattern)).execute();
+        Set<Long> expected = new HashSet<>();
+        for (Result result : results.all()) {
+          expected.add((Long) result.getKey());
+        }
+        results.discard();
+        assertEquals(pattern, expected, new HashSet<>(randomIndex.find(pattern, Integer.MAX_VALUE)));
+      }
+    } finally {
+      cacheManager.shutdown();
+    }
+  }
+
+  private static String randomString(final Random random, final String characters, final int length) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      builder.append(characters.charAt(random.nextInt(characters.length())));
+    }
+    return builder.toString();
+  }
+
+  private static Set<Long> ids(final Long... ids) {
+    return new HashSet<>(Arrays.asList(ids));
+  }
+}
@@ -0,0 +1,110 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import cern.c2mon.server.common.alarm.AlarmCacheObject;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+
+/**
+ * JMH comparison of the hand-written deep copy and the copy by serialization
+ * used by {@link cern.c2mon.server.cache.common.AbstractCache#getCopy(Object)}.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.server.cache.util.CacheObjectCopierBenchmark</code>
+ * and compare the <code>deepCopy*</code> with the <code>serializedCopy*</code>
+ * results (add <code>-prof gc</code> to the options to compare the allocation rates).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheObjectCopierBenchmark {
+
+  private DataTagCacheObject dataTag;
+
+  private RuleTagCacheObject ruleTag;
+
+  private AlarmCacheObject alarm;
+
+  @Setup
+  public void setUp() {
+    dataTag = CacheObjectCreation.createTestDataTag();
+    dataTag.getMetadata().addMetadata("responsible", "operator");
+    dataTag.getAlarmIds().add(1L);
+    ruleTag = CacheObjectCreation.createTestRuleTag();
+    alarm = CacheObjectCreation.createTestAlarm1();
+  }
+
+  @Benchmark
+  public DataTagCacheObject deepCopyDataTag() throws Exception {
+    return CacheObjectCopier.copy(dataTag);
+  }
+
+  @Benchmark
+  public DataTagCacheObject serializedCopyDataTag() throws Exception {
+    return CacheObjectCopier.serializedCopy(dataTag);
+  }
+
+  @Benchmark
+  public RuleTagCacheObject deepCopyRuleTag() throws Exception {
+    return CacheObjectCopier.copy(ruleTag);
+  }
+
+  @Benchmark
+  public RuleTagCacheObject serializedCopyRuleTag() throws Exception {
+    return CacheObjectCopier.serializedCopy(ruleTag);
+  }
+
+  @Benchmark
+  public AlarmCacheObject deepCopyAlarm() throws Exception {
+    return CacheObjectCopier.copy(alarm);
+  }
+
+  @Benchmark
+  public AlarmCacheObject serializedCopyAlarm() throws Exception {
+    return CacheObjectCopier.serializedCopy(alarm);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(CacheObjectCopierBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,138 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import cern.c2mon.server.common.alarm.AlarmCacheObject;
+import cern.c2mon.server.common.alive.AliveTimerCacheObject;
+import cern.c2mon.server.common.control.ControlTagCacheObject;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.equipment.EquipmentCacheObject;
+import cern.c2mon.server.common.process.ProcessCacheObject;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+import cern.c2mon.server.test.CacheObjectComparison;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class CacheObjectCopierTest {
+
+  @Test
+  public void testDataTagCopyIsIndependent() throws Exception {
+    DataTagCacheObject original = CacheObjectCreation.createTestDataTag();
+    original.getMetadata().addMetadata("responsible", "me");
+    original.getAlarmIds().add(1L);
+
+    DataTagCacheObject copy = CacheObjectCopier.copy(original);
+    CacheObjectComparison.equals(original, copy);
+    CacheObjectComparison.equals(CacheObjectCopier.serializedCopy(original), copy);
+    assertEquals(original.getMetadata(), copy.getMetadata());
+
+    copy.getMetadata().addMetadata("responsible", "you");
+    copy.getAlarmIds().add(2L);
+    copy.getDaqTimestamp().setTime(0);
+    copy.getDataTagQuality().addInvalidStatus(TagQualityStatus.INACCESSIBLE);
+    copy.getAddress().setTimeToLive(1);
+
+    assertEquals("me", original.getMetadata().getMetadata().get("responsible"));
+    assertEquals(1, original.getAlarmIds().size());
+    assertTrue(original.getDaqTimestamp().getTime() != 0);
+    assertTrue(original.getDataTagQuality().isValid());
+    assertTrue(original.getAddress().getTimeToLive() != 1);
+  }
+
+  @Test
+  public void testControlTagCopyKeepsType() throws Exception {
+    ControlTagCacheObject original = CacheObjectCreation.createTestProcessAlive();
+    ControlTagCacheObject copy = CacheObjectCopier.copy(original);
+    assertEquals(ControlTagCacheObject.class, copy.getClass());
+    CacheObjectComparison.equals(original, copy);
+  }
+
+  @Test
+  public void testRuleTagCopy() throws Exception {
+    RuleTagCacheObject original = CacheObjectCreation.createTestRuleTag();
+    original.getProcessIds().add(50L);
+
+    RuleTagCacheObject copy = CacheObjectCopier.copy(original);
+    CacheObjectComparison.equalsTag(original, copy);
+    assertEquals(original.getRuleText(), copy.getRuleText());
+    assertEquals(original.getRuleInputTagIds(), copy.getRuleInputTagIds());
+
+    copy.getProcessIds().add(51L);
+    assertEquals(1, original.getProcessIds().size());
+  }
+
+  @Test
+  public void testAlarmCopyIsIndependent() throws Exception {
+    AlarmCacheObject original = CacheObjectCreation.createTestAlarm1();
+    original.getMetadata().addMetadata("priority", 1);
+
+    AlarmCacheObject copy = CacheObjectCopier.copy(original);
+    CacheObjectComparison.equals(original, copy);
+
+    copy.getMetadata().addMetadata("priority", 2);
+    copy.getTimestamp().setTime(0);
+    assertEquals(1, original.getMetadata().getMetadata().get("priority"));
+    assertTrue(original.getTimestamp().getTime() != 0);
+  }
+
+  @Test
+  public void testSupervisedCopies() throws Exception {
+    ProcessCacheObject process = CacheObjectCreation.createTestProcess1();
+    ProcessCacheObject processCopy = CacheObjectCopier.copy(process);
+    assertEquals(process.getName(), processCopy.getName());
+    assertEquals(process.getEquipmentIds(), processCopy.getEquipmentIds());
+    assertNotSame(process.getEquipmentIds(), processCopy.getEquipmentIds());
+
+    EquipmentCacheObject equipment = CacheObjectCreation.createTestEquipment();
+    EquipmentCacheObject equipmentCopy = CacheObjectCopier.copy(equipment);
+    assertEquals(equipment.getName(), equipmentCopy.getName());
+    assertNotSame(equipment.getSubEquipmentIds(), equipmentCopy.getSubEquipmentIds());
+
+    AliveTimerCacheObject aliveTimer = new AliveTimerCacheObject(1L, 2L, "name", 3L, "PROC", 60000);
+    AliveTimerCacheObject aliveTimerCopy = CacheObjectCopier.copy(aliveTimer);
+    assertEquals(aliveTimer.getRelatedName(), aliveTimerCopy.getRelatedName());
+    assertEquals(aliveTimer.getAliveInterval(), aliveTimerCopy.getAliveInterval());
+  }
+
+  @Test
+  public void testFallbackToSerializationForMutableValue() throws Exception {
+    DataTagCacheObject original = CacheObjectCreation.createTestDataTag();
+    original.setValue(new AtomicLong(10));
+    original.getMetadata().addMetadata("list", new ArrayList<>());
+
+    DataTagCacheObject copy = CacheObjectCopier.copy(original);
+    ((AtomicLong) copy.getValue()).set(20);
+    assertEquals(10, ((AtomicLong) original.getValue()).get());
+  }
+
+  @Test
+  public void testTimestampNanosAreKept() throws Exception {
+    DataTagCacheObject original = CacheObjectCreation.createTestDataTag();
+    original.getDaqTimestamp().setNanos(123456789);
+
+    assertEquals(original.getDaqTimestamp(), CacheObjectCopier.copy(original).getDaqTimestamp());
+  }
+}
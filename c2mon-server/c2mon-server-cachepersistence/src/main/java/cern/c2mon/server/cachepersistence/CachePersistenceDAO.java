@@ -18,6 +18,7 @@ package cern.c2mon.server.cachepersistence;
 
 import java.util.List;
 
+import cern.c2mon.server.cachepersistence.common.PersistenceStatistics;
 import cern.c2mon.shared.common.Cacheable;
 
 /**
@@ -46,4 +47,9 @@ public interface CachePersistenceDAO<T extends Cacheable> {
    */
   void persistBatch(List<Long> keyList);
 
+  /**
+   * @return the counters of the persisted batches
+   */
+  PersistenceStatistics getStatistics();
+
 }
@@ -24,6 +24,7 @@ import org.apache.ibatis.exceptions.PersistenceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -115,6 +116,15 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
 
   private boolean started = false;
 
+  /** Number of rows written by the last persistence cycle */
+  private volatile long lastCycleRows;
+
+  /** Number of statements or JDBC batches of the last persistence cycle */
+  private volatile long lastCycleRoundTrips;
+
+  /** Rows written per second during the last persistence cycle */
+  private volatile double lastCycleRowsPerSecond;
+
   public BatchPersistenceManagerImpl(final CachePersistenceDAO<T> cachePersistenceDAO, final C2monCache<Long, T> cache,
                                      ClusterCache clusterCache, ThreadPoolTaskExecutor threadPoolTaskExecutor) {
     super();
@@ -142,6 +152,11 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
       }
 
       int size = localToBePersisted.size();
+      PersistenceStatistics statistics = cachePersistenceDAO.getStatistics();
+      long rowsBefore = statistics.getPersistedRows();
+      long skippedBefore = statistics.getSkippedRows();
+      long roundTripsBefore = statistics.getRoundTrips();
+      long start = System.nanoTime();
 
       LOGGER.debug("Persisting " + size + " cache object(s) to the database (" + cache.getClass() + ")");
 
@@ -205,6 +220,16 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
       } else {
         LOGGER.debug(exceptionCount + " out of " + count + " persistence batches failed and will be resubmitted.");
       }
+
+      long elapsed = System.nanoTime() - start;
+      lastCycleRows = statistics.getPersistedRows() - rowsBefore;
+      lastCycleRoundTrips = statistics.getRoundTrips() - roundTripsBefore;
+      lastCycleRowsPerSecond = lastCycleRows * 1e9 / Math.max(1, elapsed);
+      if (size > 0 && LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("Persisted %d rows (%d unchanged) in %d round-trips and %d ms, %.0f rows/s (%s)",
+            lastCycleRows, statistics.getSkippedRows() - skippedBefore, lastCycleRoundTrips,
+            TimeUnit.NANOSECONDS.toMillis(elapsed), lastCycleRowsPerSecond, cache.getClass().getSimpleName()));
+      }
     } finally {
       clusterCache.releaseWriteLockOnKey(cachePersistenceLock);
     }
@@ -225,6 +250,36 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
     persistList(cache.getKeys());
   }
 
+  @ManagedAttribute(description = "Number of rows written to the database since startup")
+  public long getPersistedRows() {
+    return cachePersistenceDAO.getStatistics().getPersistedRows();
+  }
+
+  @ManagedAttribute(description = "Number of rows not written since startup, as unchanged since last persisted")
+  public long getSkippedRows() {
+    return cachePersistenceDAO.getStatistics().getSkippedRows();
+  }
+
+  @ManagedAttribute(description = "Number of statements or JDBC batches sent to the database since startup")
+  public long getRoundTrips() {
+    return cachePersistenceDAO.getStatistics().getRoundTrips();
+  }
+
+  @ManagedAttribute(description = "Number of rows written by the last persistence cycle")
+  public long getLastCycleRows() {
+    return lastCycleRows;
+  }
+
+  @ManagedAttribute(description = "Number of statements or JDBC batches of the last persistence cycle")
+  public long getLastCycleRoundTrips() {
+    return lastCycleRoundTrips;
+  }
+
+  @ManagedAttribute(description = "Rows written per second during the last persistence cycle")
+  public double getLastCycleRowsPerSecond() {
+    return lastCycleRowsPerSecond;
+  }
+
   /**
    * Sets the timeout in milliseconds for a single batch to persist.
    * Default is 8s.
@@ -0,0 +1,60 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cachepersistence.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a {@link cern.c2mon.server.cachepersistence.CachePersistenceDAO},
+ * since the server start.
+ */
+public class PersistenceStatistics {
+
+  /** Number of rows written to the database */
+  private final AtomicLong persistedRows = new AtomicLong();
+
+  /** Number of rows not written, as they did not change since last persisted */
+  private final AtomicLong skippedRows = new AtomicLong();
+
+  /** Number of statements or JDBC batches sent to the database */
+  private final AtomicLong roundTrips = new AtomicLong();
+
+  /**
+   * Counts a persisted batch.
+   *
+   * @param persisted the number of rows written
+   * @param skipped the number of unchanged rows, not written
+   * @param statements the number of statements or JDBC batches executed
+   */
+  public void record(final int persisted, final int skipped, final int statements) {
+    persistedRows.addAndGet(persisted);
+    skippedRows.addAndGet(skipped);
+    roundTrips.addAndGet(statements);
+  }
+
+  public long getPersistedRows() {
+    return persistedRows.get();
+  }
+
+  public long getSkippedRows() {
+    return skippedRows.get();
+  }
+
+  public long getRoundTrips() {
+    return roundTrips.get();
+  }
+}
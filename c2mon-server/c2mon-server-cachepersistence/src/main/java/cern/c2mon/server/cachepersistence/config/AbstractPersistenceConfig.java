@@ -2,6 +2,7 @@ package cern.c2mon.server.cachepersistence.config;
 
 import cern.c2mon.server.cache.ClusterCache;
 import cern.c2mon.server.cache.config.CacheProperties;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -21,4 +22,7 @@ public abstract class AbstractPersistenceConfig {
 
   @Autowired
   protected ThreadPoolTaskExecutor cachePersistenceThreadPoolTaskExecutor;
+
+  @Autowired
+  protected SqlSessionTemplate cacheBatchSqlSessionTemplate;
 }
@@ -7,6 +7,7 @@ import cern.c2mon.server.cachepersistence.CachePersistenceDAO;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManager;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManagerImpl;
 import cern.c2mon.server.cachepersistence.impl.CachePersistenceDAOImpl;
+import cern.c2mon.server.cachepersistence.impl.RuntimeFields;
 import cern.c2mon.server.cachepersistence.listener.PersistenceSynchroListener;
 import cern.c2mon.server.common.alarm.Alarm;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,6 +30,10 @@ public class AlarmPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<Alarm> alarmPersistenceDAO() {
+    if (properties.isIncremental()) {
+      return new CachePersistenceDAOImpl<>(alarmMapper, alarmCache, cacheBatchSqlSessionTemplate, AlarmMapper.class,
+          RuntimeFields::alarm);
+    }
     return new CachePersistenceDAOImpl<>(alarmMapper, alarmCache);
   }
 
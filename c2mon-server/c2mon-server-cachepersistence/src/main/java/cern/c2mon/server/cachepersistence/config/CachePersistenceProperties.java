@@ -23,4 +23,12 @@ public class CachePersistenceProperties {
 
   /** Set the capacity for the ThreadPoolExecutor's BlockingQueue */
   private int queueCapacity = 1000;
+
+  /**
+   * Persist the DataTags and Alarms incrementally: only the rows whose runtime
+   * fields changed since they were last persisted are written, with one JDBC
+   * batch per persistence batch instead of one statement per row. Assumes the
+   * runtime columns are only written by the cache persistence
+   */
+  private boolean incremental = false;
 }
@@ -6,6 +6,7 @@ import cern.c2mon.server.cachepersistence.CachePersistenceDAO;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManager;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManagerImpl;
 import cern.c2mon.server.cachepersistence.impl.CachePersistenceDAOImpl;
+import cern.c2mon.server.cachepersistence.impl.RuntimeFields;
 import cern.c2mon.server.cachepersistence.listener.PersistenceSynchroListener;
 import cern.c2mon.server.common.datatag.DataTag;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +27,10 @@ public class DataTagPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<DataTag> dataTagPersistenceDAO() {
+    if (properties.isIncremental()) {
+      return new CachePersistenceDAOImpl<>(dataTagMapper, dataTagCache, cacheBatchSqlSessionTemplate, DataTagMapper.class,
+          RuntimeFields::dataTag);
+    }
     return new CachePersistenceDAOImpl<>(dataTagMapper, dataTagCache);
   }
 
@@ -16,17 +16,27 @@
  *****************************************************************************/
 package cern.c2mon.server.cachepersistence.impl;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.BatchResult;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import cern.c2mon.server.cache.C2monCache;
 import cern.c2mon.server.cache.dbaccess.PersistenceMapper;
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.cachepersistence.CachePersistenceDAO;
+import cern.c2mon.server.cachepersistence.common.PersistenceStatistics;
 import cern.c2mon.server.common.tag.Tag;
 import cern.c2mon.shared.common.Cacheable;
 
@@ -35,6 +45,11 @@ import cern.c2mon.shared.common.Cacheable;
  * to the database. The cache object needs to have a corresponding
  * {@link PersistenceMapper}.
  *
+ * <p>In the incremental mode, the runtime fields of the cache objects are
+ * read under the cache object lock (instead of cloning the whole object) and
+ * compared with the fields persisted last time. Only the changed objects are
+ * written, in one JDBC batch per persisted batch of keys.
+ *
  * @author Mark Brightwell
  *
  * @param <T> the type of the cache object
@@ -55,6 +70,24 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
    */
   private C2monCache<Long, T> cache;
 
+  /**
+   * Session executing the update statements in JDBC batches, or
+   * <code>null</code> if not persisting incrementally.
+   */
+  private SqlSessionTemplate batchSqlSession;
+
+  /** Id of the mapper statement writing the runtime fields */
+  private String updateStatement;
+
+  /** Takes the snapshot of the runtime fields of a cache object */
+  private Function<T, Map<String, Object>> runtimeFields;
+
+  /** Runtime fields of the cache objects, as last persisted */
+  private final Map<Long, Map<String, Object>> persistedFields = new ConcurrentHashMap<>();
+
+  /** Counters of the persisted batches */
+  private final PersistenceStatistics statistics = new PersistenceStatistics();
+
   /**
    * Constructor required cache and the persistence bean for this cache.
    *
@@ -67,6 +100,26 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
     this.cache = cache;
   }
 
+  /**
+   * Constructor of a DAO persisting incrementally.
+   *
+   * @param persistenceMapper the mapper bean for this cache
+   * @param cache the cache that is being persisted
+   * @param batchSqlSession session with the BATCH executor, on the cache database
+   * @param mapperType the mapper interface, whose <code>updateCacheable</code>
+   *                   statement is executed with the runtime fields as parameter
+   * @param runtimeFields takes the snapshot of the runtime fields written by the
+   *                      <code>updateCacheable</code> statement
+   */
+  public CachePersistenceDAOImpl(final PersistenceMapper<T> persistenceMapper, final C2monCache<Long, T> cache,
+                                 final SqlSessionTemplate batchSqlSession, final Class<? extends PersistenceMapper<T>> mapperType,
+                                 final Function<T, Map<String, Object>> runtimeFields) {
+    this(persistenceMapper, cache);
+    this.batchSqlSession = batchSqlSession;
+    this.updateStatement = mapperType.getName() + ".updateCacheable";
+    this.runtimeFields = runtimeFields;
+  }
+
   /**
    * Persists a single cacheable
    * setting).
@@ -85,19 +138,98 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
   @Transactional(value = "cacheTransactionManager")
   @Override
   public void persistBatch(final List<Long> keyList) {
+    if (runtimeFields != null) {
+      persistChangedFields(keyList);
+      return;
+    }
+
+    int persisted = 0;
     T cacheObject;
     for (Long key : keyList) {
       try {
         cacheObject = cache.getCopy(key);
         //do not persist unconfigured tags TODO could remove as unconfigured not used
-        if (cacheObject != null && (!(cacheObject instanceof Tag) || !((Tag) cacheObject).isInUnconfigured())) {
+        if (isPersisted(cacheObject)) {
           persistenceMapper.updateCacheable(cacheObject);
+          persisted++;
+        }
+      } catch (CacheElementNotFoundException ex) {
+        logNotFound(key, ex);
+      }
+    }
+    statistics.record(persisted, 0, persisted);
+  }
+
+  /**
+   * Writes the runtime fields of the cache objects which changed since they
+   * were last persisted, in one JDBC batch. Must run in a transaction, so that
+   * the statements are sent together on commit.
+   *
+   * @param keyList keys of the elements that need persisting
+   */
+  private void persistChangedFields(final List<Long> keyList) {
+    long start = System.nanoTime();
+    final Map<Long, Map<String, Object>> changedFields = new HashMap<>();
+    int skipped = 0;
+    for (Long key : keyList) {
+      Map<String, Object> fields;
+      cache.acquireReadLockOnKey(key);
+      try {
+        T cacheObject = cache.get(key);
+        if (!isPersisted(cacheObject)) {
+          continue;
         }
+        fields = runtimeFields.apply(cacheObject);
       } catch (CacheElementNotFoundException ex) {
-        log.warn("Cache element with id {} could not be persisted as not found in cache " +
-            "(may have been removed in the meantime by a re-configuration). Cache is {}", key, cache.getClass().getSimpleName(), ex);
+        persistedFields.remove(key);
+        logNotFound(key, ex);
+        continue;
+      } finally {
+        cache.releaseReadLockOnKey(key);
+      }
+
+      if (fields.equals(persistedFields.get(key))) {
+        skipped++;
+      } else {
+        changedFields.put(key, fields);
       }
     }
+
+    for (Map<String, Object> fields : changedFields.values()) {
+      batchSqlSession.update(updateStatement, fields);
+    }
+    List<BatchResult> batches = batchSqlSession.flushStatements();
+
+    // remember the persisted fields only once they are committed
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          persistedFields.putAll(changedFields);
+        }
+      });
+    } else {
+      persistedFields.putAll(changedFields);
+    }
+
+    long elapsed = System.nanoTime() - start;
+    statistics.record(changedFields.size(), skipped, batches.size());
+    log.debug("Persisted {} changed of {} cache objects in {} round-trip(s) in {} ms ({})", changedFields.size(), keyList.size(),
+        batches.size(), TimeUnit.NANOSECONDS.toMillis(elapsed), cache.getClass().getSimpleName());
+  }
+
+  private static boolean isPersisted(final Object cacheObject) {
+    return cacheObject != null && (!(cacheObject instanceof Tag) || !((Tag) cacheObject).isInUnconfigured());
+  }
+
+  private void logNotFound(final Long key, final CacheElementNotFoundException ex) {
+    log.warn("Cache element with id {} could not be persisted as not found in cache " +
+        "(may have been removed in the meantime by a re-configuration). Cache is {}", key, cache.getClass().getSimpleName(), ex);
+  }
+
+  @Override
+  public PersistenceStatistics getStatistics() {
+    return statistics;
   }
 
 
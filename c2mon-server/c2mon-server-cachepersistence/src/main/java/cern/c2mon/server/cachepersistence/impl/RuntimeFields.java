@@ -0,0 +1,88 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cachepersistence.impl;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.shared.common.datatag.DataTagQuality;
+
+/**
+ * Snapshots of the runtime fields of the cache objects, as written by the
+ * <code>updateCacheable</code> statements of their mappers. The snapshots
+ * are used as parameters of these statements and to find out whether an
+ * object changed since it was last persisted, so they copy the mutable
+ * fields.
+ */
+public final class RuntimeFields {
+
+  private RuntimeFields() {
+  }
+
+  /**
+   * @param dataTag the DataTag, read locked
+   * @return the fields of the <code>DataTagMapper.updateCacheable</code> statement
+   */
+  public static Map<String, Object> dataTag(final DataTag dataTag) {
+    Map<String, Object> fields = new HashMap<>();
+    fields.put("id", dataTag.getId());
+    fields.put("value", dataTag.getValue());
+    fields.put("valueDescription", dataTag.getValueDescription());
+    fields.put("sourceTimestamp", copy(dataTag.getSourceTimestamp()));
+    fields.put("daqTimestamp", copy(dataTag.getDaqTimestamp()));
+    fields.put("cacheTimestamp", copy(dataTag.getCacheTimestamp()));
+    fields.put("dataTagQuality", copy(dataTag.getDataTagQuality()));
+    fields.put("simulated", dataTag.isSimulated());
+    return fields;
+  }
+
+  /**
+   * @param alarm the Alarm, read locked
+   * @return the fields of the <code>AlarmMapper.updateCacheable</code> statement
+   */
+  public static Map<String, Object> alarm(final Alarm alarm) {
+    Map<String, Object> fields = new HashMap<>();
+    fields.put("id", alarm.getId());
+    fields.put("state", alarm.getState());
+    fields.put("timestamp", copy(alarm.getTimestamp()));
+    fields.put("published", alarm.isPublishedToLaser());
+    fields.put("info", alarm.getInfo());
+    Map<String, Object> lastPublication = new HashMap<>();
+    if (alarm.getLastPublication() != null) {
+      lastPublication.put("state", alarm.getLastPublication().getState());
+      lastPublication.put("publicationTime", copy(alarm.getLastPublication().getPublicationTime()));
+      lastPublication.put("info", alarm.getLastPublication().getInfo());
+    }
+    fields.put("lastPublication", lastPublication);
+    return fields;
+  }
+
+  private static Timestamp copy(final Timestamp timestamp) {
+    return timestamp == null ? null : (Timestamp) timestamp.clone();
+  }
+
+  private static DataTagQuality copy(final DataTagQuality quality) {
+    try {
+      return quality == null ? null : quality.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException("Unable to copy the quality", e);
+    }
+  }
+}
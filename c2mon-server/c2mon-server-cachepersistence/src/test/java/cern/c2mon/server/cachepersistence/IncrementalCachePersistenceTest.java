@@ -0,0 +1,141 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cachepersistence;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cern.c2mon.server.cache.AlarmCache;
+import cern.c2mon.server.cache.config.CacheModule;
+import cern.c2mon.server.cache.datatag.DataTagCacheImpl;
+import cern.c2mon.server.cache.dbaccess.AlarmMapper;
+import cern.c2mon.server.cache.dbaccess.DataTagMapper;
+import cern.c2mon.server.cache.dbaccess.config.CacheDbAccessModule;
+import cern.c2mon.server.cachepersistence.common.BatchPersistenceManagerImpl;
+import cern.c2mon.server.cachepersistence.config.CachePersistenceModule;
+import cern.c2mon.server.common.alarm.AlarmCacheObject;
+import cern.c2mon.server.common.alarm.AlarmCondition;
+import cern.c2mon.server.common.config.CommonModule;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.test.DatabasePopulationRule;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Integration test of the incremental cache persistence, which only writes
+ * the changed DataTags and Alarms.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {
+    CommonModule.class,
+    CacheModule.class,
+    CacheDbAccessModule.class,
+    CachePersistenceModule.class,
+    DatabasePopulationRule.class
+})
+@TestPropertySource(properties = "c2mon.server.cachepersistence.incremental=true")
+public class IncrementalCachePersistenceTest {
+
+  @Rule
+  @Autowired
+  public DatabasePopulationRule databasePopulationRule;
+
+  @Autowired
+  private DataTagCacheImpl dataTagCache;
+
+  @Autowired
+  private DataTagMapper dataTagMapper;
+
+  @Autowired
+  private BatchPersistenceManagerImpl dataTagPersistenceManager;
+
+  @Autowired
+  private AlarmCache alarmCache;
+
+  @Autowired
+  private AlarmMapper alarmMapper;
+
+  @Autowired
+  private BatchPersistenceManagerImpl alarmPersistenceManager;
+
+  private DataTagCacheObject dataTag;
+
+  private AlarmCacheObject alarm;
+
+  @Before
+  public void setUp() {
+    dataTag = (DataTagCacheObject) dataTagMapper.getItem(200000L);
+    dataTagCache.putQuiet(dataTag);
+    alarm = (AlarmCacheObject) alarmMapper.getItem(350000L);
+    alarmCache.putQuiet(alarm);
+  }
+
+  @Test
+  public void testUnchangedDataTagIsNotWrittenAgain() {
+    dataTag.setValue(0);
+    dataTag.setCacheTimestamp(new Timestamp(System.currentTimeMillis()));
+    persistDataTag();
+    assertEquals(1, dataTagPersistenceManager.getLastCycleRows());
+    assertEquals(1, dataTagPersistenceManager.getLastCycleRoundTrips());
+    assertEquals(0, dataTagMapper.getItem(dataTag.getId()).getValue());
+
+    long skipped = dataTagPersistenceManager.getSkippedRows();
+    persistDataTag();
+    assertEquals(0, dataTagPersistenceManager.getLastCycleRows());
+    assertEquals(0, dataTagPersistenceManager.getLastCycleRoundTrips());
+    assertEquals(skipped + 1, dataTagPersistenceManager.getSkippedRows());
+
+    dataTag.getDataTagQuality().addInvalidStatus(TagQualityStatus.VALUE_OUT_OF_BOUNDS, "out of bounds");
+    persistDataTag();
+    assertEquals(1, dataTagPersistenceManager.getLastCycleRows());
+    assertFalse(dataTagMapper.getItem(dataTag.getId()).getDataTagQuality().isValid());
+  }
+
+  @Test
+  public void testChangedAlarmIsWritten() {
+    alarm.setState(AlarmCondition.ACTIVE);
+    alarm.setInfo("incremental");
+    persistAlarm();
+    assertEquals(1, alarmPersistenceManager.getLastCycleRows());
+
+    AlarmCacheObject objectInDB = (AlarmCacheObject) alarmMapper.getItem(alarm.getId());
+    assertEquals(AlarmCondition.ACTIVE, objectInDB.getState());
+    assertEquals("incremental", objectInDB.getInfo());
+
+    persistAlarm();
+    assertEquals(0, alarmPersistenceManager.getLastCycleRows());
+  }
+
+  private void persistDataTag() {
+    dataTagPersistenceManager.persistList(Collections.singletonList(dataTag.getId()));
+  }
+
+  private void persistAlarm() {
+    alarmPersistenceManager.persistList(Collections.singletonList(alarm.getId()));
+  }
+}
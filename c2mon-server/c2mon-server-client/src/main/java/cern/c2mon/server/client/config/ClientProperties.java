@@ -3,6 +3,7 @@ package cern.c2mon.server.client.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import cern.c2mon.server.common.republisher.RepublicationSettings;
 import cern.c2mon.shared.client.config.ClientJmsProperties;
 
 /**
@@ -17,6 +18,12 @@ public class ClientProperties {
    */
   private Jms jms = new Jms();
 
+  /**
+   * Re-publication of the tag, alarm and supervision events that could not
+   * be sent to the clients
+   */
+  private RepublicationSettings republication = new RepublicationSettings();
+
   @Data
   public class Jms extends ClientJmsProperties {
 
@@ -33,5 +40,39 @@ public class ClientProperties {
     private int maxConsumers = 10;
     
     private int timeToLive = 3600000;
+
+    /**
+     * Batching of the tag updates published to the clients
+     */
+    private TagBatching tagBatching = new TagBatching();
+  }
+
+  @Data
+  public static class TagBatching {
+
+    /**
+     * Publish the tag updates of each tag topic grouped in one message on the
+     * topic with the ".batch" suffix. Only clients with c2mon.client.tagBatching
+     * enabled read these topics.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Longest time (in ms) an update waits for other updates of its topic
+     * before the batch is sent
+     */
+    private long window = 20;
+
+    /**
+     * Maximum number of updates in a batch message
+     */
+    private int maxSize = 500;
+
+    /**
+     * Keep publishing one message per tag update on the tag topics, as needed
+     * by the clients not reading the batch topics. Disable once all clients
+     * read the batch topics.
+     */
+    private boolean perTagPublication = true;
   }
 }
@@ -31,6 +31,7 @@ import org.springframework.stereotype.Service;
 import cern.c2mon.server.cache.C2monCacheListener;
 import cern.c2mon.server.cache.CacheRegistrationService;
 import cern.c2mon.server.cache.TagLocationService;
+import cern.c2mon.server.client.config.ClientProperties;
 import cern.c2mon.server.client.util.TransferObjectFactory;
 import cern.c2mon.server.common.alarm.Alarm;
 import cern.c2mon.server.common.component.Lifecycle;
@@ -86,16 +87,18 @@ public class AlarmPublisher implements C2monCacheListener<Alarm>, SmartLifecycle
    * @param pCacheRegistrationService Used to register to Alarm updates.
    * @param pTagLocationService Reference to the tag location service singleton.
    * Used to add tag information to the AlarmValue object.
+   * @param properties the client module properties, with the re-publication settings
    */
   @Autowired
   public AlarmPublisher(@Qualifier("alarmTopicPublisher") final JmsSender pJmsSender
       , final CacheRegistrationService pCacheRegistrationService
-      , final TagLocationService pTagLocationService) {
+      , final TagLocationService pTagLocationService
+      , final ClientProperties properties) {
 
     jmsSender = pJmsSender;
     cacheRegistrationService = pCacheRegistrationService;
     tagLocationService = pTagLocationService;
-    republisher = RepublisherFactory.createRepublisher(this, "Alarm");
+    republisher = RepublisherFactory.createRepublisher(this, "Alarm", AlarmValue.class, AlarmValue::getId, properties.getRepublication());
   }
 
   /**
@@ -198,4 +201,20 @@ public class AlarmPublisher implements C2monCacheListener<Alarm>, SmartLifecycle
   public int getSizeUnpublishedList() {
     return republisher.getSizeUnpublishedList();
   }
+
+  /**
+   * @return the number of failed alarms replaced by a newer one before re-publication
+   */
+  @ManagedOperation(description = "Returns the number of failed alarms replaced by a newer one of the same alarm before re-publication")
+  public long getNumberCoalescedEvents() {
+    return republisher.getNumberCoalescedEvents();
+  }
+
+  /**
+   * @return the number of failed alarms dropped without re-publication
+   */
+  @ManagedOperation(description = "Returns the number of failed alarms dropped because too many were awaiting re-publication")
+  public long getNumberDroppedEvents() {
+    return republisher.getNumberDroppedEvents();
+  }
 }
@@ -30,6 +30,7 @@ import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
+import cern.c2mon.server.client.config.ClientProperties;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.server.common.config.ServerConstants;
 import cern.c2mon.server.common.republisher.Publisher;
@@ -77,13 +78,16 @@ public class SupervisionEventPublisher implements SupervisionListener, SmartLife
    * Default Constructor
    * @param pJmsSender Used for sending JMS messages and waiting for a response
    * @param pSupervisionNotifier Used for registering this class as listener
+   * @param properties the client module properties, with the re-publication settings
    */
   @Autowired
   public SupervisionEventPublisher(@Qualifier("supervisionTopicPublisher") final JmsSender pJmsSender,
-                                   final SupervisionNotifier pSupervisionNotifier) {
+                                   final SupervisionNotifier pSupervisionNotifier,
+                                   final ClientProperties properties) {
     jmsSender = pJmsSender;
     supervisionNotifier = pSupervisionNotifier;
-    republisher = RepublisherFactory.createRepublisher(this, "Supervision Event");
+    republisher = RepublisherFactory.createRepublisher(this, "Supervision Event", SupervisionEvent.class,
+        event -> event.getEntity() + ":" + event.getEntityId(), properties.getRepublication());
   }
 
 
@@ -164,4 +168,20 @@ public class SupervisionEventPublisher implements SupervisionListener, SmartLife
   public int getSizeUnpublishedList() {
     return republisher.getSizeUnpublishedList();
   }
+
+  /**
+   * @return the number of failed supervision events replaced by a newer one before re-publication
+   */
+  @ManagedOperation(description = "Returns the number of failed supervision events replaced by a newer one of the same entity before re-publication")
+  public long getNumberCoalescedEvents() {
+    return republisher.getNumberCoalescedEvents();
+  }
+
+  /**
+   * @return the number of failed supervision events dropped without re-publication
+   */
+  @ManagedOperation(description = "Returns the number of failed supervision events dropped because too many were awaiting re-publication")
+  public long getNumberDroppedEvents() {
+    return republisher.getNumberDroppedEvents();
+  }
 }
@@ -0,0 +1,205 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jms.JmsException;
+
+import cern.c2mon.server.common.alarm.TagWithAlarms;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
+import cern.c2mon.shared.util.jms.JmsSender;
+
+/**
+ * Groups the serialized tag updates of each tag topic and publishes them as
+ * one JSON array message on the corresponding batch topic (see
+ * {@link TopicProvider#batchTopicFor}).
+ *
+ * <p>A batch is sent when it reaches the maximum size, on the calling thread,
+ * or at the latest after the batching window, by the flushing thread. The
+ * batches of a topic are sent one at a time, in order. The updates of a batch
+ * that could not be sent are passed to the failure handler.
+ */
+@Slf4j
+class TagValueBatcher {
+
+  private final JmsSender jmsSender;
+
+  private final int maxSize;
+
+  private final Consumer<List<TagWithAlarms>> failureHandler;
+
+  /** Pending batch of each tag topic */
+  private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService flushExecutor;
+
+  private final AtomicLong sentBatches = new AtomicLong();
+
+  private final AtomicLong sentUpdates = new AtomicLong();
+
+  /**
+   * @param jmsSender used to send the batch messages
+   * @param window longest time (in ms) an update waits before its batch is sent
+   * @param maxSize maximum number of updates in a batch
+   * @param failureHandler receives the updates of the batches that could not be sent
+   */
+  TagValueBatcher(final JmsSender jmsSender, final long window, final int maxSize,
+                  final Consumer<List<TagWithAlarms>> failureHandler) {
+    this.jmsSender = jmsSender;
+    this.maxSize = maxSize;
+    this.failureHandler = failureHandler;
+    flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "TagValueBatcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flushExecutor.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Adds a serialized update to the batch of its topic, sending the batch if
+   * it is full.
+   * @param topic the tag topic of the update
+   * @param json the serialized update
+   * @param tagWithAlarms the update, passed to the failure handler if the batch cannot be sent
+   */
+  void add(final String topic, final String json, final TagWithAlarms tagWithAlarms) {
+    Batch batch = batches.computeIfAbsent(topic, key -> new Batch());
+    if (batch.add(json, tagWithAlarms) >= maxSize) {
+      send(topic, batch);
+    }
+  }
+
+  /**
+   * Sends the pending batches of all topics.
+   */
+  void flush() {
+    try {
+      for (Map.Entry<String, Batch> entry : batches.entrySet()) {
+        send(entry.getKey(), entry.getValue());
+      }
+    } catch (RuntimeException e) {
+      log.error("flush - Unexpected exception while sending the tag update batches", e);
+    }
+  }
+
+  /**
+   * Stops the flushing thread and sends the pending batches.
+   */
+  void stop() {
+    flushExecutor.shutdown();
+    try {
+      flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  /**
+   * Sends a single serialized update as a batch message, without waiting for
+   * other updates of the topic.
+   * @throws JmsException if the message could not be sent
+   */
+  void sendNow(final String topic, final String json) {
+    jmsSender.sendToTopic("[" + json + "]", TopicProvider.batchTopicFor(topic), batchSizeProperty(1));
+  }
+
+  /**
+   * @return the number of batch messages sent since the start
+   */
+  long getSentBatches() {
+    return sentBatches.get();
+  }
+
+  /**
+   * @return the number of updates sent in batch messages since the start
+   */
+  long getSentUpdates() {
+    return sentUpdates.get();
+  }
+
+  private void send(final String topic, final Batch batch) {
+    synchronized (batch.sendLock) {
+      List<String> jsons;
+      List<TagWithAlarms> updates;
+      synchronized (batch) {
+        if (batch.jsons.isEmpty()) {
+          return;
+        }
+        jsons = batch.jsons;
+        updates = batch.updates;
+        batch.jsons = new ArrayList<>();
+        batch.updates = new ArrayList<>();
+      }
+
+      StringBuilder text = new StringBuilder(jsons.size() * (jsons.get(0).length() + 1) + 2).append('[');
+      for (int i = 0; i < jsons.size(); i++) {
+        if (i > 0) {
+          text.append(',');
+        }
+        text.append(jsons.get(i));
+      }
+      text.append(']');
+
+      try {
+        jmsSender.sendToTopic(text.toString(), TopicProvider.batchTopicFor(topic), batchSizeProperty(jsons.size()));
+        sentBatches.incrementAndGet();
+        sentUpdates.addAndGet(jsons.size());
+      } catch (JmsException e) {
+        log.error("send - Error publishing a batch of " + jsons.size() + " tag updates to topic " + topic
+            + " - submitting for republication", e);
+        failureHandler.accept(updates);
+      }
+    }
+  }
+
+  private static Map<String, Integer> batchSizeProperty(final int size) {
+    return Collections.singletonMap(TagValueUpdate.BATCH_SIZE_PROPERTY, size);
+  }
+
+  /**
+   * Pending updates of a topic.
+   */
+  private static final class Batch {
+
+    /** Held while a batch of the topic is taken and sent, keeping the batches of a topic in order */
+    private final Object sendLock = new Object();
+
+    private List<String> jsons = new ArrayList<>();
+
+    private List<TagWithAlarms> updates = new ArrayList<>();
+
+    synchronized int add(final String json, final TagWithAlarms tagWithAlarms) {
+      jsons.add(json);
+      updates.add(tagWithAlarms);
+      return jsons.size();
+    }
+  }
+}
@@ -16,7 +16,9 @@
  *****************************************************************************/
 package cern.c2mon.server.client.publish;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -63,6 +65,12 @@ import cern.c2mon.shared.util.jms.JmsSender;
  * topics. The update information is transmitted as GSON message
  * with the <code>TransferTag</code> class.
  *
+ * If tag batching is enabled, the updates are in addition (or instead)
+ * published in batches on the batch topics, see {@link TagValueBatcher}.
+ * The failed publications of each channel (tag topic or batch topic) are
+ * re-published on that channel only, so that the subscribers of the other
+ * channel do not receive the update twice.
+ *
  * @author Matthias Braeger, Mark Brightwell, Ignacio Vilches
  *
  * @see AlarmAggregatorListener
@@ -83,9 +91,12 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
   /** Listens for Tag updates, evaluates all associated alarms and passes the result */
   private final AlarmAggregator alarmAggregator;
 
-  /** Contains re-publication logic */
+  /** Contains re-publication logic for the tag topics */
   private Republisher<TagWithAlarms> republisher;
 
+  /** Re-publishes the failed updates on the batch topics if batching is enabled, otherwise null */
+  private Republisher<TagWithAlarms> batchRepublisher;
+
   /** Time between republicaton attempts */
   private int republicationDelay;
 
@@ -103,6 +114,9 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
 
   private ClientProperties properties;
 
+  /** Groups the updates per topic if batching is enabled, otherwise null */
+  private TagValueBatcher batcher;
+
   /**
    * Default Constructor
    * @param jmsSender Used for sending JMS messages and waiting for a response
@@ -126,7 +140,8 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
     this.configurationUpdate = configurationUpdate;
     this.tagFacadeGateway = pTagFacadeGateway;
     this.tagLocationService = tagLocationService;
-    this.republisher = RepublisherFactory.createRepublisher(this, "Tag");
+    this.republisher = RepublisherFactory.createRepublisher(this, "Tag", TagWithAlarmsImpl.class, tagWithAlarms -> tagWithAlarms.getTag().getId(),
+        properties.getRepublication());
     this.properties = properties;
   }
 
@@ -136,6 +151,16 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
   @PostConstruct
   public void init() {
     log.info("init - Starting Tag publisher.");
+    ClientProperties.TagBatching batching = properties.getJms().getTagBatching();
+    if (batching.isEnabled()) {
+      log.info("init - Publishing tag updates in batches of up to {} updates every {} ms (per-tag publication: {})",
+          batching.getMaxSize(), batching.getWindow(), batching.isPerTagPublication());
+      batchRepublisher = RepublisherFactory.createRepublisher(this::publishBatch, "TagBatch", TagWithAlarmsImpl.class,
+          tagWithAlarms -> tagWithAlarms.getTag().getId(), properties.getRepublication());
+      batcher = new TagValueBatcher(jmsSender, batching.getWindow(), batching.getMaxSize(),
+          failedUpdates -> failedUpdates.forEach(batchRepublisher::publicationFailed));
+    }
+
     log.trace("init - Registering for Tag Updates.");
 
     this.alarmAggregator.registerForTagUpdates(this);
@@ -147,6 +172,11 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
     if (republicationDelay != 0)
       republisher.setRepublicationDelay(republicationDelay);
     republisher.start();
+    if (batchRepublisher != null) {
+      if (republicationDelay != 0)
+        batchRepublisher.setRepublicationDelay(republicationDelay);
+      batchRepublisher.start();
+    }
   }
 
   /**
@@ -155,6 +185,10 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
   @PreDestroy
   public void shutdown() {
     log.info("shutdown - Stopping tag publisher.");
+    if (batcher != null) {
+      batcher.stop();
+      batchRepublisher.stop();
+    }
     republisher.stop();
   }
 
@@ -169,20 +203,78 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
   @Override
   public void notifyOnUpdate(final Tag tag, final List<Alarm> alarms) {
     TagWithAlarms tagWithAlarms = new TagWithAlarmsImpl(tag, alarms);
-    try {
-      publish(tagWithAlarms);
-    } catch (JmsException e) {
-      log.error("notifyOnUpdate - Error publishing tag update to topic for tag " + tagWithAlarms.getTag().getId() + " - submitting for republication", e);
-      republisher.publicationFailed(tagWithAlarms);
-    }
+    String json = TransferTagSerializer.toJson(TransferObjectFactory.createTransferTagValue(tagWithAlarms));
+    log.trace("notifyOnUpdate - Publishing tag update to client: {}", json);
+
+    sendToTopics(json, TopicProvider.topicFor(tag, properties), tagWithAlarms, true);
   }
 
+  /**
+   * Re-publishes a failed update on the tag topic.
+   * @throws JmsException if the update could not be sent
+   */
   @Override
   public void publish(final TagWithAlarms tagWithAlarms) {
-    TransferTagValueImpl tagValue = TransferObjectFactory.createTransferTagValue(tagWithAlarms);
-    log.trace("publish - Publishing tag update to client: " + TransferTagSerializer.toJson(tagValue));
+    jmsSender.sendToTopic(toJson(tagWithAlarms), TopicProvider.topicFor(tagWithAlarms.getTag(), properties),
+        tagIdProperty(tagWithAlarms.getTag()));
+  }
+
+  /**
+   * Re-publishes a failed update on the batch topic, as a batch of one.
+   * @throws JmsException if the update could not be sent
+   */
+  private void publishBatch(final TagWithAlarms tagWithAlarms) {
+    batcher.sendNow(TopicProvider.topicFor(tagWithAlarms.getTag(), properties), toJson(tagWithAlarms));
+  }
+
+  private static String toJson(final TagWithAlarms tagWithAlarms) {
+    String json = TransferTagSerializer.toJson(TransferObjectFactory.createTransferTagValue(tagWithAlarms));
+    log.trace("publish - Re-publishing tag update to client: {}", json);
+    return json;
+  }
+
+  /**
+   * Sends the update to the tag topic, unless batching replaces the per-tag
+   * publication, and to the batch topic if batching is enabled. If the
+   * publication fails on a topic, the update is submitted for
+   * re-publication on that topic only.
+   * @param json the serialized update
+   * @param topic the tag topic of the update
+   * @param tagWithAlarms the update
+   * @param batched true to add the update to the pending batch of its topic,
+   *                false to send it to the batch topic immediately
+   */
+  private void sendToTopics(final String json, final String topic, final TagWithAlarms tagWithAlarms, final boolean batched) {
+    if (batcher == null || properties.getJms().getTagBatching().isPerTagPublication()) {
+      try {
+        jmsSender.sendToTopic(json, topic, tagIdProperty(tagWithAlarms.getTag()));
+      } catch (JmsException e) {
+        log.error("sendToTopics - Error publishing tag update to topic " + topic + " for tag " + tagWithAlarms.getTag().getId()
+            + " - submitting for republication", e);
+        republisher.publicationFailed(tagWithAlarms);
+      }
+    }
+    if (batcher != null) {
+      if (batched) {
+        batcher.add(topic, json, tagWithAlarms);
+      } else {
+        try {
+          batcher.sendNow(topic, json);
+        } catch (JmsException e) {
+          log.error("sendToTopics - Error publishing tag update to batch topic of " + topic + " for tag " + tagWithAlarms.getTag().getId()
+              + " - submitting for republication", e);
+          batchRepublisher.publicationFailed(tagWithAlarms);
+        }
+      }
+    }
+  }
 
-    jmsSender.sendToTopic(TransferTagSerializer.toJson(tagValue), TopicProvider.topicFor(tagWithAlarms.getTag(), properties));
+  /**
+   * @return the message property allowing the clients to filter out the
+   *         updates of the tags they are not subscribed to before parsing them
+   */
+  private static Map<String, Long> tagIdProperty(final Tag tag) {
+    return Collections.singletonMap(TagValueUpdate.TAG_ID_PROPERTY, tag.getId());
   }
 
   @Override
@@ -190,18 +282,13 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
     tagLocationService.acquireReadLockOnKey(tagId);
     try {
       TagWithAlarms tagWithAlarms = this.tagFacadeGateway.getTagWithAlarms(tagId);
-      try {
-        String topic = TopicProvider.topicFor(tagWithAlarms.getTag(), properties);
-        TransferTagImpl tag = TransferObjectFactory.createTransferTag(tagWithAlarms, aliveTimerFacade.isRegisteredAliveTimer(tagId), topic);
+      String topic = TopicProvider.topicFor(tagWithAlarms.getTag(), properties);
+      TransferTagImpl tag = TransferObjectFactory.createTransferTag(tagWithAlarms, aliveTimerFacade.isRegisteredAliveTimer(tagId), topic);
 
-        log.trace("notifyOnConfigurationUpdate - Publishing configuration update to client: " + TransferTagSerializer.toJson(tag));
+      String json = TransferTagSerializer.toJson(tag);
+      log.trace("notifyOnConfigurationUpdate - Publishing configuration update to client: {}", json);
 
-        jmsSender.sendToTopic(TransferTagSerializer.toJson(tag), topic);
-      } catch (JmsException e) {
-        log.error("notifyOnConfigurationUpdate - Error publishing configuration update to topic for tag " + tagWithAlarms.getTag().getId()
-            + " - submitting for republication", e);
-        republisher.publicationFailed(tagWithAlarms);
-      }
+      sendToTopics(json, topic, tagWithAlarms, false);
     } finally {
       tagLocationService.releaseReadLockOnKey(tagId);
     }
@@ -212,7 +299,7 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
    */
   @ManagedOperation(description = "Returns the total number of failed publication attempts since the application started")
   public long getNumberFailedPublications() {
-    return republisher.getNumberFailedPublications();
+    return republisher.getNumberFailedPublications() + (batchRepublisher == null ? 0 : batchRepublisher.getNumberFailedPublications());
   }
 
   /**
@@ -220,6 +307,38 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
    */
   @ManagedOperation(description = "Returns the current number of events awaiting re-publication (should be 0 in normal operation)")
   public int getSizeUnpublishedList() {
-    return republisher.getSizeUnpublishedList();
+    return republisher.getSizeUnpublishedList() + (batchRepublisher == null ? 0 : batchRepublisher.getSizeUnpublishedList());
+  }
+
+  /**
+   * @return the number of failed tag updates replaced by a newer one before re-publication
+   */
+  @ManagedOperation(description = "Returns the number of failed tag updates replaced by a newer one of the same tag before re-publication")
+  public long getNumberCoalescedEvents() {
+    return republisher.getNumberCoalescedEvents() + (batchRepublisher == null ? 0 : batchRepublisher.getNumberCoalescedEvents());
+  }
+
+  /**
+   * @return the number of failed tag updates dropped without re-publication
+   */
+  @ManagedOperation(description = "Returns the number of failed tag updates dropped because too many were awaiting re-publication")
+  public long getNumberDroppedEvents() {
+    return republisher.getNumberDroppedEvents() + (batchRepublisher == null ? 0 : batchRepublisher.getNumberDroppedEvents());
+  }
+
+  /**
+   * @return the number of batch messages published since the publisher start
+   */
+  @ManagedOperation(description = "Returns the number of tag update batch messages published since the application started")
+  public long getNumberPublishedBatches() {
+    return batcher == null ? 0 : batcher.getSentBatches();
+  }
+
+  /**
+   * @return the number of tag updates published in batch messages since the publisher start
+   */
+  @ManagedOperation(description = "Returns the number of tag updates published in batch messages since the application started")
+  public long getNumberBatchedUpdates() {
+    return batcher == null ? 0 : batcher.getSentUpdates();
   }
 }
@@ -5,6 +5,7 @@ import cern.c2mon.server.common.control.ControlTag;
 import cern.c2mon.server.common.datatag.DataTag;
 import cern.c2mon.server.common.rule.RuleTag;
 import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
 
 /**
  * @author Justin Lewis Salmon
@@ -22,4 +23,12 @@ public class TopicProvider {
       return trunk + "." + ((DataTag) tag).getProcessId();
     }
   }
+
+  /**
+   * @param tagTopic the topic of a tag, as returned by {@link #topicFor}
+   * @return the topic on which the batch messages of this topic are published
+   */
+  public static String batchTopicFor(String tagTopic) {
+    return tagTopic + TagValueUpdate.BATCH_TOPIC_SUFFIX;
+  }
 }
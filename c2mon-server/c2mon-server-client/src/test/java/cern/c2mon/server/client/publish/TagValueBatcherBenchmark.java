@@ -0,0 +1,180 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.JMSException;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.openwire.OpenWireFormat;
+
+import cern.c2mon.server.common.alarm.TagWithAlarmsImpl;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.client.tag.TagMode;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
+import cern.c2mon.shared.client.tag.TransferTagValueImpl;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+import cern.c2mon.shared.util.jms.JmsSender;
+
+/**
+ * Compares the number of messages and the bytes sent to the broker for a
+ * stream of tag updates published one message per update and in batches by
+ * the {@link TagValueBatcher}.
+ *
+ * <p>The messages are not sent but marshalled with the OpenWire format used
+ * between the server and the broker, so the byte counts include the message
+ * headers and properties. The updates are fed at the given rate, spread over
+ * the given number of process topics.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE, or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.server.client.publish.TagValueBatcherBenchmark
+ * -Dexec.args="100000 10 10"</code> (updates per second, topics, duration in s).
+ */
+public class TagValueBatcherBenchmark {
+
+  private final int rate;
+
+  private final int topicCount;
+
+  private final int durationSeconds;
+
+  public TagValueBatcherBenchmark(final int rate, final int topicCount, final int durationSeconds) {
+    this.rate = rate;
+    this.topicCount = topicCount;
+    this.durationSeconds = durationSeconds;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int rate = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int topicCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int durationSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    TagValueBatcherBenchmark benchmark = new TagValueBatcherBenchmark(rate, topicCount, durationSeconds);
+    System.out.printf("%d updates/s on %d topics for %d s%n", rate, topicCount, durationSeconds);
+    benchmark.run(0, 0);
+    for (long window : new long[] {5, 20, 100}) {
+      for (int maxSize : new int[] {100, 500}) {
+        benchmark.run(window, maxSize);
+      }
+    }
+  }
+
+  /**
+   * @param window batching window in ms, or 0 to send one message per update
+   * @param maxSize maximum batch size
+   */
+  private void run(final long window, final int maxSize) throws InterruptedException {
+    MarshallingJmsSender jmsSender = new MarshallingJmsSender();
+    TagValueBatcher batcher = window == 0 ? null : new TagValueBatcher(jmsSender, window, maxSize, failed -> { });
+    TagWithAlarmsImpl tagWithAlarms = new TagWithAlarmsImpl(new DataTagCacheObject(0L), new ArrayList<>());
+
+    long updates = 0;
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+    long now;
+    while ((now = System.nanoTime()) < end) {
+      long due = (now - start) * rate / 1000000000L;
+      for (; updates < due; updates++) {
+        long tagId = 100000 + updates % (rate * 2L);
+        String topic = "c2mon.client.tag." + (tagId % topicCount);
+        String json = json(tagId, updates);
+        if (batcher == null) {
+          jmsSender.sendToTopic(json, topic, Collections.singletonMap(TagValueUpdate.TAG_ID_PROPERTY, tagId));
+        } else {
+          batcher.add(topic, json, tagWithAlarms);
+        }
+      }
+      Thread.sleep(1);
+    }
+    if (batcher != null) {
+      batcher.stop();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.printf("%-24s %9.0f messages/s %8.2f MB/s | %6.1f bytes/update, %6.1f updates/message%n",
+        window == 0 ? "one message per update" : "window " + window + " ms, max " + maxSize,
+        jmsSender.messages.get() / seconds, jmsSender.bytes.get() / seconds / 1e6,
+        (double) jmsSender.bytes.get() / updates, (double) updates / jmsSender.messages.get());
+  }
+
+  private static String json(final long tagId, final long sequence) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    TransferTagValueImpl update = new TransferTagValueImpl(tagId, sequence * 0.25, "", new DataTagQualityImpl(),
+        TagMode.OPERATIONAL, now, now, now, "Value of tag " + tagId);
+    update.setValueClassName(Double.class.getName());
+    return TransferTagSerializer.toJson(update);
+  }
+
+  /**
+   * Counts the messages and their OpenWire size instead of sending them.
+   */
+  private static final class MarshallingJmsSender implements JmsSender {
+
+    private final OpenWireFormat wireFormat = new OpenWireFormat();
+
+    private final AtomicLong messages = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    @Override
+    public synchronized void sendToTopic(final String text, final String jmsTopic, final Map<String, ?> messageProperties) {
+      try {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setDestination(new ActiveMQTopic(jmsTopic));
+        message.setText(text);
+        for (Map.Entry<String, ?> property : messageProperties.entrySet()) {
+          message.setObjectProperty(property.getKey(), property.getValue());
+        }
+        message.setTimestamp(System.currentTimeMillis());
+        bytes.addAndGet(wireFormat.marshal(message).getLength());
+        messages.incrementAndGet();
+      } catch (JMSException | IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public String sendRequestToQueue(final String text, final String jmsQueue, final long timeout) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToTopic(final String text, final String jmsTopic) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void send(final String text) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToQueue(final String text, final String jmsQueueName) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jms.UncategorizedJmsException;
+
+import cern.c2mon.server.common.alarm.TagWithAlarms;
+import cern.c2mon.server.common.alarm.TagWithAlarmsImpl;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
+import cern.c2mon.shared.util.jms.JmsSender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link TagValueBatcher}.
+ */
+public class TagValueBatcherTest {
+
+  private final RecordingJmsSender jmsSender = new RecordingJmsSender();
+
+  private final List<TagWithAlarms> failed = new CopyOnWriteArrayList<>();
+
+  private TagValueBatcher batcher;
+
+  @After
+  public void afterTest() {
+    batcher.stop();
+  }
+
+  @Test
+  public void testFullBatchIsSentImmediately() {
+    batcher = new TagValueBatcher(jmsSender, 60000, 3, failed::addAll);
+    batcher.add("topic.1", "{\"id\":1}", update(1L));
+    batcher.add("topic.2", "{\"id\":2}", update(2L));
+    batcher.add("topic.1", "{\"id\":3}", update(3L));
+    assertTrue(jmsSender.sent.isEmpty());
+
+    batcher.add("topic.1", "{\"id\":4}", update(4L));
+
+    assertEquals(1, jmsSender.sent.size());
+    assertEquals("topic.1" + TagValueUpdate.BATCH_TOPIC_SUFFIX, jmsSender.sent.get(0)[1]);
+    assertEquals("[{\"id\":1},{\"id\":3},{\"id\":4}]", jmsSender.sent.get(0)[0]);
+    assertEquals(3, jmsSender.sent.get(0)[2]);
+    assertEquals(1, batcher.getSentBatches());
+    assertEquals(3, batcher.getSentUpdates());
+  }
+
+  @Test
+  public void testPendingBatchesAreSentAfterWindow() throws InterruptedException {
+    batcher = new TagValueBatcher(jmsSender, 20, 100, failed::addAll);
+    batcher.add("topic.1", "{\"id\":1}", update(1L));
+    batcher.add("topic.2", "{\"id\":2}", update(2L));
+
+    for (int i = 0; i < 100 && jmsSender.sent.size() < 2; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, jmsSender.sent.size());
+    assertEquals(2, batcher.getSentUpdates());
+  }
+
+  @Test
+  public void testFailedBatchIsHandedToFailureHandler() {
+    batcher = new TagValueBatcher(jmsSender, 60000, 100, failed::addAll);
+    batcher.add("topic.1", "{\"id\":1}", update(1L));
+    batcher.add("topic.1", "{\"id\":2}", update(2L));
+
+    jmsSender.fail = true;
+    batcher.flush();
+
+    assertEquals(2, failed.size());
+    assertEquals(Long.valueOf(1L), failed.get(0).getTag().getId());
+    assertEquals(0, batcher.getSentBatches());
+  }
+
+  @Test
+  public void testSendNowSendsBatchOfOne() {
+    batcher = new TagValueBatcher(jmsSender, 60000, 100, failed::addAll);
+    batcher.sendNow("topic.1", "{\"id\":1}");
+
+    assertEquals("[{\"id\":1}]", jmsSender.sent.get(0)[0]);
+    assertEquals("topic.1" + TagValueUpdate.BATCH_TOPIC_SUFFIX, jmsSender.sent.get(0)[1]);
+    assertEquals(1, jmsSender.sent.get(0)[2]);
+  }
+
+  private static TagWithAlarms update(final Long tagId) {
+    return new TagWithAlarmsImpl(new DataTagCacheObject(tagId), new ArrayList<>());
+  }
+
+  /**
+   * Records the text, topic and batch size of the sent messages.
+   */
+  private static final class RecordingJmsSender implements JmsSender {
+
+    private final List<Object[]> sent = new CopyOnWriteArrayList<>();
+
+    private volatile boolean fail = false;
+
+    @Override
+    public void sendToTopic(final String text, final String jmsTopic, final Map<String, ?> messageProperties) {
+      if (fail) {
+        throw new UncategorizedJmsException("test failure");
+      }
+      sent.add(new Object[] {text, jmsTopic, messageProperties.get(TagValueUpdate.BATCH_SIZE_PROPERTY)});
+    }
+
+    @Override
+    public String sendRequestToQueue(final String text, final String jmsQueue, final long timeout) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToTopic(final String text, final String jmsTopic) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void send(final String text) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToQueue(final String text, final String jmsQueueName) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
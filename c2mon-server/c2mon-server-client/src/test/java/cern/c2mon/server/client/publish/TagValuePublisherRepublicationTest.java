@@ -0,0 +1,145 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.UncategorizedJmsException;
+
+import cern.c2mon.server.alarm.AlarmAggregator;
+import cern.c2mon.server.cache.AliveTimerFacade;
+import cern.c2mon.server.cache.TagFacadeGateway;
+import cern.c2mon.server.cache.TagLocationService;
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.server.configuration.ConfigurationUpdate;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
+import cern.c2mon.shared.util.jms.JmsSender;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of the re-publication of the {@link TagValuePublisher} when tag
+ * batching is enabled.
+ */
+public class TagValuePublisherRepublicationTest {
+
+  private final FailingJmsSender jmsSender = new FailingJmsSender();
+
+  private TagValuePublisher publisher;
+
+  @Before
+  public void setUp() {
+    ClientProperties properties = new ClientProperties();
+    properties.getJms().getTagBatching().setEnabled(true);
+    properties.getJms().getTagBatching().setWindow(10);
+    properties.getRepublication().setRepublicationDelay(50);
+    properties.getRepublication().setJitter(0);
+    publisher = new TagValuePublisher(jmsSender, EasyMock.createNiceMock(AlarmAggregator.class),
+        EasyMock.createNiceMock(AliveTimerFacade.class), EasyMock.createNiceMock(ConfigurationUpdate.class),
+        EasyMock.createNiceMock(TagFacadeGateway.class), EasyMock.createNiceMock(TagLocationService.class), properties);
+    publisher.init();
+  }
+
+  @After
+  public void afterTest() {
+    publisher.shutdown();
+  }
+
+  @Test
+  public void testFailedBatchIsRepublishedOnTheBatchTopicOnly() throws InterruptedException {
+    jmsSender.batchFailures.set(2);
+    publisher.notifyOnUpdate(CacheObjectCreation.createTestDataTag3(), Collections.emptyList());
+
+    waitForBatches(1);
+    assertEquals(1, jmsSender.tagMessages.size());
+    assertEquals(1, jmsSender.batchMessages.size());
+  }
+
+  @Test
+  public void testFailedTagMessageIsRepublishedOnTheTagTopicOnly() throws InterruptedException {
+    jmsSender.tagFailures.set(2);
+    publisher.notifyOnUpdate(CacheObjectCreation.createTestDataTag3(), Collections.emptyList());
+
+    waitForBatches(1);
+    for (int i = 0; i < 100 && jmsSender.tagMessages.isEmpty(); i++) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(1, jmsSender.tagMessages.size());
+    assertEquals(1, jmsSender.batchMessages.size());
+  }
+
+  private void waitForBatches(final int count) throws InterruptedException {
+    for (int i = 0; i < 100 && jmsSender.batchMessages.size() < count; i++) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+  }
+
+  /**
+   * Fails the given number of sends on each kind of topic, then records the
+   * sent messages.
+   */
+  private static final class FailingJmsSender implements JmsSender {
+
+    private final AtomicInteger tagFailures = new AtomicInteger();
+
+    private final AtomicInteger batchFailures = new AtomicInteger();
+
+    private final List<String> tagMessages = new CopyOnWriteArrayList<>();
+
+    private final List<String> batchMessages = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void sendToTopic(final String text, final String jmsTopic, final Map<String, ?> messageProperties) {
+      boolean batch = jmsTopic.endsWith(TagValueUpdate.BATCH_TOPIC_SUFFIX);
+      if ((batch ? batchFailures : tagFailures).getAndDecrement() > 0) {
+        throw new UncategorizedJmsException("test failure");
+      }
+      (batch ? batchMessages : tagMessages).add(text);
+    }
+
+    @Override
+    public String sendRequestToQueue(final String text, final String jmsQueue, final long timeout) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToTopic(final String text, final String jmsTopic) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void send(final String text) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToQueue(final String text, final String jmsQueueName) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -21,7 +21,9 @@ import java.sql.Timestamp;
 import lombok.Data;
 
 import cern.c2mon.server.common.metadata.Metadata;
+import cern.c2mon.server.common.util.DeepCopyUtils;
 import cern.c2mon.shared.common.Cacheable;
+import cern.c2mon.shared.common.DeepCopyable;
 
 /**
  * Alarm object held in the cache.
@@ -34,7 +36,7 @@ import cern.c2mon.shared.common.Cacheable;
  * 
  */
 @Data
-public class AlarmCacheObject implements Cloneable, Cacheable, Alarm {
+public class AlarmCacheObject implements Cloneable, Cacheable, Alarm, DeepCopyable<AlarmCacheObject> {
 
   /** Serial version UID */
   private static final long serialVersionUID = 794087757524662419L;
@@ -169,6 +171,19 @@ public class AlarmCacheObject implements Cloneable, Cacheable, Alarm {
      return alarmCacheObject;
   }
 
+  /**
+   * Deep copy implementation, used in place of a copy by serialization. Completes
+   * the clone with a copy of the metadata.
+   *
+   * @throws CloneNotSupportedException if the metadata values are not immutable
+   */
+  @Override
+  public AlarmCacheObject deepCopy() throws CloneNotSupportedException {
+    AlarmCacheObject alarmCacheObject = (AlarmCacheObject) clone();
+    alarmCacheObject.metadata = DeepCopyUtils.copy(this.metadata);
+    return alarmCacheObject;
+  }
+
   public final Metadata getMetadata() {
     if (this.metadata == null) {
       this.metadata = new Metadata();
@@ -16,6 +16,7 @@
  *****************************************************************************/
 package cern.c2mon.server.common.alarm;
 
+import java.io.Serializable;
 import java.util.Collection;
 
 import cern.c2mon.server.common.tag.Tag;
@@ -23,11 +24,16 @@ import cern.c2mon.server.common.tag.Tag;
 /**
  * Standard implementation of the TagWithAlarms interface.
  * Use the interface!
+ *
+ * <p>Is serializable so that it can be spilled to disk while waiting for
+ * re-publication (the alarm collection should be serializable too).
  * 
  * @author Mark Brightwell
  *
  */
-public class TagWithAlarmsImpl implements TagWithAlarms {
+public class TagWithAlarmsImpl implements TagWithAlarms, Serializable {
+
+  private static final long serialVersionUID = -3207622327633526154L;
 
   /**
    * A tag.
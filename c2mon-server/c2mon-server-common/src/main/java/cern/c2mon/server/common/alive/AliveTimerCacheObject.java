@@ -21,8 +21,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 
 import cern.c2mon.shared.common.Cacheable;
+import cern.c2mon.shared.common.DeepCopyable;
 
-public class AliveTimerCacheObject implements AliveTimer, Cacheable, Cloneable {
+public class AliveTimerCacheObject implements AliveTimer, Cacheable, Cloneable, DeepCopyable<AliveTimerCacheObject> {
 
     private static final long serialVersionUID = 2151886747282763819L;
 
@@ -148,11 +149,21 @@ public class AliveTimerCacheObject implements AliveTimer, Cacheable, Cloneable {
     @Override
     public AliveTimerCacheObject clone() throws CloneNotSupportedException {
         AliveTimerCacheObject aliveTimer = (AliveTimerCacheObject) super.clone();
-        aliveTimer.dependentAliveTimerIds = new ArrayList<Long>(this.dependentAliveTimerIds);
-        
+        if (this.dependentAliveTimerIds != null) {
+          aliveTimer.dependentAliveTimerIds = new ArrayList<Long>(this.dependentAliveTimerIds);
+        }
+
         return aliveTimer;
     }
 
+    /**
+     * The clone is already a deep copy.
+     */
+    @Override
+    public AliveTimerCacheObject deepCopy() throws CloneNotSupportedException {
+        return clone();
+    }
+
     @Override
     public Long getId() {
         return getAliveTagId();
@@ -16,13 +16,14 @@
  *****************************************************************************/
 package cern.c2mon.server.common.commfault;
 
+import cern.c2mon.shared.common.DeepCopyable;
 
 /**
  * Cache object corresponding to entries in the DB CommFaultTag view.
  * 
  * @author Mark Brightwell
  */
-public class CommFaultTagCacheObject implements CommFaultTag {
+public class CommFaultTagCacheObject implements CommFaultTag, DeepCopyable<CommFaultTagCacheObject> {
    
     private static final long serialVersionUID = 8760759761176480601L;
 
@@ -51,6 +52,14 @@ public class CommFaultTagCacheObject implements CommFaultTag {
     public CommFaultTagCacheObject clone() throws CloneNotSupportedException {
         return (CommFaultTagCacheObject) super.clone();
     }
+
+    /**
+     * All fields are immutable, so the clone is already a deep copy.
+     */
+    @Override
+    public CommFaultTagCacheObject deepCopy() throws CloneNotSupportedException {
+        return clone();
+    }
     
     /**
      * Constructor setting all fields.
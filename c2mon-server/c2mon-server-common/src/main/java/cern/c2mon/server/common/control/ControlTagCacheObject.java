@@ -52,4 +52,9 @@ public class ControlTagCacheObject extends DataTagCacheObject implements Control
   public ControlTagCacheObject clone() throws CloneNotSupportedException {
     return (ControlTagCacheObject) super.clone();
   }
+
+  @Override
+  public ControlTagCacheObject deepCopy() throws CloneNotSupportedException {
+    return (ControlTagCacheObject) super.deepCopy();
+  }
 }
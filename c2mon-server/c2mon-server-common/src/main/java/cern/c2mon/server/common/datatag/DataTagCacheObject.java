@@ -22,7 +22,9 @@ import java.util.HashSet;
 import java.util.Set;
 
 import cern.c2mon.server.common.tag.AbstractTagCacheObject;
+import cern.c2mon.server.common.util.DeepCopyUtils;
 import cern.c2mon.shared.common.Cacheable;
+import cern.c2mon.shared.common.DeepCopyable;
 import cern.c2mon.shared.common.datatag.DataTagAddress;
 import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
 
@@ -39,7 +41,7 @@ import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
  * @author Mark Brightwell
  *
  */
-public class DataTagCacheObject extends AbstractTagCacheObject implements DataTag, Cacheable, Cloneable {
+public class DataTagCacheObject extends AbstractTagCacheObject implements DataTag, Cacheable, Cloneable, DeepCopyable<DataTagCacheObject> {
 
   /**
    * Version number of the class used during serialization/deserialization. This
@@ -142,6 +144,20 @@ public class DataTagCacheObject extends AbstractTagCacheObject implements DataTa
     return dataTagCacheObject;
   }
 
+  /**
+   * Deep copy implementation, used in place of a copy by serialization.
+   * @throws CloneNotSupportedException if the value, the min/max values or the
+   *           metadata are not immutable
+   */
+  @Override
+  public DataTagCacheObject deepCopy() throws CloneNotSupportedException {
+    DeepCopyUtils.checkImmutable(minValue, "Min value of tag " + getId());
+    DeepCopyUtils.checkImmutable(maxValue, "Max value of tag " + getId());
+    DataTagCacheObject dataTagCacheObject = (DataTagCacheObject) deepCopyTag();
+    dataTagCacheObject.daqTimestamp = DeepCopyUtils.copy(this.daqTimestamp);
+    return dataTagCacheObject;
+  }
+
   /**
    * Constructor This constructor should only be used to create a "fake"
    * DataTagCacheObject representing a tag that does not exist within the TIM
@@ -19,6 +19,7 @@ package cern.c2mon.server.common.equipment;
 import java.util.Collection;
 import java.util.LinkedList;
 
+import cern.c2mon.shared.common.DeepCopyable;
 import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionEntity;
 
 /**
@@ -26,7 +27,7 @@ import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionEnti
  *
  * @author Mark Brightwell
  */
-public class EquipmentCacheObject extends AbstractEquipmentCacheObject implements Equipment, Cloneable {
+public class EquipmentCacheObject extends AbstractEquipmentCacheObject implements Equipment, Cloneable, DeepCopyable<EquipmentCacheObject> {
 
     private static final long serialVersionUID = -7917360710791608270L;
 
@@ -67,6 +68,14 @@ public class EquipmentCacheObject extends AbstractEquipmentCacheObject implement
         return equipmentCacheObject;
     }
 
+    /**
+     * The clone is already a deep copy.
+     */
+    @Override
+    public EquipmentCacheObject deepCopy() {
+        return clone();
+    }
+
     /**
      * Public constructor.
      */
@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 
 import cern.c2mon.server.common.equipment.AbstractSupervisedCacheObject;
 import cern.c2mon.shared.common.Cacheable;
+import cern.c2mon.shared.common.DeepCopyable;
 import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionEntity;
 
 /**
@@ -41,7 +42,7 @@ import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionEnti
  * and should therefore only be used on clones of the Process object residing
  * outside the cache.
  */
-public class ProcessCacheObject extends AbstractSupervisedCacheObject implements Process, Cacheable, Cloneable {
+public class ProcessCacheObject extends AbstractSupervisedCacheObject implements Process, Cacheable, Cloneable, DeepCopyable<ProcessCacheObject> {
 
   private static final long serialVersionUID = -2235204911515127976L;
 
@@ -325,6 +326,14 @@ public class ProcessCacheObject extends AbstractSupervisedCacheObject implements
     return clone;
   }
 
+  /**
+   * The clone is already a deep copy.
+   */
+  @Override
+  public ProcessCacheObject deepCopy() {
+    return (ProcessCacheObject) clone();
+  }
+
   @Override
   public SupervisionEntity getSupervisionEntity() {
     return SupervisionEntity.PROCESS;
@@ -0,0 +1,356 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.common.republisher;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jms.JmsException;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Re-publishes failed events, keeping only the latest event of each key
+ * (tag, alarm or supervised entity).
+ *
+ * <p>Unlike the {@link RepublisherImpl}, which retries every failed event at
+ * a fixed interval, this republisher:
+ * <ul>
+ * <li>replaces a waiting event by a newer event of the same key, so that
+ * after a broker outage only the latest state of each key is re-published;
+ * <li>keeps at most {@link RepublicationSettings#getMaxPending()} events in
+ * memory, writing the others to a {@link RepublicationSpillFile} if a spill
+ * directory is configured, or dropping the oldest events otherwise;
+ * <li>re-publishes in batches, in the order of the first failure of each key,
+ * and stops a batch at the first failure;
+ * <li>waits exponentially longer (with some jitter) after each failed batch,
+ * up to {@link RepublicationSettings#getMaxRepublicationDelay()}, and
+ * continues immediately with the next batch after a successful one.
+ * </ul>
+ *
+ * @param <K> type of the coalescing key
+ * @param <T> type of the events
+ */
+@Slf4j
+@ManagedResource
+class CoalescingRepublisher<K, T> implements Republisher<T> {
+
+  /** Bean that republishes */
+  private final Publisher<T> publisher;
+
+  /** Used to describe events in log */
+  private final String eventName;
+
+  /** Returns the coalescing key of an event */
+  private final Function<T, K> keyFunction;
+
+  private final RepublicationSettings settings;
+
+  private volatile int republicationDelay;
+
+  /** For statistics */
+  private final AtomicLong totalRepublicationAttempts = new AtomicLong(0);
+
+  private final AtomicLong coalescedEvents = new AtomicLong(0);
+
+  private final AtomicLong droppedEvents = new AtomicLong(0);
+
+  /** Lock of all fields below */
+  private final Object republicationLock = new Object();
+
+  /**
+   * Latest failed event of each key, in the order of the first failure.
+   * A key is either in this map or in the spill file, never in both.
+   */
+  private final LinkedHashMap<K, T> toBePublished = new LinkedHashMap<>();
+
+  /** False if the events are not serializable */
+  private final boolean spillable;
+
+  /** Null if no spill directory is configured */
+  private RepublicationSpillFile<K, T> spillFile;
+
+  /** For re-publication */
+  private Timer timer;
+
+  /** Scheduled re-publication, or null if there is nothing to re-publish */
+  private TimerTask publicationTask;
+
+  /** Number of failed batches since the last successful one */
+  private int consecutiveFailures;
+
+  /**
+   * Constructs a Republisher for the provided Publisher.
+   *
+   * @param publisher publisher for which re-publication is needed
+   * @param eventName used to describe the events in log
+   * @param keyFunction returns the key on which events are coalesced
+   * @param settings the re-publication settings
+   */
+  CoalescingRepublisher(final Publisher<T> publisher, final String eventName, final Function<T, K> keyFunction,
+                        final RepublicationSettings settings) {
+    this(publisher, eventName, keyFunction, settings, true);
+  }
+
+  /**
+   * Constructs a Republisher for the provided Publisher.
+   *
+   * @param publisher publisher for which re-publication is needed
+   * @param eventName used to describe the events in log
+   * @param keyFunction returns the key on which events are coalesced
+   * @param settings the re-publication settings
+   * @param spillable false if the events cannot be written to a spill file
+   *                  (not serializable), in which case none is created
+   */
+  CoalescingRepublisher(final Publisher<T> publisher, final String eventName, final Function<T, K> keyFunction,
+                        final RepublicationSettings settings, final boolean spillable) {
+    this.publisher = publisher;
+    this.eventName = eventName;
+    this.keyFunction = keyFunction;
+    this.settings = settings;
+    this.republicationDelay = settings.getRepublicationDelay();
+    this.spillable = spillable;
+  }
+
+  @Override
+  public void publicationFailed(final T event) {
+    K key = keyFunction.apply(event);
+    synchronized (republicationLock) {
+      if (!isRunning()) {
+        throw new IllegalStateException("Event submitted to Republisher before it has been started up!");
+      }
+      totalRepublicationAttempts.incrementAndGet();
+      if (toBePublished.containsKey(key)) {
+        toBePublished.put(key, event);
+        coalescedEvents.incrementAndGet();
+      } else if (spillFile != null && spillFile.contains(key)) {
+        coalescedEvents.incrementAndGet();
+        if (!spillFile.write(key, event)) {
+          droppedEvents.incrementAndGet();
+        }
+      } else if (toBePublished.size() < settings.getMaxPending()) {
+        toBePublished.put(key, event);
+      } else if (spillFile != null) {
+        if (!spillFile.write(key, event)) {
+          droppedEvents.incrementAndGet();
+        }
+      } else {
+        Iterator<K> oldest = toBePublished.keySet().iterator();
+        oldest.next();
+        oldest.remove();
+        droppedEvents.incrementAndGet();
+        toBePublished.put(key, event);
+      }
+      if (publicationTask == null) {
+        log.debug("Unpublished {} detected: scheduling new republication task in {} milliseconds", eventName, republicationDelay);
+        schedule(republicationDelay);
+      }
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    synchronized (republicationLock) {
+      return timer != null;
+    }
+  }
+
+  @Override
+  public void start() {
+    synchronized (republicationLock) {
+      if (timer == null) {
+        timer = new Timer(eventName + "-republication-thread", true);
+        if (spillable && settings.getSpillDirectory() != null && !settings.getSpillDirectory().isEmpty()) {
+          try {
+            spillFile = new RepublicationSpillFile<>(settings.getSpillDirectory(), eventName,
+                settings.getMaxSpillFileSize() * 1024L * 1024L, settings.getSpillCompactionThreshold());
+          } catch (IOException e) {
+            log.error("Unable to create the {} republication spill file: the oldest events will be dropped instead", eventName, e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the re-publication. The events still waiting are lost.
+   */
+  @Override
+  public void stop() {
+    synchronized (republicationLock) {
+      if (timer != null) {
+        timer.cancel();
+        timer = null;
+        publicationTask = null;
+        if (!toBePublished.isEmpty() || (spillFile != null && !spillFile.isEmpty())) {
+          log.warn("Stopping the {} republication with {} events not re-published", eventName, getSizeUnpublishedList());
+        }
+        if (spillFile != null) {
+          spillFile.close();
+          spillFile = null;
+        }
+        toBePublished.clear();
+      }
+    }
+  }
+
+  /**
+   * Called with the lock held.
+   */
+  private void schedule(final long delay) {
+    publicationTask = new PublicationTask();
+    timer.schedule(publicationTask, delay);
+  }
+
+  /**
+   * @return the delay after the given number of failed batches, with jitter
+   */
+  long backoffDelay(final int failures) {
+    long delay = Math.min((long) republicationDelay << Math.min(failures, 30), settings.getMaxRepublicationDelay());
+    double jitter = settings.getJitter() * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return Math.max(0, delay + (long) (delay * jitter));
+  }
+
+  /**
+   * Re-publishes a batch of events, then schedules the next attempt.
+   */
+  private class PublicationTask extends TimerTask {
+
+    @Override
+    public void run() {
+      List<Map.Entry<K, T>> batch = nextBatch();
+      log.debug("Re-publishing {} {} events", batch.size(), eventName);
+
+      boolean failed = false;
+      int published = 0;
+      for (Map.Entry<K, T> entry : batch) {
+        try {
+          publisher.publish(entry.getValue());
+          published++;
+          removeIfNotReplaced(entry);
+        } catch (JmsException e) {
+          log.error("JMS exception caught while attempting re-publication of {} events. Will retry later.", eventName);
+          totalRepublicationAttempts.incrementAndGet();
+          failed = true;
+          break;
+        } catch (Exception e) {
+          log.error("Unexpected exception caught while re-publishing a {} event: this event will not be re-published", eventName, e);
+          totalRepublicationAttempts.incrementAndGet();
+          removeIfNotReplaced(entry);
+        }
+      }
+
+      synchronized (republicationLock) {
+        if (publicationTask != this) {
+          // stopped in the meantime
+          return;
+        }
+        if (toBePublished.isEmpty() && (spillFile == null || spillFile.isEmpty())) {
+          log.info("Re-published all failed {} events", eventName);
+          publicationTask = null;
+          consecutiveFailures = 0;
+        } else if (failed) {
+          long delay = backoffDelay(++consecutiveFailures);
+          log.info("Re-published {} {} events, {} still waiting: next attempt in {} milliseconds",
+              published, eventName, getSizeUnpublishedList(), delay);
+          schedule(delay);
+        } else {
+          consecutiveFailures = 0;
+          schedule(0);
+        }
+      }
+    }
+
+    /**
+     * Takes a copy of the oldest events, first moving events from the
+     * spill file to memory if there is space.
+     */
+    private List<Map.Entry<K, T>> nextBatch() {
+      synchronized (republicationLock) {
+        int batchSize = Math.min(settings.getBatchSize(), settings.getMaxPending());
+        while (spillFile != null && !spillFile.isEmpty() && toBePublished.size() < batchSize) {
+          Map.Entry<K, T> spilled = spillFile.poll();
+          if (spilled == null) {
+            droppedEvents.incrementAndGet();
+          } else {
+            toBePublished.put(spilled.getKey(), spilled.getValue());
+          }
+        }
+        List<Map.Entry<K, T>> batch = new ArrayList<>(Math.min(batchSize, toBePublished.size()));
+        for (Map.Entry<K, T> entry : toBePublished.entrySet()) {
+          if (batch.size() == batchSize) {
+            break;
+          }
+          batch.add(new SimpleImmutableEntry<>(entry));
+        }
+        return batch;
+      }
+    }
+
+    /**
+     * Removes the re-published event, unless a newer event of the same key
+     * failed in the meantime.
+     */
+    private void removeIfNotReplaced(final Map.Entry<K, T> entry) {
+      synchronized (republicationLock) {
+        toBePublished.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  @Override
+  public void setRepublicationDelay(final int republicationDelay) {
+    this.republicationDelay = republicationDelay;
+  }
+
+  @ManagedOperation(description = "Returns the total number of failed publication attempts since the application started")
+  @Override
+  public long getNumberFailedPublications() {
+    return totalRepublicationAttempts.get();
+  }
+
+  @ManagedOperation(description = "Returns the current number of events awaiting re-publication, in memory and on disk (should be 0 in normal operation)")
+  @Override
+  public int getSizeUnpublishedList() {
+    synchronized (republicationLock) {
+      return toBePublished.size() + (spillFile == null ? 0 : spillFile.size());
+    }
+  }
+
+  @ManagedOperation(description = "Returns the number of failed events replaced by a newer event of the same key")
+  @Override
+  public long getNumberCoalescedEvents() {
+    return coalescedEvents.get();
+  }
+
+  @ManagedOperation(description = "Returns the number of failed events dropped because too many events were waiting")
+  @Override
+  public long getNumberDroppedEvents() {
+    return droppedEvents.get();
+  }
+}
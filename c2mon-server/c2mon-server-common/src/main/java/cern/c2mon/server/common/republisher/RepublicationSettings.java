@@ -0,0 +1,78 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.common.republisher;
+
+import lombok.Data;
+
+/**
+ * Settings of the re-publication of failed events, see
+ * {@link RepublisherFactory#createRepublisher(Publisher, String, Class, java.util.function.Function, RepublicationSettings)}.
+ */
+@Data
+public class RepublicationSettings {
+
+  /**
+   * Keep only the latest failed event of each tag, alarm or supervised
+   * entity, and retry in batches with exponential backoff. If false, every
+   * failed event is retried at a fixed interval
+   */
+  private boolean coalescing = true;
+
+  /**
+   * Delay (in ms) before the first re-publication attempt
+   */
+  private int republicationDelay = 10000;
+
+  /**
+   * Longest delay (in ms) between two re-publication attempts
+   */
+  private int maxRepublicationDelay = 300000;
+
+  /**
+   * Random variation (as a fraction of the delay) added to the delay between
+   * attempts, so that the publishers do not all retry at the same time
+   */
+  private double jitter = 0.2;
+
+  /**
+   * Maximum number of events re-published in one attempt
+   */
+  private int batchSize = 1000;
+
+  /**
+   * Maximum number of events waiting in memory for re-publication
+   */
+  private int maxPending = 100000;
+
+  /**
+   * Directory in which the events are written when more than maxPending
+   * events are waiting. If empty, the oldest events are dropped instead
+   */
+  private String spillDirectory = "";
+
+  /**
+   * Maximum size (in MB) of the spill file. The events that do not fit are
+   * dropped
+   */
+  private int maxSpillFileSize = 1024;
+
+  /**
+   * Fraction of the spill file taken by outdated events from which the file
+   * is compacted
+   */
+  private double spillCompactionThreshold = 0.5;
+}
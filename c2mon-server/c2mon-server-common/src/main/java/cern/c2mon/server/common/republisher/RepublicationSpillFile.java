@@ -0,0 +1,269 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.common.republisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * File keeping the events that do not fit in the memory of a
+ * {@link CoalescingRepublisher}.
+ *
+ * <p>The events are appended to the file with Java serialization. Only the
+ * position of the latest event of each key is kept in memory, so a newer
+ * event of a key simply makes the older record unreachable. The file is
+ * truncated whenever all its events have been read back.
+ *
+ * <p>When the unreachable records make up more than the compaction threshold
+ * of the file, the latest records are moved to the start of the file, which
+ * is then truncated. The file never grows over its maximum size: an event
+ * that does not fit, even after a compaction, is not written.
+ *
+ * <p>Not thread-safe: the republisher accesses it under its lock.
+ *
+ * @param <K> type of the coalescing key
+ * @param <T> type of the events
+ */
+@Slf4j
+class RepublicationSpillFile<K, T> {
+
+  /** Files smaller than this are not compacted */
+  private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+  /** Size of the length prefix of a record */
+  private static final int HEADER_SIZE = 4;
+
+  private final File file;
+
+  private final RandomAccessFile data;
+
+  private final long maxSize;
+
+  private final double compactionThreshold;
+
+  /**
+   * Latest record of each key, in the order the keys were first written.
+   */
+  private final LinkedHashMap<K, Record> records = new LinkedHashMap<>();
+
+  /** Bytes of the latest records, the rest of the file is unreachable */
+  private long liveBytes = 0;
+
+  /** True once an event was dropped because the file is full, to warn only once */
+  private boolean full = false;
+
+  /**
+   * Creates an empty spill file, replacing the file left by a previous run.
+   * @param directory the directory of the file
+   * @param eventName used to name the file
+   * @param maxSize maximum size of the file in bytes
+   * @param compactionThreshold fraction of unreachable bytes from which the
+   *                            file is compacted
+   * @throws IOException if the file cannot be created
+   */
+  RepublicationSpillFile(final String directory, final String eventName, final long maxSize,
+                         final double compactionThreshold) throws IOException {
+    this.maxSize = maxSize;
+    this.compactionThreshold = compactionThreshold;
+    File dir = new File(directory);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create the republication spill directory " + dir.getAbsolutePath());
+    }
+    file = new File(dir, eventName.replaceAll("[^A-Za-z0-9]+", "-").toLowerCase() + "-republication.spill");
+    data = new RandomAccessFile(file, "rw");
+    data.setLength(0);
+  }
+
+  boolean contains(final K key) {
+    return records.containsKey(key);
+  }
+
+  boolean isEmpty() {
+    return records.isEmpty();
+  }
+
+  int size() {
+    return records.size();
+  }
+
+  /**
+   * @return the current length of the file in bytes
+   */
+  long length() throws IOException {
+    return data.length();
+  }
+
+  /**
+   * Appends the event, replacing any previous event of the same key.
+   * @return false if the event could not be written, e.g. because the file
+   *         is full (the event and any previous event of the key are then lost)
+   */
+  boolean write(final K key, final T event) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(event);
+      }
+      int recordSize = HEADER_SIZE + bytes.size();
+      long length = data.length();
+      long deadBytes = length - liveBytes;
+      if ((length + recordSize > maxSize && deadBytes > 0)
+          || (length >= MIN_COMPACTION_SIZE && deadBytes > compactionThreshold * length)) {
+        compact();
+        length = data.length();
+      }
+      if (length + recordSize > maxSize) {
+        if (!full) {
+          full = true;
+          log.warn("The republication spill file {} is full ({} bytes): new events are dropped until it is read back", file, length);
+        }
+        // an older event of the key must not be re-published instead
+        Record previous = records.remove(key);
+        if (previous != null) {
+          liveBytes -= previous.size;
+        }
+        return false;
+      }
+      full = false;
+      data.seek(length);
+      data.writeInt(bytes.size());
+      data.write(bytes.toByteArray());
+      Record previous = records.put(key, new Record(length, recordSize));
+      if (previous != null) {
+        liveBytes -= previous.size;
+      }
+      liveBytes += recordSize;
+      return true;
+    } catch (IOException e) {
+      log.error("Unable to write event with key {} to the republication spill file {}", key, file, e);
+      return false;
+    }
+  }
+
+  /**
+   * Moves the latest records to the start of the file, in the order of their
+   * positions (a record is never moved past one that is still to be moved),
+   * and truncates the file after them.
+   */
+  private void compact() throws IOException {
+    long length = data.length();
+    List<Record> live = new ArrayList<>(records.values());
+    live.sort(Comparator.comparingLong(record -> record.position));
+    long position = 0;
+    byte[] buffer = new byte[0];
+    for (Record record : live) {
+      if (record.position != position) {
+        if (buffer.length < record.size) {
+          buffer = new byte[record.size];
+        }
+        data.seek(record.position);
+        data.readFully(buffer, 0, record.size);
+        data.seek(position);
+        data.write(buffer, 0, record.size);
+        record.position = position;
+      }
+      position += record.size;
+    }
+    data.setLength(position);
+    log.debug("Compacted the republication spill file {} from {} to {} bytes", file, length, position);
+  }
+
+  /**
+   * Removes and returns the event of the oldest key.
+   * @return the key and its latest event, or null if the file is empty or
+   *         the event could not be read (it is then lost)
+   */
+  @SuppressWarnings("unchecked")
+  Map.Entry<K, T> poll() {
+    Iterator<Map.Entry<K, Record>> oldest = records.entrySet().iterator();
+    if (!oldest.hasNext()) {
+      return null;
+    }
+    Map.Entry<K, Record> record = oldest.next();
+    oldest.remove();
+    liveBytes -= record.getValue().size;
+    try {
+      data.seek(record.getValue().position);
+      byte[] bytes = new byte[data.readInt()];
+      data.readFully(bytes);
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+        return new SimpleImmutableEntry<>(record.getKey(), (T) in.readObject());
+      }
+    } catch (IOException | ClassNotFoundException e) {
+      log.error("Unable to read event with key {} from the republication spill file {}", record.getKey(), file, e);
+      return null;
+    } finally {
+      truncateIfEmpty();
+    }
+  }
+
+  private void truncateIfEmpty() {
+    if (records.isEmpty()) {
+      try {
+        data.setLength(0);
+      } catch (IOException e) {
+        log.warn("Unable to truncate the republication spill file {}", file, e);
+      }
+    }
+  }
+
+  /**
+   * Closes and deletes the file. The events still in the file are lost.
+   */
+  void close() {
+    records.clear();
+    liveBytes = 0;
+    try {
+      data.close();
+    } catch (IOException e) {
+      log.warn("Unable to close the republication spill file {}", file, e);
+    }
+    if (!file.delete()) {
+      log.warn("Unable to delete the republication spill file {}", file);
+    }
+  }
+
+  /**
+   * Location of the latest record of a key.
+   */
+  private static final class Record {
+
+    private long position;
+
+    /** Size of the record, including its length prefix */
+    private final int size;
+
+    Record(final long position, final int size) {
+      this.position = position;
+      this.size = size;
+    }
+  }
+}
@@ -53,4 +53,20 @@ public interface Republisher<T> extends Lifecycle {
    * @return returns the current number of events waiting for re-publication
    */
   int getSizeUnpublishedList();
+
+  /**
+   * @return the number of failed events replaced by a newer event of the
+   * same tag, alarm or entity before being re-published
+   */
+  default long getNumberCoalescedEvents() {
+    return 0;
+  }
+
+  /**
+   * @return the number of failed events dropped without re-publication
+   * because too many events were waiting
+   */
+  default long getNumberDroppedEvents() {
+    return 0;
+  }
 }
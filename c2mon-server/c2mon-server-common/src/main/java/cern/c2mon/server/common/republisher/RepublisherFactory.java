@@ -16,12 +16,18 @@
  *****************************************************************************/
 package cern.c2mon.server.common.republisher;
 
+import java.io.Serializable;
+import java.util.function.Function;
+
+import lombok.extern.slf4j.Slf4j;
+
 /**
  * Factory for creating a Republisher.
  * 
  * @author Mark Brightwell
  *
  */
+@Slf4j
 public class RepublisherFactory {
 
   /**
@@ -36,6 +42,35 @@ public class RepublisherFactory {
   public static <T extends Object> Republisher<T> createRepublisher(Publisher<T> publisher, String eventName) {
     return new RepublisherImpl<T>(publisher, eventName);
   }
+
+  /**
+   * Creates a Republisher for use by the past publisher, as configured in
+   * the settings.
+   *
+   * <p>Life-cycle needs managing externally using Lifecycle methods.
+   *
+   * @param publisher
+   * @param eventName the name of the event type, used for logging
+   * @param eventType the class of the events; the events overflowing the
+   *        re-publication list are only spilled to disk if it is serializable
+   * @param keyFunction returns the key (for instance the tag id) on which
+   *        failed events are coalesced
+   * @param settings the re-publication settings
+   * @return a republisher for this publisher
+   */
+  public static <K, T> Republisher<T> createRepublisher(Publisher<T> publisher, String eventName, Class<? extends T> eventType,
+                                                        Function<T, K> keyFunction, RepublicationSettings settings) {
+    if (settings.isCoalescing()) {
+      boolean spillable = Serializable.class.isAssignableFrom(eventType);
+      if (!spillable && settings.getSpillDirectory() != null && !settings.getSpillDirectory().isEmpty()) {
+        log.warn("{} events are not serializable: they are not spilled to disk, the oldest ones are dropped instead", eventName);
+      }
+      return new CoalescingRepublisher<>(publisher, eventName, keyFunction, settings, spillable);
+    }
+    Republisher<T> republisher = new RepublisherImpl<T>(publisher, eventName);
+    republisher.setRepublicationDelay(settings.getRepublicationDelay());
+    return republisher;
+  }
   
   
   
@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cern.c2mon.server.common.tag.AbstractTagCacheObject;
+import cern.c2mon.shared.common.DeepCopyable;
 import cern.c2mon.shared.rule.RuleExpression;
 import cern.c2mon.shared.rule.RuleFormatException;
 
@@ -36,7 +37,7 @@ import cern.c2mon.shared.rule.RuleFormatException;
  *
  * @author Mark Brightwell
  */
-public class RuleTagCacheObject extends AbstractTagCacheObject implements RuleTag, Cloneable {
+public class RuleTagCacheObject extends AbstractTagCacheObject implements RuleTag, Cloneable, DeepCopyable<RuleTagCacheObject> {
 
     private static final long serialVersionUID = -3382383610136394447L;
 
@@ -139,6 +140,17 @@ public class RuleTagCacheObject extends AbstractTagCacheObject implements RuleTa
         return ruleTagCacheObject;
     }
 
+    /**
+     * Deep copy implementation, used in place of a copy by serialization. As for the
+     * clone, the rule expression of the copy is parsed again from the rule text.
+     *
+     * @throws CloneNotSupportedException if the value or the metadata are not immutable
+     */
+    @Override
+    public RuleTagCacheObject deepCopy() throws CloneNotSupportedException {
+        return (RuleTagCacheObject) deepCopyTag();
+    }
+
     @Override
     public final RuleExpression getRuleExpression() {
         return ruleExpression;
@@ -21,6 +21,7 @@ import java.util.LinkedList;
 
 import cern.c2mon.server.common.equipment.AbstractEquipmentCacheObject;
 import cern.c2mon.shared.common.Cacheable;
+import cern.c2mon.shared.common.DeepCopyable;
 import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionEntity;
 
 // TODO move out all logic to facade bean (configXML, validation)
@@ -33,7 +34,7 @@ import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionEnti
  *
  * @author mruizgar
  */
-public class SubEquipmentCacheObject extends AbstractEquipmentCacheObject implements SubEquipment, Cacheable, Cloneable {
+public class SubEquipmentCacheObject extends AbstractEquipmentCacheObject implements SubEquipment, Cacheable, Cloneable, DeepCopyable<SubEquipmentCacheObject> {
 
     private static final long serialVersionUID = -3616744745556547068L;
     /**
@@ -70,6 +71,14 @@ public class SubEquipmentCacheObject extends AbstractEquipmentCacheObject implem
         return (SubEquipmentCacheObject) super.clone();
     }
 
+    /**
+     * The clone is already a deep copy.
+     */
+    @Override
+    public SubEquipmentCacheObject deepCopy() {
+        return clone();
+    }
+
     /**
      * Creates a new SubEquipmentCacheObject containing the information provided within the parameters
      *
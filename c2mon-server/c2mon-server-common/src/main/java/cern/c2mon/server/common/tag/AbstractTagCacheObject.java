@@ -20,6 +20,7 @@ import cern.c2mon.shared.common.datatag.DataTagConstants;
 import cern.c2mon.shared.common.datatag.DataTagQuality;
 import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
 import cern.c2mon.server.common.metadata.Metadata;
+import cern.c2mon.server.common.util.DeepCopyUtils;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
@@ -238,6 +239,22 @@ public abstract class AbstractTagCacheObject implements DataTagConstants, Clonea
     return cacheObject;
   }
 
+  /**
+   * Extends the {@link #clone()} of the subclass to a deep copy, by also copying
+   * the fields that the clone shares with this object (the metadata and the
+   * current value, which is only shared if immutable).
+   *
+   * @return a deep copy of this tag, to be completed by the subclass
+   * @throws CloneNotSupportedException if the value or the metadata cannot be
+   *           copied without serialization
+   */
+  protected AbstractTagCacheObject deepCopyTag() throws CloneNotSupportedException {
+    DeepCopyUtils.checkImmutable(value, "Value of tag " + id);
+    AbstractTagCacheObject cacheObject = (AbstractTagCacheObject) clone();
+    cacheObject.metadata = DeepCopyUtils.copy(metadata);
+    return cacheObject;
+  }
+
   /**
    * only compare ids so far
    */
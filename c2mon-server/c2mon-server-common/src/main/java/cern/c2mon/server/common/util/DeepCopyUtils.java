@@ -0,0 +1,107 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.common.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Map;
+
+import cern.c2mon.server.common.metadata.Metadata;
+import cern.c2mon.shared.common.DeepCopyable;
+
+/**
+ * Helper methods used by the {@link DeepCopyable} implementations of the
+ * server cache objects.
+ */
+public final class DeepCopyUtils {
+
+  private DeepCopyUtils() {
+    // static helper methods only
+  }
+
+  /**
+   * Checks whether the given object can be shared between an object and its
+   * copy. This is the case for <code>null</code> and for the value types that
+   * may be stored as tag value or metadata value (Strings, boxed primitives,
+   * enumerations and {@link BigDecimal}/{@link BigInteger}).
+   *
+   * @param value the object to check
+   * @return true if the object is immutable and can be shared
+   */
+  public static boolean isImmutable(final Object value) {
+    return value == null
+        || value instanceof String
+        || value instanceof Boolean
+        || value instanceof Character
+        || value instanceof Enum
+        || value instanceof Integer
+        || value instanceof Long
+        || value instanceof Float
+        || value instanceof Double
+        || value instanceof Short
+        || value instanceof Byte
+        || value.getClass() == BigDecimal.class
+        || value.getClass() == BigInteger.class;
+  }
+
+  /**
+   * @param timestamp the timestamp to copy (may be null)
+   * @return a new timestamp with the same time and nanos, or null
+   */
+  public static Timestamp copy(final Timestamp timestamp) {
+    return timestamp == null ? null : (Timestamp) timestamp.clone();
+  }
+
+  /**
+   * Copies the metadata map. The values are shared with the original, so they
+   * all need to be immutable.
+   *
+   * @param metadata the metadata to copy (may be null)
+   * @return a new metadata object, or null
+   * @throws CloneNotSupportedException if one of the values is not immutable
+   */
+  public static Metadata copy(final Metadata metadata) throws CloneNotSupportedException {
+    if (metadata == null) {
+      return null;
+    }
+    Metadata copy = new Metadata();
+    if (metadata.getMetadata() != null) {
+      for (Map.Entry<String, Object> entry : metadata.getMetadata().entrySet()) {
+        checkImmutable(entry.getValue(), "Metadata value of key '" + entry.getKey() + "'");
+        copy.addMetadata(entry.getKey(), entry.getValue());
+      }
+    } else {
+      copy.setMetadata(null);
+    }
+    return copy;
+  }
+
+  /**
+   * Checks that the given value can be shared with a copy.
+   *
+   * @param value the value to check
+   * @param description describes the value in the exception message
+   * @throws CloneNotSupportedException if the value is not immutable
+   */
+  public static void checkImmutable(final Object value, final String description) throws CloneNotSupportedException {
+    if (!isImmutable(value)) {
+      throw new CloneNotSupportedException(description + " is of type " + value.getClass().getName()
+          + " and cannot be copied without serialization");
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.common.republisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.UncategorizedJmsException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the CoalescingRepublisher.
+ */
+public class CoalescingRepublisherTest {
+
+  private RecordingPublisher publisher;
+
+  private RepublicationSettings settings;
+
+  private CoalescingRepublisher<Long, long[]> republisher;
+
+  private File spillDirectory;
+
+  @Before
+  public void setUp() throws IOException {
+    publisher = new RecordingPublisher();
+    settings = new RepublicationSettings();
+    settings.setRepublicationDelay(50);
+    settings.setMaxRepublicationDelay(200);
+    spillDirectory = Files.createTempDirectory("republication").toFile();
+  }
+
+  @After
+  public void afterTest() {
+    if (republisher != null) {
+      republisher.stop();
+    }
+    for (File file : spillDirectory.listFiles()) {
+      file.delete();
+    }
+    spillDirectory.delete();
+  }
+
+  /**
+   * The events are arrays of {key, version}.
+   */
+  private void createRepublisher() {
+    republisher = new CoalescingRepublisher<>(publisher, "test-event", event -> event[0], settings);
+    republisher.start();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNotStartedException() {
+    new CoalescingRepublisher<>(publisher, "test-event", (long[] event) -> event[0], settings)
+        .publicationFailed(new long[] {1, 1});
+  }
+
+  @Test
+  public void testOnlyLatestEventOfAKeyIsRepublished() throws InterruptedException {
+    createRepublisher();
+    publisher.expect(2);
+    for (long version = 1; version <= 100; version++) {
+      republisher.publicationFailed(new long[] {1, version});
+      republisher.publicationFailed(new long[] {2, version});
+    }
+    assertEquals(2, republisher.getSizeUnpublishedList());
+    assertEquals(198, republisher.getNumberCoalescedEvents());
+
+    publisher.await();
+    assertArrayEquals(new long[] {1, 100}, publisher.published.get(0));
+    assertArrayEquals(new long[] {2, 100}, publisher.published.get(1));
+    waitForEmptyList();
+    assertEquals(200, republisher.getNumberFailedPublications());
+  }
+
+  @Test
+  public void testRetryWithBackoffAfterFailures() throws InterruptedException {
+    createRepublisher();
+    publisher.failures = 3;
+    publisher.expect(1);
+    republisher.publicationFailed(new long[] {1, 1});
+
+    publisher.await();
+    waitForEmptyList();
+    assertEquals(4, publisher.attempts.size());
+    // 50 ms, then ~100 and ~200 ms (with jitter)
+    long last = publisher.attempts.get(3) - publisher.attempts.get(2);
+    long first = publisher.attempts.get(1) - publisher.attempts.get(0);
+    assertTrue("Expected a longer delay between the last attempts: " + publisher.attempts, last > first);
+    assertEquals(1 + 3, republisher.getNumberFailedPublications());
+  }
+
+  @Test
+  public void testBackoffDelayIsCapped() {
+    settings.setJitter(0);
+    createRepublisher();
+    assertEquals(50, republisher.backoffDelay(0));
+    assertEquals(100, republisher.backoffDelay(1));
+    assertEquals(200, republisher.backoffDelay(2));
+    assertEquals(200, republisher.backoffDelay(40));
+
+    settings.setJitter(0.2);
+    for (int i = 0; i < 100; i++) {
+      long delay = republisher.backoffDelay(1);
+      assertTrue(delay >= 80 && delay <= 120);
+    }
+  }
+
+  @Test
+  public void testBatchesKeepTheFailureOrder() throws InterruptedException {
+    settings.setBatchSize(3);
+    createRepublisher();
+    publisher.expect(10);
+    for (long key = 0; key < 10; key++) {
+      republisher.publicationFailed(new long[] {key, 1});
+    }
+    publisher.await();
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, publisher.published.get(i)[0]);
+    }
+  }
+
+  @Test
+  public void testOldestEventsAreDroppedWhenFull() throws InterruptedException {
+    settings.setMaxPending(5);
+    createRepublisher();
+    publisher.expect(5);
+    for (long key = 0; key < 8; key++) {
+      republisher.publicationFailed(new long[] {key, 1});
+    }
+    assertEquals(5, republisher.getSizeUnpublishedList());
+    assertEquals(3, republisher.getNumberDroppedEvents());
+
+    publisher.await();
+    assertEquals(3, publisher.published.get(0)[0]);
+    assertEquals(7, publisher.published.get(4)[0]);
+  }
+
+  @Test
+  public void testUnserializableEventsAreNotSpilled() {
+    settings.setRepublicationDelay(10000);
+    settings.setMaxPending(2);
+    settings.setSpillDirectory(spillDirectory.getAbsolutePath());
+    Republisher<UnserializableEvent> unserializableRepublisher = RepublisherFactory.createRepublisher(
+        event -> { }, "unserializable-event", UnserializableEvent.class, event -> event.key, settings);
+    unserializableRepublisher.start();
+    try {
+      for (long key = 0; key < 3; key++) {
+        unserializableRepublisher.publicationFailed(new UnserializableEvent(key));
+      }
+      assertEquals(0, spillDirectory.listFiles().length);
+      assertEquals(2, unserializableRepublisher.getSizeUnpublishedList());
+      assertEquals(1, unserializableRepublisher.getNumberDroppedEvents());
+    } finally {
+      unserializableRepublisher.stop();
+    }
+  }
+
+  @Test
+  public void testEventsAreSpilledToDiskWhenFull() throws InterruptedException {
+    settings.setMaxPending(5);
+    settings.setSpillDirectory(spillDirectory.getAbsolutePath());
+    createRepublisher();
+    publisher.expect(20);
+    for (long key = 0; key < 20; key++) {
+      republisher.publicationFailed(new long[] {key, 1});
+    }
+    // coalesced on disk
+    republisher.publicationFailed(new long[] {15, 2});
+    assertEquals(20, republisher.getSizeUnpublishedList());
+    assertEquals(0, republisher.getNumberDroppedEvents());
+    assertEquals(1, republisher.getNumberCoalescedEvents());
+    assertEquals(1, spillDirectory.listFiles().length);
+
+    publisher.await();
+    waitForEmptyList();
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, publisher.published.get(i)[0]);
+    }
+    assertArrayEquals(new long[] {15, 2}, publisher.published.get(15));
+    assertEquals(0, spillDirectory.listFiles()[0].length());
+
+    republisher.stop();
+    assertEquals(0, spillDirectory.listFiles().length);
+  }
+
+  @Test
+  public void testNonJmsExceptionDropsTheEvent() throws InterruptedException {
+    createRepublisher();
+    publisher.unexpectedFailure = true;
+    publisher.expect(1);
+    republisher.publicationFailed(new long[] {1, 1});
+    publisher.await();
+    waitForEmptyList();
+    assertEquals(2, republisher.getNumberFailedPublications());
+    assertFalse(publisher.published.isEmpty());
+  }
+
+  private void waitForEmptyList() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (republisher.getSizeUnpublishedList() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(0, republisher.getSizeUnpublishedList());
+  }
+
+  private static final class RecordingPublisher implements Publisher<long[]> {
+
+    private final List<long[]> published = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Long> attempts = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile int failures;
+
+    private volatile boolean unexpectedFailure;
+
+    private volatile CountDownLatch latch;
+
+    void expect(final int publications) {
+      latch = new CountDownLatch(publications);
+    }
+
+    void await() throws InterruptedException {
+      assertTrue("Publications missing: " + latch.getCount(), latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Override
+    public void publish(final long[] event) {
+      attempts.add(System.currentTimeMillis());
+      if (failures > 0) {
+        failures--;
+        throw new UncategorizedJmsException("broker down");
+      }
+      published.add(event);
+      latch.countDown();
+      if (unexpectedFailure) {
+        throw new IllegalArgumentException("cannot be serialized");
+      }
+    }
+  }
+
+  private static final class UnserializableEvent {
+
+    private final long key;
+
+    UnserializableEvent(final long key) {
+      this.key = key;
+    }
+  }
+}
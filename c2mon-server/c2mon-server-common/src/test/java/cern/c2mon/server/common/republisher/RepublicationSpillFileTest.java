@@ -0,0 +1,111 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.common.republisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the RepublicationSpillFile.
+ */
+public class RepublicationSpillFileTest {
+
+  /** Size of the events written, about 10 kB once serialized */
+  private static final int EVENT_LENGTH = 1250;
+
+  private File spillDirectory;
+
+  private RepublicationSpillFile<Long, long[]> spillFile;
+
+  @Before
+  public void setUp() throws IOException {
+    spillDirectory = Files.createTempDirectory("republication").toFile();
+  }
+
+  @After
+  public void afterTest() {
+    if (spillFile != null) {
+      spillFile.close();
+    }
+    spillDirectory.delete();
+  }
+
+  @Test
+  public void testOutdatedEventsAreCompacted() throws IOException {
+    spillFile = new RepublicationSpillFile<>(spillDirectory.getAbsolutePath(), "test", Long.MAX_VALUE, 0.5);
+
+    // 3 MB written, for 2 keys
+    for (long i = 0; i < 300; i++) {
+      assertTrue(spillFile.write(i % 2, event(i)));
+    }
+    assertTrue("File not compacted: " + spillFile.length() + " bytes", spillFile.length() < 1100 * 1024);
+
+    assertEquals(2, spillFile.size());
+    Map.Entry<Long, long[]> first = spillFile.poll();
+    assertEquals(Long.valueOf(0), first.getKey());
+    assertEquals(298, first.getValue()[0]);
+    Map.Entry<Long, long[]> second = spillFile.poll();
+    assertEquals(Long.valueOf(1), second.getKey());
+    assertEquals(299, second.getValue()[0]);
+    assertEquals(0, spillFile.length());
+  }
+
+  @Test
+  public void testEventsOverTheMaximumSizeAreRejected() throws IOException {
+    spillFile = new RepublicationSpillFile<>(spillDirectory.getAbsolutePath(), "test", 45 * 1024, 0.5);
+
+    for (long key = 0; key < 4; key++) {
+      assertTrue(spillFile.write(key, event(key)));
+    }
+    assertFalse(spillFile.write(4L, event(4)));
+    assertTrue(spillFile.length() <= 45 * 1024);
+
+    // the older event of a key is not kept instead of the rejected one
+    assertFalse(spillFile.write(3L, event(5)));
+    assertFalse(spillFile.contains(3L));
+    assertEquals(3, spillFile.size());
+
+    // the space of the dropped and read back events is reused
+    assertEquals(0, spillFile.poll().getValue()[0]);
+    assertTrue(spillFile.write(4L, event(6)));
+    assertTrue(spillFile.write(5L, event(7)));
+    assertEquals(4, spillFile.size());
+
+    assertEquals(1, spillFile.poll().getValue()[0]);
+    assertEquals(2, spillFile.poll().getValue()[0]);
+    assertEquals(6, spillFile.poll().getValue()[0]);
+    assertEquals(7, spillFile.poll().getValue()[0]);
+    assertNull(spillFile.poll());
+  }
+
+  private static long[] event(final long value) {
+    long[] event = new long[EVENT_LENGTH];
+    event[0] = value;
+    return event;
+  }
+}
@@ -16,7 +16,10 @@
  *****************************************************************************/
 package cern.c2mon.server.daq.update;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jms.JMSException;
@@ -153,6 +156,9 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
    * (since this method is specified as listener method in the JCA container; the transaction
    * manager manages the acknowledgment).
    *
+   * <p>The control tags are processed one by one, the data tags of the message
+   * are updated in the cache at once.
+   *
    * @param dataTagValueUpdate the incoming collection of updates (could be null if some error
    * occurred in converting the message; in this case, log the problem and ignore this update)
    * @throws NullPointerException if passed DataTagValueUpdate is null
@@ -163,6 +169,7 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
       activeUpdateThreads.getAndIncrement();
       Collection<SourceDataTagValue> values = dataTagValueUpdate.getValues();
       if (values != null ) {
+        List<SourceDataTagValue> dataTagValues = new ArrayList<>(values.size());
 
         for(SourceDataTagValue sourceDataTagValue : values){
 
@@ -171,11 +178,15 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
             processControl(sourceDataTagValue);
           } else {
             //else is a normal DataTag update
-            processDataTag(sourceDataTagValue);
+            dataTagValues.add(sourceDataTagValue);
           }
           //log in file
           sourceDataTagValue.log();
         }
+
+        if (!dataTagValues.isEmpty()) {
+          processDataTags(dataTagValues);
+        }
       }
     } finally {
       activeUpdateThreads.getAndDecrement();
@@ -245,17 +256,19 @@ public class SourceUpdateManagerImpl implements SourceUpdateManager, SessionAwar
   }
 
   /**
-   * Performs the necessary operations on reception of a data tag.
-   * @param sourceDataTagValue the incoming data tag value
-   * @throw NullPointerException if passed null SourceDataTagValue
+   * Performs the necessary operations on reception of the data tags of a message.
+   * @param sourceDataTagValues the incoming data tag values
    */
-  private void processDataTag(final SourceDataTagValue sourceDataTagValue) {
-    try {
-      log.trace("Processing incoming update for datatag #" + sourceDataTagValue.getId());
-      dataTagFacade.updateFromSource(sourceDataTagValue.getId(), sourceDataTagValue);
-
-    } catch (CacheElementNotFoundException cacheEx) {
-      log.warn("Received unrecognized data tag #" + sourceDataTagValue.getId() + ": ignoring the update");
+  private void processDataTags(final List<SourceDataTagValue> sourceDataTagValues) {
+    log.trace("Processing incoming update for {} datatags", sourceDataTagValues.size());
+    Map<Long, Event<Boolean>> results = dataTagFacade.updateFromSource(sourceDataTagValues);
+
+    if (results.size() < sourceDataTagValues.size()) {
+      for (SourceDataTagValue sourceDataTagValue : sourceDataTagValues) {
+        if (sourceDataTagValue.getId() != null && !results.containsKey(sourceDataTagValue.getId())) {
+          log.warn("Received unrecognized data tag #" + sourceDataTagValue.getId() + ": ignoring the update");
+        }
+      }
     }
   }
 
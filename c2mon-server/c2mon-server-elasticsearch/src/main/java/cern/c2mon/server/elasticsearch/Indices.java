@@ -21,9 +21,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -41,7 +43,12 @@ public class Indices {
   @Getter
   private ElasticsearchProperties properties;
 
-  private final List<String> indexCache = new CopyOnWriteArrayList<>();
+  private final Set<String> indexCache = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Time bucket of the last index name generated, per index prefix
+   */
+  private final Map<String, TimeBucket> timeBuckets = new ConcurrentHashMap<>();
 
   private static Indices self;
 
@@ -119,6 +126,10 @@ public class Indices {
    * @return true if the index exists, false otherwise
    */
   public static boolean exists(String indexName) {
+    if (self.indexCache.contains(indexName)) {
+      return true;
+    }
+
     synchronized (Indices.class) {
       boolean exists = self.indexCache.contains(indexName);
       if (!exists) {
@@ -215,6 +226,9 @@ public class Indices {
   /**
    * Generate an index for the given prefix and timestamp, based on the current
    * time series indexing strategy.
+   * <p>
+   * The index name is only formatted again when the timestamp is outside of
+   * the time bucket of the last index name generated for the prefix.
    *
    * @param prefix    the index prefix
    * @param timestamp the timestamp which will be used to generate the index
@@ -223,25 +237,84 @@ public class Indices {
    */
   private static String getIndexName(String prefix, long timestamp) {
     String indexType = self.properties.getIndexType();
-    String dateFormat;
-
-    switch (indexType.toLowerCase()) {
-      case "d":
-        dateFormat = "yyyy-MM-dd";
-        break;
-      case "w":
-        dateFormat = "yyyy-'W'ww";
-        break;
-      case "m":
-      default:
-        dateFormat = "yyyy-MM";
-        break;
+    TimeBucket bucket = self.timeBuckets.get(prefix);
+
+    if (bucket == null || !bucket.contains(indexType, timestamp)) {
+      bucket = new TimeBucket(prefix, indexType, timestamp);
+      self.timeBuckets.put(prefix, bucket);
     }
 
-    return prefix + new SimpleDateFormat(dateFormat).format(new Date(timestamp));
+    return bucket.indexName;
   }
 
   static ElasticsearchProperties getProperties() {
     return self.properties;
   }
+
+  /**
+   * Time interval in which all timestamps have the same index name.
+   */
+  private static final class TimeBucket {
+
+    private final String indexType;
+
+    private final long start;
+
+    private final long end;
+
+    private final String indexName;
+
+    TimeBucket(String prefix, String indexType, long timestamp) {
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(timestamp);
+      calendar.set(Calendar.HOUR_OF_DAY, 0);
+      calendar.set(Calendar.MINUTE, 0);
+      calendar.set(Calendar.SECOND, 0);
+      calendar.set(Calendar.MILLISECOND, 0);
+
+      String dateFormat;
+      int unit;
+
+      switch (indexType.toLowerCase()) {
+        case "d":
+          dateFormat = "yyyy-MM-dd";
+          unit = Calendar.DAY_OF_MONTH;
+          break;
+        case "w":
+          dateFormat = "yyyy-'W'ww";
+          unit = Calendar.WEEK_OF_YEAR;
+          while (calendar.get(Calendar.DAY_OF_WEEK) != calendar.getFirstDayOfWeek()) {
+            calendar.add(Calendar.DAY_OF_MONTH, -1);
+          }
+          break;
+        case "m":
+        default:
+          dateFormat = "yyyy-MM";
+          unit = Calendar.MONTH;
+          calendar.set(Calendar.DAY_OF_MONTH, 1);
+          break;
+      }
+
+      long bucketStart = calendar.getTimeInMillis();
+      calendar.add(unit, 1);
+      long bucketEnd = calendar.getTimeInMillis();
+
+      // The year of a weekly index name changes in the middle of the week
+      calendar.setTimeInMillis(timestamp);
+      calendar.set(calendar.get(Calendar.YEAR), Calendar.JANUARY, 1, 0, 0, 0);
+      calendar.set(Calendar.MILLISECOND, 0);
+      long yearStart = calendar.getTimeInMillis();
+      calendar.add(Calendar.YEAR, 1);
+      long yearEnd = calendar.getTimeInMillis();
+
+      this.indexType = indexType;
+      this.start = Math.max(bucketStart, yearStart);
+      this.end = Math.min(bucketEnd, yearEnd);
+      this.indexName = prefix + new SimpleDateFormat(dateFormat).format(new Date(timestamp));
+    }
+
+    boolean contains(String indexType, long timestamp) {
+      return timestamp >= start && timestamp < end && this.indexType.equals(indexType);
+    }
+  }
 }
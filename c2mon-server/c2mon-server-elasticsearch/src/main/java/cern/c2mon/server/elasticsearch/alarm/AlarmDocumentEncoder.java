@@ -0,0 +1,67 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.alarm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.common.alarm.Alarm;
+
+/**
+ * Encodes {@link Alarm} instances directly to the JSON source of their
+ * {@link AlarmDocument}, with the same fields as the
+ * {@link AlarmValueDocumentConverter}.
+ */
+@Component
+public class AlarmDocumentEncoder {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * Encodes the given alarm.
+   *
+   * @param alarm the alarm to encode
+   * @return the document of the alarm
+   */
+  public AlarmDocument encode(final Alarm alarm) {
+    long timestamp = alarm.getTimestamp().getTime();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+      generator.writeStartObject();
+      generator.writeNumberField("id", alarm.getId());
+      generator.writeStringField("faultFamily", alarm.getFaultFamily());
+      generator.writeStringField("faultMember", alarm.getFaultMember());
+      generator.writeNumberField("faultCode", alarm.getFaultCode());
+      generator.writeObjectField("metadata", alarm.getMetadata().getMetadata());
+      generator.writeNumberField("tagId", alarm.getTagId());
+      generator.writeBooleanField("active", alarm.isActive());
+      generator.writeNumberField("activeNumeric", alarm.isActive() ? 1 : 0);
+      generator.writeStringField("info", alarm.getInfo());
+      generator.writeNumberField("timestamp", timestamp);
+      generator.writeEndObject();
+    } catch (IOException e) {
+      throw new RuntimeException("Error serializing document", e);
+    }
+
+    return new AlarmDocument(alarm.getId(), timestamp, out.toByteArray());
+  }
+}
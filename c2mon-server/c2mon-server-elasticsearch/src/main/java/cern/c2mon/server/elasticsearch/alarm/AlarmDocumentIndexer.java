@@ -20,6 +20,7 @@ import java.util.Collections;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.rest.RestStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -68,7 +69,7 @@ public class AlarmDocumentIndexer implements IDBPersistenceHandler<AlarmDocument
     log.debug("Indexing alarm #{} to index {}", alarm.getId(), indexName);
     return client.getClient().prepareIndex().setIndex(indexName)
         .setType("alarm")
-        .setSource(alarm.toString())
+        .setSource(alarm.toBytes(), XContentType.JSON)
         .setRouting(alarm.getId())
         .get().status().equals(RestStatus.CREATED);
   }
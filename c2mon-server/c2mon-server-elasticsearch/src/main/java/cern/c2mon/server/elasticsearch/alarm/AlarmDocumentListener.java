@@ -50,16 +50,19 @@ public class AlarmDocumentListener implements C2monCacheListener<Alarm>, SmartLi
 
   private final AlarmValueDocumentConverter converter;
 
+  private final AlarmDocumentEncoder encoder;
+
   private Lifecycle listenerContainer;
 
   private volatile boolean running = false;
 
   @Autowired
-  public AlarmDocumentListener(final ElasticsearchClient elasticsearchClient, final CacheRegistrationService cacheRegistrationService, final IPersistenceManager<AlarmDocument> persistenceManager, final AlarmValueDocumentConverter converter) {
+  public AlarmDocumentListener(final ElasticsearchClient elasticsearchClient, final CacheRegistrationService cacheRegistrationService, final IPersistenceManager<AlarmDocument> persistenceManager, final AlarmValueDocumentConverter converter, final AlarmDocumentEncoder encoder) {
     this.elasticsearchClient = elasticsearchClient;
     this.cacheRegistrationService = cacheRegistrationService;
     this.persistenceManager = persistenceManager;
     this.converter = converter;
+    this.encoder = encoder;
     if (this.elasticsearchClient.getProperties().isEnabled()) {
       listenerContainer = cacheRegistrationService.registerToAlarms(this);
     }
@@ -72,7 +75,11 @@ public class AlarmDocumentListener implements C2monCacheListener<Alarm>, SmartLi
       return;
     }
 
-    persistenceManager.storeData(converter.convert(alarm));
+    if (this.elasticsearchClient.getProperties().isStreamingEncoding()) {
+      persistenceManager.storeData(encoder.encode(alarm));
+    } else {
+      persistenceManager.storeData(converter.convert(alarm));
+    }
   }
 
   @Override
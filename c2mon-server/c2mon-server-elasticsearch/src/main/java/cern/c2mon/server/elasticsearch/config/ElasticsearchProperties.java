@@ -109,6 +109,14 @@ public class ElasticsearchProperties {
    */
   private int concurrentRequests = 1;
 
+  /**
+   * Encode the tag, alarm and supervision documents directly to their JSON
+   * source with a streaming generator, instead of building them as maps
+   * first. The static parts of the tag documents (name, unit, metadata and
+   * hierarchy names) are encoded once per tag and reused
+   */
+  private boolean streamingEncoding = false;
+
   /**
    * Absolute path the file to which tag updates will be written in the
    * event of Elasticsearch communication failure
@@ -17,6 +17,7 @@
 package cern.c2mon.server.elasticsearch.supervision;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -37,6 +38,31 @@ public class SupervisionEventDocument extends HashMap<String, Object> implements
 
   private static final ObjectMapper mapper = new ObjectMapper();
 
+  /**
+   * JSON source of the document, when created by the {@link SupervisionEventDocumentEncoder}
+   */
+  private transient byte[] source;
+
+  public SupervisionEventDocument() {
+  }
+
+  /**
+   * Creates a document from its encoded JSON source. Only the id and the
+   * timestamp, used for the routing and the index name, are put in the map:
+   * the other fields are only in the source.
+   *
+   * @param id        the id of the document
+   * @param timestamp the timestamp of the document
+   * @param source    the JSON source of the document
+   */
+  public SupervisionEventDocument(Object id, Long timestamp, byte[] source) {
+    super.put("id", id);
+    if (timestamp != null) {
+      super.put("timestamp", timestamp);
+    }
+    this.source = source;
+  }
+
   @Override
   public Object put(String key, Object value) {
     if (key.equals("timestamp")) {
@@ -59,8 +85,25 @@ public class SupervisionEventDocument extends HashMap<String, Object> implements
     }
   }
 
+  /**
+   * @return the JSON source of the document, encoded in UTF-8
+   */
+  public byte[] toBytes() {
+    if (source != null) {
+      return source;
+    }
+    try {
+      return mapper.writeValueAsBytes(this);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Error serializing document", e);
+    }
+  }
+
   @Override
   public String toString() {
+    if (source != null) {
+      return new String(source, StandardCharsets.UTF_8);
+    }
     try {
       return mapper.writeValueAsString(this);
     } catch (JsonProcessingException e) {
@@ -0,0 +1,72 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.supervision;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.shared.client.supervision.SupervisionEvent;
+
+/**
+ * Encodes {@link SupervisionEvent} instances directly to the JSON source of
+ * their {@link SupervisionEventDocument}, with the same fields as the
+ * {@link SupervisionEventDocumentConverter}.
+ */
+@Component
+public class SupervisionEventDocumentEncoder {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * Encodes the given supervision event.
+   *
+   * @param supervisionEvent the supervision event to encode
+   * @return the document of the supervision event
+   */
+  public SupervisionEventDocument encode(final SupervisionEvent supervisionEvent) {
+    Long timestamp = supervisionEvent.getEventTime() == null ? null : supervisionEvent.getEventTime().getTime();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+      generator.writeStartObject();
+      generator.writeNumberField("id", supervisionEvent.getEntityId());
+      generator.writeStringField("name", supervisionEvent.getName());
+      generator.writeStringField("message", supervisionEvent.getMessage());
+
+      if (supervisionEvent.getEntity() != null) {
+        generator.writeStringField("entity", supervisionEvent.getEntity().name());
+      }
+
+      if (timestamp != null) {
+        generator.writeNumberField("timestamp", timestamp);
+      }
+
+      if (supervisionEvent.getStatus() != null) {
+        generator.writeStringField("status", supervisionEvent.getStatus().name());
+      }
+      generator.writeEndObject();
+    } catch (IOException e) {
+      throw new RuntimeException("Error serializing document", e);
+    }
+
+    return new SupervisionEventDocument(supervisionEvent.getEntityId(), timestamp, out.toByteArray());
+  }
+}
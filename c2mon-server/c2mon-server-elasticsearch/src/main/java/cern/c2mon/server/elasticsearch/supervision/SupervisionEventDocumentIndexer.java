@@ -20,6 +20,7 @@ import java.util.Collections;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.rest.RestStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -72,7 +73,7 @@ public class SupervisionEventDocumentIndexer implements IDBPersistenceHandler<Su
     log.debug("Adding new supervision event to index {}", indexName);
     return client.getClient().prepareIndex().setIndex(indexName)
         .setType("supervision")
-        .setSource(supervisionEvent.toString())
+        .setSource(supervisionEvent.toBytes(), XContentType.JSON)
         .setRouting(supervisionEvent.getId())
         .get().status().equals(RestStatus.CREATED);
   }
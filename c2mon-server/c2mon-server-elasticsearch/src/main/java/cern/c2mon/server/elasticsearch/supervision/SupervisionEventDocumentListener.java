@@ -53,15 +53,18 @@ public class SupervisionEventDocumentListener implements SupervisionListener, Sm
 
   private final SupervisionEventDocumentConverter converter;
 
+  private final SupervisionEventDocumentEncoder encoder;
+
   private Lifecycle listenerContainer;
 
   private volatile boolean running = false;
 
   @Autowired
-  public SupervisionEventDocumentListener(final ElasticsearchClient elasticsearchClient, final SupervisionNotifier supervisionNotifier, final IPersistenceManager<SupervisionEventDocument> persistenceManager, final SupervisionEventDocumentConverter converter) {
+  public SupervisionEventDocumentListener(final ElasticsearchClient elasticsearchClient, final SupervisionNotifier supervisionNotifier, final IPersistenceManager<SupervisionEventDocument> persistenceManager, final SupervisionEventDocumentConverter converter, final SupervisionEventDocumentEncoder encoder) {
     this.elasticsearchClient = elasticsearchClient;
     this.persistenceManager = persistenceManager;
     this.converter = converter;
+    this.encoder = encoder;
     if (this.elasticsearchClient.getProperties().isEnabled()) {
       listenerContainer = supervisionNotifier.registerAsListener(this);
     }
@@ -78,7 +81,11 @@ public class SupervisionEventDocumentListener implements SupervisionListener, Sm
     log.debug("Indexing supervision event {} for entity {} (#{})",
         supervisionEvent.getStatus(), supervisionEvent.getEntity(), supervisionEvent.getEntityId());
 
-    persistenceManager.storeData(converter.convert(supervisionEvent));
+    if (this.elasticsearchClient.getProperties().isStreamingEncoding()) {
+      persistenceManager.storeData(encoder.encode(supervisionEvent));
+    } else {
+      persistenceManager.storeData(converter.convert(supervisionEvent));
+    }
   }
 
   @Override
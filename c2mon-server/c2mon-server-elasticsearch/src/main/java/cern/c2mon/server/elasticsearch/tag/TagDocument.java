@@ -17,6 +17,7 @@
 package cern.c2mon.server.elasticsearch.tag;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -37,6 +38,29 @@ public class TagDocument extends HashMap<String, Object> implements IFallback {
 
   private static final ObjectMapper mapper = new ObjectMapper();
 
+  /**
+   * JSON source of the document, when created by the {@link TagDocumentEncoder}
+   */
+  private transient byte[] source;
+
+  public TagDocument() {
+  }
+
+  /**
+   * Creates a document from its encoded JSON source. Only the id and the
+   * timestamp, used for the routing and the index name, are put in the map:
+   * the other fields are only in the source.
+   *
+   * @param id        the id of the document
+   * @param timestamp the timestamp of the document
+   * @param source    the JSON source of the document
+   */
+  public TagDocument(Object id, long timestamp, byte[] source) {
+    super.put("id", id);
+    super.put("timestamp", timestamp);
+    this.source = source;
+  }
+
   @Override
   public Object put(String key, Object value) {
     if (key.equals("timestamp")) {
@@ -63,8 +87,25 @@ public class TagDocument extends HashMap<String, Object> implements IFallback {
     }
   }
 
+  /**
+   * @return the JSON source of the document, encoded in UTF-8
+   */
+  public byte[] toBytes() {
+    if (source != null) {
+      return source;
+    }
+    try {
+      return mapper.writeValueAsBytes(this);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Error serializing document", e);
+    }
+  }
+
   @Override
   public String toString() {
+    if (source != null) {
+      return new String(source, StandardCharsets.UTF_8);
+    }
     try {
       return mapper.writeValueAsString(this);
     } catch (JsonProcessingException e) {
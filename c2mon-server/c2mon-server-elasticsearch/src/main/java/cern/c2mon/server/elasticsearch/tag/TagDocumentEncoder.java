@@ -0,0 +1,306 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.tag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.cache.EquipmentCache;
+import cern.c2mon.server.cache.ProcessCache;
+import cern.c2mon.server.cache.SubEquipmentCache;
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.listener.ConfigurationEventListener;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.client.configuration.ConfigConstants.Action;
+import cern.c2mon.shared.common.datatag.DataTagQuality;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+import cern.c2mon.shared.common.type.TypeConverter;
+
+/**
+ * Encodes {@link Tag} instances directly to the JSON source of their
+ * {@link TagDocument}, with the same fields as the {@link TagDocumentConverter}
+ * but without building the document as maps.
+ * <p>
+ * The fields which only change with the configuration of a tag (name,
+ * description, unit, mode, metadata, data type and hierarchy names) are
+ * encoded once per tag and copied as raw JSON into the documents. They are
+ * encoded again when one of them changes, or when the tag is reconfigured.
+ * The hierarchy names are read from the caches for every document, to detect
+ * renamed processes and equipment.
+ *
+ * @see TagDocumentConverter
+ */
+@Slf4j
+@Component
+public class TagDocumentEncoder implements ConfigurationEventListener {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final ProcessCache processCache;
+  private final EquipmentCache equipmentCache;
+  private final SubEquipmentCache subEquipmentCache;
+
+  private final BaseTagDocumentConverter<Map<String, Object>> staticFieldsConverter;
+
+  /**
+   * Encoded static fields, per tag id
+   */
+  private final Map<Long, StaticFields> staticFields = new ConcurrentHashMap<>();
+
+  @Autowired
+  public TagDocumentEncoder(final ProcessCache processCache, final EquipmentCache equipmentCache, final SubEquipmentCache subEquipmentCache) {
+    this.processCache = processCache;
+    this.equipmentCache = equipmentCache;
+    this.subEquipmentCache = subEquipmentCache;
+    this.staticFieldsConverter = new BaseTagDocumentConverter<>(processCache, equipmentCache, subEquipmentCache, HashMap::new);
+  }
+
+  /**
+   * Encodes the given tag.
+   *
+   * @param tag the tag to encode
+   * @return the document of the tag, or nothing if it could not be encoded
+   */
+  public Optional<TagDocument> encode(final Tag tag) {
+    try {
+      StaticFields fields = getStaticFields(tag);
+      long timestamp = tag.getTimestamp().getTime();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+
+      try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+        generator.writeStartObject();
+        generator.writeNumberField("timestamp", timestamp);
+        writeQuality(generator, tag.getDataTagQuality());
+        generator.writeStringField("valueDescription", tag.getValueDescription());
+        writeValue(generator, fields.type, tag.getValue());
+
+        generator.writeObjectFieldStart("c2mon");
+        generator.writeNumberField("serverTimestamp", tag.getCacheTimestamp().getTime());
+        if (tag instanceof DataTag) {
+          DataTag dataTag = (DataTag) tag;
+
+          if (dataTag.getDaqTimestamp() != null) {
+            generator.writeNumberField("daqTimestamp", dataTag.getDaqTimestamp().getTime());
+          }
+
+          if (dataTag.getSourceTimestamp() != null) {
+            generator.writeNumberField("sourceTimestamp", dataTag.getSourceTimestamp().getTime());
+          }
+        }
+        generator.writeRaw(fields.c2monFields);
+        generator.writeEndObject();
+
+        generator.writeRaw(fields.documentFields);
+        generator.writeEndObject();
+      }
+
+      return Optional.of(new TagDocument(tag.getId(), timestamp, out.toByteArray()));
+    } catch (Exception e) {
+      log.error("Error occurred during encoding of Tag #{} ({}) to Elasticsearch document. Unable to store update to Elasticsearch!", tag.getId(), tag.getName(), e);
+    }
+    return Optional.empty();
+  }
+
+  private StaticFields getStaticFields(final Tag tag) throws IOException {
+    String processName = getName(tag, "Process", tag.getProcessIds(), id -> processCache.get(id).getName());
+    String equipmentName = getName(tag, "Equipment", tag.getEquipmentIds(), id -> equipmentCache.get(id).getName());
+    String subEquipmentName = getName(tag, "SubEquipment", tag.getSubEquipmentIds(), id -> subEquipmentCache.get(id).getName());
+    StaticFields fields = staticFields.get(tag.getId());
+
+    if (fields == null || !fields.matches(tag, processName, equipmentName, subEquipmentName)) {
+      Map<String, Object> document = staticFieldsConverter.convert(tag).orElseThrow(IllegalStateException::new);
+      document.remove("c2mon");
+
+      Map<String, Object> c2mon = new HashMap<>();
+      c2mon.put("dataType", tag.getDataType());
+      putIfNotNull(c2mon, "process", processName);
+      putIfNotNull(c2mon, "equipment", equipmentName);
+      putIfNotNull(c2mon, "subEquipment", subEquipmentName);
+
+      fields = new StaticFields(tag, processName, equipmentName, subEquipmentName, encodeFields(document), encodeFields(c2mon));
+      staticFields.put(tag.getId(), fields);
+    }
+
+    return fields;
+  }
+
+  /**
+   * @return the name of the first parent of the tag in the given ids, or null
+   * if the tag has none or its name could not be found
+   */
+  private static String getName(final Tag tag, final String entity, final Set<Long> ids, final Function<Long, String> names) {
+    if (ids.isEmpty()) {
+      return null;
+    }
+    try {
+      return names.apply(ids.iterator().next());
+    } catch (Exception e) {
+      log.warn("Could not get {} name for tag #{} ({}) from cache. Reason: {}", entity, tag.getId(), tag.getName(), e.getMessage());
+      return null;
+    }
+  }
+
+  private static void putIfNotNull(final Map<String, Object> map, final String key, final Object value) {
+    if (value != null) {
+      map.put(key, value);
+    }
+  }
+
+  /**
+   * @return the fields of the given map as raw JSON, to be appended to the
+   * other fields of an object
+   */
+  private static SerializableString encodeFields(final Map<String, Object> fields) throws IOException {
+    String json = mapper.writeValueAsString(fields);
+    return new SerializedString(json.length() > 2 ? "," + json.substring(1, json.length() - 1) : "");
+  }
+
+  private static void writeQuality(final JsonGenerator generator, final DataTagQuality quality) throws IOException {
+    Map<TagQualityStatus, String> invalidQualityStates = quality.getInvalidQualityStates();
+
+    int status = 0;
+    if (invalidQualityStates != null) {
+      for (TagQualityStatus invalidQualityStatus : invalidQualityStates.keySet()) {
+        status += (int) Math.pow(2, invalidQualityStatus.getCode());
+      }
+    }
+
+    generator.writeObjectFieldStart("quality");
+    generator.writeBooleanField("valid", quality.isValid());
+    generator.writeNumberField("status", status);
+    generator.writeArrayFieldStart("statusInfo");
+    if (invalidQualityStates == null || invalidQualityStates.isEmpty()) {
+      generator.writeString("OK");
+    } else {
+      for (Map.Entry<TagQualityStatus, String> invalidQualityState : invalidQualityStates.entrySet()) {
+        generator.writeString(invalidQualityState.getKey().name() + " : " + invalidQualityState.getValue());
+      }
+    }
+    generator.writeEndArray();
+    generator.writeEndObject();
+  }
+
+  private static void writeValue(final JsonGenerator generator, final Class<?> type, final Object value) throws IOException {
+    if (type == null) {
+      generator.writeObjectField("valueObject", value);
+
+    } else if (Number.class.isAssignableFrom(type)) {
+      generator.writeObjectField("value", value);
+
+      if (Long.class.isAssignableFrom(type)) {
+        generator.writeObjectField("valueLong", value);
+      }
+    } else if (Boolean.class.isAssignableFrom(type)) {
+      generator.writeObjectField("valueBoolean", value);
+
+      if (value != null) {
+        generator.writeNumberField("value", value.equals(Boolean.TRUE) ? 1 : 0);
+      }
+    } else if (String.class.isAssignableFrom(type)) {
+      generator.writeObjectField("valueString", value);
+
+    } else {
+      generator.writeObjectField("valueObject", value);
+    }
+  }
+
+  @Override
+  public void onConfigurationEvent(Tag tag, Action action) {
+    staticFields.remove(tag.getId());
+  }
+
+  @Override
+  public void onConfigurationEvent(Alarm alarm, Action action) {
+  }
+
+  /**
+   * Encoded static fields of a tag, with the tag properties they were encoded
+   * from.
+   */
+  private static final class StaticFields {
+
+    private final String name;
+    private final String description;
+    private final String unit;
+    private final short mode;
+    private final String dataType;
+    private final Map<String, Object> metadata;
+    private final Set<Long> processIds;
+    private final Set<Long> equipmentIds;
+    private final Set<Long> subEquipmentIds;
+    private final String processName;
+    private final String equipmentName;
+    private final String subEquipmentName;
+
+    private final Class<?> type;
+
+    private final SerializableString documentFields;
+
+    private final SerializableString c2monFields;
+
+    StaticFields(final Tag tag, final String processName, final String equipmentName, final String subEquipmentName,
+                 final SerializableString documentFields, final SerializableString c2monFields) {
+      this.name = tag.getName();
+      this.description = tag.getDescription();
+      this.unit = tag.getUnit();
+      this.mode = tag.getMode();
+      this.dataType = tag.getDataType();
+      this.metadata = tag.getMetadata() == null ? null : new HashMap<>(tag.getMetadata().getMetadata());
+      this.processIds = new HashSet<>(tag.getProcessIds());
+      this.equipmentIds = new HashSet<>(tag.getEquipmentIds());
+      this.subEquipmentIds = new HashSet<>(tag.getSubEquipmentIds());
+      this.processName = processName;
+      this.equipmentName = equipmentName;
+      this.subEquipmentName = subEquipmentName;
+      this.type = TypeConverter.getType(tag.getDataType());
+      this.documentFields = documentFields;
+      this.c2monFields = c2monFields;
+    }
+
+    boolean matches(final Tag tag, final String processName, final String equipmentName, final String subEquipmentName) {
+      return mode == tag.getMode()
+          && Objects.equals(name, tag.getName())
+          && Objects.equals(description, tag.getDescription())
+          && Objects.equals(unit, tag.getUnit())
+          && Objects.equals(dataType, tag.getDataType())
+          && Objects.equals(metadata, tag.getMetadata() == null ? null : tag.getMetadata().getMetadata())
+          && processIds.equals(tag.getProcessIds())
+          && equipmentIds.equals(tag.getEquipmentIds())
+          && subEquipmentIds.equals(tag.getSubEquipmentIds())
+          && Objects.equals(this.processName, processName)
+          && Objects.equals(this.equipmentName, equipmentName)
+          && Objects.equals(this.subEquipmentName, subEquipmentName);
+    }
+  }
+}
@@ -23,6 +23,7 @@ import cern.c2mon.server.elasticsearch.MappingFactory;
 import cern.c2mon.server.elasticsearch.bulk.BulkProcessorProxy;
 import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -71,7 +72,7 @@ public class TagDocumentIndexer implements IDBPersistenceHandler<TagDocument> {
     log.trace("Indexing tag (#{}, index={}, type={})", tag.getId(), index, "tag");
 
     IndexRequest indexNewTag = new IndexRequest(index, "tag")
-        .source(tag.toString())
+        .source(tag.toBytes(), XContentType.JSON)
         .routing(tag.getId());
 
     bulkProcessor.add(indexNewTag);
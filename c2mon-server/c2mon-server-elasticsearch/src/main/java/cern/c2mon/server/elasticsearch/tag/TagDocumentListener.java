@@ -62,6 +62,9 @@ public class TagDocumentListener implements C2monBufferedCacheListener<Tag>, Sma
   @Autowired
   private TagDocumentConverter converter;
 
+  @Autowired
+  private TagDocumentEncoder encoder;
+
   private Lifecycle listenerContainer;
 
   private volatile boolean running = false;
@@ -86,8 +89,9 @@ public class TagDocumentListener implements C2monBufferedCacheListener<Tag>, Sma
         .collect(Collectors.toList());
     log.debug("About to log {} tags", loggables.size());
 
+    boolean streamingEncoding = this.elasticsearchClient.getProperties().isStreamingEncoding();
     List<TagDocument> tagDocuments = loggables.stream()
-        .map(tag -> converter.convert(tag))
+        .map(tag -> streamingEncoding ? encoder.encode(tag) : converter.convert(tag))
         .filter(Optional::isPresent)
         .map(Optional::get)
         .collect(Collectors.toList());
@@ -7,6 +7,7 @@ import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
 import cern.c2mon.server.elasticsearch.supervision.SupervisionEventDocumentIndexerTests;
 import cern.c2mon.server.elasticsearch.supervision.SupervisionEventDocumentTests;
 import cern.c2mon.server.elasticsearch.tag.TagDocumentConverterTests;
+import cern.c2mon.server.elasticsearch.tag.TagDocumentEncoderTest;
 import cern.c2mon.server.elasticsearch.tag.TagDocumentIndexerTests;
 import cern.c2mon.server.elasticsearch.tag.config.TagConfigDocumentConverterTests;
 import cern.c2mon.server.elasticsearch.tag.config.TagConfigDocumentIndexerTests;
@@ -26,6 +27,7 @@ import org.springframework.util.FileSystemUtils;
     SupervisionEventDocumentIndexerTests.class,
     SupervisionEventDocumentTests.class,
     TagDocumentConverterTests.class,
+    TagDocumentEncoderTest.class,
     TagDocumentIndexerTests.class,
     TagConfigDocumentConverterTests.class,
     TagConfigDocumentIndexerTests.class
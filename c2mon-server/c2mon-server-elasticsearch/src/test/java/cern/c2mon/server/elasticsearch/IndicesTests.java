@@ -4,6 +4,10 @@ import cern.c2mon.server.elasticsearch.config.BaseElasticsearchIntegrationTest;
 import cern.c2mon.server.elasticsearch.tag.TagDocument;
 import org.junit.Test;
 
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
 import static junit.framework.TestCase.assertEquals;
 
 /**
@@ -43,4 +47,28 @@ public class IndicesTests extends BaseElasticsearchIntegrationTest {
     String index = Indices.indexFor(document);
     assertEquals("c2mon-tag_2015-12-01", index);
   }
+
+  /**
+   * The index names are cached per time bucket: check the bucket boundaries
+   * every hour around the end of a year.
+   */
+  @Test
+  public void indexAcrossTimeBuckets() {
+    String[][] indexTypes = {{"M", "yyyy-MM"}, {"W", "yyyy-'W'ww"}, {"D", "yyyy-MM-dd"}};
+
+    for (String[] indexType : indexTypes) {
+      Indices.getProperties().setIndexType(indexType[0]);
+      SimpleDateFormat dateFormat = new SimpleDateFormat(indexType[1]);
+
+      Calendar calendar = Calendar.getInstance();
+      calendar.set(2015, Calendar.NOVEMBER, 20, 0, 30, 0);
+      while (calendar.get(Calendar.MONTH) != Calendar.FEBRUARY) {
+        TagDocument document = new TagDocument();
+        document.put("timestamp", calendar.getTimeInMillis());
+
+        assertEquals("c2mon-tag_" + dateFormat.format(new Date(calendar.getTimeInMillis())), Indices.indexFor(document));
+        calendar.add(Calendar.HOUR_OF_DAY, 1);
+      }
+    }
+  }
 }
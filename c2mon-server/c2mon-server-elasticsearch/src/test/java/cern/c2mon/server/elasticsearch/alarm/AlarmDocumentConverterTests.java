@@ -84,4 +84,14 @@ public class AlarmDocumentConverterTests {
     assertEquals(Long.class, document.get("timestamp").getClass());
     assertEquals(0L, document.get("timestamp"));
   }
+
+  @Test
+  public void encodeAsConverter() throws DataFallbackException {
+    Alarm alarm = EntityUtils.createAlarm();
+    AlarmDocument converted = converter.convert(alarm);
+    AlarmDocument encoded = new AlarmDocumentEncoder().encode(alarm);
+
+    assertEquals(converted.getId(), encoded.getId());
+    assertEquals(converted.getObject(converted.toString()), encoded.getObject(encoded.toString()));
+  }
 }
@@ -50,4 +50,14 @@ public class SupervisionEventDocumentTests {
     assertEquals(event.getStatus().name(), document.get("status"));
     assertEquals(event.getMessage(), document.get("message"));
   }
+
+  @Test
+  public void encodeAsConverter() {
+    SupervisionEvent event = EntityUtils.createSupervisionEvent();
+    SupervisionEventDocument converted = converter.convert(event);
+    SupervisionEventDocument encoded = new SupervisionEventDocumentEncoder().encode(event);
+
+    assertEquals(converted.getId(), encoded.getId());
+    assertEquals(converted.getObject(converted.toString()), encoded.getObject(encoded.toString()));
+  }
 }
@@ -0,0 +1,120 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.tag;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import cern.c2mon.server.cache.EquipmentCache;
+import cern.c2mon.server.cache.ProcessCache;
+import cern.c2mon.server.cache.SubEquipmentCache;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.equipment.EquipmentCacheObject;
+import cern.c2mon.server.common.process.ProcessCacheObject;
+import cern.c2mon.server.elasticsearch.util.EntityUtils;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Compares the time and the memory allocated per document to encode tag
+ * updates to the JSON source of their {@link TagDocument} with the
+ * {@link TagDocumentConverter} and with the {@link TagDocumentEncoder}.
+ *
+ * <p>The process and equipment caches are mocks, which return the same
+ * objects: with the real caches, which return copies, each lookup of the
+ * converter costs more.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE, or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.server.elasticsearch.tag.TagDocumentEncoderBenchmark
+ * -Dexec.args="1000 1000000"</code> (tags, updates per run).
+ */
+public class TagDocumentEncoderBenchmark {
+
+  private static final int RUNS = 5;
+
+  private final List<DataTagCacheObject> tags = new ArrayList<>();
+
+  private final int updates;
+
+  public TagDocumentEncoderBenchmark(final int tagCount, final int updates) {
+    for (long id = 0; id < tagCount; id++) {
+      DataTagCacheObject tag = (DataTagCacheObject) EntityUtils.createDataTag();
+      tag.setId(id);
+      tag.setName("tag." + id);
+      tags.add(tag);
+    }
+    this.updates = updates;
+  }
+
+  public static void main(String[] args) {
+    int tagCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int updates = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+    ProcessCacheObject process = new ProcessCacheObject(1L);
+    process.setName("P_TEST");
+    EquipmentCacheObject equipment = new EquipmentCacheObject(1L);
+    equipment.setName("E_TEST");
+
+    ProcessCache processCache = mock(ProcessCache.class, withSettings().stubOnly());
+    EquipmentCache equipmentCache = mock(EquipmentCache.class, withSettings().stubOnly());
+    SubEquipmentCache subEquipmentCache = mock(SubEquipmentCache.class, withSettings().stubOnly());
+    when(processCache.get(any())).thenReturn(process);
+    when(equipmentCache.get(any())).thenReturn(equipment);
+
+    TagDocumentConverter converter = new TagDocumentConverter(processCache, equipmentCache, subEquipmentCache);
+    TagDocumentEncoder encoder = new TagDocumentEncoder(processCache, equipmentCache, subEquipmentCache);
+
+    TagDocumentEncoderBenchmark benchmark = new TagDocumentEncoderBenchmark(tagCount, updates);
+    System.out.printf("%d updates of %d tags, best of %d runs%n", updates, tagCount, RUNS);
+    benchmark.run("converter", tag -> converter.convert(tag).get());
+    benchmark.run("encoder", tag -> encoder.encode(tag).get());
+  }
+
+  private void run(final String name, final Function<DataTagCacheObject, TagDocument> encoding) {
+    com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long bestTime = Long.MAX_VALUE;
+    long bestAllocated = Long.MAX_VALUE;
+    long bytes = 0;
+
+    for (int run = 0; run < RUNS; run++) {
+      long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+      long start = System.nanoTime();
+
+      bytes = 0;
+      for (int i = 0; i < updates; i++) {
+        DataTagCacheObject tag = tags.get(i % tags.size());
+        tag.setValue((long) i);
+        tag.setCacheTimestamp(new Timestamp(start + i));
+        bytes += encoding.apply(tag).toBytes().length;
+      }
+
+      bestTime = Math.min(bestTime, System.nanoTime() - start);
+      bestAllocated = Math.min(bestAllocated, threadMXBean.getThreadAllocatedBytes(threadId) - allocated);
+    }
+
+    System.out.printf("%-9s %,8.0f ns/document %,8d bytes allocated/document %,6d bytes/document%n",
+        name, (double) bestTime / updates, bestAllocated / updates, bytes / updates);
+  }
+}
@@ -0,0 +1,164 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.tag;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import cern.c2mon.server.cache.EquipmentCache;
+import cern.c2mon.server.cache.ProcessCache;
+import cern.c2mon.server.cache.SubEquipmentCache;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.equipment.EquipmentCacheObject;
+import cern.c2mon.server.common.process.ProcessCacheObject;
+import cern.c2mon.server.elasticsearch.util.EntityUtils;
+import cern.c2mon.shared.client.configuration.ConfigConstants.Action;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the {@link TagDocumentEncoder} produces the same documents as
+ * the {@link TagDocumentConverter}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TagDocumentEncoderTest {
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  @Mock
+  private ProcessCache processCache;
+
+  @Mock
+  private EquipmentCache equipmentCache;
+
+  @Mock
+  private SubEquipmentCache subEquipmentCache;
+
+  private ProcessCacheObject process;
+
+  private TagDocumentConverter converter;
+
+  private TagDocumentEncoder encoder;
+
+  @Before
+  public void setup() {
+    process = new ProcessCacheObject(1L);
+    process.setName("P_TEST");
+
+    EquipmentCacheObject equipment = new EquipmentCacheObject(1L);
+    equipment.setName("E_TEST");
+
+    when(processCache.get(any())).thenReturn(process);
+    when(equipmentCache.get(any())).thenReturn(equipment);
+
+    converter = new TagDocumentConverter(processCache, equipmentCache, subEquipmentCache);
+    encoder = new TagDocumentEncoder(processCache, equipmentCache, subEquipmentCache);
+  }
+
+  @Test
+  public void encodeAsConverter() throws Exception {
+    DataTagCacheObject tag = (DataTagCacheObject) EntityUtils.createDataTag();
+    tag.setValue(42L);
+    tag.getDataTagQuality().addInvalidStatus(TagQualityStatus.VALUE_OUT_OF_BOUNDS, "out of bounds");
+
+    assertSameDocument(tag);
+
+    tag.getDataTagQuality().validate();
+    tag.setValue(null);
+    assertSameDocument(tag);
+  }
+
+  @Test
+  public void encodeStaticFieldsOnce() throws Exception {
+    DataTagCacheObject tag = (DataTagCacheObject) EntityUtils.createDataTag();
+
+    for (long value = 0; value < 10; value++) {
+      tag.setValue(value);
+      assertSameDocument(tag);
+    }
+    // Both read the process name once per document, the encoder converts the
+    // static fields once
+    verify(processCache, times(21)).get(any());
+
+    tag.setName("cpu.loadavg.renamed");
+    tag.getMetadata().addMetadata("building", "2");
+    assertSameDocument(tag);
+
+    encoder.onConfigurationEvent(tag, Action.UPDATE);
+    assertSameDocument(tag);
+    verify(processCache, times(27)).get(any());
+  }
+
+  @Test
+  public void encodeRenamedProcess() throws Exception {
+    DataTagCacheObject tag = (DataTagCacheObject) EntityUtils.createDataTag();
+    assertSameDocument(tag);
+
+    process.setName("P_RENAMED");
+    assertSameDocument(tag);
+
+    TagDocument document = encoder.encode(tag).orElseThrow(IllegalStateException::new);
+    assertEquals("P_RENAMED", ((Map<String, Object>) parse(document.toBytes()).get("c2mon")).get("process"));
+  }
+
+  @Test
+  public void encodeFromFallback() throws Exception {
+    DataTagCacheObject tag = (DataTagCacheObject) EntityUtils.createDataTag();
+    tag.setValue(1L);
+    TagDocument document = encoder.encode(tag).orElseThrow(IllegalStateException::new);
+
+    assertEquals(String.valueOf(tag.getId()), document.getId());
+    assertEquals(tag.getTimestamp().getTime(), document.get("timestamp"));
+
+    // The fallback file contains the encoded document, read back as a map
+    TagDocument fallback = (TagDocument) document.getObject(document.toString());
+    assertEquals(mapper.readValue(document.toBytes(), Map.class), mapper.readValue(fallback.toBytes(), Map.class));
+    assertTrue(fallback.containsKey("c2mon"));
+  }
+
+  private void assertSameDocument(DataTagCacheObject tag) throws Exception {
+    TagDocument converted = converter.convert(tag).orElseThrow(IllegalStateException::new);
+    TagDocument encoded = encoder.encode(tag).orElseThrow(IllegalStateException::new);
+
+    assertEquals(parse(converted.toBytes()), parse(encoded.toBytes()));
+  }
+
+  /**
+   * @return the fields of the given document, with the quality status info
+   * as a set: the converter collects them in any order
+   */
+  private static Map<String, Object> parse(byte[] document) throws Exception {
+    Map<String, Object> fields = mapper.readValue(document, Map.class);
+    Map<String, Object> quality = (Map<String, Object>) fields.get("quality");
+    quality.put("statusInfo", new HashSet<>((Collection<?>) quality.get("statusInfo")));
+    return fields;
+  }
+}
@@ -40,7 +40,8 @@ public class AlarmHistoryConfig {
 
   @Bean
   public LoggerDAO<AlarmRecord> alarmLoggerDAO() throws Exception {
+    HistoryProperties.Writer writer = properties.getWriter();
     return new LoggerDAO<>(historySqlSessionFactory.getObject(), AlarmRecordMapper.class.getCanonicalName(),
-        properties.getJdbc().getUrl());
+        properties.getJdbc().getUrl(), writer.getRowsPerStatement(), writer.getRowsPerCommit(), writer.getSessions());
   }
 }
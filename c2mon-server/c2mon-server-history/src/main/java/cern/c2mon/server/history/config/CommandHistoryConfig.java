@@ -30,7 +30,8 @@ public class CommandHistoryConfig {
 
   @Bean
   public LoggerDAO<CommandRecord> commandLoggerDAO() throws Exception {
+    HistoryProperties.Writer writer = properties.getWriter();
     return new LoggerDAO<>(historySqlSessionFactory.getObject(), CommandRecordMapper.class.getCanonicalName(),
-        properties.getJdbc().getUrl());
+        properties.getJdbc().getUrl(), writer.getRowsPerStatement(), writer.getRowsPerCommit(), writer.getSessions());
   }
 }
@@ -32,6 +32,8 @@ public class HistoryProperties {
 
   private Jdbc jdbc = new Jdbc();
 
+  private Writer writer = new Writer();
+
   @Data
   public class Jdbc {
 
@@ -44,4 +46,24 @@ public class HistoryProperties {
     /** History database account password */
     private String password = "";
   }
+
+  @Data
+  public class Writer {
+
+    /**
+     * Number of records inserted by one multi-row INSERT statement. With 1,
+     * each record is inserted by its own statement
+     */
+    private int rowsPerStatement = 1;
+
+    /** Number of records inserted between two commits */
+    private int rowsPerCommit = 500;
+
+    /**
+     * Number of sessions writing a collection of records in parallel. The
+     * records are split by ID, so the records of a tag are written by the
+     * same session, in order
+     */
+    private int sessions = 1;
+  }
 }
@@ -39,7 +39,8 @@ public class TagHistoryConfig {
 
   @Bean
   public LoggerDAO<TagRecord> tagLoggerDAO() throws Exception {
+    HistoryProperties.Writer writer = properties.getWriter();
     return new LoggerDAO<>(historySqlSessionFactory.getObject(), TagRecordMapper.class.getCanonicalName(),
-        properties.getJdbc().getUrl());
+        properties.getJdbc().getUrl(), writer.getRowsPerStatement(), writer.getRowsPerCommit(), writer.getSessions());
   }
 }
@@ -16,7 +16,13 @@
  *****************************************************************************/
 package cern.c2mon.server.history.dao;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.session.ExecutorType;
@@ -24,6 +30,7 @@ import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.IFallback;
@@ -34,6 +41,13 @@ import cern.c2mon.server.history.mapper.LoggerMapper;
  * Common DAO implementation for objects that need storing in a history table using
  * the fallback mechanism.
  *
+ * <p>A collection of objects is inserted in a batch session, committing
+ * every {@code rowsPerCommit} objects. With {@code rowsPerStatement} greater
+ * than 1, the objects are inserted with multi-row statements
+ * ({@link LoggerMapper#insertLogs(List)}). With more than one writer session,
+ * a collection larger than {@code rowsPerCommit} is split by object ID and
+ * the parts are written in parallel.
+ *
  * @author Mark Brightwell
  *
  * @param <T>
@@ -47,7 +61,7 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
   private static final Logger LOGGER = LoggerFactory.getLogger(LoggerDAO.class);
 
   /**
-   * Maximum number of statements that will be executed in each SQL batch
+   * Default maximum number of statements that will be executed in each SQL batch
    **/
   private static final int RECORDS_PER_BATCH = 500;
 
@@ -72,6 +86,26 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
    */
   private String dbUrl;
 
+  /**
+   * Number of objects inserted by one statement.
+   */
+  private final int rowsPerStatement;
+
+  /**
+   * Number of objects inserted between two commits.
+   */
+  private final int rowsPerCommit;
+
+  /**
+   * Number of writer sessions.
+   */
+  private final int sessions;
+
+  /**
+   * Threads of the writer sessions, null if a single session is used.
+   */
+  private final ExecutorService writerExecutor;
+
   /**
    *
    * @param sqlSessionFactory
@@ -82,6 +116,27 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
    * @throws ClassNotFoundException
    */
   public LoggerDAO(SqlSessionFactory sqlSessionFactory, String mapperInterface, String dbUrl) throws ClassNotFoundException {
+    this(sqlSessionFactory, mapperInterface, dbUrl, 1, RECORDS_PER_BATCH, 1);
+  }
+
+  /**
+   *
+   * @param sqlSessionFactory
+   * @param mapperInterface
+   *          name of the mapper interface used to insert the objects
+   * @param dbUrl
+   *          only used for logging error messages
+   * @param rowsPerStatement
+   *          number of objects inserted by one multi-row statement, 1 to
+   *          insert each object with its own statement
+   * @param rowsPerCommit
+   *          number of objects inserted between two commits
+   * @param sessions
+   *          number of sessions writing a collection of objects in parallel
+   * @throws ClassNotFoundException
+   */
+  public LoggerDAO(SqlSessionFactory sqlSessionFactory, String mapperInterface, String dbUrl, int rowsPerStatement,
+                   int rowsPerCommit, int sessions) throws ClassNotFoundException {
     super();
     this.sqlSessionFactory = sqlSessionFactory;
     Class<?> tmpInterface = Class.forName(mapperInterface);
@@ -91,9 +146,16 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
       throw new IllegalArgumentException("Unexpected class name passed to LoggerDAO constructor - unable to instantiate.");
     }
     this.dbUrl = dbUrl;
-    // if (tmpInterface instanceof LoggerMapper) {
-    // Class<? extends LoggerMapper> mappper = tmpInterface;
-    // }
+    this.rowsPerStatement = Math.max(1, rowsPerStatement);
+    this.rowsPerCommit = Math.max(1, rowsPerCommit);
+    this.sessions = Math.max(1, sessions);
+    if (this.sessions > 1) {
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(tmpInterface.getSimpleName() + "Writer-");
+      threadFactory.setDaemon(true);
+      this.writerExecutor = Executors.newFixedThreadPool(this.sessions, threadFactory);
+    } else {
+      this.writerExecutor = null;
+    }
   }
 
   /**
@@ -110,11 +172,109 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
   @SuppressWarnings("unchecked")
   // add generics to persistence manager
   public final void storeData(final List data) throws IDBPersistenceException {
-    SqlSession session = null;
     int size = data.size();
-    int commited = 0;
-    T tag;
+    // Objects committed, by position in the list
+    boolean[] committed = new boolean[size];
+    List<int[]> partitions = partition(data);
+
+    PersistenceException failure = null;
+    if (partitions.size() == 1) {
+      try {
+        write(data, partitions.get(0), committed);
+      } catch (PersistenceException e) {
+        failure = e;
+      }
+    } else {
+      List<Future<?>> writers = new ArrayList<>(partitions.size());
+      for (int[] partition : partitions) {
+        writers.add(writerExecutor.submit(() -> write(data, partition, committed)));
+      }
+      for (Future<?> writer : writers) {
+        try {
+          writer.get();
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause() instanceof PersistenceException
+                ? (PersistenceException) e.getCause() : new PersistenceException(e.getCause());
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          if (failure == null) {
+            failure = new PersistenceException("Interrupted while waiting for the writer sessions", e);
+          }
+        }
+      }
+    }
+
+    if (failure != null) {
+      LOGGER.error("storeData([Collection]) : Error executing/closing prepared statement for " + size + " dataTags", failure);
+      // The objects after the first one not committed are handled by the fallback mechanism
+      int commited = 0;
+      while (commited < size && committed[commited]) {
+        commited++;
+      }
+      int committedAfter = 0;
+      for (int i = commited; i < size; i++) {
+        if (committed[i]) {
+          committedAfter++;
+        }
+      }
+      if (committedAfter > 0) {
+        LOGGER.warn("storeData([Collection]) : " + committedAfter + " objects committed by another writer session "
+            + "will be written again from the fallback file");
+      }
+      throw new IDBPersistenceException(failure.getMessage(), commited);
+    }
+  }
+
+  /**
+   * Splits the positions of the objects to write between the writer sessions,
+   * by object ID.
+   */
+  private List<int[]> partition(final List data) {
+    int size = data.size();
+    if (writerExecutor == null || size <= rowsPerCommit) {
+      int[] all = new int[size];
+      for (int i = 0; i < size; i++) {
+        all[i] = i;
+      }
+      return Collections.singletonList(all);
+    }
+    int[] partitionOf = new int[size];
+    int[] partitionSizes = new int[sessions];
+    for (int i = 0; i < size; i++) {
+      IFallback object = (IFallback) data.get(i);
+      String id = object == null ? null : object.getId();
+      partitionOf[i] = id == null ? 0 : Math.floorMod(id.hashCode(), sessions);
+      partitionSizes[partitionOf[i]]++;
+    }
+    List<int[]> partitions = new ArrayList<>(sessions);
+    int[][] positions = new int[sessions][];
+    for (int p = 0; p < sessions; p++) {
+      positions[p] = new int[partitionSizes[p]];
+      if (partitionSizes[p] > 0) {
+        partitions.add(positions[p]);
+      }
+      partitionSizes[p] = 0;
+    }
+    for (int i = 0; i < size; i++) {
+      int p = partitionOf[i];
+      positions[p][partitionSizes[p]++] = i;
+    }
+    return partitions;
+  }
 
+  /**
+   * Writes the objects at the given positions with one batch session,
+   * committing every {@link #rowsPerCommit} objects.
+   *
+   * @param data the objects to write
+   * @param positions the positions of the objects to write in this session
+   * @param committed set to true for the positions that have been committed
+   */
+  @SuppressWarnings("unchecked")
+  private void write(final List data, final int[] positions, final boolean[] committed) {
+    SqlSession session = null;
     try {
       // We use batch set of statements to improve performance
       session = sqlSessionFactory.openSession(ExecutorType.BATCH, false);
@@ -123,30 +283,29 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
       }
       LoggerMapper<T> persistenceMapper = session.getMapper(mapperInterface);
 
-      // Iterate through the list of DataTagCacheObjects to insert
-      // them one by one
-      for (int i = 0; i != size; i++) {
-        if ((0 == i % RECORDS_PER_BATCH) && i > 0) {
-          if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("storeData([Collection]) : Commiting rows for i=" + i);
+      List<T> statement = new ArrayList<>(rowsPerStatement);
+      int uncommitted = 0;
+      for (int i = 0; i < positions.length; i++) {
+        T object = (T) data.get(positions[i]);
+        if (object != null) {
+          statement.add(object);
+          if (statement.size() == rowsPerStatement) {
+            insert(persistenceMapper, statement);
           }
-          session.commit();
-          commited = i;
         }
-
-        if (data.get(i) != null) {
-          tag = (T) data.get(i);
+        if ((i + 1) % rowsPerCommit == 0 || i == positions.length - 1) {
+          insert(persistenceMapper, statement);
+          session.commit();
+          for (int j = uncommitted; j <= i; j++) {
+            committed[positions[j]] = true;
+          }
+          uncommitted = i + 1;
           if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Logging object with ID: " + tag.getId());
+            LOGGER.debug("storeData([Collection]) : Committed " + uncommitted + " of " + positions.length + " rows");
           }
-          persistenceMapper.insertLog(tag);
         }
       }
-      // Commit the transaction
-      session.commit();
-      commited = size;
     } catch (PersistenceException e) {
-      LOGGER.error("storeData([Collection]) : Error executing/closing prepared statement for " + data.size() + " dataTags", e);
       try {
         if (session != null) {
           session.rollback();
@@ -154,7 +313,7 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
       } catch (Exception sql) {
         LOGGER.error("storeData([Collection]) : Error rolling back transaction.", sql);
       }
-      throw new IDBPersistenceException(e.getMessage(), commited);
+      throw e;
     } finally {
       try {
         if (session != null) {
@@ -166,6 +325,30 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
     }
   }
 
+  /**
+   * Inserts the objects, with a multi-row statement if enabled, and clears
+   * the list.
+   */
+  private void insert(final LoggerMapper<T> persistenceMapper, final List<T> objects) {
+    if (objects.size() > 1 && rowsPerStatement > 1) {
+      persistenceMapper.insertLogs(objects);
+    } else {
+      for (T object : objects) {
+        persistenceMapper.insertLog(object);
+      }
+    }
+    objects.clear();
+  }
+
+  /**
+   * Stops the threads of the writer sessions.
+   */
+  public void shutdown() {
+    if (writerExecutor != null) {
+      writerExecutor.shutdown();
+    }
+  }
+
   @Override
   public String getDBInfo() {
     return "C2MON history account on DB with URL: " + dbUrl;
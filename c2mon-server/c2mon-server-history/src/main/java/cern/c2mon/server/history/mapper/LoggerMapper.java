@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.history.mapper;
 
+import java.util.List;
+
 import cern.c2mon.pmanager.IFallback;
 
 /**
@@ -35,4 +37,12 @@ public interface LoggerMapper<T extends IFallback> {
    */
   void insertLog(T loggable);
 
+  /**
+   * Inserts the Loggable objects into the table with a single multi-row
+   * statement.
+   *
+   * @param loggables the objects to log in the DB
+   */
+  void insertLogs(List<T> loggables);
+
 }
@@ -0,0 +1,170 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.function.IntFunction;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import cern.c2mon.pmanager.IFallback;
+import cern.c2mon.server.common.util.HsqlDatabaseBuilder;
+import cern.c2mon.server.history.config.HistoryDataSourceConfig;
+import cern.c2mon.server.history.mapper.AlarmRecordMapper;
+import cern.c2mon.server.history.mapper.CommandRecordMapper;
+import cern.c2mon.server.history.mapper.TagRecordMapper;
+import cern.c2mon.server.history.structure.AlarmRecord;
+import cern.c2mon.server.history.structure.TagRecord;
+import cern.c2mon.shared.client.command.CommandExecutionStatus;
+import cern.c2mon.shared.client.command.CommandRecord;
+
+/**
+ * Compares the rows per second written by the {@link LoggerDAO} with one
+ * statement per row, with multi-row statements and with several writer
+ * sessions, for the tag, alarm and command history tables.
+ *
+ * <p>The records are written to the in-memory HSQLDB history schema used by
+ * the tests, so the absolute numbers only say little about a production
+ * database, where the round trips saved by the multi-row statements weigh
+ * more.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE, or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.server.history.dao.LoggerDAOBenchmark
+ * -Dexec.args="100000 5"</code> (records per run, runs per setting).
+ */
+public class LoggerDAOBenchmark {
+
+  /**
+   * Writer settings compared: rows per statement, rows per commit, sessions.
+   */
+  private static final int[][] SETTINGS = {
+      {1, 500, 1},
+      {20, 500, 1},
+      {100, 1000, 1},
+      {100, 1000, 4}
+  };
+
+  private final SqlSessionFactory sqlSessionFactory;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final int recordCount;
+
+  private final int runs;
+
+  public LoggerDAOBenchmark(final int recordCount, final int runs) throws Exception {
+    DataSource dataSource = new HsqlDatabaseBuilder()
+        .url("jdbc:hsqldb:mem:history;sql.syntax_ora=true")
+        .addScript(new ClassPathResource("sql/history-schema-hsqldb.sql")).build();
+    this.sqlSessionFactory = HistoryDataSourceConfig.historySqlSessionFactory(dataSource).getObject();
+    this.sqlSessionFactory.getConfiguration().addMapper(TagRecordMapper.class);
+    this.sqlSessionFactory.getConfiguration().addMapper(AlarmRecordMapper.class);
+    this.sqlSessionFactory.getConfiguration().addMapper(CommandRecordMapper.class);
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.recordCount = recordCount;
+    this.runs = runs;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int recordCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    LoggerDAOBenchmark benchmark = new LoggerDAOBenchmark(recordCount, runs);
+    System.out.printf("%d records per run, best of %d runs%n", recordCount, runs);
+    benchmark.run("tags", TagRecordMapper.class, "SHORTTERMLOG", LoggerDAOBenchmark::tag);
+    benchmark.run("alarms", AlarmRecordMapper.class, "ALARMLOG", LoggerDAOBenchmark::alarm);
+    benchmark.run("commands", CommandRecordMapper.class, "COMMANDTAGLOG", LoggerDAOBenchmark::command);
+  }
+
+  private <T extends IFallback> void run(final String name, final Class<?> mapperInterface, final String table,
+                                         final IntFunction<T> records) throws Exception {
+    List<T> data = new ArrayList<>(recordCount);
+    for (int i = 0; i < recordCount; i++) {
+      data.add(records.apply(i));
+    }
+
+    for (int[] setting : SETTINGS) {
+      LoggerDAO<T> loggerDAO = new LoggerDAO<>(sqlSessionFactory, mapperInterface.getCanonicalName(), "benchmark",
+          setting[0], setting[1], setting[2]);
+      long best = Long.MAX_VALUE;
+      try {
+        for (int run = 0; run < runs; run++) {
+          jdbcTemplate.update("DELETE FROM " + table);
+          long start = System.nanoTime();
+          loggerDAO.storeData(data);
+          best = Math.min(best, System.nanoTime() - start);
+        }
+      } finally {
+        loggerDAO.shutdown();
+      }
+      System.out.printf("%-8s %4d rows/statement %5d rows/commit %2d sessions: %,10.0f rows/s%n",
+          name, setting[0], setting[1], setting[2], recordCount * 1e9 / best);
+    }
+    jdbcTemplate.update("DELETE FROM " + table);
+  }
+
+  private static TagRecord tag(final int i) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    TagRecord tag = new TagRecord();
+    tag.setTagId(i % 1000L);
+    tag.setTagName("tag " + i % 1000);
+    tag.setTagDataType("Integer");
+    tag.setTagValue(String.valueOf(i));
+    tag.setSourceTimestamp(now);
+    tag.setDaqTimestamp(now);
+    tag.setServerTimestamp(now);
+    return tag;
+  }
+
+  private static AlarmRecord alarm(final int i) {
+    AlarmRecord alarm = new AlarmRecord();
+    alarm.setTagId(i % 1000L);
+    alarm.setAlarmId(i % 1000L);
+    alarm.setActive(i % 2 == 0);
+    alarm.setFaultFamily("FF");
+    alarm.setFaultMember("FM");
+    alarm.setFaultCode(i % 10);
+    alarm.setPriority(1);
+    alarm.setServerTimestamp(new Timestamp(System.currentTimeMillis()));
+    alarm.setTimezone(TimeZone.getDefault().getID());
+    return alarm;
+  }
+
+  private static CommandRecord command(final int i) {
+    CommandRecord command = new CommandRecord();
+    command.setId(i % 1000L);
+    command.setName("command " + i % 1000);
+    command.setDataType("Integer");
+    command.setMode((short) 2);
+    command.setExecutionTime(new Timestamp(System.currentTimeMillis()));
+    command.setValue(String.valueOf(i));
+    command.setHost("host");
+    command.setUser("user");
+    command.setReportStatus(CommandExecutionStatus.STATUS_CMD_UNKNOWN);
+    command.setReportTime(new Timestamp(System.currentTimeMillis()));
+    command.setReportDescription("report text");
+    return command;
+  }
+}
@@ -0,0 +1,133 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cern.c2mon.server.cache.config.CacheModule;
+import cern.c2mon.server.cache.dbaccess.config.CacheDbAccessModule;
+import cern.c2mon.server.cache.loading.config.CacheLoadingModule;
+import cern.c2mon.server.command.config.CommandModule;
+import cern.c2mon.server.common.config.CommonModule;
+import cern.c2mon.server.daq.config.DaqModule;
+import cern.c2mon.server.history.config.HistoryModule;
+import cern.c2mon.server.history.mapper.TagRecordMapper;
+import cern.c2mon.server.history.structure.TagRecord;
+import cern.c2mon.server.supervision.config.SupervisionModule;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the LoggerDAO with multi-row statements and parallel writer sessions.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {
+    CommonModule.class,
+    CacheModule.class,
+    CacheDbAccessModule.class,
+    CacheLoadingModule.class,
+    SupervisionModule.class,
+    CommandModule.class,
+    DaqModule.class,
+    HistoryModule.class
+})
+public class LoggerDAOTest {
+
+  /**
+   * IDs of the test tags.
+   */
+  private static final long FIRST_ID = 200000L;
+  private static final int TAG_COUNT = 20;
+
+  @Autowired
+  @Qualifier("historySqlSessionFactory")
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Autowired
+  private TagRecordMapper tagRecordMapper;
+
+  @Autowired
+  @Qualifier("historyDataSource")
+  private DataSource historyDataSource;
+
+  @Before
+  public void beforeTest() {
+    removeTestData();
+  }
+
+  @After
+  public void afterTest() {
+    removeTestData();
+  }
+
+  private void removeTestData() {
+    for (long id = FIRST_ID; id < FIRST_ID + TAG_COUNT; id++) {
+      tagRecordMapper.deleteDataTagLog(id);
+    }
+  }
+
+  @Test
+  public void testStoreDataWithParallelSessions() throws Exception {
+    LoggerDAO<TagRecord> loggerDAO = new LoggerDAO<>(sqlSessionFactory, TagRecordMapper.class.getCanonicalName(),
+        "test", 50, 100, 3);
+    try {
+      List<TagRecord> tags = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        tags.add(tag(FIRST_ID + i % TAG_COUNT, i));
+      }
+      tags.add(null);
+      loggerDAO.storeData(tags);
+    } finally {
+      loggerDAO.shutdown();
+    }
+
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(historyDataSource);
+    assertEquals(Integer.valueOf(1000), jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM SHORTTERMLOG WHERE TAGID >= ? AND TAGID < ?", Integer.class, FIRST_ID,
+        FIRST_ID + TAG_COUNT));
+    assertEquals(Integer.valueOf(50), jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM SHORTTERMLOG WHERE TAGID = ?", Integer.class, FIRST_ID));
+  }
+
+  private static TagRecord tag(final long id, final int value) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    TagRecord tag = new TagRecord();
+    tag.setTagId(id);
+    tag.setTagName("tag " + id);
+    tag.setTagDataType("Integer");
+    tag.setTagValue(String.valueOf(value));
+    tag.setSourceTimestamp(now);
+    tag.setDaqTimestamp(now);
+    tag.setServerTimestamp(now);
+    return tag;
+  }
+}
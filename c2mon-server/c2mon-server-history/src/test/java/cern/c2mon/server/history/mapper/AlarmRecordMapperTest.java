@@ -17,6 +17,8 @@
 package cern.c2mon.server.history.mapper;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TimeZone;
 
 import cern.c2mon.server.cache.config.CacheModule;
@@ -134,4 +136,25 @@ public class AlarmRecordMapperTest {
 
     alarmRecordMapper.insertLog(alarmToLog);
   }
+
+  /**
+   * Tests the multi-row insertion of active and terminated alarms.
+   */
+  @Test
+  public void testInsertAlarmLogs() {
+    List<AlarmRecord> alarms = new ArrayList<>();
+    for (boolean active : new boolean[] {true, false}) {
+      AlarmRecord alarmToLog = new AlarmRecord();
+      alarmToLog.setTagId(999L);
+      alarmToLog.setActive(active);
+      alarmToLog.setFaultFamily("FF");
+      alarmToLog.setFaultMember("FM");
+      alarmToLog.setFaultCode(2);
+      alarmToLog.setPriority(1);
+      alarmToLog.setAlarmId(ALARM_ID);
+      alarmToLog.setServerTimestamp(new Timestamp(System.currentTimeMillis()));
+      alarms.add(alarmToLog);
+    }
+    alarmRecordMapper.insertLogs(alarms);
+  }
 }
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.TimeZone;
 
@@ -137,4 +138,30 @@ public class CommandRecordMapperTest {
 
   }
 
+  /**
+   * Tests the multi-row insertion of command logs.
+   */
+  @Test
+  public void testLogCommands() {
+    List<CommandRecord> commandLogs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      CommandRecord commandLog = new CommandRecord();
+      commandLog.setId(COMMAND_ID);
+      commandLog.setName("command name");
+      commandLog.setDataType("datatype");
+      commandLog.setMode(Short.valueOf((short) 2));
+      commandLog.setExecutionTime(new Timestamp(System.currentTimeMillis()));
+      commandLog.setValue("value " + i);
+      commandLog.setHost("host");
+      commandLog.setUser("user");
+      commandLog.setReportStatus(CommandExecutionStatus.STATUS_CMD_UNKNOWN);
+      commandLog.setReportTime(new Timestamp(System.currentTimeMillis() + 1000));
+      commandLog.setReportDescription("report text");
+      commandLogs.add(commandLog);
+    }
+
+    commandRecordMapper.insertLogs(commandLogs);
+
+    assertEquals(3, commandRecordMapper.getCommandTagLog(COMMAND_ID).size());
+  }
 }
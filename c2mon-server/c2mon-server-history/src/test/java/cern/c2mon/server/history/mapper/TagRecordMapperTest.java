@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.history.mapper;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TimeZone;
 
 import cern.c2mon.server.cache.config.CacheModule;
@@ -130,4 +132,28 @@ public class TagRecordMapperTest {
     tag.setTimezone(TimeZone.getDefault().getID());
     tagRecordMapper.insertLog(tag);
   }
+
+  /**
+   * Tests the multi-row insertion of live and fallback records.
+   */
+  @Test
+  public void testInsertDataTagLogs() {
+    List<TagRecord> tags = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      TagRecord tag = new TagRecord();
+      tag.setTagId(ID);
+      tag.setTagDataType(DATATYPE);
+      if (i == 1) {
+        tag.setLogDate(LOGTIME);
+        tag.setTimezone(TimeZone.getDefault().getID());
+      }
+      tag.setSourceTimestamp(TAGTIME);
+      tag.setDaqTimestamp(TAGTIME);
+      tag.setServerTimestamp(TAGTIME);
+      tag.setTagValue(TAGVALUE + i);
+      tag.setTagValueDesc(TAGVALUEDESC);
+      tags.add(tag);
+    }
+    tagRecordMapper.insertLogs(tags);
+  }
 }
@@ -14,4 +14,45 @@ public class RuleProperties {
    * Number of threads that the rule evaluation engine will use
    */
   private int numEvaluationThreads = 1;
+
+  /**
+   * Collect the tag updates received while the evaluation threads are busy
+   * and evaluate all affected rules (including the rules reading them) once,
+   * in dependency order. Rules reading other rules then use the new results
+   * of their input rules before these are written to the cache
+   */
+  private boolean evaluationWaves = false;
+
+  /**
+   * Rule update buffer properties
+   */
+  private final UpdateBuffer updateBuffer = new UpdateBuffer();
+
+  @Data
+  public static class UpdateBuffer {
+
+    /**
+     * Interval (in milliseconds) at which the buffered rule results are checked
+     * and written to the cache. A result is written once no newer evaluation
+     * arrived during a full interval.
+     */
+    private int flushInterval = 75;
+
+    /**
+     * Maximum number of flush intervals a rule result can be held back by
+     * successive evaluations before it is written to the cache anyway
+     */
+    private int maxCyclesWait = 6;
+
+    /**
+     * Number of independent partitions of the buffer. Each partition is
+     * flushed by its own task.
+     */
+    private int shards = 4;
+
+    /**
+     * Number of threads flushing the buffer partitions
+     */
+    private int flushThreads = 1;
+  }
 }
@@ -0,0 +1,36 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.List;
+
+/**
+ * Thrown when a rule configuration would make a rule read its own result,
+ * directly or through other rules.
+ */
+public class RuleDependencyCycleException extends RuntimeException {
+
+  private static final long serialVersionUID = -2391806716524533297L;
+
+  /**
+   * @param ruleId the configured rule
+   * @param cycle the rules of the cycle, each one reading the next one
+   */
+  public RuleDependencyCycleException(final Long ruleId, final List<Long> cycle) {
+    super("Rule #" + ruleId + " would depend on its own result: " + cycle);
+  }
+}
@@ -0,0 +1,367 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import cern.c2mon.server.cache.RuleTagCache;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.listener.ConfigurationEventListener;
+import cern.c2mon.server.common.rule.RuleTag;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.client.configuration.ConfigConstants.Action;
+
+/**
+ * Dependency graph of the rules that use other rules as input.
+ *
+ * <p>A node is kept for every rule, holding the rules it reads
+ * ({@link RuleTag#getRuleInputTagIds()} that are found in the {@link RuleTagCache})
+ * and the rules reading it ({@link Tag#getRuleIds()}). The nodes are loaded
+ * from the rule cache at start-up, or on first use for rules added to the
+ * cache later on, and are dropped whenever a rule is reconfigured, both
+ * when the reconfiguration is notified and when its transaction completes.
+ *
+ * <p>The graph is used by the {@link RuleEvaluatorImpl} to evaluate all rules
+ * affected by a batch of tag updates in a single, topologically ordered wave
+ * (see {@link #getEvaluationWave(Collection)}). Reconfigurations that would
+ * introduce a cycle between rules are rejected (the configuration is rolled back).
+ */
+@Slf4j
+@Component
+@ManagedResource(objectName = "cern.c2mon:name=ruleDependencyGraph")
+public class RuleDependencyGraph implements ConfigurationEventListener {
+
+  private final RuleTagCache ruleTagCache;
+
+  /** Rule id -> dependencies of the rule */
+  private final Map<Long, Node> nodes = new ConcurrentHashMap<>();
+
+  @Autowired
+  public RuleDependencyGraph(final RuleTagCache ruleTagCache) {
+    this.ruleTagCache = ruleTagCache;
+  }
+
+  /**
+   * Loads all rules of the cache and logs the cycles already present
+   * in the rule configuration.
+   */
+  @PostConstruct
+  public void init() {
+    for (Long ruleId : ruleTagCache.getKeys()) {
+      getNode(ruleId);
+    }
+    Set<Long> cyclicRules = findCyclicRules();
+    if (!cyclicRules.isEmpty()) {
+      log.error("The following rules depend on themselves (directly or through other rules) - "
+          + "they are evaluated in arbitrary order: {}", cyclicRules);
+    }
+    log.info("Rule dependency graph loaded with {} rules", nodes.size());
+  }
+
+  /**
+   * Collects the given rules and all rules depending on them (recursively)
+   * and orders them so that every rule comes after the rules it reads.
+   *
+   * @param ruleIds the rules depending directly on the updated tags
+   * @return every affected rule once, in evaluation order
+   */
+  public List<Long> getEvaluationWave(final Collection<Long> ruleIds) {
+    Set<Long> wave = new LinkedHashSet<>(ruleIds);
+    Deque<Long> toVisit = new ArrayDeque<>(wave);
+    while (!toVisit.isEmpty()) {
+      for (Long dependentRuleId : getDependentRules(toVisit.poll())) {
+        if (wave.add(dependentRuleId)) {
+          toVisit.add(dependentRuleId);
+        }
+      }
+    }
+    if (wave.size() == 1) {
+      return new ArrayList<>(wave);
+    }
+
+    // Kahn's algorithm, restricted to the rules of the wave
+    Map<Long, Integer> pendingInputs = new HashMap<>(wave.size());
+    Deque<Long> ready = new ArrayDeque<>();
+    for (Long ruleId : wave) {
+      int count = 0;
+      for (Long inputRuleId : getInputRules(ruleId)) {
+        if (wave.contains(inputRuleId)) {
+          count++;
+        }
+      }
+      if (count == 0) {
+        ready.add(ruleId);
+      } else {
+        pendingInputs.put(ruleId, count);
+      }
+    }
+
+    List<Long> ordered = new ArrayList<>(wave.size());
+    while (!ready.isEmpty()) {
+      Long ruleId = ready.poll();
+      ordered.add(ruleId);
+      for (Long dependentRuleId : getDependentRules(ruleId)) {
+        Integer count = pendingInputs.get(dependentRuleId);
+        if (count != null) {
+          if (count == 1) {
+            pendingInputs.remove(dependentRuleId);
+            ready.add(dependentRuleId);
+          } else {
+            pendingInputs.put(dependentRuleId, count - 1);
+          }
+        }
+      }
+    }
+
+    if (!pendingInputs.isEmpty()) {
+      log.warn("Cyclic rule dependencies between rules {} - evaluating them in arbitrary order", pendingInputs.keySet());
+      for (Long ruleId : wave) {
+        if (pendingInputs.containsKey(ruleId)) {
+          ordered.add(ruleId);
+        }
+      }
+    }
+    return ordered;
+  }
+
+  /**
+   * @param ruleId id of a rule
+   * @return the rules reading the result of the given rule (empty if unknown)
+   */
+  public Set<Long> getDependentRules(final Long ruleId) {
+    Node node = getNode(ruleId);
+    return node == null ? Collections.<Long>emptySet() : node.dependentRuleIds;
+  }
+
+  /**
+   * @param ruleId id of a rule
+   * @return the rules the given rule reads (empty if unknown)
+   */
+  public Set<Long> getInputRules(final Long ruleId) {
+    Node node = getNode(ruleId);
+    return node == null ? Collections.<Long>emptySet() : node.inputRuleIds;
+  }
+
+  /**
+   * Rejects rule configurations introducing a dependency cycle and drops the
+   * nodes affected by the change.
+   * <p>
+   * The event is fired before the rule is put back in the cache and before
+   * its input tags are updated, so a node reloaded in the meantime may hold
+   * the old dependencies: the nodes are dropped again when the configuration
+   * transaction completes.
+   *
+   * @throws RuleDependencyCycleException if the created or updated rule would
+   *         read its own result (directly or through other rules)
+   */
+  @Override
+  public void onConfigurationEvent(final Tag tag, final Action action) {
+    if (!(tag instanceof RuleTag)) {
+      return;
+    }
+    RuleTag ruleTag = (RuleTag) tag;
+    Long ruleId = ruleTag.getId();
+
+    Set<Long> newInputRuleIds = new HashSet<>();
+    if (action != Action.REMOVE) {
+      for (Long inputTagId : ruleTag.getRuleInputTagIds()) {
+        if (inputTagId.equals(ruleId) || ruleTagCache.hasKey(inputTagId)) {
+          newInputRuleIds.add(inputTagId);
+        }
+      }
+      List<Long> cycle = findPath(newInputRuleIds, ruleId);
+      if (cycle != null) {
+        throw new RuleDependencyCycleException(ruleId, cycle);
+      }
+    }
+
+    final Set<Long> affectedRuleIds = new HashSet<>(newInputRuleIds);
+    affectedRuleIds.add(ruleId);
+    Node oldNode = nodes.get(ruleId);
+    if (oldNode != null) {
+      affectedRuleIds.addAll(oldNode.inputRuleIds);
+      affectedRuleIds.addAll(oldNode.dependentRuleIds);
+    }
+    evict(affectedRuleIds);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(int status) {
+          evict(affectedRuleIds);
+        }
+      });
+    }
+  }
+
+  @Override
+  public void onConfigurationEvent(final Alarm alarm, final Action action) {
+    // alarms have no influence on the rule evaluation order
+  }
+
+  /**
+   * Looks for a path from one of the given rules to the target rule,
+   * following the input rules of each rule.
+   *
+   * @return the path, starting with the target rule and ending with the first
+   *         rule reached, or null if there is no path
+   */
+  private List<Long> findPath(final Collection<Long> fromRuleIds, final Long targetRuleId) {
+    Map<Long, Long> reachedFrom = new HashMap<>();
+    Deque<Long> toVisit = new ArrayDeque<>();
+    for (Long ruleId : fromRuleIds) {
+      if (reachedFrom.put(ruleId, targetRuleId) == null) {
+        toVisit.add(ruleId);
+      }
+    }
+    while (!toVisit.isEmpty()) {
+      Long ruleId = toVisit.poll();
+      if (ruleId.equals(targetRuleId)) {
+        List<Long> path = new ArrayList<>();
+        Long step = ruleId;
+        do {
+          path.add(step);
+          step = reachedFrom.get(step);
+        } while (!step.equals(targetRuleId));
+        path.add(targetRuleId);
+        Collections.reverse(path);
+        return path;
+      }
+      for (Long inputRuleId : getInputRules(ruleId)) {
+        if (!reachedFrom.containsKey(inputRuleId)) {
+          reachedFrom.put(inputRuleId, ruleId);
+          toVisit.add(inputRuleId);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the rules of the graph that are part of a cycle, or depend on one
+   */
+  private Set<Long> findCyclicRules() {
+    Map<Long, Integer> pendingInputs = new HashMap<>();
+    Deque<Long> ready = new ArrayDeque<>();
+    for (Map.Entry<Long, Node> entry : nodes.entrySet()) {
+      int count = entry.getValue().inputRuleIds.size();
+      if (count == 0) {
+        ready.add(entry.getKey());
+      } else {
+        pendingInputs.put(entry.getKey(), count);
+      }
+    }
+    while (!ready.isEmpty()) {
+      for (Long dependentRuleId : getDependentRules(ready.poll())) {
+        Integer count = pendingInputs.get(dependentRuleId);
+        if (count != null) {
+          if (count == 1) {
+            pendingInputs.remove(dependentRuleId);
+            ready.add(dependentRuleId);
+          } else {
+            pendingInputs.put(dependentRuleId, count - 1);
+          }
+        }
+      }
+    }
+    return pendingInputs.keySet();
+  }
+
+  private void evict(final Collection<Long> ruleIds) {
+    for (Long ruleId : ruleIds) {
+      nodes.remove(ruleId);
+    }
+  }
+
+  /**
+   * @return the node of the rule, loaded from the rule cache if needed,
+   *         or null if the rule is not in the cache
+   */
+  private Node getNode(final Long ruleId) {
+    Node node = nodes.get(ruleId);
+    if (node == null && ruleTagCache.hasKey(ruleId)) {
+      try {
+        RuleTag ruleTag = ruleTagCache.get(ruleId);
+        Set<Long> inputRuleIds = new HashSet<>();
+        for (Long inputTagId : ruleTag.getRuleInputTagIds()) {
+          if (ruleTagCache.hasKey(inputTagId)) {
+            inputRuleIds.add(inputTagId);
+          }
+        }
+        node = new Node(inputRuleIds, new HashSet<>(ruleTag.getRuleIds()));
+        nodes.put(ruleId, node);
+      } catch (CacheElementNotFoundException e) {
+        log.debug("Rule #{} removed from cache while loading its dependencies", ruleId);
+      }
+    }
+    return node;
+  }
+
+  /**
+   * @return the number of rules currently loaded in the graph
+   */
+  @ManagedOperation(description = "Number of rules loaded in the dependency graph")
+  public int getLoadedRuleCount() {
+    return nodes.size();
+  }
+
+  /**
+   * Drops all nodes, they are reloaded from the rule cache on first use.
+   */
+  @ManagedOperation(description = "Reloads the rule dependencies from the rule cache")
+  public void reload() {
+    nodes.clear();
+    init();
+  }
+
+  /**
+   * Immutable dependencies of a rule.
+   */
+  private static final class Node {
+
+    private final Set<Long> inputRuleIds;
+
+    private final Set<Long> dependentRuleIds;
+
+    Node(final Set<Long> inputRuleIds, final Set<Long> dependentRuleIds) {
+      this.inputRuleIds = Collections.unmodifiableSet(inputRuleIds);
+      this.dependentRuleIds = Collections.unmodifiableSet(dependentRuleIds);
+    }
+  }
+}
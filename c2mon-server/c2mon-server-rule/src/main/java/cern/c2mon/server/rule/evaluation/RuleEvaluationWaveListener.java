@@ -0,0 +1,153 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import cern.c2mon.server.cache.C2monCacheListener;
+import cern.c2mon.server.common.component.Lifecycle;
+import cern.c2mon.server.common.tag.Tag;
+
+/**
+ * Synchronous tag cache listener queuing the tag notifications for the
+ * {@link RuleEvaluatorImpl}. Each evaluation thread takes all queued
+ * notifications at once (up to {@link #MAX_WAVE_SIZE}) and passes them
+ * as a single evaluation wave to {@link RuleEvaluatorImpl#evaluateWave(List)}.
+ */
+@Slf4j
+class RuleEvaluationWaveListener implements C2monCacheListener<Tag>, Lifecycle {
+
+  /** Maximum number of tag notifications collapsed into one wave */
+  static final int MAX_WAVE_SIZE = 10000;
+
+  /** Time (in milliseconds) the evaluation threads wait between checking for shutdown */
+  private static final int THREAD_SHUTDOWN_CHECK_INTERVAL = 1000;
+
+  private final RuleEvaluatorImpl ruleEvaluator;
+
+  private final int nbThreads;
+
+  private final LinkedBlockingQueue<Trigger> queue = new LinkedBlockingQueue<>();
+
+  private ExecutorService executor;
+
+  private volatile boolean running = false;
+
+  RuleEvaluationWaveListener(final RuleEvaluatorImpl ruleEvaluator, final int nbThreads) {
+    this.ruleEvaluator = ruleEvaluator;
+    this.nbThreads = Math.max(1, nbThreads);
+  }
+
+  @Override
+  public void notifyElementUpdated(final Tag tag) {
+    queue.add(new Trigger(tag, false));
+  }
+
+  @Override
+  public void confirmStatus(final Tag tag) {
+    queue.add(new Trigger(tag, true));
+  }
+
+  @Override
+  public synchronized void start() {
+    if (!running) {
+      running = true;
+      executor = Executors.newFixedThreadPool(nbThreads, new CustomizableThreadFactory("RuleEvaluator-"));
+      for (int i = 0; i < nbThreads; i++) {
+        executor.submit(new WaveTask());
+      }
+    }
+  }
+
+  /**
+   * Evaluates the notifications still in the queue, then stops the threads.
+   */
+  @Override
+  public synchronized void stop() {
+    if (running) {
+      log.debug("Stopping rule evaluation threads ({} notifications left to evaluate)", queue.size());
+      running = false;
+      executor.shutdown();
+      try {
+        executor.awaitTermination(THREAD_SHUTDOWN_CHECK_INTERVAL * 2, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        log.error("Interrupted while waiting for the rule evaluation threads to stop", e);
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * @return the number of tag notifications waiting to be evaluated
+   */
+  int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * A tag notification, with the method it was received through.
+   */
+  static final class Trigger {
+
+    final Tag tag;
+
+    final boolean confirmation;
+
+    Trigger(final Tag tag, final boolean confirmation) {
+      this.tag = tag;
+      this.confirmation = confirmation;
+    }
+  }
+
+  private class WaveTask implements Runnable {
+
+    @Override
+    public void run() {
+      List<Trigger> wave = new ArrayList<>();
+      while (running || !queue.isEmpty()) {
+        try {
+          Trigger first = queue.poll(THREAD_SHUTDOWN_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+          if (first != null) {
+            wave.add(first);
+            queue.drainTo(wave, MAX_WAVE_SIZE - 1);
+            ruleEvaluator.evaluateWave(wave);
+          }
+        } catch (InterruptedException e) {
+          log.debug("Rule evaluation thread interrupted", e);
+          return;
+        } catch (Exception e) {
+          log.error("Exception caught while evaluating a wave of {} tag updates", wave.size(), e);
+        } finally {
+          wave.clear();
+        }
+      }
+    }
+  }
+}
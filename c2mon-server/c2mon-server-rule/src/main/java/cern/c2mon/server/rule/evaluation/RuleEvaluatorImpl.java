@@ -18,14 +18,23 @@ package cern.c2mon.server.rule.evaluation;
 
 import java.sql.Timestamp;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.PostConstruct;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 import cern.c2mon.server.cache.C2monCacheListener;
@@ -39,7 +48,9 @@ import cern.c2mon.server.common.rule.RuleTag;
 import cern.c2mon.server.common.tag.Tag;
 import cern.c2mon.server.rule.RuleEvaluator;
 import cern.c2mon.server.rule.config.RuleProperties;
+import cern.c2mon.server.rule.evaluation.RuleEvaluationWaveListener.Trigger;
 import cern.c2mon.shared.common.datatag.TagQualityStatus;
+import cern.c2mon.shared.common.rule.RuleInputValue;
 import cern.c2mon.shared.rule.RuleEvaluationException;
 
 import static cern.c2mon.shared.common.type.TypeConverter.getType;
@@ -51,11 +62,21 @@ import static cern.c2mon.shared.common.type.TypeConverter.getType;
  * to the RuleUpdateBuffer where rapid successive updates are
  * clustered into a single update.
  *
+ * <p>With {@link RuleProperties#isEvaluationWaves()} set, the tag updates
+ * queued while the evaluation threads are busy are evaluated together: the
+ * rules reading the updated tags and all rules depending on them (see
+ * {@link RuleDependencyGraph}) are evaluated once, each rule after its input
+ * rules. The rules evaluated later in the wave read the new results of their
+ * input rules, which are still on their way through the {@link RuleUpdateBuffer}
+ * to the cache. When the cache update of such a result comes back, the rules
+ * reading it are not evaluated again.
+ *
  * @author mbrightw
  *
  */
 @Slf4j
 @Service
+@ManagedResource(objectName = "cern.c2mon:name=ruleEvaluator")
 public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycle, RuleEvaluator {
 
   private final RuleTagCache ruleTagCache;
@@ -69,6 +90,25 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
 
   private final RuleProperties properties;
 
+  private final RuleDependencyGraph ruleDependencyGraph;
+
+  /**
+   * Latest wave results of the rules having dependent rules, until the
+   * cache notifies the corresponding update.
+   */
+  private final Map<Long, WaveResult> waveResults = new ConcurrentHashMap<>();
+
+  /** Set if the updates are evaluated in waves */
+  private RuleEvaluationWaveListener waveListener;
+
+  private final LongAdder evaluatedWaves = new LongAdder();
+
+  private final LongAdder waveNotifications = new LongAdder();
+
+  private final LongAdder waveRuleEvaluations = new LongAdder();
+
+  private final LongAdder skippedRuleEvaluations = new LongAdder();
+
   /**
    * Listener container lifecycle hook.
    */
@@ -84,21 +124,38 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
                            RuleUpdateBuffer ruleUpdateBuffer,
                            TagLocationService tagLocationService,
                            CacheRegistrationService cacheRegistrationService,
-                           RuleProperties properties) {
+                           RuleProperties properties,
+                           RuleDependencyGraph ruleDependencyGraph) {
     super();
     this.ruleTagCache = ruleTagCache;
     this.ruleUpdateBuffer = ruleUpdateBuffer;
     this.tagLocationService = tagLocationService;
     this.cacheRegistrationService = cacheRegistrationService;
     this.properties = properties;
+    this.ruleDependencyGraph = ruleDependencyGraph;
   }
 
   /**
-   * Registers to tag caches.
+   * Registers to tag caches, only for the tags used in rules.
    */
   @PostConstruct
   public void init() {
-    listenerContainer = cacheRegistrationService.registerToAllTags(this, properties.getNumEvaluationThreads());
+    if (properties.isEvaluationWaves()) {
+      waveListener = new RuleEvaluationWaveListener(this, properties.getNumEvaluationThreads());
+      cacheRegistrationService.registerSynchronousToAllTags(waveListener, RuleEvaluatorImpl::hasDependentRules);
+      listenerContainer = waveListener;
+    } else {
+      listenerContainer = cacheRegistrationService.registerToAllTags(this, properties.getNumEvaluationThreads(),
+          RuleEvaluatorImpl::hasDependentRules);
+    }
+  }
+
+  /**
+   * Interest of the rule evaluation in tag updates: tags without dependent
+   * rules are not copied nor queued for evaluation.
+   */
+  private static boolean hasDependentRules(final Tag tag) {
+    return !tag.getRuleIds().isEmpty();
   }
 
   @Override
@@ -133,6 +190,52 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
     }
   }
 
+  /**
+   * Evaluates the rules affected by a batch of tag notifications, each rule
+   * once and after the rules it reads.
+   *
+   * <p>The notification of a rule result that was calculated in an earlier
+   * wave does not trigger the rules that were evaluated with this result in
+   * that wave again.
+   *
+   * @param triggers the tag notifications of the wave
+   */
+  void evaluateWave(final List<Trigger> triggers) {
+    evaluatedWaves.increment();
+    waveNotifications.add(triggers.size());
+
+    Set<Long> ruleIds = new LinkedHashSet<>();
+    for (Trigger trigger : triggers) {
+      Tag tag = trigger.tag;
+      Collection<Long> dependentRuleIds = tag.getRuleIds();
+      if (dependentRuleIds.isEmpty()) {
+        continue;
+      }
+      WaveResult waveResult = trigger.confirmation ? null : waveResults.get(tag.getId());
+      if (waveResult != null && waveResults.remove(tag.getId(), waveResult) && waveResult.isSameAs(tag)) {
+        for (Long ruleId : dependentRuleIds) {
+          if (waveResult.evaluatedDependents.contains(ruleId)) {
+            skippedRuleEvaluations.increment();
+          } else {
+            ruleIds.add(ruleId);
+          }
+        }
+      } else {
+        ruleIds.addAll(dependentRuleIds);
+      }
+    }
+    if (ruleIds.isEmpty()) {
+      return;
+    }
+
+    List<Long> wave = ruleDependencyGraph.getEvaluationWave(ruleIds);
+    log.trace("Evaluating {} rules for {} tag updates: {}", wave.size(), triggers.size(), wave);
+    for (Long ruleId : wave) {
+      evaluateRule(ruleId, ruleDependencyGraph.getDependentRules(ruleId));
+    }
+    waveRuleEvaluations.add(wave.size());
+  }
+
   /**
    * Performs the rule evaluation for a given tag id. In case that
    * the id does not belong to a rule a warning message is logged to
@@ -142,6 +245,17 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
    */
   @Override
   public final void evaluateRule(final Long pRuleId) {
+    // the dependent rules are only evaluated once the result reaches the cache
+    waveResults.remove(pRuleId);
+    evaluateRule(pRuleId, Collections.<Long>emptySet());
+  }
+
+  /**
+   * @param pRuleId The id of a rule.
+   * @param waveDependents the dependent rules evaluated after this one in the
+   *                       same wave; if any, the result is kept in {@link #waveResults}
+   */
+  private void evaluateRule(final Long pRuleId, final Set<Long> waveDependents) {
     log.trace("evaluateRule() called for #{}", pRuleId);
 
     final Timestamp ruleResultTimestamp = new Timestamp(System.currentTimeMillis());
@@ -172,6 +286,12 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
             // We don't use a read lock here, because a tag change would anyway
             // result in another rule evaluation
             // look for tag in datatag, rule and control caches
+            WaveResult waveResult = waveResults.get(inputTagId);
+            if (waveResult != null) {
+              // not yet in the cache
+              tags.put(inputTagId, waveResult);
+              continue;
+            }
             tag = tagLocationService.get(inputTagId);
 
             // put reference to cache object in map
@@ -183,19 +303,23 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
           Class<?> ruleResultClass = getType(rule.getDataType());
 
           Object value = rule.getRuleExpression().evaluate(tags, ruleResultClass);
+          recordWaveResult(pRuleId, value, true, waveDependents);
           ruleUpdateBuffer.update(pRuleId, value, "Rule result", ruleResultTimestamp);
         } catch (CacheElementNotFoundException cacheEx) {
           log.warn("evaluateRule #{} - Failed to locate tag with id {} in any tag cache (during rule evaluation) - unable to evaluate rule.", pRuleId, actualTag, cacheEx);
+          recordWaveResult(pRuleId, rule.getValue(), false, waveDependents);
           ruleUpdateBuffer.invalidate(pRuleId, TagQualityStatus.UNKNOWN_REASON,
               "Unable to evaluate rule as cannot find required Tag in cache: " + cacheEx.getMessage(), ruleResultTimestamp);
         } catch (RuleEvaluationException re) {
           // TODO change in rule engine: this should NOT be done using an
           // exception since it is normal behavior switched to trace
           log.trace("Problem evaluating expresion for rule #{} - invalidating rule with quality UNKNOWN_REASON ({})", pRuleId, re.getMessage());
+          recordWaveResult(pRuleId, rule.getValue(), false, waveDependents);
           // switched from INACCESSIBLE in old code
           ruleUpdateBuffer.invalidate(pRuleId, TagQualityStatus.UNKNOWN_REASON, re.getMessage(), ruleResultTimestamp);
         } catch (Exception e) {
           log.error("Unexpected Error evaluating expresion of rule #{} - invalidating rule with quality UNKNOWN_REASON", pRuleId, e);
+          recordWaveResult(pRuleId, rule.getValue(), false, waveDependents);
           // switched from INACCESSIBLE in old code
           ruleUpdateBuffer.invalidate(pRuleId, TagQualityStatus.UNKNOWN_REASON, e.getMessage(), ruleResultTimestamp);
         }
@@ -206,6 +330,7 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
       log.error("Rule #{} not found in cache - unable to evaluate it.", pRuleId, cacheEx);
     } catch (Exception e) {
       log.error("Unexpected Error caught while retrieving #{} from rule cache.", pRuleId, e);
+      waveResults.remove(pRuleId);
       // switched from INACCESSIBLE in old code
       ruleUpdateBuffer.invalidate(pRuleId, TagQualityStatus.UNKNOWN_REASON, e.getMessage(), ruleResultTimestamp);
     } finally {
@@ -213,6 +338,12 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
     }
   }
 
+  private void recordWaveResult(final Long ruleId, final Object value, final boolean valid, final Set<Long> waveDependents) {
+    if (!waveDependents.isEmpty()) {
+      waveResults.put(ruleId, new WaveResult(ruleId, value, valid, waveDependents));
+    }
+  }
+
   /**
    * Will evaluate the rule and put in cache (listeners will get update notification).
    */
@@ -221,6 +352,31 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
     notifyElementUpdated(tag);
   }
 
+  @ManagedOperation(description = "Number of rule evaluation waves")
+  public long getEvaluatedWaves() {
+    return evaluatedWaves.sum();
+  }
+
+  @ManagedOperation(description = "Number of tag updates evaluated in waves")
+  public long getWaveNotifications() {
+    return waveNotifications.sum();
+  }
+
+  @ManagedOperation(description = "Number of rule evaluations done in waves")
+  public long getWaveRuleEvaluations() {
+    return waveRuleEvaluations.sum();
+  }
+
+  @ManagedOperation(description = "Number of rule evaluations saved because the rule was already evaluated in the wave of its input rule")
+  public long getSkippedRuleEvaluations() {
+    return skippedRuleEvaluations.sum();
+  }
+
+  @ManagedOperation(description = "Number of tag updates waiting to be evaluated in a wave")
+  public int getWaveQueueSize() {
+    return waveListener == null ? 0 : waveListener.getQueueSize();
+  }
+
   @Override
   public boolean isAutoStartup() {
     return true;
@@ -255,4 +411,49 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
   public int getPhase() {
     return ServerConstants.PHASE_INTERMEDIATE;
   }
+
+  /**
+   * A rule result calculated in a wave, as read by the dependent rules
+   * until it reaches the cache.
+   */
+  private static final class WaveResult implements RuleInputValue {
+
+    private final Long id;
+
+    private final Object value;
+
+    private final boolean valid;
+
+    /** The rules evaluated with this result */
+    private final Set<Long> evaluatedDependents;
+
+    WaveResult(final Long id, final Object value, final boolean valid, final Set<Long> evaluatedDependents) {
+      this.id = id;
+      this.value = value;
+      this.valid = valid;
+      this.evaluatedDependents = evaluatedDependents;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+
+    @Override
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public boolean isValid() {
+      return valid;
+    }
+
+    /**
+     * @return true if the dependent rules would get the same result reading the given tag
+     */
+    boolean isSameAs(final Tag tag) {
+      return valid == tag.isValid() && Objects.equals(value, tag.getValue());
+    }
+  }
 }
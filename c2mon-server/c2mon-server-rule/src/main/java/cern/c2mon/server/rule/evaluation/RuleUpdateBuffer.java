@@ -1,30 +1,46 @@
 /******************************************************************************
  * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
- * 
+ *
  * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
  * C2MON is free software: you can redistribute it and/or modify it under the
  * terms of the GNU Lesser General Public License as published by the Free
  * Software Foundation, either version 3 of the license.
- * 
+ *
  * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
  * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
  * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
  * more details.
- * 
+ *
  * You should have received a copy of the GNU Lesser General Public License
  * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
  *****************************************************************************/
 package cern.c2mon.server.rule.evaluation;
 
 import java.sql.Timestamp;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
 import cern.c2mon.server.cache.RuleTagFacade;
-import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.cache.RuleTagUpdate;
+import cern.c2mon.server.rule.config.RuleProperties;
 import cern.c2mon.shared.common.datatag.TagQualityStatus;
 
 /**
@@ -34,64 +50,104 @@ import cern.c2mon.shared.common.datatag.TagQualityStatus;
  * in this cases like a time-deadband which sends only the latest value after it did
  * not receive any further evaluations after the last cacheUpdate intervals.
  *
+ * <p>The buffer is split into {@link RuleProperties.UpdateBuffer#getShards()}
+ * concurrent maps, a rule always going to the same one. The rule evaluation
+ * threads only contend when updating the same rule. Each shard is checked at
+ * the configured flush interval by its own task, which writes all results that
+ * are due to the cache with a single {@link RuleTagFacade#update} call.
+ *
  * In C2MON, instantiated as a Spring singleton using annotations.
  *
  * @author Matthias Braeger
  */
 @Slf4j
 @Service
+@ManagedResource(objectName = "cern.c2mon:name=ruleUpdateBuffer")
 public final class RuleUpdateBuffer {
-  
-  /** The initial buffer size */
-  private static final int INITIAL_BUFFER_SIZE = 1000;
-  
-  /** The schedule interval for the <code>CacheUpdaterTask</code> */
-  private static final int BUFFER_TIMER_MILLIS = 75; // we chose this value due to the JMS message delivering delay
-  
-  /** 
-   * The maximum amount of check cycles that the cache updater shall 
-   * wait before forcing a cache update for a particular rule.
+
+  /**
+   * Reference to the <code>RuleTagFacade</code> bean.
    */
-  private static final int MAX_CYCLES_WAIT = 6; // 6 * 75 = 450 ms <== max delay
-  
-  /** thread synchronization object */
-  private static final Object BUFFER_LOCK = new Object();
-  
+  private final RuleTagFacade ruleTagFacade;
+
+  /** The schedule interval (in ms) of the flush tasks */
+  private final int flushInterval;
+
   /**
-   * Reference to the local home interface of the
-   * <code>DataTagFacade</code> session bean.
+   * The maximum amount of check cycles that the cache updater shall
+   * wait before forcing a cache update for a particular rule.
    */
-  private static RuleTagFacade ruleTagFacade;
-  
-  /** The internal buffer used for the */
-  private static final Map<Long, RuleBufferObject> RULE_OBJECT_BUF = new Hashtable<Long, RuleBufferObject>(INITIAL_BUFFER_SIZE);
-  
-  /** 
-   * Map containing the flags which indicates that an update was received
-   * within the last cache updater cycle.
+  private final int maxCyclesWait;
+
+  /** Number of threads running the flush tasks */
+  private final int flushThreads;
+
+  /** The buffered rule results, split by rule id */
+  private final ConcurrentHashMap<Long, RuleBufferObject>[] shards;
+
+  /** Runs one flush task per shard */
+  private ScheduledExecutorService flushScheduler;
+
+  /** Number of update() and invalidate() calls */
+  private final LongAdder receivedUpdates = new LongAdder();
+
+  /** Number of update() and invalidate() calls merged into an already buffered result */
+  private final LongAdder coalescedUpdates = new LongAdder();
+
+  /** Number of results written to the cache */
+  private final LongAdder flushedRules = new LongAdder();
+
+  /** Number of results written because they were held back for {@link #maxCyclesWait} cycles */
+  private final LongAdder forcedFlushes = new LongAdder();
+
+  /** Time (in ms) taken to write the last batch of results to the cache */
+  private final AtomicLong lastFlushLatency = new AtomicLong();
+
+  /** Longest time (in ms) taken to write a batch of results to the cache */
+  private final AtomicLong maxFlushLatency = new AtomicLong();
+
+  /** Longest time (in ms) a result was held in the buffer */
+  private final AtomicLong maxDelay = new AtomicLong();
+
+  /**
+   * Constructor
+   * @param ruleTagFacade the facade used to write the results to the cache
+   * @param properties the rule module properties
    */
-  private static final Map<Long, Boolean> UPDATE_RECEIVED_FLAGS  = new Hashtable<Long, Boolean>(INITIAL_BUFFER_SIZE);
-  
+  @Autowired
+  @SuppressWarnings("unchecked")
+  public RuleUpdateBuffer(final RuleTagFacade ruleTagFacade, final RuleProperties properties) {
+    this.ruleTagFacade = ruleTagFacade;
+    RuleProperties.UpdateBuffer bufferProperties = properties.getUpdateBuffer();
+    this.flushInterval = bufferProperties.getFlushInterval();
+    this.maxCyclesWait = bufferProperties.getMaxCyclesWait();
+    this.flushThreads = Math.max(1, bufferProperties.getFlushThreads());
+    this.shards = new ConcurrentHashMap[Math.max(1, bufferProperties.getShards())];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new ConcurrentHashMap<>();
+    }
+  }
+
   /**
-   * The counters for checking the cycles that a specific rule is already been buffered.
-   * When the counter exceeds the MAX_CYCLES_WAIT the <code>CacheUpdaterTask</code> forces
-   * a cache update.
+   * Starts the flush tasks.
    */
-  private static final Map<Long, Integer> CYCLE_COUNTERS = new Hashtable<Long, Integer>(INITIAL_BUFFER_SIZE);
-  
-  /** Timer instance that schedules the <code>CacheUpdaterTask</code> */
-  private final Timer timer;
-  
-  /** will be set to true, once the timer is running */ 
-  private static boolean isCacheUpdaterRunning = false;
-  
+  @PostConstruct
+  public void init() {
+    flushScheduler = new ScheduledThreadPoolExecutor(flushThreads, new CustomizableThreadFactory("RuleUpdater-"));
+    for (int i = 0; i < shards.length; i++) {
+      final int shard = i;
+      flushScheduler.scheduleAtFixedRate(() -> flush(shard), flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
   /**
-   * Constructor 
+   * Stops the flush tasks.
    */
-  @Autowired
-  private RuleUpdateBuffer(RuleTagFacade ruleTagFacade) {
-    this.timer = new Timer("RuleUpdater");
-    RuleUpdateBuffer.ruleTagFacade = ruleTagFacade;
+  @PreDestroy
+  public void shutdown() {
+    if (flushScheduler != null) {
+      flushScheduler.shutdown();
+    }
   }
 
   /**
@@ -102,21 +158,17 @@ public final class RuleUpdateBuffer {
    * @param pTimestamp the timestamp of the rule evaluation.
    */
   public void update(final Long pId, final Object pValue, final String pValueDesc, final Timestamp pTimestamp) {
-    final RuleBufferObject bufferObj;
-    
-    log.trace(pId + " entering update()");
-    synchronized (BUFFER_LOCK) {
-      if (!RULE_OBJECT_BUF.containsKey(pId)) {
-        bufferObj = new RuleBufferObject(pId, pValue, pValueDesc, pTimestamp);
-        RULE_OBJECT_BUF.put(pId, bufferObj);
-      }
-      else {
-        bufferObj = (RuleBufferObject) RULE_OBJECT_BUF.get(pId);
-        bufferObj.update(pValue, pValueDesc, pTimestamp);
+    log.trace("{} update()", pId);
+    receivedUpdates.increment();
+    getShard(pId).compute(pId, (id, bufferObj) -> {
+      if (bufferObj == null) {
+        return new RuleBufferObject(id, pValue, pValueDesc, pTimestamp);
       }
-      scheduleCacheUpdaterTask(pId);
-    }
-    log.trace(pId + " leaving update()");
+      coalescedUpdates.increment();
+      bufferObj.update(pValue, pValueDesc, pTimestamp);
+      bufferObj.updateReceived = true;
+      return bufferObj;
+    });
   }
 
   /**
@@ -127,45 +179,152 @@ public final class RuleUpdateBuffer {
    * @param pTimestamp the timestamp of the rule evaluation
    */
   public void invalidate(final Long pId, final TagQualityStatus pReason, final String pDescription, final Timestamp pTimestamp) {
-    final RuleBufferObject bufferObj;
-    
-    log.trace(pId + " entering invalidate()");
-    synchronized (BUFFER_LOCK) {
-      if (!RULE_OBJECT_BUF.containsKey(pId)) {
-        bufferObj = new RuleBufferObject(pId, null, pReason, pDescription, null, pTimestamp);
-        RULE_OBJECT_BUF.put(pId, bufferObj);
-      }
-      else {
-        bufferObj = (RuleBufferObject) RULE_OBJECT_BUF.get(pId);
-        bufferObj.invalidate(pReason, pDescription, pTimestamp);
+    log.trace("{} invalidate()", pId);
+    receivedUpdates.increment();
+    getShard(pId).compute(pId, (id, bufferObj) -> {
+      if (bufferObj == null) {
+        return new RuleBufferObject(id, null, pReason, pDescription, null, pTimestamp);
       }
-      scheduleCacheUpdaterTask(pId);
-    }
-    log.trace(pId + " leaving invalidate()");
+      coalescedUpdates.increment();
+      bufferObj.invalidate(pReason, pDescription, pTimestamp);
+      bufferObj.updateReceived = true;
+      return bufferObj;
+    });
+  }
+
+  private ConcurrentHashMap<Long, RuleBufferObject> getShard(final Long pId) {
+    return shards[Math.floorMod(pId.hashCode(), shards.length)];
   }
 
   /**
-   * Registers an update for the given rule id and triggers
-   * the start of the <code>CacheUpdaterTask</code>, if not
-   * yet done.
-   * @param pId the rule process id that has been updated. 
+   * Takes all rule results of the shard that have not been updated since the
+   * last check (or have been held back for {@link #maxCyclesWait} cycles) out
+   * of the buffer and writes them to the cache.
+   *
+   * @param shard index of the shard to flush
    */
-  private void scheduleCacheUpdaterTask(final Long pId) {
-    UPDATE_RECEIVED_FLAGS.put(pId, Boolean.TRUE);
-    if (!isCacheUpdaterRunning) {
-      try {
-        log.trace(pId + " scheduleCacheUpdaterTask() - Initialize new cache updater task");
-        timer.schedule(new CacheUpdaterTask(), BUFFER_TIMER_MILLIS, BUFFER_TIMER_MILLIS);
-        isCacheUpdaterRunning = true;
-      } catch (IllegalStateException ise) {
-        log.error(pId + "scheduleCacheUpdaterTask() - Catched illegal state exception", ise);
-      }      
+  void flush(final int shard) {
+    //keep logic in try clause as exception will stop the scheduled task
+    try {
+      final ConcurrentHashMap<Long, RuleBufferObject> buffer = shards[shard];
+      if (buffer.isEmpty()) {
+        return;
+      }
+
+      final List<RuleBufferObject> rulesToUpdate = new ArrayList<>();
+      for (Long ruleId : buffer.keySet()) {
+        buffer.computeIfPresent(ruleId, (id, rbo) -> {
+          boolean forceCacheUpdate = rbo.cycleCounter >= maxCyclesWait;
+          if (!rbo.updateReceived || forceCacheUpdate) {
+            // no recent update of that rule OR the buffer was updated more than
+            // MAX_CYCLES_WAIT cycle in a row ==> update the cache
+            if (rbo.updateReceived) {
+              forcedFlushes.increment();
+              log.debug("Forcing a cache update for rule {} since it was already delayed by {} ms.", id, maxCyclesWait * flushInterval);
+            }
+            rulesToUpdate.add(rbo);
+            return null;
+          }
+          // Reset the flag in order indicate a cache update at the next check
+          rbo.updateReceived = false;
+          rbo.cycleCounter++;
+          return rbo;
+        });
+      }
+
+      if (!rulesToUpdate.isEmpty()) {
+        long start = System.currentTimeMillis();
+        List<RuleTagUpdate> updates = new ArrayList<>(rulesToUpdate.size());
+        for (RuleBufferObject rbo : rulesToUpdate) {
+          maxDelay.accumulateAndGet(start - rbo.bufferedSince, Math::max);
+          updates.add(toUpdate(rbo));
+        }
+        try {
+          ruleTagFacade.update(updates);
+        } catch (Exception exception) {
+          log.warn("Unexpected error while writing " + updates.size() + " rule results to the cache", exception);
+        }
+        long latency = System.currentTimeMillis() - start;
+        lastFlushLatency.set(latency);
+        maxFlushLatency.accumulateAndGet(latency, Math::max);
+        flushedRules.add(rulesToUpdate.size());
+      }
+    } catch (Exception ex) {
+      log.error("Exception caught during rule update - should not be ignored!", ex);
+    }
+  }
+
+  private static RuleTagUpdate toUpdate(final RuleBufferObject rbo) {
+    if (rbo.qualityCollection.isEmpty()) {
+      log.trace("flush() - updating cache for rule id {}: value={}, description={}, timestamp={}",
+          rbo.id, rbo.value, rbo.valueDesc, rbo.timestamp);
+      return RuleTagUpdate.valid(rbo.id, rbo.value, rbo.valueDesc, rbo.timestamp);
     }
+    log.trace("flush() - invalidating cache for rule id {}: reasons={}, descriptions={}, timestamp={}",
+        rbo.id, rbo.qualityCollection, rbo.qualityDescriptions, rbo.timestamp);
+    return RuleTagUpdate.invalid(rbo.id, rbo.qualityCollection, rbo.qualityDescriptions, rbo.timestamp);
   }
-  
+
+  @ManagedOperation(description = "Returns the number of rule results currently held in the buffer")
+  public int getBufferedRuleCount() {
+    int count = 0;
+    for (ConcurrentHashMap<Long, RuleBufferObject> shard : shards) {
+      count += shard.size();
+    }
+    return count;
+  }
+
+  @ManagedOperation(description = "Returns the number of rule results received since the application started")
+  public long getReceivedUpdates() {
+    return receivedUpdates.sum();
+  }
+
+  @ManagedOperation(description = "Returns the number of rule results that replaced a buffered result (and were therefore never written to the cache)")
+  public long getCoalescedUpdates() {
+    return coalescedUpdates.sum();
+  }
+
+  @ManagedOperation(description = "Returns the number of rule results written to the cache")
+  public long getFlushedRules() {
+    return flushedRules.sum();
+  }
+
+  @ManagedOperation(description = "Returns the number of rule results written to the cache because they reached the maximum number of wait cycles")
+  public long getForcedFlushes() {
+    return forcedFlushes.sum();
+  }
+
+  @ManagedOperation(description = "Returns the time (in ms) taken to write the last batch of rule results to the cache")
+  public long getLastFlushLatency() {
+    return lastFlushLatency.get();
+  }
+
+  @ManagedOperation(description = "Returns the longest time (in ms) taken to write a batch of rule results to the cache")
+  public long getMaxFlushLatency() {
+    return maxFlushLatency.get();
+  }
+
+  @ManagedOperation(description = "Returns the longest time (in ms) a rule result was held in the buffer")
+  public long getMaxDelay() {
+    return maxDelay.get();
+  }
+
+  @ManagedOperation(description = "Returns the configured maximum delay (in ms) of a rule result, i.e. the maximum number of wait cycles times the flush interval")
+  public long getMaxDelayBound() {
+    return (long) maxCyclesWait * flushInterval;
+  }
+
+  @ManagedOperation(description = "Resets the maximum flush latency and delay")
+  public void resetMaxValues() {
+    maxFlushLatency.set(0);
+    maxDelay.set(0);
+  }
+
   /**
    * Inner class which is used to store the rule update
    * information for the cache of the given rule data tag.
+   * Only accessed within the <code>compute</code> methods of its shard,
+   * or by the flush task after having removed it from the shard.
    *
    * @author Matthias Braeger
    */
@@ -179,23 +338,15 @@ public final class RuleUpdateBuffer {
     /** quality flag description */
     private HashMap<TagQualityStatus, String> qualityDescriptions = new HashMap<TagQualityStatus, String>();
     /** value description */
-    private String valueDesc = null; 
+    private String valueDesc = null;
     /** rule evaluation timestamp */
     private Timestamp timestamp = null;
-
-    /**
-     * Copy Constructor
-     * @param rbo The object to be copied
-     */
-    @SuppressWarnings("unchecked")
-    private RuleBufferObject(final RuleBufferObject rbo) {
-      this.id = rbo.id;
-      this.value = rbo.value;
-      this.qualityCollection = (HashSet<TagQualityStatus>) rbo.qualityCollection.clone();
-      this.qualityDescriptions = (HashMap<TagQualityStatus, String>) rbo.qualityDescriptions.clone();
-      this.valueDesc = rbo.valueDesc;     
-      this.timestamp = new Timestamp(rbo.timestamp.getTime());
-    }
+    /** indicates that an update was received within the last flush cycle */
+    private boolean updateReceived = true;
+    /** number of flush cycles the rule has already been buffered */
+    private int cycleCounter = 0;
+    /** time at which the object was put into the buffer */
+    private final long bufferedSince = System.currentTimeMillis();
 
     /**
      * Constructor
@@ -223,8 +374,8 @@ public final class RuleUpdateBuffer {
           this.qualityCollection.add(pStatus);
           if (pQualityDesc != null) {
             this.qualityDescriptions.put(pStatus, pQualityDesc);
-          }          
-        }        
+          }
+        }
         this.valueDesc = pValueDesc;
         this.timestamp = pTimestamp;
     }
@@ -238,16 +389,14 @@ public final class RuleUpdateBuffer {
      */
     private boolean update(final Object pValue, final String pValueDesc, final Timestamp pTimestamp) {
       boolean retval = false;
-      synchronized (BUFFER_LOCK) {
-        if (this.timestamp.before(pTimestamp) || this.timestamp.equals(pTimestamp)) {
-          this.value = pValue;
-          this.qualityCollection.clear();
-          this.qualityDescriptions.clear();
-          this.valueDesc = pValueDesc;
-          this.timestamp = pTimestamp;
-          retval = true;
-        }
-      }      
+      if (this.timestamp.before(pTimestamp) || this.timestamp.equals(pTimestamp)) {
+        this.value = pValue;
+        this.qualityCollection.clear();
+        this.qualityDescriptions.clear();
+        this.valueDesc = pValueDesc;
+        this.timestamp = pTimestamp;
+        retval = true;
+      }
       return retval;
     }
 
@@ -265,113 +414,11 @@ public final class RuleUpdateBuffer {
       boolean retval = false;
       if (this.timestamp.before(pTimestamp) || this.timestamp.equals(pTimestamp)) {
         this.qualityCollection.add(pQuality);
-        this.qualityDescriptions.put(pQuality, pDescription);        
+        this.qualityDescriptions.put(pQuality, pDescription);
         this.timestamp = pTimestamp;
         retval = true;
-      }      
+      }
       return retval;
     }
   } // end of RuleBufferObject class
-
-  /**
-   * This class extends the Java <code>TimerTask</code> and
-   * takes care of updating the oc4j cache via the <code>DataTagFacadeBean</code>.
-   *
-   * @author Matthias Braeger
-   */
-  private static class CacheUpdaterTask extends TimerTask {
-    /**
-     * This method is executed when it gets triggered
-     * by its <code>Timer</code> instance. It then takes
-     * care of the cache update for all rules that haven't 
-     * been updated since the last check.
-     */
-    public void run() {
-      //keep logic in try clause as exception will kill the timer thread here
-      try {        
-        Collection<RuleBufferObject> rulesToUpdate = null;
-  
-        // create first a copy of all rule objects that needs to be updated
-        synchronized (BUFFER_LOCK) {
-          rulesToUpdate = new ArrayList<RuleBufferObject>(); // List of rules where the cache shall be updated
-          Integer actCounter = null; // actual cycle counter
-          boolean hasJustBeenUpdated = false; // flag indicating, if the actual rule was updated since the last check
-          boolean forceCacheUpdate = false; // true, if a cache update shall be forced due to an exceed of the MAX_CYCLE_WAIT
-          for (Long actTagId : UPDATE_RECEIVED_FLAGS.keySet()) {
-            hasJustBeenUpdated = ((Boolean) UPDATE_RECEIVED_FLAGS.get(actTagId)).booleanValue();
-            actCounter = (Integer) CYCLE_COUNTERS.get(actTagId);
-            forceCacheUpdate = (actCounter != null && actCounter.intValue() >= MAX_CYCLES_WAIT);
-              
-            if (!hasJustBeenUpdated || forceCacheUpdate) {
-              // False ==> then we update the cache since there was no recent update of that rule
-              // OR we the buffer was updated more than MAX_CYCLES_WAIT cycle in a row ==> force update 
-              RuleBufferObject rbo = new RuleBufferObject((RuleBufferObject) RULE_OBJECT_BUF.get(actTagId));
-              rulesToUpdate.add(rbo);
-              if (forceCacheUpdate) {
-                log.debug("CacheUpdaterTask() - Forcing a cache update for rule "
-                    + actTagId + " since it was already delayed by "
-                    + MAX_CYCLES_WAIT * BUFFER_TIMER_MILLIS + " ms.");
-              }
-            }
-            else {
-              // Set the flag to FALSE in order indicate a cache update at the next check
-              UPDATE_RECEIVED_FLAGS.put(actTagId, Boolean.FALSE);
-              if (actCounter == null) {
-                CYCLE_COUNTERS.put(actTagId, new Integer(1));
-              }
-              else { // Increasing the counter
-                CYCLE_COUNTERS.put(actTagId, new Integer(actCounter.intValue() + 1));
-              }
-            }
-          }
-          
-          // Cleaning the buffer from all objects that are going to be put into the cache.
-          Long actTagId;
-          for (RuleBufferObject rbo : rulesToUpdate) {
-            actTagId = rbo.id;
-            UPDATE_RECEIVED_FLAGS.remove(actTagId);
-            RULE_OBJECT_BUF.remove(actTagId);
-            CYCLE_COUNTERS.remove(actTagId);
-          }
-          
-          if (UPDATE_RECEIVED_FLAGS.size() == 0) {
-            log.trace("CacheUpdaterTask() - Canceling next cache updater check, because there are no more updates registered.");
-            this.cancel();
-            isCacheUpdaterRunning = false;
-          }
-        } // end of synchronization
-        
-        if (rulesToUpdate.size() > 0) {
-          // Updating the cache
-          for (RuleBufferObject rbo : rulesToUpdate) {
-            if (rbo.qualityCollection.isEmpty()) {
-              log.trace("CacheUpdaterTask() - updating cache for rule id " + rbo.id
-                  + ": value=" + rbo.value
-                  + ", description=" + rbo.valueDesc
-                  + ", timestamp=" + rbo.timestamp);
-              try {
-                ruleTagFacade.updateAndValidate(rbo.id, rbo.value, rbo.valueDesc, rbo.timestamp);            
-              } catch (CacheElementNotFoundException cacheEx) {
-                log.warn("Unable to update rule (can happen during rule reconfiguration)", cacheEx);
-              } catch (Exception exception) {
-                log.warn("Unexpected error during rule evaluation", exception);
-              }
-            } else {
-              log.trace("CacheUpdaterTask() - invalidating cache for rule id " + rbo.id
-                  + ": reasons=" + rbo.qualityCollection
-                  + ", descriptions=" + rbo.qualityDescriptions
-                  + ", timestamp=" + rbo.timestamp);
-              try {                
-                ruleTagFacade.setQuality(rbo.id, rbo.qualityCollection, null, rbo.qualityDescriptions, rbo.timestamp);
-              } catch (CacheElementNotFoundException cacheEx) {
-                log.warn("Unable to update rule as could not be located in cache (normal during rule reconfiguration)", cacheEx);
-              }                          
-            }
-          } // end for                    
-        }      
-      } catch (Exception ex) {
-        log.error("Exception caught during rule update - should not be ignored!", ex);
-      }
-    }
-  } // end of CacheUpdaterTask class
 }
@@ -0,0 +1,166 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import cern.c2mon.server.cache.RuleTagCache;
+import cern.c2mon.server.common.rule.RuleTag;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+import cern.c2mon.shared.client.configuration.ConfigConstants.Action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the evaluation order and the cycle detection of the {@link RuleDependencyGraph},
+ * on a mocked rule cache.
+ */
+public class RuleDependencyGraphTest {
+
+  private final Map<Long, RuleTagCacheObject> rules = new HashMap<>();
+
+  private RuleDependencyGraph graph;
+
+  /**
+   * Rules 10 and 11 read data tag 1; 20 reads 10 and 11; 30 reads 20 and 10;
+   * 40 reads data tag 2 only.
+   */
+  @Before
+  public void setUp() {
+    addRule(10L, "#1 > 0");
+    addRule(11L, "#1 < 5");
+    addRule(20L, "#10 & #11");
+    addRule(30L, "#20 | #10");
+    addRule(40L, "#2 = 3");
+
+    RuleTagCache ruleTagCache = EasyMock.createNiceMock(RuleTagCache.class);
+    EasyMock.expect(ruleTagCache.getKeys()).andStubAnswer(() -> new ArrayList<>(rules.keySet()));
+    EasyMock.expect(ruleTagCache.hasKey(EasyMock.anyLong()))
+        .andStubAnswer(() -> rules.containsKey(EasyMock.getCurrentArguments()[0]));
+    EasyMock.expect(ruleTagCache.get(EasyMock.anyLong()))
+        .andStubAnswer(() -> rules.get(EasyMock.getCurrentArguments()[0]));
+    EasyMock.replay(ruleTagCache);
+
+    graph = new RuleDependencyGraph(ruleTagCache);
+    graph.init();
+  }
+
+  @Test
+  public void testWaveContainsDependentRulesInOrder() {
+    List<Long> wave = graph.getEvaluationWave(Arrays.asList(11L, 10L));
+
+    assertEquals(4, wave.size());
+    assertTrue(wave.indexOf(10L) < wave.indexOf(20L));
+    assertTrue(wave.indexOf(11L) < wave.indexOf(20L));
+    assertTrue(wave.indexOf(20L) < wave.indexOf(30L));
+  }
+
+  @Test
+  public void testWaveOfIndependentRule() {
+    assertEquals(Collections.singletonList(40L), graph.getEvaluationWave(Collections.singleton(40L)));
+    assertEquals(Arrays.asList(20L, 30L), graph.getEvaluationWave(Collections.singleton(20L)));
+  }
+
+  @Test(expected = RuleDependencyCycleException.class)
+  public void testUpdateIntroducingCycleIsRejected() {
+    RuleTagCacheObject update = createRule(10L, "#30 > 0");
+    graph.onConfigurationEvent(update, Action.UPDATE);
+  }
+
+  @Test(expected = RuleDependencyCycleException.class)
+  public void testRuleReadingItselfIsRejected() {
+    graph.onConfigurationEvent(createRule(50L, "#50 + #1"), Action.CREATE);
+  }
+
+  @Test
+  public void testConfigurationChangesAreApplied() {
+    RuleTagCacheObject rule = addRule(50L, "#30 & #40");
+    graph.onConfigurationEvent(rule, Action.CREATE);
+    assertEquals(Arrays.asList(40L, 50L), graph.getEvaluationWave(Collections.singleton(40L)));
+    assertEquals(Arrays.asList(20L, 30L, 50L), graph.getEvaluationWave(Collections.singleton(20L)));
+
+    rules.remove(50L);
+    rules.get(30L).removeRuleId(50L);
+    rules.get(40L).removeRuleId(50L);
+    graph.onConfigurationEvent(rule, Action.REMOVE);
+    assertEquals(Collections.singletonList(40L), graph.getEvaluationWave(Collections.singleton(40L)));
+  }
+
+  /**
+   * A wave running between the configuration event and the cache updates
+   * reloads the old dependencies: they are dropped again at the end of the
+   * configuration transaction.
+   */
+  @Test
+  public void testNodesReloadedBeforeCacheUpdateAreDroppedAfterTransaction() {
+    RuleTagCacheObject rule = createRule(50L, "#40 > 0");
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      graph.onConfigurationEvent(rule, Action.CREATE);
+      assertEquals(Collections.singletonList(40L), graph.getEvaluationWave(Collections.singleton(40L)));
+
+      addRule(50L, "#40 > 0");
+      for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+        synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+      }
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    assertEquals(Arrays.asList(40L, 50L), graph.getEvaluationWave(Collections.singleton(40L)));
+  }
+
+  @Test
+  public void testExistingCycleIsEvaluatedOnce() {
+    rules.get(10L).setRuleText("#30 > 0");
+    rules.get(30L).addRuleId(10L);
+    graph.reload();
+
+    List<Long> wave = graph.getEvaluationWave(Collections.singleton(11L));
+    assertEquals(4, wave.size());
+    assertEquals(11L, wave.get(0).longValue());
+  }
+
+  private RuleTagCacheObject addRule(final Long id, final String ruleText) {
+    RuleTagCacheObject rule = createRule(id, ruleText);
+    rules.put(id, rule);
+    for (Long inputTagId : rule.getRuleInputTagIds()) {
+      RuleTag inputRule = rules.get(inputTagId);
+      if (inputRule != null) {
+        ((RuleTagCacheObject) inputRule).addRuleId(id);
+      }
+    }
+    return rule;
+  }
+
+  private static RuleTagCacheObject createRule(final Long id, final String ruleText) {
+    RuleTagCacheObject rule = new RuleTagCacheObject(id);
+    rule.setRuleText(ruleText);
+    return rule;
+  }
+}
@@ -1,76 +1,132 @@
 /******************************************************************************
  * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
- * 
+ *
  * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
  * C2MON is free software: you can redistribute it and/or modify it under the
  * terms of the GNU Lesser General Public License as published by the Free
  * Software Foundation, either version 3 of the license.
- * 
+ *
  * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
  * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
  * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
  * more details.
- * 
+ *
  * You should have received a copy of the GNU Lesser General Public License
  * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
  *****************************************************************************/
 package cern.c2mon.server.rule.evaluation;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 
+import org.easymock.EasyMock;
 import org.junit.Before;
+import org.junit.Test;
 
+import cern.c2mon.server.cache.RuleTagFacade;
+import cern.c2mon.server.cache.RuleTagUpdate;
+import cern.c2mon.server.rule.config.RuleProperties;
 import cern.c2mon.shared.common.datatag.TagQualityStatus;
 
-import static org.junit.Assert.*;
-
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
- * It is difficult to test the full <code>RuleUpdateBuffer</code> logic,
- * since it uses JNDI and needs a J2EE container. However, you can comment
- * out the call to the <code>DataTagFacadeBean</code> and test the basic
- * behavior.
- * 
- * TODO need to adapt this to C2MON code ... only started so far
+ * Tests the <code>RuleUpdateBuffer</code> logic by calling the flush
+ * method directly (the flush tasks are not started).
  *
  * @author Matthias Braeger
  */
 public class RuleUpdateBufferTest {
-  
-  /** Singleton instance */
-  private RuleUpdateBuffer rub = null;
-  
-  
-  /**
-   * It is called before running any of the tests defined on this class
-   */
+
+  private RuleTagFacade ruleTagFacade;
+
+  private RuleUpdateBuffer rub;
+
   @Before
-  protected final void setUp() {
-    //rub = RuleUpdateBuffer.getInstance();
+  public void setUp() {
+    ruleTagFacade = EasyMock.createStrictMock(RuleTagFacade.class);
+    RuleProperties properties = new RuleProperties();
+    properties.getUpdateBuffer().setShards(1);
+    properties.getUpdateBuffer().setMaxCyclesWait(3);
+    rub = new RuleUpdateBuffer(ruleTagFacade, properties);
+  }
+
+  @Test
+  public void testUpdateIsWrittenAfterOneQuietCycle() {
+    Timestamp timestamp = new Timestamp(1000);
+    ruleTagFacade.update(Collections.singletonList(RuleTagUpdate.valid(1234L, "test", "testUpdate", timestamp)));
+    EasyMock.replay(ruleTagFacade);
+
+    rub.update(1234L, "test", "testUpdate", timestamp);
+    rub.flush(0);
+    assertEquals(1, rub.getBufferedRuleCount());
+    rub.flush(0);
+    assertEquals(0, rub.getBufferedRuleCount());
+
+    EasyMock.verify(ruleTagFacade);
+    assertEquals(1, rub.getFlushedRules());
+    assertEquals(0, rub.getForcedFlushes());
   }
-  
-  
-  public final void testUpdate() {
-    for (int i = 0; i < 100; i++) {
-      rub.update(new Long(1234L), (Object) ("test " + i), "testUpdate " + i, new Timestamp(System.currentTimeMillis()));
-//      try {Thread.sleep(40);} catch (InterruptedException e) {}
-      rub.update(new Long(1235L), (Object) ("test " + i), "testUpdate " + i, new Timestamp(System.currentTimeMillis()));
-      try {Thread.sleep(65);} catch (InterruptedException e) {}
-      System.out.println(i);
+
+  @Test
+  public void testSuccessiveUpdatesAreCoalesced() {
+    ruleTagFacade.update(EasyMock.anyObject());
+    EasyMock.expectLastCall().andAnswer(() -> {
+      assertEquals(new HashSet<>(Arrays.asList(RuleTagUpdate.valid(1234L, "test 2", "testUpdate 2", new Timestamp(1002)),
+          RuleTagUpdate.valid(1235L, "test 0", "testUpdate 0", new Timestamp(1000)))), new HashSet<>((Collection<?>) EasyMock.getCurrentArguments()[0]));
+      return null;
+    });
+    EasyMock.replay(ruleTagFacade);
+
+    for (int i = 0; i < 3; i++) {
+      rub.update(1234L, "test " + i, "testUpdate " + i, new Timestamp(1000 + i));
     }
-    
-    try {Thread.sleep(1000);} catch (InterruptedException e) {}
-    assertTrue(true);
+    // older result does not overwrite the buffered one
+    rub.update(1234L, "old", "old", new Timestamp(10));
+    rub.update(1235L, "test 0", "testUpdate 0", new Timestamp(1000));
+    rub.flush(0);
+    rub.flush(0);
+
+    EasyMock.verify(ruleTagFacade);
+    assertEquals(5, rub.getReceivedUpdates());
+    assertEquals(3, rub.getCoalescedUpdates());
   }
-  
-  public final void testInvalidate() {
-    for (int i = 0; i < 100; i++) {
-      rub.invalidate(new Long(12345L), TagQualityStatus.INACCESSIBLE, "testUpdate " + i, new Timestamp(System.currentTimeMillis()));
-      try {Thread.sleep(60);} catch (InterruptedException e) {}
-      System.out.println(i);
+
+  @Test
+  public void testContinuousUpdatesAreForcedAfterMaxCycles() {
+    ruleTagFacade.update(Collections.singletonList(RuleTagUpdate.valid(1234L, "test 3", "testUpdate 3", new Timestamp(1003))));
+    EasyMock.replay(ruleTagFacade);
+
+    for (int i = 0; i < 4; i++) {
+      rub.update(1234L, "test " + i, "testUpdate " + i, new Timestamp(1000 + i));
+      rub.flush(0);
     }
-    
-    try {Thread.sleep(1000);} catch (InterruptedException e) {}
-    assertTrue(true);
+
+    EasyMock.verify(ruleTagFacade);
+    assertEquals(0, rub.getBufferedRuleCount());
+    assertEquals(1, rub.getForcedFlushes());
+    assertTrue(rub.getMaxDelay() >= 0);
+  }
+
+  @Test
+  public void testInvalidate() {
+    Timestamp timestamp = new Timestamp(1000);
+    ruleTagFacade.update(Collections.singletonList(RuleTagUpdate.invalid(12345L,
+        Collections.singleton(TagQualityStatus.INACCESSIBLE),
+        Collections.singletonMap(TagQualityStatus.INACCESSIBLE, "testInvalidate 1"),
+        new Timestamp(1001))));
+    EasyMock.replay(ruleTagFacade);
+
+    rub.update(12345L, "test", "testUpdate", timestamp);
+    rub.invalidate(12345L, TagQualityStatus.INACCESSIBLE, "testInvalidate 0", timestamp);
+    rub.invalidate(12345L, TagQualityStatus.INACCESSIBLE, "testInvalidate 1", new Timestamp(1001));
+    rub.flush(0);
+    rub.flush(0);
+
+    EasyMock.verify(ruleTagFacade);
   }
 }
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.supervision.alive;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -31,15 +33,25 @@ import org.springframework.stereotype.Service;
 import cern.c2mon.server.cache.AliveTimerCache;
 import cern.c2mon.server.cache.AliveTimerFacade;
 import cern.c2mon.server.cache.ClusterCache;
+import cern.c2mon.server.cache.alive.AliveTimerWheel;
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.common.alive.AliveTimer;
 import cern.c2mon.server.common.config.ServerConstants;
 import cern.c2mon.server.supervision.SupervisionManager;
 
 /**
- * Timer that regularly checks all the active alive timers monitoring
+ * Timer that regularly checks the active alive timers monitoring
  * the connections to the DAQs, Equipment and SubEquipment.
  *
+ * <p>The active alive timers are scheduled on the {@link AliveTimerWheel} by the
+ * {@link AliveTimerFacade} on each alive update. Every {@link #CHECK_INTERVAL},
+ * only the timers that reached their expiry time on the wheel are checked
+ * against the alive timer cache (they may have been updated on another server
+ * of the cluster, in which case they are rescheduled). The timers started,
+ * updated or stopped on the other servers are scheduled by the alive timer
+ * cache. All the alive timers of the cache are still read every
+ * {@link #RESCAN_INTERVAL}, in case an update was missed.
+ *
  * <p>Notice that an alive timer is considered expired when alive-interval
  *  + alive-interval/3 milliseconds have expired since the last alive
  *  message arrived, where alive-interval is specific to the AliveTimer
@@ -73,16 +85,28 @@ public class AliveTimerChecker extends TimerTask implements SmartLifecycle {
   /**
    * Cluster cache key for retrieving the time of last check
    * of the alives. Across server cluster it assures that
-   * the alive check only takes place on a single server.
+   * an expired alive is only handled by a single server.
    */
   private static final String LAST_ALIVE_TIMER_CHECK_LONG = "c2mon.supervision.AliveTimerChecker.lastAliveTimerCheck";
 
   /**
    * How often the timer checks whether the alive
-   * timer have expired.
+   * timer have expired (the resolution of the wheel).
+   */
+  private static final int CHECK_INTERVAL = 1000;
+
+  /**
+   * How often the number of alive timers down is checked.
    */
   private static final int SCAN_INTERVAL = 10000;
 
+  /**
+   * How often all the alive timers of the cache are read, to
+   * schedule the active timers unknown to the wheel (e.g. if a cache
+   * update was missed).
+   */
+  private static final int RESCAN_INTERVAL = 300000;
+
   /**
    * The time the server waits before doing first
    * checks at start up (this gives time for incoming
@@ -115,6 +139,18 @@ public class AliveTimerChecker extends TimerTask implements SmartLifecycle {
    */
   private SupervisionManager supervisionManager;
 
+  /**
+   * Expiry times of the active alive timers.
+   */
+  private final AliveTimerWheel aliveTimerWheel;
+
+  /**
+   * Times of the last count of the timers down and of the last full read
+   * of the cache (only accessed by the timer thread).
+   */
+  private long lastScan = 0;
+  private long lastRescan = 0;
+
   /**
    * Threshold of DAQ/Equipment/SubEqu. down when warning is sent to admin.
    */
@@ -141,17 +177,20 @@ public class AliveTimerChecker extends TimerTask implements SmartLifecycle {
    * @param aliveTimerFacade the alive timer facade bean
    * @param supervisionManager the supervision manager bean
    * @param clusterCache Reference to the clusterCache to share values accross teh cluster nodes
+   * @param aliveTimerWheel the expiry times of the active alive timers
    */
   @Autowired
   public AliveTimerChecker(final AliveTimerCache cache,
                            final AliveTimerFacade aliveTimerFacade,
                            final SupervisionManager supervisionManager,
-                           final ClusterCache clusterCache) {
+                           final ClusterCache clusterCache,
+                           final AliveTimerWheel aliveTimerWheel) {
     super();
     this.aliveTimerCache = cache;
     this.aliveTimerFacade = aliveTimerFacade;
     this.supervisionManager = supervisionManager;
     this.clusterCache = clusterCache;
+    this.aliveTimerWheel = aliveTimerWheel;
   }
 
   /**
@@ -179,7 +218,7 @@ public class AliveTimerChecker extends TimerTask implements SmartLifecycle {
   public synchronized void start() {
     LOGGER.info("Starting the C2MON alive timer mechanism.");
     timer = new Timer("AliveChecker");
-    timer.schedule(this, INITIAL_SCAN_DELAY, SCAN_INTERVAL);
+    timer.schedule(this, INITIAL_SCAN_DELAY, CHECK_INTERVAL);
     running = true;
   }
 
@@ -201,61 +240,106 @@ public class AliveTimerChecker extends TimerTask implements SmartLifecycle {
    */
   @Override
   public void run() {
+    long now = System.currentTimeMillis();
+    try {
+      if (now - lastRescan >= RESCAN_INTERVAL) {
+        lastRescan = now;
+        scheduleActiveTimers();
+      }
+      List<Long> expired = aliveTimerWheel.pollExpired(now);
+      if (!expired.isEmpty()) {
+        checkExpiredTimers(expired);
+      }
+      if (now - lastScan >= SCAN_INTERVAL) {
+        lastScan = now;
+        checkAliveDownCount();
+      }
+    } catch (Exception e) {
+      LOGGER.error("Unexpected exception when checking the alive timers", e);
+    }
+  }
+
+  /**
+   * Confirms the expiry of the timers polled from the wheel against the
+   * cache, stops the expired ones and notifies the supervision manager.
+   * The timers updated on another server are rescheduled.
+   *
+   * <p>Is done within the cluster lock, so that a timer is stopped
+   * and notified by one server only.
+   *
+   * @param expired the ids of the alive timers that reached their expiry time
+   */
+  private void checkExpiredTimers(final Collection<Long> expired) {
     clusterCache.acquireWriteLockOnKey(LAST_ALIVE_TIMER_CHECK_LONG);
     try {
-      Long lastCheck = (Long) clusterCache.getCopy(LAST_ALIVE_TIMER_CHECK_LONG);
-      if (System.currentTimeMillis() - lastCheck.longValue() < 9000) { //results in check on a single server
-        LOGGER.debug("Skipping alive check as already performed.");
-      } else {
-        if (LOGGER.isDebugEnabled()) {
-          LOGGER.debug("run() : checking alive timers ... ");
-        }
-        short aliveDownCount = 0;
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("run() : checking " + expired.size() + " alive timers ... ");
+      }
+      for (Long currentId : expired) {
         try {
-          for (Long currentId : aliveTimerCache.getKeys()) {
-            AliveTimer aliveTimerCopy = null;
-            boolean aliveExpiration = false;
-            aliveTimerCopy = aliveTimerCache.getCopy(currentId);
-
-            if (aliveTimerCopy.isActive()) {
-              if (aliveTimerFacade.hasExpired(currentId)) {
-                aliveTimerFacade.stop(currentId);
-                aliveExpiration = true;
-                aliveDownCount++;
-              }
-            } else {
-              aliveDownCount++;
-            }
-
-            if (aliveExpiration) {
-              onAliveTimerExpiration(currentId);
-            }
-
+          AliveTimer aliveTimerCopy = aliveTimerCache.getCopy(currentId);
+          if (!aliveTimerCopy.isActive()) {
+            continue; //stopped meanwhile, maybe by another server
           }
-          if (!alarmActive && aliveDownCount > WARNING_THRESHOLD) {
-            alarmActive = true;
-            SMS_LOGGER.warn("Over " + WARNING_THRESHOLD + " DAQ/Equipment are currently down.");
-          } else if (alarmActive && warningSwitchOffCountDown.decrementAndGet() == 0) {
-            SMS_LOGGER.warn("DAQ/Equipment status back to normal (" + aliveDownCount + " detected as down)");
-            alarmActive = false;
-            warningSwitchOffCountDown = new AtomicInteger(SWITCH_OFF_COUNTDOWN);
+          if (aliveTimerFacade.hasExpired(currentId)) {
+            aliveTimerFacade.stop(currentId);
+            onAliveTimerExpiration(currentId);
+          } else {
+            aliveTimerWheel.schedule(aliveTimerCopy);
           }
         } catch (CacheElementNotFoundException cacheEx) {
           LOGGER.warn("Failed to locate alive timer in cache on expiration check (may happen exceptionally if just removed).", cacheEx);
-        } catch (Exception e) {
-          LOGGER.error("Unexpected exception when checking the alive timers", e);
-        }
-        lastCheck = Long.valueOf(System.currentTimeMillis());
-        clusterCache.put(LAST_ALIVE_TIMER_CHECK_LONG, lastCheck);
-        if (LOGGER.isDebugEnabled()) {
-          LOGGER.debug("run() : finished checking alive timers ... ");
         }
-      } // end of else block
+      }
+      clusterCache.put(LAST_ALIVE_TIMER_CHECK_LONG, Long.valueOf(System.currentTimeMillis()));
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("run() : finished checking alive timers ... ");
+      }
     } finally {
       clusterCache.releaseWriteLockOnKey(LAST_ALIVE_TIMER_CHECK_LONG);
     }
   }
 
+  /**
+   * Schedules the active timers of the cache that are not on the wheel
+   * (e.g. started by another server of the cluster).
+   */
+  private void scheduleActiveTimers() {
+    int scheduled = 0;
+    for (Long currentId : aliveTimerCache.getKeys()) {
+      if (!aliveTimerWheel.isScheduled(currentId)) {
+        try {
+          AliveTimer aliveTimer = aliveTimerCache.get(currentId);
+          if (aliveTimer.isActive()) {
+            aliveTimerWheel.schedule(aliveTimer);
+            scheduled++;
+          }
+        } catch (CacheElementNotFoundException cacheEx) {
+          LOGGER.debug("Alive timer " + currentId + " removed from the cache during the scan.");
+        }
+      }
+    }
+    if (scheduled > 0) {
+      LOGGER.debug("Scheduled " + scheduled + " active alive timers not known to the wheel.");
+    }
+  }
+
+  /**
+   * Warns the administrators if too many alive timers are down: the timers
+   * of the cache that are not on the wheel are inactive.
+   */
+  private void checkAliveDownCount() {
+    int aliveDownCount = aliveTimerCache.getKeys().size() - aliveTimerWheel.size();
+    if (!alarmActive && aliveDownCount > WARNING_THRESHOLD) {
+      alarmActive = true;
+      SMS_LOGGER.warn("Over " + WARNING_THRESHOLD + " DAQ/Equipment are currently down.");
+    } else if (alarmActive && warningSwitchOffCountDown.decrementAndGet() == 0) {
+      SMS_LOGGER.warn("DAQ/Equipment status back to normal (" + aliveDownCount + " detected as down)");
+      alarmActive = false;
+      warningSwitchOffCountDown = new AtomicInteger(SWITCH_OFF_COUNTDOWN);
+    }
+  }
+
   /**
    * Notifies the supervision manager.
    *
@@ -0,0 +1,23 @@
+package cern.c2mon.server.supervision.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "c2mon.server.supervision")
+public class SupervisionProperties {
+
+  /**
+   * Propagate a Process/Equipment status change to all its Tags (and the
+   * rules depending on them) in batches, notifying the cache supervision
+   * listeners once per batch. If disabled, each Tag and rule is notified
+   * individually.
+   */
+  private boolean bulkTagNotification = true;
+
+  /**
+   * Maximum number of Tags passed to the cache supervision listeners in one
+   * notification
+   */
+  private int tagNotificationBatchSize = 1000;
+}
@@ -41,6 +41,7 @@ import cern.c2mon.server.common.subequipment.SubEquipment;
 import cern.c2mon.server.supervision.SupervisionManager;
 import cern.c2mon.shared.common.datatag.SourceDataTagValue;
 import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionStatus;
+import cern.c2mon.shared.daq.datatag.DataTagValueUpdateBinaryCodec;
 import cern.c2mon.shared.daq.process.*;
 
 
@@ -966,6 +967,9 @@ public class SupervisionManagerImpl implements SupervisionManager, SmartLifecycl
     // Process name (NO_PROCESS by default)
     processConnectionResponse.setProcessName(processConnectionRequest.getProcessName());
 
+    // The DAQ may send its updates in binary format (JSON is still accepted)
+    processConnectionResponse.setBinaryFormatVersion((int) DataTagValueUpdateBinaryCodec.FORMAT_VERSION);
+
     // Print some debug information
     if (log.isDebugEnabled()) {
       StringBuilder str = new StringBuilder("onProcessConnection([");
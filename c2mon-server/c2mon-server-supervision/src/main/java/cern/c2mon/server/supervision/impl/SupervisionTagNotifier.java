@@ -19,7 +19,11 @@ package cern.c2mon.server.supervision.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.PostConstruct;
 
@@ -41,6 +45,7 @@ import cern.c2mon.server.common.rule.RuleTag;
 import cern.c2mon.server.common.tag.Tag;
 import cern.c2mon.server.supervision.SupervisionListener;
 import cern.c2mon.server.supervision.SupervisionNotifier;
+import cern.c2mon.server.supervision.config.SupervisionProperties;
 import cern.c2mon.shared.client.supervision.SupervisionEvent;
 import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionStatus;
 
@@ -68,6 +73,13 @@ import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionStat
  * notifications, the corresponding callback may fail for the given element and any
  * dependent elements (eg. Rules dependent on a Tag).
  *
+ * <p>By default, the Tags of a Process/Equipment are notified in bulk: the set of
+ * affected DataTags is taken from the Equipment indexes of the DataTag cache, the
+ * dependent rules are collected while the DataTags are handled (each rule is then
+ * copied and notified once only), the supervision events are looked up once per
+ * Process/Equipment, and the cache supervision listeners are called once per batch
+ * of Tags.
+ *
  * @author Mark Brightwell
  *
  */
@@ -140,6 +152,9 @@ public class SupervisionTagNotifier implements SupervisionListener, SmartLifecyc
   /** For distributed locking on the cluster */
   private final ClusterCache clusterCache;
 
+  /** Bulk notification settings */
+  private final SupervisionProperties properties;
+
   /**
    * Constructor.
    * @param supervisionNotifier notifier bean
@@ -160,6 +175,7 @@ public class SupervisionTagNotifier implements SupervisionListener, SmartLifecyc
    * @param subEquipmentEventCache
    *        Reference to a {@link C2monCache} instance for managing sub equipment supervision events
    *        also across multiple servers
+   * @param properties supervision properties
    */
   @Autowired
   public SupervisionTagNotifier(final SupervisionNotifier supervisionNotifier,
@@ -171,7 +187,8 @@ public class SupervisionTagNotifier implements SupervisionListener, SmartLifecyc
                                 final SubEquipmentFacade subEquipmentFacade,
                                 @Qualifier("processEventCache") final C2monCache<Long, SupervisionEvent> processEventCache,
                                 @Qualifier("equipmentEventCache") final C2monCache<Long, SupervisionEvent> equipmentEventCache,
-                                @Qualifier("subEquipmentEventCache") final C2monCache<Long, SupervisionEvent> subEquipmentEventCache) {
+                                @Qualifier("subEquipmentEventCache") final C2monCache<Long, SupervisionEvent> subEquipmentEventCache,
+                                final SupervisionProperties properties) {
     super();
     this.supervisionNotifier = supervisionNotifier;
     this.tagLocationService = tagLocationService;
@@ -182,6 +199,7 @@ public class SupervisionTagNotifier implements SupervisionListener, SmartLifecyc
     this.processEventCache = processEventCache;
     this.equipmentEventCache = equipmentEventCache;
     this.subEquipmentEventCache = subEquipmentEventCache;
+    this.properties = properties;
 
     this.processCache = cacheProvider.getProcessCache();
     this.equipmentCache = cacheProvider.getEquipmentCache();
@@ -273,6 +291,20 @@ public class SupervisionTagNotifier implements SupervisionListener, SmartLifecyc
    */
   private void notifyProcessTags(final Long processId) {
     Process process = processCache.getCopy(processId);
+    if (properties.isBulkTagNotification()) {
+      //all equipments in one go, so that rules reading several of them are notified once only
+      List<Long> tagIds = new ArrayList<>();
+      for (Long equipmentId : process.getEquipmentIds()) {
+        try {
+          tagIds.addAll(dataTagCache.getDataTagIdsByEquipmentId(equipmentId));
+        } catch (CacheElementNotFoundException cacheEx) {
+          LOGGER.warn("Unable to locate Equipment element during Tag supervision "
+              + "change callback (so no invalidation callbacks performed for associated Tags)", cacheEx);
+        }
+      }
+      notifyTagsInBulk(tagIds);
+      return;
+    }
     for (Long equipmentId : process.getEquipmentIds()) { //no lock required as get copy
       notifyEquipmentTags(equipmentId);
     }
@@ -286,7 +318,11 @@ public class SupervisionTagNotifier implements SupervisionListener, SmartLifecyc
     try {
       //local map so as not to notify rules twice; lock on map when modifying
       Map<Long, Boolean> notifiedRules = new HashMap<>();
-      Collection<Long> tagIds = equipmentFacade.getDataTagIds(equipementId);
+      Collection<Long> tagIds = dataTagCache.getDataTagIdsByEquipmentId(equipementId);
+      if (properties.isBulkTagNotification()) {
+        notifyTagsInBulk(tagIds);
+        return;
+      }
       for (Long id : tagIds) {
        try {
          callCacheNotification(id, notifiedRules); //recursively notifies all dependent rules also, once only
@@ -310,7 +346,11 @@ public class SupervisionTagNotifier implements SupervisionListener, SmartLifecyc
     try {
       //local map so as not to notify rules twice; lock on map when modifying
       Map<Long, Boolean> notifiedRules = new HashMap<>();
-      Collection<Long> tagIds = subEquipmentFacade.getDataTagIds(subEquipmentId);
+      Collection<Long> tagIds = dataTagCache.getDataTagIdsBySubEquipmentId(subEquipmentId);
+      if (properties.isBulkTagNotification()) {
+        notifyTagsInBulk(tagIds);
+        return;
+      }
       for (Long id : tagIds) {
        try {
          callCacheNotification(id, notifiedRules); //recursively notifies all dependent rules also, once only
@@ -325,6 +365,117 @@ public class SupervisionTagNotifier implements SupervisionListener, SmartLifecyc
     }
   }
 
+  /**
+   * Notifies the listeners of the DataTag cache of the supervision change of the
+   * given DataTags, and the listeners of the RuleTag cache of all rules depending
+   * on them (directly or through other rules). Each Tag is copied and notified
+   * once, in batches of at most <code>tagNotificationBatchSize</code> Tags.
+   *
+   * @param tagIds ids of the affected DataTags
+   */
+  private void notifyTagsInBulk(final Collection<Long> tagIds) {
+    long start = System.currentTimeMillis();
+    Map<Long, SupervisionEvent> processEvents = new HashMap<>();
+    Map<Long, SupervisionEvent> equipmentEvents = new HashMap<>();
+    Map<Long, SupervisionEvent> subEquipmentEvents = new HashMap<>();
+
+    Set<Long> ruleIds = new LinkedHashSet<>();
+    int notified = notifyInBatches(dataTagCache, tagIds, ruleIds, processEvents, equipmentEvents, subEquipmentEvents);
+
+    //rules reading rules are collected while notifying the previous ones
+    Set<Long> notifiedRules = new HashSet<>();
+    while (!ruleIds.isEmpty()) {
+      notifiedRules.addAll(ruleIds);
+      Set<Long> dependentRuleIds = new LinkedHashSet<>();
+      notified += notifyInBatches(ruleTagCache, ruleIds, dependentRuleIds, processEvents, equipmentEvents, subEquipmentEvents);
+      dependentRuleIds.removeAll(notifiedRules);
+      ruleIds = dependentRuleIds;
+    }
+    LOGGER.debug("Supervision notification of " + notified + " Tags and rules took "
+        + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /**
+   * Applies the supervision status to copies of the given Tags, and passes them to
+   * the cache listeners in batches.
+   *
+   * @param cache the cache of the Tags
+   * @param ids the Tag ids
+   * @param dependentRuleIds filled with the ids of the rules depending on the Tags
+   * @param processEvents supervision events already looked up (null if none)
+   * @param equipmentEvents supervision events already looked up (null if none)
+   * @param subEquipmentEvents supervision events already looked up (null if none)
+   * @return the number of Tags passed to the listeners
+   */
+  private <T extends Tag> int notifyInBatches(final C2monCacheWithSupervision<Long, T> cache, final Collection<Long> ids,
+                                              final Set<Long> dependentRuleIds,
+                                              final Map<Long, SupervisionEvent> processEvents,
+                                              final Map<Long, SupervisionEvent> equipmentEvents,
+                                              final Map<Long, SupervisionEvent> subEquipmentEvents) {
+    int batchSize = Math.max(1, properties.getTagNotificationBatchSize());
+    int notified = 0;
+    List<T> batch = new ArrayList<>(Math.min(ids.size(), batchSize));
+    for (Long id : ids) {
+      T tagCopy;
+      try {
+        tagCopy = cache.getCopy(id);
+      } catch (CacheElementNotFoundException cacheEx) {
+        LOGGER.warn("Unable to locate Tag/Rule cache element " + id + " during Tag supervision "
+            + "change callback (Tag omitted)", cacheEx);
+        continue;
+      }
+      dependentRuleIds.addAll(tagCopy.getRuleIds());
+
+      boolean dirtyTagContext = false;
+      for (Long procId : tagCopy.getProcessIds()) {
+        dirtyTagContext |= addSupervisionQuality(tagCopy, procId, processEventCache, processEvents);
+      }
+      for (Long eqId : tagCopy.getEquipmentIds()) {
+        dirtyTagContext |= addSupervisionQuality(tagCopy, eqId, equipmentEventCache, equipmentEvents);
+      }
+      for (Long subEqId : tagCopy.getSubEquipmentIds()) {
+        dirtyTagContext |= addSupervisionQuality(tagCopy, subEqId, subEquipmentEventCache, subEquipmentEvents);
+      }
+
+      if (dirtyTagContext) {
+        batch.add(tagCopy);
+        if (batch.size() == batchSize) {
+          cache.notifyListenersOfSupervisionChange(batch);
+          notified += batch.size();
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      cache.notifyListenersOfSupervisionChange(batch);
+      notified += batch.size();
+    }
+    return notified;
+  }
+
+  /**
+   * Adds the status of the given supervised entity to the Tag, looking up its last
+   * event in the event cache only the first time it is needed.
+   *
+   * @return true if the entity has a supervision event
+   */
+  private <T extends Tag> boolean addSupervisionQuality(final T tagCopy, final Long entityId,
+                                                        final C2monCache<Long, SupervisionEvent> eventCache,
+                                                        final Map<Long, SupervisionEvent> events) {
+    SupervisionEvent event;
+    if (events.containsKey(entityId)) {
+      event = events.get(entityId);
+    } else {
+      event = eventCache.hasKey(entityId) ? eventCache.getCopy(entityId) : null;
+      events.put(entityId, event);
+    }
+    if (event != null) {
+      supervisionAppender.addSupervisionQuality(tagCopy, event);
+      return true;
+    }
+    return false;
+  }
+
   /**
    * Private recursive method for calling all listeners; recursive calls for
    * calling the notification for all dependent rules also.
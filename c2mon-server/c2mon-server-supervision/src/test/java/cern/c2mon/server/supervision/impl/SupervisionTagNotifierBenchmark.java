@@ -0,0 +1,226 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.supervision.impl;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.easymock.EasyMock;
+
+import cern.c2mon.server.cache.CacheProvider;
+import cern.c2mon.server.cache.CacheSupervisionListener;
+import cern.c2mon.server.cache.ClusterCache;
+import cern.c2mon.server.cache.EquipmentFacade;
+import cern.c2mon.server.cache.ProcessCache;
+import cern.c2mon.server.cache.ProcessFacade;
+import cern.c2mon.server.cache.SubEquipmentFacade;
+import cern.c2mon.server.cache.common.DefaultCacheImpl;
+import cern.c2mon.server.cache.common.TagLocationServiceImpl;
+import cern.c2mon.server.cache.config.CacheProperties;
+import cern.c2mon.server.cache.datatag.DataTagCacheImpl;
+import cern.c2mon.server.cache.rule.RuleTagCacheImpl;
+import cern.c2mon.server.cache.supervision.SupervisionAppenderImpl;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.process.ProcessCacheObject;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.server.supervision.SupervisionNotifier;
+import cern.c2mon.server.supervision.config.SupervisionProperties;
+import cern.c2mon.shared.client.supervision.SupervisionEvent;
+import cern.c2mon.shared.client.supervision.SupervisionEventImpl;
+import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionEntity;
+import cern.c2mon.shared.common.supervision.SupervisionConstants.SupervisionStatus;
+
+/**
+ * Simulates the crash (and recovery) of a large DAQ process and measures the
+ * time the {@link SupervisionTagNotifier} needs to propagate it to all Tags and
+ * rules, with the per-tag and with the bulk notification.
+ *
+ * <p>The DataTag and RuleTag caches are the real cache implementations on top
+ * of in-memory Ehcaches, so the measured time includes the Tag copies and the
+ * timestamp checks made by the caches. The cache supervision listener only
+ * counts the Tags it receives.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE, or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.server.supervision.impl.SupervisionTagNotifierBenchmark
+ * -Dexec.args="100000 20 10 5"</code> (tags, equipments, tags per rule, runs).
+ */
+public class SupervisionTagNotifierBenchmark {
+
+  private static final Long PROCESS_ID = 1L;
+
+  private final int tagCount;
+
+  private final int equipmentCount;
+
+  private final int tagsPerRule;
+
+  private final CacheManager cacheManager;
+
+  private final SupervisionProperties properties = new SupervisionProperties();
+
+  private final SupervisionTagNotifier notifier;
+
+  private final CountingListener listener = new CountingListener();
+
+  private long eventTime = System.currentTimeMillis();
+
+  public SupervisionTagNotifierBenchmark(final int tagCount, final int equipmentCount, final int tagsPerRule) {
+    this.tagCount = tagCount;
+    this.equipmentCount = equipmentCount;
+    this.tagsPerRule = tagsPerRule;
+
+    cacheManager = new CacheManager(new Configuration().name("SupervisionTagNotifierBenchmark"));
+    CacheProperties cacheProperties = new CacheProperties();
+    DataTagCacheImpl dataTagCache = new DataTagCacheImpl(null, createCache("dataTagCache"), null, null, null, cacheProperties);
+    RuleTagCacheImpl ruleTagCache = new RuleTagCacheImpl(null, createCache("ruleTagCache"), null, null, null, dataTagCache, cacheProperties);
+    dataTagCache.registerListenerWithSupervision(listener);
+    ruleTagCache.registerListenerWithSupervision(listener);
+
+    ProcessCacheObject process = new ProcessCacheObject(PROCESS_ID);
+    for (long equipmentId = 1; equipmentId <= equipmentCount; equipmentId++) {
+      process.getEquipmentIds().add(equipmentId);
+    }
+    fillCaches(dataTagCache, ruleTagCache);
+
+    ClusterCache clusterCache = EasyMock.createNiceMock(ClusterCache.class);
+    ProcessCache processCache = EasyMock.createNiceMock(ProcessCache.class);
+    EasyMock.expect(processCache.getCopy(PROCESS_ID)).andStubReturn(process);
+    CacheProvider cacheProvider = EasyMock.createNiceMock(CacheProvider.class);
+    EasyMock.expect(cacheProvider.getProcessCache()).andStubReturn(processCache);
+    EasyMock.expect(cacheProvider.getDataTagCache()).andStubReturn(dataTagCache);
+    EasyMock.expect(cacheProvider.getRuleTagCache()).andStubReturn(ruleTagCache);
+    EasyMock.expect(cacheProvider.getClusterCache()).andStubReturn(clusterCache);
+    EasyMock.replay(clusterCache, processCache, cacheProvider);
+
+    notifier = new SupervisionTagNotifier(EasyMock.createNiceMock(SupervisionNotifier.class), cacheProvider,
+        new TagLocationServiceImpl(dataTagCache, null, ruleTagCache), new SupervisionAppenderImpl(null, null, null, null),
+        EasyMock.createNiceMock(ProcessFacade.class), EasyMock.createNiceMock(EquipmentFacade.class), EasyMock.createNiceMock(SubEquipmentFacade.class),
+        new DefaultCacheImpl<>(createCache("processEventCache"), cacheProperties),
+        new DefaultCacheImpl<>(createCache("equipmentEventCache"), cacheProperties),
+        new DefaultCacheImpl<>(createCache("subEquipmentEventCache"), cacheProperties),
+        properties);
+  }
+
+  public static void main(String[] args) {
+    int tagCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int equipmentCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    int tagsPerRule = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+    SupervisionTagNotifierBenchmark benchmark = new SupervisionTagNotifierBenchmark(tagCount, equipmentCount, tagsPerRule);
+    System.out.printf("%d tags on %d equipments, %d rules, %d runs per mode%n",
+        tagCount, equipmentCount, tagCount / tagsPerRule, runs);
+    try {
+      benchmark.run(false, runs);
+      benchmark.run(true, runs);
+    } finally {
+      benchmark.cacheManager.shutdown();
+    }
+  }
+
+  private Cache createCache(final String name) {
+    Cache cache = new Cache(new CacheConfiguration(name, 0).eternal(true));
+    cacheManager.addCache(cache);
+    return cache;
+  }
+
+  /**
+   * Spreads the tags over the equipments; each rule reads <code>tagsPerRule</code>
+   * consecutive tags, so belongs to one or two equipments.
+   */
+  private void fillCaches(final DataTagCacheImpl dataTagCache, final RuleTagCacheImpl ruleTagCache) {
+    Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+    long ruleIdOffset = 1000000L;
+    for (long id = 0; id < tagCount; id++) {
+      long equipmentId = 1 + id * equipmentCount / tagCount;
+      DataTagCacheObject tag = new DataTagCacheObject(id, "P_BENCHMARK:TAG_" + id, Double.class.getName(), (short) 0);
+      tag.setProcessId(PROCESS_ID);
+      tag.setEquipmentId(equipmentId);
+      tag.setCacheTimestamp(timestamp);
+      tag.getRuleIds().add(ruleIdOffset + id / tagsPerRule);
+      dataTagCache.putQuiet(tag);
+    }
+    for (long id = 0; id < (tagCount + tagsPerRule - 1) / tagsPerRule; id++) {
+      RuleTagCacheObject rule = new RuleTagCacheObject(ruleIdOffset + id);
+      rule.getProcessIds().add(PROCESS_ID);
+      rule.getEquipmentIds().add(1 + id * tagsPerRule * equipmentCount / tagCount);
+      rule.getEquipmentIds().add(1 + Math.min(tagCount - 1, (id + 1) * tagsPerRule - 1) * equipmentCount / tagCount);
+      rule.setCacheTimestamp(timestamp);
+      ruleTagCache.putQuiet(rule);
+    }
+  }
+
+  private void run(final boolean bulk, final int runs) {
+    properties.setBulkTagNotification(bulk);
+    String mode = bulk ? "bulk" : "per-tag";
+    // warm-up
+    notifyProcess(SupervisionStatus.DOWN);
+    notifyProcess(SupervisionStatus.RUNNING);
+
+    for (int i = 0; i < runs; i++) {
+      for (SupervisionStatus status : new SupervisionStatus[] {SupervisionStatus.DOWN, SupervisionStatus.RUNNING}) {
+        listener.reset();
+        long start = System.nanoTime();
+        notifyProcess(status);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-8s %-8s %8.1f ms | %7d tags notified in %6d listener calls%n",
+            mode, status, elapsed / 1e6, listener.tags.get(), listener.calls.get());
+      }
+    }
+  }
+
+  private void notifyProcess(final SupervisionStatus status) {
+    eventTime++;
+    SupervisionEvent event = new SupervisionEventImpl(SupervisionEntity.PROCESS, PROCESS_ID, "P_BENCHMARK", status,
+        new Timestamp(eventTime), "benchmark");
+    notifier.notifySupervisionEvent(event);
+  }
+
+  /**
+   * Counts the notified tags and the listener calls.
+   */
+  private static final class CountingListener implements CacheSupervisionListener<Tag> {
+
+    private final AtomicLong tags = new AtomicLong();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    @Override
+    public void onSupervisionChange(final Tag tag) {
+      tags.incrementAndGet();
+      calls.incrementAndGet();
+    }
+
+    @Override
+    public void onSupervisionChange(final Collection<? extends Tag> tags) {
+      this.tags.addAndGet(tags.size());
+      calls.incrementAndGet();
+    }
+
+    void reset() {
+      tags.set(0);
+      calls.set(0);
+    }
+  }
+}
@@ -23,6 +23,7 @@ import cern.c2mon.server.cache.config.CacheModule;
 import cern.c2mon.server.cache.dbaccess.config.CacheDbAccessModule;
 import cern.c2mon.server.common.config.CommonModule;
 import cern.c2mon.server.supervision.config.SupervisionModule;
+import cern.c2mon.server.supervision.config.SupervisionProperties;
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
 import org.junit.Before;
@@ -84,6 +85,7 @@ public class SupervisionTagNotifierTest {
   private SubEquipmentFacade subEquipmentFacade;
   private SupervisionAppender supervisionAppender;
   private ProcessFacade processFacade;
+  private SupervisionProperties properties;
   @Autowired
   private ClusterCache clusterCache;
 
@@ -137,9 +139,11 @@ public class SupervisionTagNotifierTest {
 
     EasyMock.replay(cacheProvider);
 
+    properties = new SupervisionProperties();
+
     supervisionTagNotifier = new SupervisionTagNotifier(supervisionNotifier, cacheProvider,
                                                    tagLocationService, supervisionAppender, processFacade,
-                                                   equipmentFacade, subEquipmentFacade, processEventCache, equipmentEventCache, subEquipmentEventCache);
+                                                   equipmentFacade, subEquipmentFacade, processEventCache, equipmentEventCache, subEquipmentEventCache, properties);
 
     EasyMock.reset(cacheProvider);
     process = new ProcessCacheObject(10L);
@@ -212,11 +216,12 @@ public class SupervisionTagNotifierTest {
   @Test
   @DirtiesContext
   public void testNotifyProcessEvent() {
+    properties.setBulkTagNotification(false);
     SupervisionEvent event = new SupervisionEventImpl(SupervisionEntity.PROCESS, 10L, "P_TEST", SupervisionStatus.DOWN, new Timestamp(System.currentTimeMillis()), "test message");
 
     EasyMock.expect(processCache.getCopy(10L)).andReturn(process);
     //EasyMock.expect(equipmentFacade.getProcessForAbstractEquipment(30L)).andReturn(process);
-    EasyMock.expect(equipmentFacade.getDataTagIds(30L)).andReturn(Arrays.asList(100L, 101L));
+    EasyMock.expect(dataTagCache.getDataTagIdsByEquipmentId(30L)).andReturn(Arrays.asList(100L, 101L));
     EasyMock.expect(tagLocationService.getCopy(100L)).andReturn(dataTag);
     EasyMock.expect(tagLocationService.getCopy(101L)).andReturn(dataTag2);
     EasyMock.expect(tagLocationService.getCopy(200L)).andReturn(ruleTag).times(2);
@@ -246,10 +251,11 @@ public class SupervisionTagNotifierTest {
   @Test
   @DirtiesContext
   public void testNotifyEquipmentEvent() {
+    properties.setBulkTagNotification(false);
     SupervisionEvent event = new SupervisionEventImpl(SupervisionEntity.EQUIPMENT, 30L, "E_TEST", SupervisionStatus.RUNNING, new Timestamp(System.currentTimeMillis()), "test message");
     mockControl.reset();
     //EasyMock.expect(equipmentFacade.getProcessForAbstractEquipment(30L)).andReturn(process);
-    EasyMock.expect(equipmentFacade.getDataTagIds(30L)).andReturn(Arrays.asList(100L, 101L));
+    EasyMock.expect(dataTagCache.getDataTagIdsByEquipmentId(30L)).andReturn(Arrays.asList(100L, 101L));
     EasyMock.expect(tagLocationService.getCopy(100L)).andReturn(dataTag);
     EasyMock.expect(tagLocationService.getCopy(101L)).andReturn(dataTag2);
     EasyMock.expect(tagLocationService.getCopy(200L)).andReturn(ruleTag).times(2);
@@ -276,10 +282,11 @@ public class SupervisionTagNotifierTest {
   @Test
   @DirtiesContext
   public void testNotifySubEquipmentEvent() {
+    properties.setBulkTagNotification(false);
     SupervisionEvent event = new SupervisionEventImpl(SupervisionEntity.SUBEQUIPMENT, 50L, "E_SUBTEST", SupervisionStatus.DOWN, new Timestamp(System.currentTimeMillis()),
         "test message");
     mockControl.reset();
-    EasyMock.expect(subEquipmentFacade.getDataTagIds(50L)).andReturn(Arrays.asList(102L, 103L));
+    EasyMock.expect(dataTagCache.getDataTagIdsBySubEquipmentId(50L)).andReturn(Arrays.asList(102L, 103L));
     EasyMock.expect(tagLocationService.getCopy(102L)).andReturn(dataTag3);
     EasyMock.expect(tagLocationService.getCopy(103L)).andReturn(dataTag4);
     EasyMock.expect(tagLocationService.getCopy(203L)).andReturn(ruleTag4).times(2);
@@ -299,4 +306,97 @@ public class SupervisionTagNotifierTest {
 
     mockControl.verify();
   }
+
+  /**
+   * Tests the bulk notification of a process event: each Tag and rule is copied
+   * once and the listeners are notified once per cache.
+   */
+  @Test
+  @DirtiesContext
+  public void testBulkNotifyProcessEvent() {
+    SupervisionEvent event = new SupervisionEventImpl(SupervisionEntity.PROCESS, 10L, "P_TEST", SupervisionStatus.DOWN, new Timestamp(System.currentTimeMillis()), "test message");
+
+    EasyMock.expect(processCache.getCopy(10L)).andReturn(process);
+    EasyMock.expect(dataTagCache.getDataTagIdsByEquipmentId(30L)).andReturn(Arrays.asList(100L, 101L));
+    EasyMock.expect(dataTagCache.getCopy(100L)).andReturn(dataTag);
+    EasyMock.expect(dataTagCache.getCopy(101L)).andReturn(dataTag2);
+    EasyMock.expect(ruleTagCache.getCopy(200L)).andReturn(ruleTag);
+    EasyMock.expect(ruleTagCache.getCopy(201L)).andReturn(ruleTag2);
+    EasyMock.expect(ruleTagCache.getCopy(202L)).andReturn(ruleTag3);
+    supervisionAppender.addSupervisionQuality(dataTag, event);
+    supervisionAppender.addSupervisionQuality(dataTag2, event);
+    supervisionAppender.addSupervisionQuality(ruleTag, event);
+    supervisionAppender.addSupervisionQuality(ruleTag2, event);
+    supervisionAppender.addSupervisionQuality(ruleTag3, event);
+    dataTagCache.notifyListenersOfSupervisionChange(Arrays.asList(dataTag, dataTag2));
+    ruleTagCache.notifyListenersOfSupervisionChange(Arrays.asList(ruleTag, ruleTag2, ruleTag3));
+
+    mockControl.replay();
+
+    supervisionTagNotifier.notifySupervisionEvent(event);
+
+    mockControl.verify();
+  }
+
+  /**
+   * Rules reading other rules are notified after them, once only.
+   */
+  @Test
+  @DirtiesContext
+  public void testBulkNotifyEquipmentEventWithRulesOfRules() {
+    SupervisionEvent event = new SupervisionEventImpl(SupervisionEntity.EQUIPMENT, 30L, "E_TEST", SupervisionStatus.DOWN, new Timestamp(System.currentTimeMillis()), "test message");
+    ruleTag.setRuleIds(new ArrayList<>(Arrays.asList(203L)));
+    ruleTag3.setRuleIds(new ArrayList<>(Arrays.asList(200L, 203L)));
+
+    EasyMock.expect(dataTagCache.getDataTagIdsByEquipmentId(30L)).andReturn(Arrays.asList(100L, 101L));
+    EasyMock.expect(dataTagCache.getCopy(100L)).andReturn(dataTag);
+    EasyMock.expect(dataTagCache.getCopy(101L)).andReturn(dataTag2);
+    EasyMock.expect(ruleTagCache.getCopy(200L)).andReturn(ruleTag);
+    EasyMock.expect(ruleTagCache.getCopy(201L)).andReturn(ruleTag2);
+    EasyMock.expect(ruleTagCache.getCopy(202L)).andReturn(ruleTag3);
+    EasyMock.expect(ruleTagCache.getCopy(203L)).andReturn(ruleTag4);
+    supervisionAppender.addSupervisionQuality(EasyMock.anyObject(), EasyMock.eq(event));
+    EasyMock.expectLastCall().times(6);
+    dataTagCache.notifyListenersOfSupervisionChange(Arrays.asList(dataTag, dataTag2));
+    ruleTagCache.notifyListenersOfSupervisionChange(Arrays.asList(ruleTag, ruleTag2, ruleTag3));
+    ruleTagCache.notifyListenersOfSupervisionChange(Arrays.asList(ruleTag4));
+
+    mockControl.replay();
+
+    supervisionTagNotifier.notifySupervisionEvent(event);
+
+    mockControl.verify();
+  }
+
+  /**
+   * Listeners are notified once per batch of Tags.
+   */
+  @Test
+  @DirtiesContext
+  public void testBulkNotificationBatchSize() {
+    properties.setTagNotificationBatchSize(2);
+    SupervisionEvent event = new SupervisionEventImpl(SupervisionEntity.SUBEQUIPMENT, 50L, "E_SUBTEST", SupervisionStatus.DOWN, new Timestamp(System.currentTimeMillis()),
+        "test message");
+    dataTag3.setRuleIds(new ArrayList<>());
+    dataTag4.setRuleIds(new ArrayList<>());
+    DataTagCacheObject dataTag5 = new DataTagCacheObject(104L);
+    dataTag5.setSubEquipmentId(50L);
+    dataTag5.setEquipmentId(30L);
+    dataTag5.setProcessId(10L);
+
+    EasyMock.expect(dataTagCache.getDataTagIdsBySubEquipmentId(50L)).andReturn(Arrays.asList(102L, 103L, 104L));
+    EasyMock.expect(dataTagCache.getCopy(102L)).andReturn(dataTag3);
+    EasyMock.expect(dataTagCache.getCopy(103L)).andReturn(dataTag4);
+    EasyMock.expect(dataTagCache.getCopy(104L)).andReturn(dataTag5);
+    supervisionAppender.addSupervisionQuality(EasyMock.anyObject(), EasyMock.eq(event));
+    EasyMock.expectLastCall().times(3);
+    dataTagCache.notifyListenersOfSupervisionChange(Arrays.asList(dataTag3, dataTag4));
+    dataTagCache.notifyListenersOfSupervisionChange(Arrays.asList(dataTag5));
+
+    mockControl.replay();
+
+    supervisionTagNotifier.notifySupervisionEvent(event);
+
+    mockControl.verify();
+  }
 }
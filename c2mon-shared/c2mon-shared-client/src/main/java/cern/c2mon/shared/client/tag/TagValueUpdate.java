@@ -33,6 +33,26 @@ import cern.c2mon.shared.common.datatag.DataTagQuality;
  * @see TagUpdate
  */
 public interface TagValueUpdate extends ClientRequestResult {
+
+  /**
+   * Name of the JMS message property carrying the tag id of a published
+   * update, which lets the subscribers discard the updates of other tags
+   * without parsing the message.
+   */
+  String TAG_ID_PROPERTY = "tagId";
+
+  /**
+   * Name of the JMS message property carrying the number of updates of a
+   * batch message, i.e. a JSON array of updates.
+   */
+  String BATCH_SIZE_PROPERTY = "batchSize";
+
+  /**
+   * Suffix appended to the name of a tag topic to obtain the topic on which
+   * the server publishes the batch messages of this topic, if enabled.
+   */
+  String BATCH_TOPIC_SUFFIX = ".batch";
+
   /**
    * Returns the tag identifier
    * @return the tag identifier
@@ -0,0 +1,41 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.common;
+
+/**
+ * Implemented by {@link Cacheable} objects that know how to create a deep
+ * copy of themselves without going through Java serialization.
+ *
+ * <p>Unlike {@link Cacheable#clone()}, which is only required to be good enough
+ * for passing the object to cache listeners, the returned copy must not share
+ * any mutable state with the original, so that it can safely be modified and
+ * put back into the cache.
+ *
+ * @param <T> the type of the copy
+ */
+public interface DeepCopyable<T> {
+
+  /**
+   * Creates a deep copy of this object.
+   *
+   * @return a copy sharing no mutable state with this object
+   * @throws CloneNotSupportedException if this particular instance holds state
+   *         that cannot be copied by hand (the caller should then fall back to
+   *         a copy by serialization)
+   */
+  T deepCopy() throws CloneNotSupportedException;
+}
@@ -0,0 +1,501 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.daq.datatag;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+/**
+ * Compact binary encoding of {@link DataTagValueUpdate} messages, used instead
+ * of JSON between the DAQ and the server once both sides have agreed on it
+ * (see {@link cern.c2mon.shared.daq.process.ProcessConnectionResponse#getBinaryFormatVersion()}).
+ *
+ * <p>Layout (version 1):
+ * <pre>
+ * message  := version:byte flags:byte [processId:varlong] [processPIK:varlong] count:varint value*
+ * value    := flags:byte [id:varlong] name:string value:union valueDescription:string
+ *             qualityCode:varint qualityDescription:string [timestamp:varlong] [daqTimestamp:varlong]
+ *             priority:varint timeToLive:varint
+ * string   := 0 (null) | 1 length:varint utf8:byte* (new entry) | index + 2 (entry of the message dictionary)
+ * union    := type:byte payload
+ * </pre>
+ * All integers are zig-zag encoded variable length integers (7 bits per byte).
+ * Strings are only written once per message and then referenced by their
+ * index in a dictionary built while reading, so that repeated names and
+ * descriptions (e.g. the empty value description) cost a single byte. The
+ * quality codes are written as their {@link SourceDataTagQualityCode} code.
+ * The source timestamp is written as the difference to the source timestamp
+ * of the previous value of the message (to 0 for the first one), the DAQ
+ * timestamp as the difference to the source timestamp.
+ *
+ * <p>Values of the usual types (null, booleans, numbers and strings) are
+ * written in binary form; other values (e.g. arrays) fall back to the JSON
+ * encoding of the {@link DataTagValueUpdateConverter}, so that they decode
+ * to the same objects as before.
+ *
+ * <p>Instances are thread-safe.
+ */
+public final class DataTagValueUpdateBinaryCodec {
+
+  /** Version of the format written by this codec (first byte of a message) */
+  public static final byte FORMAT_VERSION = 1;
+
+  private static final int MESSAGE_PROCESS_ID = 0x01;
+  private static final int MESSAGE_PROCESS_PIK = 0x02;
+
+  private static final int VALUE_CONTROL_TAG = 0x01;
+  private static final int VALUE_GUARANTEED_DELIVERY = 0x02;
+  private static final int VALUE_SIMULATED = 0x04;
+  private static final int VALUE_ID = 0x08;
+  private static final int VALUE_TIMESTAMP = 0x10;
+  private static final int VALUE_DAQ_TIMESTAMP = 0x20;
+
+  private static final byte TYPE_NULL = 0;
+  private static final byte TYPE_FALSE = 1;
+  private static final byte TYPE_TRUE = 2;
+  private static final byte TYPE_INTEGER = 3;
+  private static final byte TYPE_LONG = 4;
+  private static final byte TYPE_FLOAT = 5;
+  private static final byte TYPE_DOUBLE = 6;
+  private static final byte TYPE_STRING = 7;
+  private static final byte TYPE_SHORT = 8;
+  private static final byte TYPE_BYTE = 9;
+  private static final byte TYPE_JSON = 10;
+
+  private static final int STRING_NULL = 0;
+  private static final int STRING_NEW = 1;
+  private static final int STRING_REFERENCE_OFFSET = 2;
+
+  /** Quality codes by code, for the decoding */
+  private static final SourceDataTagQualityCode[] QUALITY_CODES;
+
+  static {
+    int maxCode = 0;
+    for (SourceDataTagQualityCode code : SourceDataTagQualityCode.values()) {
+      maxCode = Math.max(maxCode, code.getQualityCode());
+    }
+    QUALITY_CODES = new SourceDataTagQualityCode[maxCode + 1];
+    for (SourceDataTagQualityCode code : SourceDataTagQualityCode.values()) {
+      QUALITY_CODES[code.getQualityCode()] = code;
+    }
+  }
+
+  /** Mapper used for the values which have no binary encoding */
+  private final ObjectMapper mapper;
+
+  /**
+   * @param mapper the JSON mapper for the values which have no binary encoding
+   */
+  public DataTagValueUpdateBinaryCodec(final ObjectMapper mapper) {
+    this.mapper = mapper;
+  }
+
+  /**
+   * Encodes the update in the current format version.
+   *
+   * @param update the update to encode
+   * @return the encoded update
+   * @throws IOException if a value could not be encoded
+   */
+  public byte[] encode(final DataTagValueUpdate update) throws IOException {
+    int count = update.getValues() == null ? 0 : update.getValues().size();
+    Output out = new Output(16 + count * 48);
+
+    out.writeByte(FORMAT_VERSION);
+    int flags = (update.getProcessId() != null ? MESSAGE_PROCESS_ID : 0)
+        | (update.getProcessPIK() != null ? MESSAGE_PROCESS_PIK : 0);
+    out.writeByte(flags);
+    if (update.getProcessId() != null) {
+      out.writeVarLong(update.getProcessId());
+    }
+    if (update.getProcessPIK() != null) {
+      out.writeVarLong(update.getProcessPIK());
+    }
+
+    out.writeVarInt(count);
+    if (count > 0) {
+      for (SourceDataTagValue value : update.getValues()) {
+        writeValue(out, value);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private void writeValue(final Output out, final SourceDataTagValue value) throws IOException {
+    int flags = (value.isControlTag() ? VALUE_CONTROL_TAG : 0)
+        | (value.isGuaranteedDelivery() ? VALUE_GUARANTEED_DELIVERY : 0)
+        | (value.isSimulated() ? VALUE_SIMULATED : 0)
+        | (value.getId() != null ? VALUE_ID : 0)
+        | (value.getTimestamp() != null ? VALUE_TIMESTAMP : 0)
+        | (value.getDaqTimestamp() != null ? VALUE_DAQ_TIMESTAMP : 0);
+    out.writeByte(flags);
+
+    if (value.getId() != null) {
+      out.writeVarLong(value.getId());
+    }
+    out.writeString(value.getName());
+    writeUnion(out, value.getValue());
+    out.writeString(value.getValueDescription());
+
+    SourceDataTagQuality quality = value.getQuality();
+    out.writeVarInt(quality.getQualityCode() == null ? -1 : quality.getQualityCode().getQualityCode());
+    out.writeString(quality.getDescription());
+
+    if (value.getTimestamp() != null) {
+      out.writeVarLong(value.getTimestamp().getTime() - out.lastTimestamp);
+      out.lastTimestamp = value.getTimestamp().getTime();
+    }
+    if (value.getDaqTimestamp() != null) {
+      long reference = value.getTimestamp() != null ? value.getTimestamp().getTime() : 0;
+      out.writeVarLong(value.getDaqTimestamp().getTime() - reference);
+    }
+
+    out.writeVarInt(value.getPriority());
+    out.writeVarInt(value.getTimeToLive());
+  }
+
+  private void writeUnion(final Output out, final Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(TYPE_NULL);
+    } else if (value instanceof Boolean) {
+      out.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+    } else if (value instanceof Integer) {
+      out.writeByte(TYPE_INTEGER);
+      out.writeVarInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(TYPE_LONG);
+      out.writeVarLong((Long) value);
+    } else if (value instanceof Float) {
+      out.writeByte(TYPE_FLOAT);
+      out.writeFixedInt(Float.floatToIntBits((Float) value));
+    } else if (value instanceof Double) {
+      out.writeByte(TYPE_DOUBLE);
+      out.writeFixedLong(Double.doubleToLongBits((Double) value));
+    } else if (value instanceof String) {
+      out.writeByte(TYPE_STRING);
+      out.writeString((String) value);
+    } else if (value instanceof Short) {
+      out.writeByte(TYPE_SHORT);
+      out.writeVarInt((Short) value);
+    } else if (value instanceof Byte) {
+      out.writeByte(TYPE_BYTE);
+      out.writeByte((Byte) value);
+    } else {
+      out.writeByte(TYPE_JSON);
+      out.writeBytes(mapper.writeValueAsBytes(value));
+    }
+  }
+
+  /**
+   * Decodes an update encoded in any format version up to {@link #FORMAT_VERSION}.
+   *
+   * @param bytes the encoded update
+   * @return the decoded update
+   * @throws IOException if the message is truncated, or of an unknown format version
+   */
+  public DataTagValueUpdate decode(final byte[] bytes) throws IOException {
+    Input in = new Input(bytes);
+
+    int version = in.readByte();
+    if (version < 1 || version > FORMAT_VERSION) {
+      throw new IOException("Unsupported binary format version " + version + " (supported: 1 to " + FORMAT_VERSION + ")");
+    }
+
+    int flags = in.readByte();
+    Long processId = (flags & MESSAGE_PROCESS_ID) != 0 ? in.readVarLong() : null;
+    Long processPIK = (flags & MESSAGE_PROCESS_PIK) != 0 ? in.readVarLong() : null;
+
+    int count = in.readVarInt();
+    if (count < 0 || count > bytes.length) {
+      throw new IOException("Invalid number of values: " + count);
+    }
+    ArrayList<SourceDataTagValue> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readValue(in));
+    }
+
+    DataTagValueUpdate update = new DataTagValueUpdate(processId, processPIK);
+    update.setValues(values);
+    return update;
+  }
+
+  private SourceDataTagValue readValue(final Input in) throws IOException {
+    int flags = in.readByte();
+
+    SourceDataTagValue value = new SourceDataTagValue();
+    value.setControlTag((flags & VALUE_CONTROL_TAG) != 0);
+    value.setGuaranteedDelivery((flags & VALUE_GUARANTEED_DELIVERY) != 0);
+    value.setSimulated((flags & VALUE_SIMULATED) != 0);
+    if ((flags & VALUE_ID) != 0) {
+      value.setId(in.readVarLong());
+    }
+    value.setName(in.readString());
+    value.setValue(readUnion(in));
+    value.setValueDescription(in.readString());
+
+    int code = in.readVarInt();
+    SourceDataTagQuality quality = new SourceDataTagQuality(code < 0 ? null : qualityCode(code));
+    quality.setDescription(in.readString());
+    value.setQuality(quality);
+
+    long timestamp = 0;
+    if ((flags & VALUE_TIMESTAMP) != 0) {
+      timestamp = in.lastTimestamp + in.readVarLong();
+      in.lastTimestamp = timestamp;
+      value.setTimestamp(new Timestamp(timestamp));
+    }
+    if ((flags & VALUE_DAQ_TIMESTAMP) != 0) {
+      value.setDaqTimestamp(new Timestamp(timestamp + in.readVarLong()));
+    }
+
+    value.setPriority(in.readVarInt());
+    value.setTimeToLive(in.readVarInt());
+    return value;
+  }
+
+  private Object readUnion(final Input in) throws IOException {
+    byte type = (byte) in.readByte();
+    switch (type) {
+      case TYPE_NULL:
+        return null;
+      case TYPE_FALSE:
+        return Boolean.FALSE;
+      case TYPE_TRUE:
+        return Boolean.TRUE;
+      case TYPE_INTEGER:
+        return in.readVarInt();
+      case TYPE_LONG:
+        return in.readVarLong();
+      case TYPE_FLOAT:
+        return Float.intBitsToFloat(in.readFixedInt());
+      case TYPE_DOUBLE:
+        return Double.longBitsToDouble(in.readFixedLong());
+      case TYPE_STRING:
+        return in.readString();
+      case TYPE_SHORT:
+        return (short) in.readVarInt();
+      case TYPE_BYTE:
+        return (byte) in.readByte();
+      case TYPE_JSON:
+        return mapper.readValue(in.readBytes(), Object.class);
+      default:
+        throw new IOException("Unknown value type " + type);
+    }
+  }
+
+  private static SourceDataTagQualityCode qualityCode(final int code) throws IOException {
+    if (code >= QUALITY_CODES.length || QUALITY_CODES[code] == null) {
+      throw new IOException("Unknown quality code " + code);
+    }
+    return QUALITY_CODES[code];
+  }
+
+  /**
+   * Growable output buffer with the string dictionary of the message being written.
+   */
+  private static final class Output {
+
+    private byte[] buffer;
+
+    private int position;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    /** Source timestamp of the previous value written */
+    private long lastTimestamp;
+
+    Output(final int initialCapacity) {
+      buffer = new byte[initialCapacity];
+    }
+
+    void writeByte(final int value) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeVarInt(final int value) {
+      writeVarLong(value);
+    }
+
+    void writeVarLong(final long value) {
+      ensureCapacity(10);
+      long zigZag = (value << 1) ^ (value >> 63);
+      while ((zigZag & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+        zigZag >>>= 7;
+      }
+      buffer[position++] = (byte) zigZag;
+    }
+
+    void writeFixedInt(final int value) {
+      ensureCapacity(4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeFixedLong(final long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeBytes(final byte[] bytes) {
+      writeVarInt(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    void writeString(final String value) {
+      if (value == null) {
+        writeVarInt(STRING_NULL);
+        return;
+      }
+      Integer index = dictionary.get(value);
+      if (index != null) {
+        writeVarInt(index + STRING_REFERENCE_OFFSET);
+      } else {
+        dictionary.put(value, dictionary.size());
+        writeVarInt(STRING_NEW);
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(final int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+      }
+    }
+  }
+
+  /**
+   * Input buffer with the string dictionary of the message being read.
+   */
+  private static final class Input {
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private final List<String> dictionary = new ArrayList<>();
+
+    /** Source timestamp of the previous value read */
+    private long lastTimestamp;
+
+    Input(final byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    int readByte() throws IOException {
+      ensureAvailable(1);
+      return buffer[position++];
+    }
+
+    int readVarInt() throws IOException {
+      return (int) readVarLong();
+    }
+
+    long readVarLong() throws IOException {
+      long zigZag = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        zigZag |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+      }
+      throw new IOException("Malformed variable length integer");
+    }
+
+    int readFixedInt() throws IOException {
+      ensureAvailable(4);
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    long readFixedLong() throws IOException {
+      ensureAvailable(8);
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    byte[] readBytes() throws IOException {
+      int length = readVarInt();
+      if (length < 0) {
+        throw new IOException("Invalid length " + length);
+      }
+      ensureAvailable(length);
+      byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+      position += length;
+      return bytes;
+    }
+
+    String readString() throws IOException {
+      int reference = readVarInt();
+      if (reference == STRING_NULL) {
+        return null;
+      }
+      if (reference == STRING_NEW) {
+        int length = readVarInt();
+        if (length < 0) {
+          throw new IOException("Invalid string length " + length);
+        }
+        ensureAvailable(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        dictionary.add(value);
+        return value;
+      }
+      int index = reference - STRING_REFERENCE_OFFSET;
+      if (index < 0 || index >= dictionary.size()) {
+        throw new IOException("Invalid string reference " + reference);
+      }
+      return dictionary.get(index);
+    }
+
+    private void ensureAvailable(final int length) throws IOException {
+      if (length > buffer.length - position) {
+        throw new IOException("Truncated message");
+      }
+    }
+  }
+}
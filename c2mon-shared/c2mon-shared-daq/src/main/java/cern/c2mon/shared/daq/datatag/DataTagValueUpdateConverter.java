@@ -25,6 +25,7 @@ import org.springframework.jms.support.converter.MessageConversionException;
 import org.springframework.jms.support.converter.MessageConverter;
 
 import javax.annotation.PostConstruct;
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
@@ -34,6 +35,11 @@ import java.io.IOException;
 /**
  * Converter class used to convert between JSON messages and
  * {@link DataTagValueUpdate} instances.
+ * <p>
+ * Incoming updates may also be {@link BytesMessage}s encoded with the
+ * {@link DataTagValueUpdateBinaryCodec}. Outgoing updates are only encoded
+ * in binary once {@link #setBinaryFormat(boolean)} has been called, i.e. once
+ * the DAQ knows that the server accepts the binary format.
  *
  * @author Mark Brightwell
  */
@@ -42,10 +48,33 @@ public class DataTagValueUpdateConverter implements MessageConverter {
 
   private ObjectMapper mapper;
 
+  private final DataTagValueUpdateBinaryCodec binaryCodec;
+
+  /**
+   * Whether outgoing updates are sent in binary format (JSON otherwise)
+   */
+  private volatile boolean binaryFormat = false;
+
   public DataTagValueUpdateConverter() {
     this.mapper = new ObjectMapper();
     mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
     mapper.enable(DeserializationFeature.USE_JAVA_ARRAY_FOR_JSON_ARRAY);
+    this.binaryCodec = new DataTagValueUpdateBinaryCodec(mapper);
+  }
+
+  /**
+   * @param binaryFormat true to send the updates as {@link BytesMessage}s encoded
+   *                     with the {@link DataTagValueUpdateBinaryCodec}, false for JSON
+   */
+  public void setBinaryFormat(final boolean binaryFormat) {
+    this.binaryFormat = binaryFormat;
+  }
+
+  /**
+   * @return true if the updates are sent in binary format
+   */
+  public boolean isBinaryFormat() {
+    return binaryFormat;
   }
 
   /**
@@ -62,8 +91,12 @@ public class DataTagValueUpdateConverter implements MessageConverter {
       throw new MessageConversionException("Message must not be null!");
     }
 
+    if (message instanceof BytesMessage) {
+      return fromBytesMessage((BytesMessage) message);
+    }
+
     if (!(message instanceof TextMessage)) {
-      throw new MessageConversionException("Message must be an instance of TextMessage!");
+      throw new MessageConversionException("Message must be an instance of TextMessage or BytesMessage!");
     }
 
     try {
@@ -77,6 +110,17 @@ public class DataTagValueUpdateConverter implements MessageConverter {
     }
   }
 
+  private Object fromBytesMessage(final BytesMessage message) throws JMSException {
+    byte[] bytes = new byte[(int) message.getBodyLength()];
+    message.readBytes(bytes);
+    try {
+      return binaryCodec.decode(bytes);
+    } catch (IOException | RuntimeException e) {
+      log.error("Exception caught while parsing incoming binary update", e);
+      throw new MessageConversionException("Exception caught while parsing incoming binary update of " + bytes.length + " bytes", e);
+    }
+  }
+
   /**
    * Converts a {@link DataTagValueUpdate} to a JMS {@link Message}
    *
@@ -88,6 +132,18 @@ public class DataTagValueUpdateConverter implements MessageConverter {
    */
   @Override
   public Message toMessage(final Object tag, final Session session) throws JMSException {
+    if (binaryFormat && tag instanceof DataTagValueUpdate) {
+      try {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(binaryCodec.encode((DataTagValueUpdate) tag));
+        return message;
+      } catch (IOException e) {
+        log.error("Exception caught in converting dataTagValueUpdate to binary format", e);
+        throw new MessageConversionException("Exception caught in converting dataTagValueUpdate to binary format: "
+            + e.getMessage());
+      }
+    }
+
     try {
       String json = mapper.writeValueAsString(tag);
       return session.createTextMessage(json);
@@ -58,6 +58,12 @@ public class ProcessConnectionResponse implements ProcessResponse {
    */
   public static final String NO_PROCESS = "NO_PROCESS";
 
+  /**
+   * Constant of NO_BINARY_FORMAT as default value for the binary format version
+   * (servers which do not send it only accept JSON updates)
+   */
+  public static final Integer NO_BINARY_FORMAT = 0;
+
   /**
     The Process Name of the daq process
    */
@@ -70,6 +76,12 @@ public class ProcessConnectionResponse implements ProcessResponse {
   @Element
   private Long processPIK = NO_PIK;
 
+  /**
+   * Highest version of the binary DataTagValueUpdate format accepted by the server
+   */
+  @Element(required = false)
+  private Integer binaryFormatVersion = NO_BINARY_FORMAT;
+
   /**
    * Empty Constructor
    * 
@@ -126,6 +138,24 @@ public class ProcessConnectionResponse implements ProcessResponse {
     return this.processPIK;
   }
 
+  /**
+   * Sets the highest binary update format version accepted by the server.
+   *
+   * @param binaryFormatVersion The binary format version
+   */
+  public final void setBinaryFormatVersion(final Integer binaryFormatVersion) {
+    this.binaryFormatVersion = binaryFormatVersion;
+  }
+
+  /**
+   * Returns the highest binary update format version accepted by the server
+   *
+   * @return The binary format version, or NO_BINARY_FORMAT if the server only accepts JSON
+   */
+  public final Integer getBinaryFormatVersion() {
+    return this.binaryFormatVersion == null ? NO_BINARY_FORMAT : this.binaryFormatVersion;
+  }
+
   @Override
   public final String toString() {
     return ("Process Name: " + this.processName + ", " + "Process PIK: " + this.processPIK);
@@ -0,0 +1,177 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.daq.datatag;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DataTagValueUpdateBinaryCodecTest {
+
+  private ObjectMapper mapper;
+
+  private DataTagValueUpdateBinaryCodec codec;
+
+  @Before
+  public void setUp() {
+    mapper = new ObjectMapper();
+    mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    mapper.enable(DeserializationFeature.USE_JAVA_ARRAY_FOR_JSON_ARRAY);
+    codec = new DataTagValueUpdateBinaryCodec(mapper);
+  }
+
+  @Test
+  public void testRoundTripOfAllFields() throws IOException {
+    DataTagValueUpdate update = new DataTagValueUpdate(42L, 123456789L);
+    SourceDataTagValue value = new SourceDataTagValue(1000L, "P_TEST:TAG", true, 12.5f,
+        new SourceDataTagQuality(SourceDataTagQualityCode.OUT_OF_BOUNDS, "Value above 10"),
+        new Timestamp(1500000000123L), DataTagAddress.PRIORITY_HIGH, true, "description é", 3600000);
+    value.setDaqTimestamp(new Timestamp(1500000000456L));
+    value.setSimulated(true);
+    update.addValue(value);
+
+    DataTagValueUpdate decoded = codec.decode(codec.encode(update));
+
+    assertEquals(Long.valueOf(42L), decoded.getProcessId());
+    assertEquals(Long.valueOf(123456789L), decoded.getProcessPIK());
+    assertEquals(1, decoded.getValues().size());
+    SourceDataTagValue decodedValue = decoded.getValues().iterator().next();
+    assertEquals(value, decodedValue);
+    assertEquals(Float.valueOf(12.5f), decodedValue.getValue());
+    assertEquals(value.getQuality(), decodedValue.getQuality());
+    assertEquals(3600000, decodedValue.getTimeToLive());
+  }
+
+  @Test
+  public void testRoundTripOfValueTypes() throws IOException {
+    Object[] values = {null, true, false, 1, -1, Integer.MAX_VALUE, Long.MIN_VALUE, 0.1d, Double.NaN, -3.5f,
+        (short) 7, (byte) -2, "", "text", 5L};
+
+    DataTagValueUpdate update = new DataTagValueUpdate(1L);
+    for (int i = 0; i < values.length; i++) {
+      update.addValue(new SourceDataTagValue((long) i, "tag" + i, false, values[i], null, System.currentTimeMillis(),
+          DataTagAddress.PRIORITY_LOW, false, null, DataTagAddress.TTL_FOREVER));
+    }
+
+    Iterator<SourceDataTagValue> decoded = codec.decode(codec.encode(update)).getValues().iterator();
+    for (Object value : values) {
+      Object decodedValue = decoded.next().getValue();
+      assertEquals(value, decodedValue);
+      if (value != null) {
+        assertEquals(value.getClass(), decodedValue.getClass());
+      }
+    }
+  }
+
+  @Test
+  public void testArraysAreDecodedLikeJson() throws IOException {
+    Integer[] array = {1, 2, 3};
+    DataTagValueUpdate update = new DataTagValueUpdate(1L);
+    update.addValue(new SourceDataTagValue(1L, "array", false, array, null, 0L, 0, false, null, 0));
+
+    Object decoded = codec.decode(codec.encode(update)).getValues().iterator().next().getValue();
+    Object json = mapper.readValue(mapper.writeValueAsString(update), DataTagValueUpdate.class)
+        .getValues().iterator().next().getValue();
+
+    assertTrue(decoded instanceof Object[]);
+    assertArrayEquals((Object[]) json, (Object[]) decoded);
+  }
+
+  @Test
+  public void testNullFieldsAndEmptyUpdate() throws IOException {
+    DataTagValueUpdate decoded = codec.decode(codec.encode(new DataTagValueUpdate(5L)));
+    assertEquals(Long.valueOf(5L), decoded.getProcessId());
+    assertNull(decoded.getProcessPIK());
+    assertTrue(decoded.getValues().isEmpty());
+
+    SourceDataTagValue value = new SourceDataTagValue();
+    decoded = codec.decode(codec.encode(new DataTagValueUpdate(null, new ArrayList<>(Arrays.asList(value)))));
+    SourceDataTagValue decodedValue = decoded.getValues().iterator().next();
+    assertNull(decoded.getProcessId());
+    assertNull(decodedValue.getId());
+    assertNull(decodedValue.getName());
+    assertNull(decodedValue.getTimestamp());
+    assertNull(decodedValue.getDaqTimestamp());
+    assertEquals(SourceDataTagQualityCode.OK, decodedValue.getQuality().getQualityCode());
+  }
+
+  @Test
+  public void testRepeatedStringsAreWrittenOnce() throws IOException {
+    String description = "a rather long value description shared by all values";
+    DataTagValueUpdate one = new DataTagValueUpdate(1L);
+    DataTagValueUpdate hundred = new DataTagValueUpdate(1L);
+    for (long id = 0; id < 100; id++) {
+      SourceDataTagValue value = new SourceDataTagValue(id, "tag", false, 1, null, System.currentTimeMillis(), 0, false,
+          description, 0);
+      if (id == 0) {
+        one.addValue(value);
+      }
+      hundred.addValue(value);
+    }
+
+    byte[] encoded = codec.encode(hundred);
+    assertTrue(encoded.length < codec.encode(one).length + 99 * 16);
+
+    for (SourceDataTagValue value : codec.decode(encoded).getValues()) {
+      assertEquals(description, value.getValueDescription());
+      assertEquals("tag", value.getName());
+    }
+  }
+
+  @Test
+  public void testBinaryIsSmallerThanJson() throws IOException {
+    DataTagValueUpdate update = new DataTagValueUpdate(1L, 1L);
+    for (long id = 0; id < 100; id++) {
+      update.addValue(new SourceDataTagValue(100000 + id, "P_TEST:TAG_" + id, false, id * 0.5, null,
+          System.currentTimeMillis(), DataTagAddress.PRIORITY_LOW, false, null, DataTagAddress.TTL_FOREVER));
+    }
+    assertTrue(codec.encode(update).length * 4 < mapper.writeValueAsBytes(update).length);
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownVersionIsRejected() throws IOException {
+    byte[] encoded = codec.encode(new DataTagValueUpdate(1L));
+    encoded[0] = DataTagValueUpdateBinaryCodec.FORMAT_VERSION + 1;
+    codec.decode(encoded);
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedMessageIsRejected() throws IOException {
+    DataTagValueUpdate update = new DataTagValueUpdate(1L);
+    update.addValue(new SourceDataTagValue(1L, "tag", false, "value", null, 0L, 0, false, null, 0));
+    byte[] encoded = codec.encode(update);
+    codec.decode(Arrays.copyOf(encoded, encoded.length - 3));
+  }
+}
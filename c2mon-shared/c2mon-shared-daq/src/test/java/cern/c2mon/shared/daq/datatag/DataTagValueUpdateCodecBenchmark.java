@@ -0,0 +1,154 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.daq.datatag;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagValueUpdate;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.SourceDataTagQualityCode;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+
+/**
+ * JMH comparison of the JSON and binary encodings of {@link DataTagValueUpdate}s,
+ * as done by the {@link DataTagValueUpdateConverter} on the DAQ (encode) and on
+ * the server (decode).
+ *
+ * <p>The updates contain a mix of value types (doubles, integers, booleans and
+ * strings), with one invalid value in ten. The encoded sizes are printed
+ * during the setup.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.shared.daq.datatag.DataTagValueUpdateCodecBenchmark</code>
+ * and compare the <code>json*</code> with the <code>binary*</code> results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataTagValueUpdateCodecBenchmark {
+
+  /** Number of tag values per update */
+  @Param({"1", "100", "1000"})
+  private int values;
+
+  private ObjectMapper mapper;
+
+  private DataTagValueUpdateBinaryCodec codec;
+
+  private DataTagValueUpdate update;
+
+  private byte[] json;
+
+  private byte[] binary;
+
+  @Setup
+  public void setUp() throws IOException {
+    // same set-up as the DataTagValueUpdateConverter
+    mapper = new ObjectMapper();
+    mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    mapper.enable(DeserializationFeature.USE_JAVA_ARRAY_FOR_JSON_ARRAY);
+    codec = new DataTagValueUpdateBinaryCodec(mapper);
+
+    long now = System.currentTimeMillis();
+    update = new DataTagValueUpdate(1000L, 123456L);
+    for (int i = 0; i < values; i++) {
+      SourceDataTagQuality quality = i % 10 == 9
+          ? new SourceDataTagQuality(SourceDataTagQualityCode.DATA_UNAVAILABLE, "Connection lost")
+          : null;
+      update.addValue(new SourceDataTagValue(200000L + i, "P_BENCHMARK:EQUIPMENT:TAG_" + i, false, value(i), quality,
+          now - i, DataTagAddress.PRIORITY_LOW, false, null, DataTagAddress.TTL_FOREVER));
+    }
+
+    json = mapper.writeValueAsBytes(update);
+    binary = codec.encode(update);
+    System.out.printf("%n%d values: JSON %d bytes, binary %d bytes%n", values, json.length, binary.length);
+  }
+
+  private static Object value(final int i) {
+    switch (i % 4) {
+      case 0:
+        return i * 0.25d;
+      case 1:
+        return i;
+      case 2:
+        return i % 3 == 0;
+      default:
+        return "state " + (i % 5);
+    }
+  }
+
+  @Benchmark
+  public byte[] jsonEncode() throws IOException {
+    return mapper.writeValueAsBytes(update);
+  }
+
+  @Benchmark
+  public DataTagValueUpdate jsonDecode() throws IOException {
+    return mapper.readValue(json, DataTagValueUpdate.class);
+  }
+
+  @Benchmark
+  public DataTagValueUpdate jsonRoundTrip() throws IOException {
+    return mapper.readValue(mapper.writeValueAsBytes(update), DataTagValueUpdate.class);
+  }
+
+  @Benchmark
+  public byte[] binaryEncode() throws IOException {
+    return codec.encode(update);
+  }
+
+  @Benchmark
+  public DataTagValueUpdate binaryDecode() throws IOException {
+    return codec.decode(binary);
+  }
+
+  @Benchmark
+  public DataTagValueUpdate binaryRoundTrip() throws IOException {
+    return codec.decode(codec.encode(update));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(DataTagValueUpdateCodecBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -44,6 +44,18 @@ public final class FallbackProperties {
     /** It indicates the number of lines that can be read from the fallback file at each time*/
     public static final String NUMBER_LINES_FROM_FILE = "2000";
 
+    /** It indicates whether the fallback data is written to a segmented binary log instead of a text file*/
+    private static final String SEGMENTED = "false";
+
+    /** It indicates the size in megabytes above which a new segment of the segmented log is started*/
+    private static final String SEGMENT_SIZE = "64";
+
+    /** It indicates the number of threads committing the fallback data back to the DB in parallel*/
+    private static final String RECOVERY_WORKERS = "1";
+
+    /** It indicates the maximum number of lines per second committed back to the DB, 0 for no limit*/
+    private static final String RECOVERY_MAX_RATE = "0";
+
     /** It indicates with which frequency (each number of lines) the check for the disc size should be done*/
     private int freeSpaceCheckFrequency = Integer.parseInt(FREE_SPACE_CHECK_FREQUENCY);
 
@@ -53,6 +65,18 @@ public final class FallbackProperties {
     /** Number of lines that will be read in each go from the fallback file */
     private int numberLinesToReadFromFile = Integer.parseInt(NUMBER_LINES_FROM_FILE);
 
+    /** Whether the segmented binary log is used as fallback mechanism */
+    private boolean segmented = Boolean.parseBoolean(SEGMENTED);
+
+    /** Size in megabytes above which a new segment is started */
+    private int segmentSize = Integer.parseInt(SEGMENT_SIZE);
+
+    /** Number of threads committing the fallback data back to the DB */
+    private int recoveryWorkers = Integer.parseInt(RECOVERY_WORKERS);
+
+    /** Maximum number of lines per second committed back to the DB */
+    private int recoveryMaxRate = Integer.parseInt(RECOVERY_MAX_RATE);
+
     /** It indicates that an error while getting the free space in the system's disc has occurred*/
     public static final int CMD_FREE_SPACE_ERROR = -1;
 
@@ -89,6 +113,10 @@ public final class FallbackProperties {
             this.minimunDiscFreeSpace = Integer.parseInt(fallbackProperties.getProperty("fallback.minimum.freespace", FREE_SPACE_CHECK_FREQUENCY));
             this.freeSpaceCheckFrequency = Integer.parseInt(fallbackProperties.getProperty("fallback.discsize.check", DISC_SIZE_CHECK));
             this.numberLinesToReadFromFile = Integer.parseInt(fallbackProperties.getProperty("fallback.read.lines.per.iteration", NUMBER_LINES_FROM_FILE));
+            this.segmented = Boolean.parseBoolean(fallbackProperties.getProperty("fallback.segmented", SEGMENTED));
+            this.segmentSize = Integer.parseInt(fallbackProperties.getProperty("fallback.segment.size", SEGMENT_SIZE));
+            this.recoveryWorkers = Integer.parseInt(fallbackProperties.getProperty("fallback.recovery.workers", RECOVERY_WORKERS));
+            this.recoveryMaxRate = Integer.parseInt(fallbackProperties.getProperty("fallback.recovery.max.rate", RECOVERY_MAX_RATE));
           } else {
               LOG.warn(new StringBuffer("init() : Unable to find/read properties file ").append(PROPERTY_FILE_NAME).toString());
               LOG.info("init() : Using default values for the fallback parameters");
@@ -131,4 +159,32 @@ public final class FallbackProperties {
     public int getNumberLinesToReadFromFile() {
         return numberLinesToReadFromFile;
     }
+
+    /**
+     * @return whether the segmented binary log is used as fallback mechanism
+     */
+    public boolean isSegmented() {
+        return segmented;
+    }
+
+    /**
+     * @return the size in megabytes above which a new segment is started
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return the number of threads committing the fallback data back to the DB
+     */
+    public int getRecoveryWorkers() {
+        return recoveryWorkers;
+    }
+
+    /**
+     * @return the maximum number of lines per second committed back to the DB, 0 for no limit
+     */
+    public int getRecoveryMaxRate() {
+        return recoveryMaxRate;
+    }
 }
@@ -0,0 +1,560 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.pmanager.fallback;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cern.c2mon.pmanager.IFallback;
+import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
+
+/**
+ * Append-only fallback log, split into segment files of a bounded size. Each
+ * record is written as its length, the CRC32 of its contents and the UTF-8
+ * bytes of the object's string representation. All the objects of one
+ * {@link #append(List)} call are written with a single write and forced to
+ * disk once (group commit).
+ * <p>
+ * The records are read back through a memory mapping of the segment. The
+ * position of the first record not yet committed to the DB is kept in a
+ * checkpoint file, which is updated by {@link #commit(int)}; several reads
+ * may be outstanding, they are committed in the order they were read.
+ * Segments that have been completely replayed are deleted. At startup, a partially written
+ * record at the end of the last segment (e.g. after a crash) is truncated.
+ * <p>
+ * The class is not thread safe: the callers synchronize on the
+ * {@link FallbackFileController} of the fallback file, like for the line
+ * based fallback file.
+ */
+public class SegmentedFallbackLog {
+
+    /** Log4j Logger for tags that cannot be logged to the database */
+    private static final Logger LOG = LoggerFactory.getLogger("HistoryFallbackLogger");
+
+    /** Size of the record header: length and CRC32 of the record */
+    private static final int HEADER_SIZE = 8;
+
+    /** Suffix of the segment files */
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /** Directory holding the segments and the checkpoint */
+    private final File directory;
+
+    /** Name of the fallback file, used as prefix of the segment files */
+    private final String baseName;
+
+    /** The file storing the replay checkpoint */
+    private final File checkpointFile;
+
+    /** Size in bytes above which a new segment is started */
+    private final long segmentSize;
+
+    /** Sequence numbers of the existing segments */
+    private final TreeSet<Long> segments = new TreeSet<>();
+
+    /** Segment of the next record to replay */
+    private long readSegment;
+
+    /** Offset of the next record to replay in its segment */
+    private long readOffset;
+
+    /** Number of records that have not been replayed yet */
+    private int records;
+
+    /** Channel of the segment being appended to, if open */
+    private FileChannel writeChannel;
+
+    /** Sequence number of the segment being appended to */
+    private long writeSegment = -1;
+
+    /** Buffer used to encode the records of an append */
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+
+    /** Mapping of the segment being replayed */
+    private MappedByteBuffer readMap;
+
+    /** Segment of the current mapping */
+    private long readMapSegment = -1;
+
+    /** Segments of the records that have been read but not committed yet */
+    private long[] pendingSegments = new long[0];
+
+    /** End offsets of the records that have been read but not committed yet */
+    private long[] pendingEnds = new long[0];
+
+    /** Number of records that have been read but not committed yet */
+    private int pendingCount;
+
+    /**
+     * Opens the segmented log of the given fallback file, recovering the
+     * checkpoint and the segments left by a previous run.
+     *
+     * @param fallbackPath
+     *            path of the fallback file. The segments and the checkpoint
+     *            are stored next to it
+     * @param segmentSize
+     *            size in bytes above which a new segment is started
+     * @throws DataFallbackException
+     *             if the existing segments or the checkpoint cannot be read
+     */
+    public SegmentedFallbackLog(final String fallbackPath, final long segmentSize) throws DataFallbackException {
+        File fallbackFile = new File(fallbackPath).getAbsoluteFile();
+        this.directory = fallbackFile.getParentFile();
+        this.baseName = fallbackFile.getName();
+        this.checkpointFile = new File(directory, ".Checkpoint" + baseName);
+        this.segmentSize = Math.min(segmentSize, Integer.MAX_VALUE);
+        recover();
+        LOG.info("SegmentedFallbackLog() - " + records + " records of " + baseName + " remain to be replayed from "
+                + segments.size() + " segment(s)");
+    }
+
+    /**
+     * @return the number of records that have not been replayed yet
+     */
+    public final int getNumberOfRecords() {
+        return records;
+    }
+
+    /**
+     * @return whether all the records have been replayed
+     */
+    public final boolean isEmpty() {
+        return records == 0;
+    }
+
+    /**
+     * Appends the objects to the log and forces them to disk.
+     *
+     * @param data
+     *            the objects to append
+     * @throws DataFallbackException
+     *             if the records could not be written
+     */
+    public final void append(final List<? extends IFallback> data) throws DataFallbackException {
+        if (data.isEmpty()) {
+            return;
+        }
+        writeBuffer.clear();
+        CRC32 crc = new CRC32();
+        for (IFallback object : data) {
+            byte[] bytes = object.toString().getBytes(StandardCharsets.UTF_8);
+            if (writeBuffer.remaining() < HEADER_SIZE + bytes.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(writeBuffer.capacity() * 2,
+                        writeBuffer.position() + HEADER_SIZE + bytes.length));
+                writeBuffer.flip();
+                larger.put(writeBuffer);
+                writeBuffer = larger;
+            }
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+            writeBuffer.putInt(bytes.length);
+            writeBuffer.putInt((int) crc.getValue());
+            writeBuffer.put(bytes);
+        }
+        writeBuffer.flip();
+        try {
+            FileChannel channel = openWriteChannel(writeBuffer.remaining());
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            closeWriteChannel();
+            throw new DataFallbackException("append() - The records could not be written to segment " + writeSegment
+                    + " of " + baseName + ": " + e.getMessage(), e);
+        }
+        records += data.size();
+    }
+
+    /**
+     * Reads the next records to replay, following the records returned by the
+     * previous reads that have not been committed yet. A read does not go
+     * beyond the end of a segment. The records stay in the log until they are
+     * committed.
+     *
+     * @param numberOfRecords
+     *            maximum number of records to read
+     * @param fallbackObj
+     *            IFallback object used to convert the records into objects
+     * @return the objects read and the number of records they were read from
+     * @throws DataFallbackException
+     *             if the segment cannot be mapped
+     */
+    public final FallbackObjectContainer read(final int numberOfRecords, final IFallback fallbackObj)
+            throws DataFallbackException {
+        List<IFallback> objects = new ArrayList<>();
+        if (pendingEnds.length < pendingCount + numberOfRecords) {
+            pendingEnds = Arrays.copyOf(pendingEnds, pendingCount + numberOfRecords);
+            pendingSegments = Arrays.copyOf(pendingSegments, pendingCount + numberOfRecords);
+        }
+        long segment = pendingCount > 0 ? pendingSegments[pendingCount - 1] : readSegment;
+        long position = pendingCount > 0 ? pendingEnds[pendingCount - 1] : readOffset;
+        int count = 0;
+        while (records > pendingCount && count == 0 && segments.contains(segment)) {
+            ByteBuffer map = mapSegment(segment).duplicate();
+            CRC32 crc = new CRC32();
+            boolean corrupted = false;
+            while (count < numberOfRecords && map.limit() - position >= HEADER_SIZE) {
+                int length = map.getInt((int) position);
+                int checksum = map.getInt((int) position + 4);
+                if (length < 0 || map.limit() - position - HEADER_SIZE < length) {
+                    corrupted = true;
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                map.position((int) position + HEADER_SIZE);
+                map.get(bytes);
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    corrupted = true;
+                    break;
+                }
+                String line = new String(bytes, StandardCharsets.UTF_8);
+                try {
+                    objects.add(fallbackObj.getObject(line));
+                } catch (DataFallbackException e) {
+                    LOG.error("read() - " + e.getMessage() + line);
+                }
+                position += HEADER_SIZE + length;
+                pendingSegments[pendingCount + count] = segment;
+                pendingEnds[pendingCount + count] = position;
+                count++;
+            }
+            if (count == 0 && segment != segments.last()) {
+                // Nothing left in a sealed segment: either a corrupted record or
+                // a segment whose deletion was interrupted. The segment is
+                // deleted once a record of the next one is committed
+                if (corrupted) {
+                    LOG.error("read() - Corrupted record at offset " + position + " of segment " + segment + " of "
+                            + baseName + ", skipping the rest of the segment");
+                }
+                segment = segments.higher(segment);
+                position = 0;
+            } else if (count == 0 && corrupted) {
+                throw new DataFallbackException("read() - Corrupted record at offset " + position + " of segment "
+                        + segment + " of " + baseName);
+            } else {
+                break;
+            }
+        }
+        pendingCount += count;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("read() - " + objects.size() + " records have been read from segment " + segment + " of "
+                    + baseName);
+        }
+        return new FallbackObjectContainer(objects, count);
+    }
+
+    /**
+     * Forgets the records read beyond the given number of records after the
+     * checkpoint, so that they are read again by the next read.
+     *
+     * @param committed
+     *            number of records read after the checkpoint that were
+     *            committed
+     */
+    public final void rewind(final int committed) {
+        pendingCount = Math.max(0, Math.min(pendingCount, committed));
+    }
+
+    /**
+     * Moves the checkpoint after the given number of records read after it,
+     * in the order they were read. A segment is deleted once all its records
+     * are committed.
+     *
+     * @param numberOfRecords
+     *            number of records after the checkpoint that have been
+     *            committed
+     * @throws DataFallbackException
+     *             if the checkpoint cannot be written
+     */
+    public final void commit(final int numberOfRecords) throws DataFallbackException {
+        if (numberOfRecords <= 0) {
+            return;
+        }
+        if (numberOfRecords > pendingCount) {
+            throw new DataFallbackException("commit() - Only " + pendingCount + " records of " + baseName
+                    + " have been read, cannot commit " + numberOfRecords);
+        }
+        readSegment = pendingSegments[numberOfRecords - 1];
+        readOffset = pendingEnds[numberOfRecords - 1];
+        records -= numberOfRecords;
+        pendingCount -= numberOfRecords;
+        System.arraycopy(pendingSegments, numberOfRecords, pendingSegments, 0, pendingCount);
+        System.arraycopy(pendingEnds, numberOfRecords, pendingEnds, 0, pendingCount);
+
+        if (records == 0) {
+            // Everything has been replayed: the next records start a new segment
+            readSegment = segments.last() + 1;
+            readOffset = 0;
+            writeCheckpoint();
+            closeWriteChannel();
+            for (Long segment : new ArrayList<>(segments)) {
+                deleteSegment(segment);
+            }
+            return;
+        }
+        if (readSegment != segments.last() && readOffset >= segmentFile(readSegment).length()) {
+            readSegment = segments.higher(readSegment);
+            readOffset = 0;
+        }
+        writeCheckpoint();
+        while (segments.first() < readSegment) {
+            deleteSegment(segments.first());
+        }
+    }
+
+    /**
+     * Closes the open channels. The log can be opened again with a new
+     * instance.
+     */
+    public final void close() {
+        closeWriteChannel();
+        readMap = null;
+        readMapSegment = -1;
+    }
+
+    /**
+     * Returns the channel of the segment to append the given number of bytes to,
+     * starting a new segment if the current one would exceed the segment size.
+     */
+    private FileChannel openWriteChannel(final int bytes) throws IOException {
+        if (writeChannel != null && writeChannel.size() > 0 && writeChannel.size() + bytes > segmentSize) {
+            closeWriteChannel();
+            writeSegment = writeSegment + 1;
+        } else if (writeChannel == null) {
+            if (segments.isEmpty()) {
+                writeSegment = readSegment;
+            } else {
+                writeSegment = segments.last();
+                if (segmentFile(writeSegment).length() + bytes > segmentSize && segmentFile(writeSegment).length() > 0) {
+                    writeSegment++;
+                }
+            }
+        }
+        if (writeChannel == null) {
+            writeChannel = FileChannel.open(segmentFile(writeSegment).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (segments.add(writeSegment)) {
+                LOG.info("openWriteChannel() - Segment " + writeSegment + " of " + baseName + " created");
+            }
+        }
+        return writeChannel;
+    }
+
+    /**
+     * Closes the channel of the segment being appended to
+     */
+    private void closeWriteChannel() {
+        if (writeChannel != null) {
+            try {
+                writeChannel.close();
+            } catch (IOException e) {
+                LOG.error("closeWriteChannel() - Error while closing segment " + writeSegment + " of " + baseName, e);
+            }
+            writeChannel = null;
+        }
+    }
+
+    /**
+     * Maps the segment being replayed, remapping it if it has grown since it
+     * was last mapped.
+     */
+    private ByteBuffer mapSegment(final long segment) throws DataFallbackException {
+        File file = segmentFile(segment);
+        long size = file.length();
+        if (readMap == null || readMapSegment != segment || readMap.limit() < size) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                readMap = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                readMapSegment = segment;
+            } catch (IOException e) {
+                throw new DataFallbackException("mapSegment() - Segment " + segment + " of " + baseName
+                        + " could not be mapped: " + e.getMessage(), e);
+            }
+        }
+        return readMap;
+    }
+
+    /**
+     * Deletes a segment file
+     */
+    private void deleteSegment(final long segment) {
+        segments.remove(segment);
+        if (readMapSegment == segment) {
+            readMap = null;
+            readMapSegment = -1;
+        }
+        if (segmentFile(segment).delete()) {
+            LOG.info("deleteSegment() - Segment " + segment + " of " + baseName + " has been replayed and deleted");
+        } else if (segmentFile(segment).exists()) {
+            LOG.warn("deleteSegment() - Segment " + segment + " of " + baseName + " could not be deleted");
+        }
+    }
+
+    /**
+     * Writes the position of the next record to replay to the checkpoint file.
+     * The file is replaced atomically, so it always holds a valid checkpoint.
+     */
+    private void writeCheckpoint() throws DataFallbackException {
+        File tmp = new File(directory, checkpointFile.getName() + ".tmp");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp); DataOutputStream out = new DataOutputStream(fos)) {
+                out.writeLong(readSegment);
+                out.writeLong(readOffset);
+                out.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new DataFallbackException("writeCheckpoint() - The checkpoint of " + baseName
+                    + " could not be written: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the checkpoint and the existing segments: removes the segments that
+     * have already been replayed, truncates an incomplete record at the end of
+     * the last segment and counts the records that remain to be replayed.
+     */
+    private void recover() throws DataFallbackException {
+        String prefix = baseName + ".";
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(prefix) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(name.substring(prefix.length(),
+                                name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        LOG.warn("recover() - Ignoring file " + name + " which is not a segment of " + baseName);
+                    }
+                }
+            }
+        }
+
+        readSegment = segments.isEmpty() ? 1 : segments.first();
+        readOffset = 0;
+        if (checkpointFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile))) {
+                readSegment = in.readLong();
+                readOffset = in.readLong();
+            } catch (IOException e) {
+                throw new DataFallbackException("recover() - The checkpoint of " + baseName + " could not be read: "
+                        + e.getMessage(), e);
+            }
+        }
+        while (!segments.isEmpty() && segments.first() < readSegment) {
+            deleteSegment(segments.first());
+        }
+        if (!segments.isEmpty() && segments.first() > readSegment) {
+            readSegment = segments.first();
+            readOffset = 0;
+        }
+
+        records = 0;
+        for (Long segment : segments) {
+            long from = segment == readSegment ? readOffset : 0;
+            long validEnd = countRecords(segment, from);
+            File file = segmentFile(segment);
+            if (validEnd < file.length()) {
+                if (segment.equals(segments.last())) {
+                    LOG.warn("recover() - Truncating an incomplete record at offset " + validEnd + " of segment "
+                            + segment + " of " + baseName);
+                    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                        channel.truncate(validEnd);
+                    } catch (IOException e) {
+                        throw new DataFallbackException("recover() - Segment " + segment + " of " + baseName
+                                + " could not be truncated: " + e.getMessage(), e);
+                    }
+                } else {
+                    LOG.error("recover() - Corrupted record at offset " + validEnd + " of segment " + segment + " of "
+                            + baseName + ", the rest of the segment will be skipped");
+                }
+            }
+        }
+        writeCheckpoint();
+    }
+
+    /**
+     * Counts the valid records of a segment from the given offset, adding them
+     * to the number of records to replay.
+     *
+     * @return the end offset of the last valid record
+     */
+    private long countRecords(final long segment, final long from) throws DataFallbackException {
+        File file = segmentFile(segment);
+        long position = from;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            byte[] bytes = new byte[0];
+            while (map.limit() - position >= HEADER_SIZE) {
+                int length = map.getInt((int) position);
+                int checksum = map.getInt((int) position + 4);
+                if (length < 0 || map.limit() - position - HEADER_SIZE < length) {
+                    break;
+                }
+                if (bytes.length < length) {
+                    bytes = new byte[length];
+                }
+                map.position((int) position + HEADER_SIZE);
+                map.get(bytes, 0, length);
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                position += HEADER_SIZE + length;
+                records++;
+            }
+        } catch (IOException e) {
+            throw new DataFallbackException("recover() - Segment " + segment + " of " + baseName
+                    + " could not be read: " + e.getMessage(), e);
+        }
+        return position;
+    }
+
+    /**
+     * @return the file of the segment with the given sequence number
+     */
+    private File segmentFile(final long segment) {
+        return new File(directory, String.format("%s.%012d%s", baseName, segment, SEGMENT_SUFFIX));
+    }
+}
@@ -16,6 +16,7 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.fallback.manager;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -24,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.pmanager.fallback.FallbackFileController;
 import cern.c2mon.pmanager.fallback.FallbackProperties;
+import cern.c2mon.pmanager.fallback.SegmentedFallbackLog;
 import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
 import cern.c2mon.pmanager.fallback.exception.SystemDiskSpaceException;
 import cern.c2mon.pmanager.fallback.util.SystemResourcesParameters;
@@ -45,6 +47,19 @@ public class FallbackFileManager {
     /** FallbackFileController instance */
     private final FallbackFileController fFileController;
 
+    /**
+     * Segmented log the data is written to, if enabled
+     * (<code>fallback.segmented</code>). The fallback file is then only
+     * replayed, if it still contains data of a previous run
+     */
+    private final SegmentedFallbackLog segmentedLog;
+
+    /**
+     * Whether the data returned by the last read comes from the fallback file
+     * (true) or from the segmented log (false)
+     */
+    private boolean replayingFile;
+
     /**
      * Indicates which type of IFallback objects will be handled by this class
      * and by its FallbackFileController instance
@@ -84,8 +99,36 @@ public class FallbackFileManager {
      *
      */
     public FallbackFileManager(final String fallbackFile, final IFallback fallbackObj) {
+        this(fallbackFile, fallbackObj, FallbackProperties.getInstance().isSegmented());
+    }
+
+    /**
+     * Constructor choosing the fallback mechanism
+     *
+     * @param fallbackFile
+     *            The absolute path for the fallback file
+     * @param fallbackObj
+     *            IFallback object used for knowing with which concrete
+     *            implementation of the interface deals each instance of this
+     *            class
+     * @param segmented
+     *            Whether the data is written to a segmented log next to the
+     *            fallback file (true) or to the fallback file itself (false)
+     */
+    public FallbackFileManager(final String fallbackFile, final IFallback fallbackObj, final boolean segmented) {
         this.fFileController = new FallbackFileController(fallbackFile);
         this.fallbackObj = fallbackObj;
+        SegmentedFallbackLog log = null;
+        if (segmented) {
+            try {
+                log = new SegmentedFallbackLog(fallbackFile,
+                        FallbackProperties.getInstance().getSegmentSize() * 1024L * 1024L);
+            } catch (DataFallbackException e) {
+                LOG.error("FallbackFileManager() - The segmented log could not be opened, using the fallback file "
+                        + fallbackFile + " instead", e);
+            }
+        }
+        this.segmentedLog = log;
     }
 
     /**
@@ -99,6 +142,10 @@ public class FallbackFileManager {
      */
     public final void fallback(final List data) throws DataFallbackException {
 
+        if (segmentedLog != null) {
+            segmentedLog.append(data);
+            return;
+        }
         // If the file is empty we close the reading descriptor since it means
         // that a new file is going to be created
         if (isFallbackFileEmpty())
@@ -125,6 +172,10 @@ public class FallbackFileManager {
      */
     public final void fallback(final IFallback fallbackObj) throws DataFallbackException {
 
+        if (segmentedLog != null) {
+            segmentedLog.append(Collections.singletonList(fallbackObj));
+            return;
+        }
         try {
             // If the file is empty we close the reading descriptor since it
             // means that
@@ -158,12 +209,12 @@ public class FallbackFileManager {
         final FallbackProperties fProperties = FallbackProperties.getInstance();
         boolean checkDone = false;
 
-        if (fFileController.getNumberOfLines() > nextCheckFallbackData) {
+        if (getNumberOfLines() > nextCheckFallbackData) {
             checkDone = true;
             if (LOG.isDebugEnabled())
                 LOG
                         .debug("isDiskSpaceCheckDone() : Doing the check since the number of lines are "
-                                + fFileController.getNumberOfLines()
+                                + getNumberOfLines()
                                 + " and the current value for nextcheck is "
                                 + nextCheckFallbackData);
             long freeSpace = SystemResourcesParameters.getFreeSpace();
@@ -172,7 +223,7 @@ public class FallbackFileManager {
                 throw new SystemDiskSpaceException("Reached the limit of free space of "
                         + minimumFreeSpace + ", current free space is " + freeSpace);
             } else {
-                nextCheckFallbackData = fFileController.getNumberOfLines()
+                nextCheckFallbackData = getNumberOfLines()
                         + fProperties.getFreeSpaceCheckFrequency();
                 if (LOG.isDebugEnabled())
                     LOG.debug("isDiskSpaceCheckDone() : New value of nextCheckDataTags is "
@@ -203,6 +254,10 @@ public class FallbackFileManager {
      *             reading the file
      */
     public final FallbackObjectContainer readDataBack(final int numberOfLines) throws DataFallbackException {
+        replayingFile = segmentedLog == null || fFileController.getNumberOfLines() > 0;
+        if (!replayingFile) {
+            return segmentedLog.read(numberOfLines, fallbackObj);
+        }
         // close the outputstream if it was still opened
         fFileController.closeFallbackOutputStream();
         fFileController.openFallbackInputStream();
@@ -230,6 +285,18 @@ public class FallbackFileManager {
 
         boolean removed = true;
 
+        if (!replayingFile) {
+            try {
+                segmentedLog.commit(numberOfLines);
+                if (segmentedLog.isEmpty()) {
+                    resetNextDiscSpaceCheck();
+                }
+            } catch (DataFallbackException e) {
+                removed = false;
+                LOG.error("Exception caught while attempting to remove records from the segmented log", e);
+            }
+            return removed;
+        }
         // Update the number of already committed datatags
         fFileController.setReadBackLines(numberOfLines + fFileController.getReadBackLines());
         // Virtually remove those datatags from the file
@@ -282,6 +349,10 @@ public class FallbackFileManager {
      */
     public final void goToLastProcessedLine(final int lastCommited)
             throws DataFallbackException {
+        if (!replayingFile) {
+            segmentedLog.rewind(lastCommited);
+            return;
+        }
         fFileController.closeFallbackInputStream();
         int readLines = fFileController.getReadBackLines();
         fFileController.goToLine(readLines + lastCommited);
@@ -293,13 +364,41 @@ public class FallbackFileManager {
      * @return The value indicating the status of the log
      */
     public final boolean isFallbackFileEmpty() {
-        return !((fFileController.getNumberOfLines()) > 0);
+        return !((fFileController.getNumberOfLines()) > 0) && (segmentedLog == null || segmentedLog.isEmpty());
+    }
+
+    /**
+     * Returns the number of lines (or records of the segmented log) that have
+     * not been committed back to the DB yet
+     *
+     * @return The backlog of the fallback mechanism
+     */
+    public final int getBacklog() {
+        int backlog = fFileController.getNumberOfLines() - fFileController.getReadBackLines();
+        if (segmentedLog != null) {
+            backlog += segmentedLog.getNumberOfRecords();
+        }
+        return backlog;
+    }
+
+    /**
+     * @return the number of lines (or records) written to the fallback mechanism
+     */
+    private int getNumberOfLines() {
+        int lines = fFileController.getNumberOfLines();
+        if (segmentedLog != null) {
+            lines += segmentedLog.getNumberOfRecords();
+        }
+        return lines;
     }
 
     /**
      * It releases the object memory
      */
     public final void finalize() {
+        if (segmentedLog != null) {
+            segmentedLog.close();
+        }
         this.fFileController.finalize();
     }
 }
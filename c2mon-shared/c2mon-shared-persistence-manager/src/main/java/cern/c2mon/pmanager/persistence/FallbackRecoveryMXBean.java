@@ -0,0 +1,67 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.pmanager.persistence;
+
+/**
+ * Management interface exposing the progress of the recovery of the data
+ * stored in the fallback mechanism back to the DB. Being an MXBean, it is
+ * exported by the JMX exporter of the application context the persistence
+ * manager is declared in.
+ */
+public interface FallbackRecoveryMXBean {
+
+    /**
+     * @return whether the data of the fallback mechanism is being committed
+     *         back to the DB
+     */
+    boolean isRecoveryRunning();
+
+    /**
+     * @return the number of lines of the fallback mechanism that have not been
+     *         committed back to the DB yet
+     */
+    int getBacklog();
+
+    /**
+     * @return the number of lines committed back to the DB by the current (or
+     *         last) recovery
+     */
+    long getRecoveredLines();
+
+    /**
+     * @return the number of lines per second committed back to the DB by the
+     *         current (or last) recovery
+     */
+    double getRecoveryRate();
+
+    /**
+     * @return the estimated number of seconds needed to commit the backlog at
+     *         the current recovery rate, or -1 if no recovery is running
+     */
+    long getEstimatedSecondsToDrain();
+
+    /**
+     * @return the number of threads committing the fallback data in parallel
+     */
+    int getRecoveryWorkers();
+
+    /**
+     * @return the maximum number of lines per second committed back to the DB,
+     *         0 for no limit
+     */
+    int getRecoveryMaxRate();
+}
@@ -18,6 +18,7 @@ package cern.c2mon.pmanager.persistence.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +31,7 @@ import cern.c2mon.pmanager.fallback.FallbackProperties;
 import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
 import cern.c2mon.pmanager.fallback.exception.SystemDiskSpaceException;
 import cern.c2mon.pmanager.fallback.manager.FallbackFileManager;
+import cern.c2mon.pmanager.persistence.FallbackRecoveryMXBean;
 import cern.c2mon.pmanager.persistence.IPersistenceManager;
 import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
 import cern.c2mon.pmanager.persistence.util.DataRecoveryThread;
@@ -44,10 +46,14 @@ import cern.c2mon.pmanager.persistence.util.DataRecoveryThread;
  * activated and deactivated. The deactivation will take place as soon as it is
  * detected that the DB issues have been sorted out. At that same time the data
  * stored in the file will be committed back to the DB.
+ * <p>
+ * The progress of the recovery is exposed through the
+ * {@link FallbackRecoveryMXBean} interface.
  *
  * @author mruizgar
  */
-public class PersistenceManager<T extends IFallback> implements IPersistenceManager<T>, FallbackAlarmsInterface {
+public class PersistenceManager<T extends IFallback> implements IPersistenceManager<T>, FallbackAlarmsInterface,
+    FallbackRecoveryMXBean {
 
   /**
    * Implementation of the IDBPersistenceHandler interface that will be used
@@ -61,6 +67,24 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
    */
   private int sleepTime = -1;
 
+  /**
+   * Number of threads committing the data of the fallback file back to the DB
+   * in parallel
+   */
+  private int recoveryWorkers = FallbackProperties.getInstance().getRecoveryWorkers();
+
+  /**
+   * Maximum number of lines per second committed back to the DB by the
+   * DataRecoveryThread, 0 for no limit
+   */
+  private int recoveryMaxRate = FallbackProperties.getInstance().getRecoveryMaxRate();
+
+  /**
+   * Number of calls to storeData in progress, to which the DataRecoveryThread
+   * gives way
+   */
+  private final AtomicInteger liveStores = new AtomicInteger();
+
   /**
    * Implementation of the IAlarmSender interface that will be used to send
    * alarms
@@ -81,7 +105,7 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
    * avoid that the same fallback file tries to be treated by different
    * threads at the same time
    */
-  private DataRecoveryThread dataRecovery = new DataRecoveryThread(this);
+  private volatile DataRecoveryThread dataRecovery = new DataRecoveryThread(this);
 
   /**
    * Log4j Logger for this class
@@ -135,6 +159,71 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     this.sleepTime = sleepTime;
   }
 
+  /**
+   * @param recoveryWorkers the number of threads committing the fallback data
+   *                        back to the DB in parallel
+   */
+  public final void setRecoveryWorkers(final int recoveryWorkers) {
+    this.recoveryWorkers = recoveryWorkers;
+  }
+
+  @Override
+  public final int getRecoveryWorkers() {
+    return recoveryWorkers;
+  }
+
+  /**
+   * @param recoveryMaxRate the maximum number of lines per second committed
+   *                        back to the DB, 0 for no limit
+   */
+  public final void setRecoveryMaxRate(final int recoveryMaxRate) {
+    this.recoveryMaxRate = recoveryMaxRate;
+  }
+
+  @Override
+  public final int getRecoveryMaxRate() {
+    return recoveryMaxRate;
+  }
+
+  /**
+   * @return whether live data is being stored
+   */
+  public final boolean isStoringLiveData() {
+    return liveStores.get() > 0;
+  }
+
+  @Override
+  public final boolean isRecoveryRunning() {
+    DataRecoveryThread recovery = dataRecovery;
+    return recovery != null && recovery.isRunning();
+  }
+
+  @Override
+  public final int getBacklog() {
+    return fallbackManager.getBacklog();
+  }
+
+  @Override
+  public final long getRecoveredLines() {
+    DataRecoveryThread recovery = dataRecovery;
+    return recovery == null ? 0 : recovery.getRecoveredLines();
+  }
+
+  @Override
+  public final double getRecoveryRate() {
+    DataRecoveryThread recovery = dataRecovery;
+    return recovery == null ? 0 : recovery.getRecoveryRate();
+  }
+
+  @Override
+  public final long getEstimatedSecondsToDrain() {
+    double rate = getRecoveryRate();
+    if (!isRecoveryRunning() || rate <= 0) {
+      return -1;
+    }
+    return (long) Math.ceil(getBacklog() / rate);
+  }
+
   /**
    * @param minFreeDiscSpace the minFreeDiscSpace to set
    */
@@ -176,7 +265,14 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
    */
   @Override
   public final void storeData(final List<T> data) {
-    if (log(data) && !fallbackManager.isFallbackFileEmpty()) {
+    boolean dbUp;
+    liveStores.incrementAndGet();
+    try {
+      dbUp = log(data);
+    } finally {
+      liveStores.decrementAndGet();
+    }
+    if (dbUp && !fallbackManager.isFallbackFileEmpty()) {
       if (!this.dataRecovery.isRunning()) {
         dataRecovery.setPersistenceManager(this);
         new Thread(dataRecovery).start();
@@ -195,7 +291,14 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
    */
   @Override
   public final void storeData(final T object) {
-    if (log(object) && !fallbackManager.isFallbackFileEmpty()) {
+    boolean dbUp;
+    liveStores.incrementAndGet();
+    try {
+      dbUp = log(object);
+    } finally {
+      liveStores.decrementAndGet();
+    }
+    if (dbUp && !fallbackManager.isFallbackFileEmpty()) {
       if (!this.dataRecovery.isRunning()) {
         dataRecovery.setPersistenceManager(this);
         new Thread(dataRecovery).start();
@@ -16,20 +16,41 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.persistence.util;
 
-import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.pmanager.alarm.FallbackAlarmsInterface;
 import cern.c2mon.pmanager.fallback.FallbackProperties;
 import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackFileManager;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
 import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
 import cern.c2mon.pmanager.persistence.impl.PersistenceManager;
 
 /**
  * This class implements the Runnable interface. It runs as a separate thread
  * that takes care of committing back to the DB that data stored in a fallback
- * file
+ * file.
+ * <p>
+ * The data is read from the fallback file in bunches, which are committed by
+ * a configurable number of workers in parallel. A bunch is removed from the
+ * fallback file once it and all the bunches read before it have been
+ * committed. The fallback file is only locked while reading and removing
+ * bunches, so that live data can still be written to it during the recovery.
+ * The recovery gives way to the live data being stored and can be limited to
+ * a maximum number of lines per second.
  *
  * @author mruizgar
  *
@@ -40,7 +61,7 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
      * It indicates whether a thread of this class has been already started and
      * it is running
      */
-    private boolean stopped = true;
+    private volatile boolean stopped = true;
 
     /** Log4j Logger for this class (debug and error messages) */
     private static final Logger LOG = LoggerFactory.getLogger(DataRecoveryThread.class);
@@ -54,6 +75,12 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
      */
     private static final int DEFAULT_SLEEP_TIME = 500;
 
+    /**
+     * Maximum number of miliseconds the reading of a bunch is delayed while
+     * live data is being stored
+     */
+    private static final int MAX_LIVE_DATA_WAIT = 1000;
+
     /**
      * Instance to the PersistenceManager object that created this object.
      * This way the thread will be able to access its fields knowing from which
@@ -61,6 +88,15 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
      */
     private PersistenceManager persistenceManager = null;
 
+    /** Number of lines committed back to the DB by the current (or last) recovery */
+    private volatile long recoveredLines;
+
+    /** Start time of the current (or last) recovery */
+    private volatile long recoveryStart;
+
+    /** End time of the last recovery, 0 while a recovery is running */
+    private volatile long recoveryEnd;
+
     /**
      * @param persistenceManager
      *            the persistenceManager to set
@@ -92,6 +128,27 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
         return !stopped;
     }
 
+    /**
+     * @return the number of lines committed back to the DB by the current (or
+     *         last) recovery
+     */
+    public final long getRecoveredLines() {
+        return recoveredLines;
+    }
+
+    /**
+     * @return the number of lines per second committed back to the DB by the
+     *         current (or last) recovery
+     */
+    public final double getRecoveryRate() {
+        long start = recoveryStart;
+        if (start == 0) {
+            return 0;
+        }
+        long end = recoveryEnd == 0 ? System.currentTimeMillis() : recoveryEnd;
+        return recoveredLines * 1000.0 / Math.max(1, end - start);
+    }
+
     /**
      * It stops the thread and removes the reference to the
      * PersistenceManager object so its memory can be released by the garbage
@@ -112,44 +169,97 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
     }
 
     /**
-     * This method calls the functionality defined in the FallbackHelper class
-     * to achieve the process of committing back into the DB those tags that
-     * have been stored in the fallback files while the DB connection was broken
+     * Reads the data stored in the fallback file in bunches and has them
+     * committed back into the DB by the workers, until the fallback file is
+     * empty or the DB cannot be written
      */
     public final void run() {
-        boolean committed = true;
-
         stopped = false;
+        recoveredLines = 0;
+        recoveryStart = System.currentTimeMillis();
+        recoveryEnd = 0;
         if (FALLBACK_LOG.isDebugEnabled())
             FALLBACK_LOG.debug("Thread of instance " + this.hashCode() + " beginning");
-        synchronized (persistenceManager.getFallbackManager().getFallbackFileController()) {
-            while (!persistenceManager.getFallbackManager().isFallbackFileEmpty() && committed
-                    && isRunning()) {
-                int numberOfTags;
-                // The data from the log file will be read from the file and
-                // committed in the database in bunches of a defined size
-                numberOfTags = commitFallbackData();
-                if (numberOfTags > 0) {
-                    // Remove the dataTags that have been committed back from
-                    // the fallback file
-                    removeReadData(numberOfTags);
+
+        final FallbackFileManager fallbackManager = persistenceManager.getFallbackManager();
+        final int workers = Math.max(1, persistenceManager.getRecoveryWorkers());
+        final int maxRate = persistenceManager.getRecoveryMaxRate();
+        ExecutorService executor = null;
+        if (workers > 1) {
+            executor = Executors.newFixedThreadPool(workers,
+                    new RecoveryThreadFactory(fallbackManager.getFallbackFileController().getDataFile().getName()));
+        }
+
+        // Bunches being committed, in the order they were read
+        Deque<RecoveryBunch> inFlight = new ArrayDeque<>();
+        long nextBunchTime = System.nanoTime();
+        boolean committed = true;
+        boolean readFailed = false;
+        try {
+            while (committed && isRunning()) {
+                committed = commitCompletedBunches(inFlight);
+                if (!committed) {
+                    break;
+                }
+                if (inFlight.size() >= workers) {
+                    inFlight.peekFirst().await();
+                    continue;
                 }
-                if (numberOfTags == 0) {
-                    committed = false;
+                waitForLiveData();
+
+                FallbackObjectContainer data = null;
+                synchronized (fallbackManager.getFallbackFileController()) {
+                    if (!fallbackManager.isFallbackFileEmpty()) {
+                        data = readBunch();
+                        readFailed = data == null;
+                    }
+                }
+                if (readFailed) {
+                    break;
                 }
-                try {
+                if (data == null || data.getReadLines() == 0) {
+                    if (inFlight.isEmpty()) {
+                        // The fallback file is empty or nothing more could be read
+                        break;
+                    }
+                    inFlight.peekFirst().await();
+                    continue;
+                }
+
+                if (maxRate > 0) {
+                    // Limit the number of lines per second sent to the DB
+                    long now = System.nanoTime();
+                    if (nextBunchTime > now) {
+                        TimeUnit.NANOSECONDS.sleep(nextBunchTime - now);
+                    }
+                    nextBunchTime = Math.max(now, nextBunchTime)
+                            + TimeUnit.SECONDS.toNanos(data.getReadLines()) / maxRate;
+                }
+                RecoveryBunch bunch = new RecoveryBunch(data);
+                inFlight.addLast(bunch);
+                if (executor != null) {
+                    executor.execute(bunch.task);
+                } else {
+                    bunch.task.run();
+                }
+                if (maxRate <= 0) {
                     Thread.sleep(persistenceManager.getSleepTime());
-                } catch (InterruptedException e) {
-                    FALLBACK_LOG.error("An error occurred while trying to make the thread to sleep");
                 }
             }
+            commitAfterFailure(inFlight, readFailed);
+        } catch (InterruptedException e) {
+            FALLBACK_LOG.error("The recovery thread was interrupted, the bunches being committed will be read again");
+            Thread.currentThread().interrupt();
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
         }
-        /*
-         * if (!isRunning()) { // The thread was externally stopped by
-         * persistenceManager who needs to be destroyed and therefore // we need
-         * to remove the reference to it, so the garbage collector can done its
-         * work persistenceManager = null;
-         */
+
+        recoveryEnd = System.currentTimeMillis();
+        FALLBACK_LOG.info("Recovery of " + fallbackManager.getFallbackFileController().getDataFile().getName()
+                + " ended: " + recoveredLines + " lines committed back to the DB at " + (long) getRecoveryRate()
+                + " lines/s, " + fallbackManager.getBacklog() + " lines left");
         stopped = true;
         persistenceManager = null;
         if (FALLBACK_LOG.isDebugEnabled()) {
@@ -161,61 +271,119 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
     }
 
     /**
-     * Reads back data from a fallback file and commits it to the DB.
-     *
-     * @return An integer value indicating the number of fallback lines that
-     *         were read from the fallback log file and successfully committed
-     *         to the DB
+     * Reads the next bunch of data from the fallback file. Must be called
+     * while holding the lock of the fallback file.
      *
+     * @return The data read, or null if the file could not be read
      */
-    private int commitFallbackData() {
-
-        FallbackObjectContainer data = null;
-        int committed = 0;
-
+    private FallbackObjectContainer readBunch() {
         if (FALLBACK_LOG.isDebugEnabled())
             FALLBACK_LOG
-                    .debug("commitFallbackData() : Committing the tags stored in the logfile back into the database");
+                    .debug("readBunch() : Reading the tags stored in the logfile to commit them back into the database");
         try {
-            // Get all the datatags stored in the log file
-            data = persistenceManager.getFallbackManager().readDataBack(
+            return persistenceManager.getFallbackManager().readDataBack(
                     FallbackProperties.getInstance().getNumberLinesToReadFromFile());
-            // Insert the datatags into the database
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("commitFallBackData() - Inserting " + data.getReadLines()
-                        + " tags from the fallback file into the database");
+        } catch (DataFallbackException ex) {
+            FALLBACK_LOG.error("readBunch() : Unable to read the data from the log file ", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Removes from the fallback file the bunches at the head of the queue that
+     * have been committed
+     *
+     * @param inFlight
+     *            The bunches being committed, in the order they were read
+     * @return false if the bunch at the head of the queue could not be
+     *         committed
+     */
+    private boolean commitCompletedBunches(final Deque<RecoveryBunch> inFlight) {
+        while (!inFlight.isEmpty() && inFlight.peekFirst().task.isDone()) {
+            RecoveryBunch bunch = inFlight.peekFirst();
+            if (bunch.failed) {
+                return false;
+            }
+            inFlight.pollFirst();
+            synchronized (persistenceManager.getFallbackManager().getFallbackFileController()) {
+                removeReadData(bunch.lines);
             }
+            recoveredLines += bunch.lines;
+        }
+        return true;
+    }
 
-            persistenceManager.getDbHandler().storeData(data.getObjects());
-            committed = data.getReadLines();
-        } catch (IDBPersistenceException e) {
-            FALLBACK_LOG.error(
-                    "CommitFallBackData : Error executing/committing prepared statement.", e);
+    /**
+     * Waits for the bunches being committed and removes from the fallback file
+     * those that precede the first one that could not be committed, as well as
+     * the part of that one that was committed. The file descriptor is placed
+     * after them, so that the rest is read again by the next recovery.
+     *
+     * @param inFlight
+     *            The bunches being committed, in the order they were read
+     * @param readFailed
+     *            Whether the reading of the fallback file failed, in which
+     *            case the file descriptor is placed after the committed lines
+     *            even if no bunch is being committed
+     * @throws InterruptedException
+     *             if interrupted while waiting for the bunches
+     */
+    private void commitAfterFailure(final Deque<RecoveryBunch> inFlight, final boolean readFailed)
+            throws InterruptedException {
+        int committed = 0;
+        int discarded = 0;
+        boolean complete = true;
+        for (RecoveryBunch bunch : inFlight) {
+            bunch.await();
+            if (!complete) {
+                discarded += bunch.failed ? bunch.committed : bunch.lines;
+            } else if (bunch.failed) {
+                FALLBACK_LOG.error("CommitFallBackData : Error executing/committing prepared statement.",
+                        bunch.error);
+                committed += bunch.committed;
+                complete = false;
+            } else {
+                committed += bunch.lines;
+            }
+        }
+        if (inFlight.isEmpty() && !readFailed) {
+            return;
+        }
+        if (discarded > 0) {
+            FALLBACK_LOG.warn("commitAfterFailure() : " + discarded + " lines committed after a failed bunch"
+                    + " will be committed again by the next recovery");
+        }
+        synchronized (persistenceManager.getFallbackManager().getFallbackFileController()) {
             try {
                 // We reset the file descriptor to the last committed line,
-                // ignoring those last ones
-                // that have been already read, but not committed
-                committed = e.getCommited();
-                persistenceManager.getFallbackManager().goToLastProcessedLine(e.getCommited());
+                // ignoring those last ones that have been already read, but
+                // not committed
+                persistenceManager.getFallbackManager().goToLastProcessedLine(committed);
             } catch (DataFallbackException fe) {
                 FALLBACK_LOG
                         .error("CommitFallBackData : The file desciptor could not be placed in the right place,"
                                 + " some tags will be ignored" + fe);
             }
-        } catch (DataFallbackException ex) {
-            FALLBACK_LOG.error(
-                    "commitFallBackData() : Unable to read the data from the log file ", ex);
-            try {
-                // Place the cursor in the last processed line, as if this
-                // called had never been made
-                persistenceManager.getFallbackManager().goToLastProcessedLine(committed);
-            } catch (DataFallbackException fe) {
-                FALLBACK_LOG
-                        .error("CommitFallBackLogs : The file desciptor could not be placed in the right place,"
-                                + " some tags will be ignored" + fe);
+            if (committed > 0) {
+                removeReadData(committed);
             }
         }
-        return committed;
+        recoveredLines += committed;
+        inFlight.clear();
+    }
+
+    /**
+     * Delays the reading of the next bunch while live data is being stored,
+     * for at most {@link #MAX_LIVE_DATA_WAIT} miliseconds
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private void waitForLiveData() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + MAX_LIVE_DATA_WAIT;
+        while (persistenceManager.isStoringLiveData() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
     }
 
     /**
@@ -253,4 +421,98 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
         }
         persistenceManager = null;
     }
+
+    /**
+     * A bunch of data read from the fallback file, committed to the DB by one
+     * of the workers
+     */
+    private final class RecoveryBunch implements Runnable {
+
+        /** The objects to commit */
+        private final List<IFallback> objects;
+
+        /** Number of lines of the fallback file the objects were read from */
+        private final int lines;
+
+        /** The task committing the objects */
+        private final FutureTask<Void> task = new FutureTask<>(this, null);
+
+        /** Whether the objects could not be committed */
+        private volatile boolean failed;
+
+        /** Number of lines committed before a failure */
+        private volatile int committed;
+
+        /** The cause of the failure */
+        private volatile Exception error;
+
+        /**
+         * @param data
+         *            The data read from the fallback file
+         */
+        private RecoveryBunch(final FallbackObjectContainer data) {
+            this.objects = data.getObjects();
+            this.lines = data.getReadLines();
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("commitFallBackData() - Inserting " + lines
+                            + " tags from the fallback file into the database");
+                }
+                persistenceManager.getDbHandler().storeData(objects);
+                committed = lines;
+            } catch (IDBPersistenceException e) {
+                committed = e.getCommited();
+                error = e;
+                failed = true;
+            } catch (RuntimeException e) {
+                error = e;
+                failed = true;
+            }
+        }
+
+        /**
+         * Waits until the objects have been committed or failed
+         *
+         * @throws InterruptedException
+         *             if interrupted while waiting
+         */
+        private void await() throws InterruptedException {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                // Failures are recorded in the bunch
+            }
+        }
+    }
+
+    /**
+     * Creates the worker threads of a recovery
+     */
+    private static final class RecoveryThreadFactory implements ThreadFactory {
+
+        /** Name of the fallback file */
+        private final String fileName;
+
+        /** Number of the next thread */
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        /**
+         * @param fileName
+         *            Name of the fallback file being recovered
+         */
+        private RecoveryThreadFactory(final String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, "FallbackRecovery-" + fileName + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,200 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.pmanager.fallback;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cern.c2mon.pmanager.IFallback;
+import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
+import cern.c2mon.pmanager.mock.FallbackImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JUnit test for the SegmentedFallbackLog class
+ */
+public class SegmentedFallbackLogTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The fallback file path
+   */
+  private String fallbackPath;
+
+  @Before
+  public void setUp() {
+    fallbackPath = new File(folder.getRoot(), "DataTagFallback.log").getAbsolutePath();
+  }
+
+  /**
+   * Records are replayed in order, across segments, and the replayed segments
+   * are deleted
+   */
+  @Test
+  public final void testAppendReadCommit() throws DataFallbackException {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath, 200);
+    log.append(objects(0, 5));
+    log.append(objects(5, 10));
+    assertEquals(10, log.getNumberOfRecords());
+    assertTrue("Expected several segments", segmentFiles().length > 1);
+
+    List<String> replayed = new ArrayList<>();
+    while (!log.isEmpty()) {
+      FallbackObjectContainer container = log.read(3, new FallbackImpl());
+      assertTrue(container.getReadLines() > 0);
+      for (IFallback object : container.getObjects()) {
+        replayed.add(object.toString());
+      }
+      log.commit(container.getReadLines());
+    }
+    assertEquals(lines(0, 10), replayed);
+    assertEquals(0, segmentFiles().length);
+
+    log.append(objects(10, 11));
+    assertEquals(lines(10, 11), toLines(log.read(10, new FallbackImpl())));
+    log.close();
+  }
+
+  /**
+   * Records that have been read but not committed are read again
+   */
+  @Test
+  public final void testRewind() throws DataFallbackException {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath, 1024 * 1024);
+    log.append(objects(0, 5));
+    assertEquals(5, log.read(5, new FallbackImpl()).getReadLines());
+    log.rewind(2);
+    log.commit(2);
+    assertEquals(lines(2, 5), toLines(log.read(5, new FallbackImpl())));
+    log.close();
+  }
+
+  /**
+   * Several reads can be outstanding, across segments, and are committed in
+   * the order they were read
+   */
+  @Test
+  public final void testReadAhead() throws DataFallbackException {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath, 200);
+    log.append(objects(0, 10));
+    List<String> replayed = new ArrayList<>();
+    List<Integer> reads = new ArrayList<>();
+    FallbackObjectContainer container;
+    while ((container = log.read(3, new FallbackImpl())).getReadLines() > 0) {
+      replayed.addAll(toLines(container));
+      reads.add(container.getReadLines());
+    }
+    assertEquals(lines(0, 10), replayed);
+    assertEquals(10, log.getNumberOfRecords());
+
+    log.commit(reads.get(0));
+    log.rewind(reads.get(1));
+    log.commit(reads.get(1));
+    int committed = reads.get(0) + reads.get(1);
+    assertEquals(10 - committed, log.getNumberOfRecords());
+
+    replayed.clear();
+    while ((container = log.read(10, new FallbackImpl())).getReadLines() > 0) {
+      replayed.addAll(toLines(container));
+      log.commit(container.getReadLines());
+    }
+    assertEquals(lines(committed, 10), replayed);
+    assertTrue(log.isEmpty());
+    assertEquals(0, segmentFiles().length);
+    log.close();
+  }
+
+  /**
+   * A new instance resumes the replay at the checkpoint and truncates an
+   * incomplete record at the end of the log
+   */
+  @Test
+  public final void testRecovery() throws DataFallbackException, IOException {
+    SegmentedFallbackLog log = new SegmentedFallbackLog(fallbackPath, 1024 * 1024);
+    log.append(objects(0, 4));
+    log.read(2, new FallbackImpl());
+    log.commit(2);
+    log.close();
+
+    File segment = segmentFiles()[0];
+    long length = segment.length();
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.seek(length);
+      file.writeInt(100);
+      file.writeInt(0);
+      file.write(new byte[10]);
+    }
+
+    log = new SegmentedFallbackLog(fallbackPath, 1024 * 1024);
+    assertEquals(2, log.getNumberOfRecords());
+    assertEquals(length, segment.length());
+    log.append(objects(4, 5));
+    assertEquals(lines(2, 5), toLines(log.read(10, new FallbackImpl())));
+    log.commit(3);
+    assertTrue(log.isEmpty());
+    log.close();
+
+    log = new SegmentedFallbackLog(fallbackPath, 1024 * 1024);
+    assertTrue(log.isEmpty());
+    assertFalse(log.read(10, new FallbackImpl()).getReadLines() > 0);
+    log.close();
+  }
+
+  private File[] segmentFiles() {
+    return folder.getRoot().listFiles((dir, name) -> name.endsWith(".seg"));
+  }
+
+  private static List<FallbackImpl> objects(final int from, final int to) {
+    List<FallbackImpl> objects = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      FallbackImpl object = new FallbackImpl();
+      object.setObjectData("1000" + i + "\tCP.MEY.TEST" + i + ":TEST_STATE\tfalse\tBoolean\t2009-01-15 10:06:34.562");
+      objects.add(object);
+    }
+    return objects;
+  }
+
+  private static List<String> lines(final int from, final int to) {
+    List<String> lines = new ArrayList<>();
+    for (FallbackImpl object : objects(from, to)) {
+      lines.add(object.toString());
+    }
+    return lines;
+  }
+
+  private static List<String> toLines(final FallbackObjectContainer container) {
+    List<String> lines = new ArrayList<>();
+    for (IFallback object : container.getObjects()) {
+      lines.add(object.toString());
+    }
+    return lines;
+  }
+}
@@ -113,4 +113,32 @@ public class FallbackFileManagerTest {
     }
     Assert.assertEquals("Should be 100", nCheck, fFileManager.getNextCheckFallbackData());
   }
+
+  /**
+   * Tests the fallback mechanism with the segmented log: the data written is
+   * read back and removed once committed
+   */
+  @Test
+  public final void testSegmentedFallback() throws IOException, DataFallbackException {
+    final File fallbackFile = File.createTempFile("SegmentedFallback", ".log");
+    fallbackFile.deleteOnExit();
+    FallbackFileManager manager = new FallbackFileManager(fallbackFile.getAbsolutePath(), new FallbackImpl(), true);
+    manager.fallback(data);
+    manager.fallback(data.get(0));
+    Assert.assertFalse("Fallback should not be empty", manager.isFallbackFileEmpty());
+    Assert.assertEquals("The text file should not be used", 0, fallbackFile.length());
+
+    FallbackObjectContainer container = manager.readDataBack(10);
+    Assert.assertEquals(3, container.getReadLines());
+    Assert.assertEquals(data.get(1).toString(), container.getObjects().get(1).toString());
+    manager.goToLastProcessedLine(1);
+    Assert.assertTrue(manager.removeReadData(1));
+    Assert.assertFalse("Fallback should not be empty", manager.isFallbackFileEmpty());
+
+    container = manager.readDataBack(10);
+    Assert.assertEquals(2, container.getReadLines());
+    Assert.assertTrue(manager.removeReadData(2));
+    Assert.assertTrue("Fallback should be empty", manager.isFallbackFileEmpty());
+    manager.finalize();
+  }
 }
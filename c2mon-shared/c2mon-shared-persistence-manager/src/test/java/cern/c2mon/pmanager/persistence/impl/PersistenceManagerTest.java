@@ -16,6 +16,7 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.persistence.impl;
 
+import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.pmanager.mock.AlarmListenerImpl;
 import cern.c2mon.pmanager.mock.DBHandlerImpl;
@@ -26,9 +27,16 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * JUnit test for the PersistenceManager class
@@ -107,4 +115,72 @@ public class PersistenceManagerTest {
     persistenceManager.storeData(data);
     assertEquals(5, persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines() - lines);
   }
+
+  /**
+   * Tests that the data written to the fallback file while the DB was down is
+   * committed back by several workers, in bunches, once the DB is back
+   */
+  @Test
+  public final void testParallelRecovery() throws IOException, InterruptedException {
+    final File fallbackFile = File.createTempFile("RecoveryFallback", ".log");
+    fallbackFile.deleteOnExit();
+    final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+    final AtomicBoolean dbDown = new AtomicBoolean(true);
+    IDBPersistenceHandler<IFallback> dbHandler = new IDBPersistenceHandler<IFallback>() {
+      @Override
+      public String getDBInfo() {
+        return "test";
+      }
+
+      @Override
+      public void storeData(final IFallback object) throws IDBPersistenceException {
+        storeData(Collections.singletonList(object));
+      }
+
+      @Override
+      public void storeData(final List<IFallback> data) throws IDBPersistenceException {
+        if (dbDown.get()) {
+          throw new IDBPersistenceException("Connection to the DB has been lost", 0);
+        }
+        for (IFallback object : data) {
+          stored.add(object.toString());
+        }
+      }
+    };
+    PersistenceManager<IFallback> manager = new PersistenceManager<>(dbHandler, fallbackFile.getAbsolutePath(),
+        new AlarmListenerImpl(), new FallbackImpl());
+    manager.setSleepTime(1);
+    manager.setRecoveryWorkers(3);
+
+    int lines = 5000;
+    List<IFallback> data = new ArrayList<>();
+    for (int i = 0; i < lines; i++) {
+      FallbackImpl fallback = new FallbackImpl();
+      fallback.setObjectData("line " + i);
+      data.add(fallback);
+    }
+    manager.storeData(data);
+    assertEquals(lines, manager.getBacklog());
+
+    dbDown.set(false);
+    FallbackImpl live = new FallbackImpl();
+    live.setObjectData("live");
+    manager.storeData(live);
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while ((manager.getBacklog() > 0 || manager.isRecoveryRunning()) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, manager.getBacklog());
+    assertFalse(manager.isRecoveryRunning());
+    assertEquals(lines, manager.getRecoveredLines());
+    assertEquals(lines + 1, stored.size());
+    Set<String> expected = new HashSet<>();
+    for (IFallback fallback : data) {
+      expected.add(fallback.toString());
+    }
+    expected.add("live");
+    assertEquals(expected, new HashSet<>(stored));
+    manager.finalize();
+  }
 }
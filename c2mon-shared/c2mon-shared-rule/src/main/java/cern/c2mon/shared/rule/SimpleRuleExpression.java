@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.shared.rule;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.LinkedHashSet;
@@ -23,6 +25,7 @@ import java.util.Map;
 import java.util.Set;
 
 import cern.c2mon.shared.common.rule.RuleInputValue;
+import cern.c2mon.shared.rule.parser.CompiledExpression;
 import cern.c2mon.shared.rule.parser.InvalidExpressionParser;
 import cern.c2mon.shared.rule.parser.Parser;
 import cern.c2mon.shared.rule.parser.RuleConstant;
@@ -36,9 +39,40 @@ public class SimpleRuleExpression extends RuleExpression implements Cloneable {
      */
     private Object[] tokens = null;
 
+    /**
+     * The tokens compiled at creation time, or null if the expression can only
+     * be evaluated by the interpreter ({@link Parser#eval(Object[])}).
+     * Recompiled after deserialization.
+     */
+    private transient CompiledExpression compiledExpression = null;
+
     public SimpleRuleExpression(final String pExpression) throws RuleFormatException {
+        this(pExpression, true);
+    }
+
+    /**
+     * @param pExpression the rule text
+     * @param compile whether the expression should be compiled; if false,
+     *                it is always evaluated by the interpreter
+     */
+    SimpleRuleExpression(final String pExpression, final boolean compile) throws RuleFormatException {
         super(pExpression, RuleType.Simple);
         this.tokens = tokenize(pExpression);
+        if (compile) {
+            this.compiledExpression = CompiledExpression.compile(tokens);
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.compiledExpression = CompiledExpression.compile(tokens);
+    }
+
+    /**
+     * @return true if the expression was compiled and is evaluated without the interpreter
+     */
+    public final boolean isCompiled() {
+        return compiledExpression != null;
     }
 
     public Object clone() {
@@ -520,9 +554,75 @@ public class SimpleRuleExpression extends RuleExpression implements Cloneable {
       return result;
     }
     
+    /**
+     * Collects the input values for the {@link #compiledExpression}, throwing the
+     * same exceptions as the <code>splitToTokens</code> methods.
+     *
+     * @param pInputParams Map of value objects related to the input tag ids
+     * @param inputValues filled with the values, one per slot of the compiled expression
+     * @param allowInvalidTags if true, Invalid tags are replaced with
+     *        {@link RuleConstant#INTERNAL_INVALID}, otherwise their value is used
+     * @return True if any of the input tags is Invalid (and invalid tags are allowed)
+     *
+     * @throws RuleEvaluationException in case the DataTags contained in the Rule
+     * are Null, or non-existent.
+     */
+    private boolean resolveInputValues(final Map<Long, Object> pInputParams, final Object[] inputValues,
+                                       final boolean allowInvalidTags) throws RuleEvaluationException {
+
+      boolean invalidTagsFound = false;
+      for (int i = 0; i < inputValues.length; i++) {
+        final Long tagId = compiledExpression.getInputTagId(i);
+        final Object val = pInputParams.get(tagId);
+        if (val instanceof RuleInputValue) {
+          final RuleInputValue tag = (RuleInputValue) val;
+          if (allowInvalidTags && !tag.isValid()) {
+            inputValues[i] = RuleConstant.INTERNAL_INVALID.toString();
+            invalidTagsFound = true;
+          } else if (tag.getValue() == null) {
+            throw new RuleEvaluationException("Cannot evaluate rule: tag " + tag.getId() + " is null.");
+          } else {
+            inputValues[i] = tag.getValue();
+          }
+        } else if (val != null) {
+          inputValues[i] = val;
+        } else {
+          throw new RuleEvaluationException("Cannot evaluate rule: input tag missing " + tagId);
+        }
+      }
+      return invalidTagsFound;
+    }
+
+    /**
+     * @return True if all the values can be handled by the {@link #compiledExpression}
+     */
+    private static boolean arePlainValues(final Object[] inputValues) {
+      for (Object value : inputValues) {
+        if (!CompiledExpression.isPlainValue(value)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     @Override
     public final Object evaluate(final Map<Long, Object> pInputParams) throws RuleEvaluationException {
 
+      if (compiledExpression != null) {
+        final Object[] inputValues = new Object[compiledExpression.getInputCount()];
+        final boolean invalidTagsFound = resolveInputValues(pInputParams, inputValues, true);
+        if (arePlainValues(inputValues)) {
+          if (invalidTagsFound || compiledExpression.usesInvalidKeyword()) {
+            final Object result = compiledExpression.eval(inputValues, InvalidExpressionParser.getInstance());
+            if (isResultInvalid(result)) {
+              throw new RuleEvaluationException("Cannot evaluate rule: Invalid tags found!");
+            }
+            return result;
+          }
+          return compiledExpression.eval(inputValues, Parser.getInstance());
+        }
+      }
+
       if (hasInvalidTags(pInputParams) || usesTheInvalidKeyword()) {
         // invalid tags found!  =>
         return handleRuleWithInvalidTags(pInputParams);
@@ -534,6 +634,13 @@ public class SimpleRuleExpression extends RuleExpression implements Cloneable {
     @Override
     public final Object forceEvaluate(final Map<Long, Object> pInputParams)  {
       try {
+        if (compiledExpression != null) {
+          final Object[] inputValues = new Object[compiledExpression.getInputCount()];
+          resolveInputValues(pInputParams, inputValues, false);
+          if (arePlainValues(inputValues)) {
+            return compiledExpression.eval(inputValues, Parser.getInstance());
+          }
+        }
         return handleRuleWithNoInvalidTags(pInputParams);
       } catch (Exception e) {
         return null;
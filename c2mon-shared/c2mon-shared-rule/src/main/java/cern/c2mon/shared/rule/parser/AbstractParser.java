@@ -50,7 +50,7 @@ public abstract class AbstractParser {
   /**
    * @return Extracts the "right" part of the binary expression x OPERATOR y
    */
-  private Object[] extractExpressionFromTheRight(final Object[] token, final int operatorIndex) {
+  final Object[] extractExpressionFromTheRight(final Object[] token, final int operatorIndex) {
 
     /**
      * (This is easier than {@link #extractExpressionFromTheLeft(Object[])} since
@@ -298,7 +298,7 @@ public abstract class AbstractParser {
   /**
    * @return Find the main operator in the binary expression x OPERATOR y.
    */
-  private int getIndexOfMainOperator(final Object[] token, final Object[] x) {
+  final int getIndexOfMainOperator(final Object[] token, final Object[] x) {
 
     final int operatorIndex = (token[0] instanceof String && (((String) token[0]).compareTo("(") == 0))  
         // the position of the main operator
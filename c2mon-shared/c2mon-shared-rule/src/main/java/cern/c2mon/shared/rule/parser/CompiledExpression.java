@@ -0,0 +1,368 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.rule.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.c2mon.shared.rule.RuleEvaluationException;
+import cern.c2mon.shared.rule.RuleInputTagId;
+
+/**
+ * A rule expression in token format, compiled once into a tree of nodes.
+ *
+ * <p>The tree is built by splitting the tokens exactly like
+ * {@link AbstractParser#eval(Object[])} does at every evaluation, so the
+ * evaluation order and the (left to right, no precedence) semantics are the
+ * same. Compared to the interpreter, the compiled expression
+ * <UL>
+ * <LI>reads the input tag values from pre-resolved slots (one per input tag id),
+ * <LI>resolves the {@link Operator} of each binary expression once,
+ * <LI>folds the sub-expressions that only contain number and boolean constants.
+ * </UL>
+ *
+ * <p>The arithmetic and the handling of INVALID tags is still done by the
+ * {@link Parser} or {@link InvalidExpressionParser} passed to
+ * {@link #eval(Object[], AbstractParser)}.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ *
+ * @see #compile(Object[])
+ */
+public final class CompiledExpression {
+
+  /** Used to split the tokens in the same way as the interpreter */
+  private static final Parser TOKEN_SPLITTER = new Parser();
+
+  /** Root of the compiled tree */
+  private final Node root;
+
+  /** The input tag ids, in the order of their slots */
+  private final Long[] inputTagIds;
+
+  /** Whether the expression contains the {@link RuleConstant#INVALID_KEYWORD} */
+  private final boolean usesInvalidKeyword;
+
+  private CompiledExpression(final Node root, final Long[] inputTagIds, final boolean usesInvalidKeyword) {
+    this.root = root;
+    this.inputTagIds = inputTagIds;
+    this.usesInvalidKeyword = usesInvalidKeyword;
+  }
+
+  /**
+   * Compiles the rule given in token format.
+   *
+   * @param tokens the tokens of the rule, as created by the
+   *               <code>SimpleRuleExpression</code> tokenizer
+   * @return the compiled expression, or null if the rule cannot be compiled
+   *         (in which case the caller should stick to {@link AbstractParser#eval(Object[])})
+   */
+  public static CompiledExpression compile(final Object[] tokens) {
+    List<Long> ids = new ArrayList<>();
+    boolean usesInvalidKeyword = false;
+    for (Object token : tokens) {
+      if (token instanceof RuleInputTagId) {
+        Long id = ((RuleInputTagId) token).getId();
+        if (!ids.contains(id)) {
+          ids.add(id);
+        }
+      } else if (RuleConstant.INVALID_KEYWORD.toString().equals(token)) {
+        usesInvalidKeyword = true;
+      }
+    }
+
+    try {
+      Node root = compile(tokens, ids);
+      if (root == null) {
+        return null;
+      }
+      return new CompiledExpression(root, ids.toArray(new Long[0]), usesInvalidKeyword);
+    } catch (RuntimeException e) {
+      // whatever the interpreter would trip over is left to the interpreter
+      return null;
+    }
+  }
+
+  /**
+   * Mirrors {@link AbstractParser#eval(Object[])}, building a node instead of
+   * calculating a result.
+   *
+   * @return the node, or null if the interpreter would fail on the structure
+   *         of the expression
+   */
+  private static Node compile(final Object[] token, final List<Long> ids) {
+    if (token.length == 0 || !TOKEN_SPLITTER.isParenthesisBalanced(token)) {
+      return null;
+    }
+
+    if (token.length == 1) {
+      if (token[0] instanceof RuleInputTagId) {
+        return new InputNode(ids.indexOf(((RuleInputTagId) token[0]).getId()));
+      }
+      return new ConstantNode(token[0]);
+    }
+
+    Object[] x = TOKEN_SPLITTER.extractExpressionFromTheLeft(token);
+
+    if (token[0] instanceof String
+        && token[token.length - 1] instanceof String
+        && (x.length) == (token.length - 2)
+        && token[0].equals("(")
+        && token[token.length - 1].equals(")")) {
+      return compile(x, ids);
+    }
+
+    if (x.length == token.length) {
+      Object[] x2 = new Object[x.length - 1];
+      System.arraycopy(x, 1, x2, 0, x2.length);
+      Node operand = compile(x2, ids);
+      if (operand == null) {
+        return null;
+      }
+      if ("!".equals(x[0])) {
+        return NotNode.create(operand);
+      } else if ("-".equals(x[0])) {
+        return NegationNode.create(operand);
+      }
+      return null;
+    }
+
+    int operatorIndex = TOKEN_SPLITTER.getIndexOfMainOperator(token, x);
+    if (operatorIndex >= token.length || !(token[operatorIndex] instanceof String)) {
+      return null;
+    }
+    Operator op = Operator.fromString((String) token[operatorIndex]);
+    if (op == null) {
+      return null;
+    }
+    Node left = compile(x, ids);
+    Node right = compile(TOKEN_SPLITTER.extractExpressionFromTheRight(token, operatorIndex), ids);
+    if (left == null || right == null) {
+      return null;
+    }
+    return BinaryNode.create(left, op, right);
+  }
+
+  /**
+   * Checks whether the given input value is handled by the compiled expression
+   * in the same way as by the interpreter. The interpreter does not distinguish
+   * between operators and String values, so Strings looking like a parenthesis
+   * or a unary operator change the way it splits the expression. Rules receiving
+   * such values have to be evaluated by the interpreter.
+   *
+   * @param value an input tag value
+   * @return true if the value can be passed to {@link #eval(Object[], AbstractParser)}
+   */
+  public static boolean isPlainValue(final Object value) {
+    if (value instanceof String) {
+      String str = (String) value;
+      if (str.isEmpty()) {
+        return false;
+      }
+      char first = str.charAt(0);
+      return first != '(' && first != ')' && !str.equals("!") && !str.equals("-");
+    }
+    if (value instanceof Character) {
+      char c = (Character) value;
+      return c != '(' && c != ')';
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of distinct input tags of the expression
+   */
+  public int getInputCount() {
+    return inputTagIds.length;
+  }
+
+  /**
+   * @param index slot index, from 0 to {@link #getInputCount()} - 1
+   * @return the id of the input tag whose value is expected in the given slot
+   */
+  public Long getInputTagId(final int index) {
+    return inputTagIds[index];
+  }
+
+  /**
+   * @return true if the expression contains the {@link RuleConstant#INVALID_KEYWORD}
+   */
+  public boolean usesInvalidKeyword() {
+    return usesInvalidKeyword;
+  }
+
+  /**
+   * Evaluates the expression.
+   *
+   * @param inputValues the values of the input tags, one per slot (see {@link #getInputTagId(int)})
+   *                    (all of them accepted by {@link #isPlainValue(Object)})
+   * @param parser the parser doing the calculations
+   * @return the result, as {@link AbstractParser#eval(Object[])} would return it
+   * @throws RuleEvaluationException in case of error during the calculations
+   */
+  public Object eval(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+    return root.eval(inputValues, parser);
+  }
+
+  /**
+   * Node of the compiled expression tree.
+   */
+  private abstract static class Node {
+
+    abstract Object eval(Object[] inputValues, AbstractParser parser) throws RuleEvaluationException;
+
+    /**
+     * @return true if the node is a constant that evaluates the same with both
+     *         parsers (no INVALID keyword, no Strings)
+     */
+    boolean isFoldable() {
+      return false;
+    }
+  }
+
+  private static final class ConstantNode extends Node {
+
+    private final Object value;
+
+    ConstantNode(final Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object eval(final Object[] inputValues, final AbstractParser parser) {
+      return value;
+    }
+
+    @Override
+    boolean isFoldable() {
+      return value instanceof Number || value instanceof Boolean;
+    }
+  }
+
+  private static final class InputNode extends Node {
+
+    private final int slot;
+
+    InputNode(final int slot) {
+      this.slot = slot;
+    }
+
+    @Override
+    Object eval(final Object[] inputValues, final AbstractParser parser) {
+      return inputValues[slot];
+    }
+  }
+
+  /**
+   * Error handling of the composite nodes is the same as in {@link AbstractParser#eval(Object[])}.
+   */
+  private abstract static class CompositeNode extends Node {
+
+    @Override
+    final Object eval(final Object[] inputValues, final AbstractParser parser) {
+      try {
+        return calculate(inputValues, parser);
+      } catch (ClassCastException cce) {
+        throw cce;
+      } catch (Exception e) {
+        throw new RuntimeException("Unexpected error during rule evaluation.", e);
+      }
+    }
+
+    abstract Object calculate(Object[] inputValues, AbstractParser parser) throws RuleEvaluationException;
+
+    /**
+     * @return a constant node with the result of this node if it only depends
+     *         on foldable constants and can be calculated, this node otherwise
+     */
+    final Node fold(final Node... operands) {
+      for (Node operand : operands) {
+        if (!operand.isFoldable()) {
+          return this;
+        }
+      }
+      try {
+        return new ConstantNode(calculate(null, TOKEN_SPLITTER));
+      } catch (Exception e) {
+        // fails at every evaluation, keep the node to throw at evaluation time
+        return this;
+      }
+    }
+  }
+
+  private static final class NotNode extends CompositeNode {
+
+    private final Node operand;
+
+    private NotNode(final Node operand) {
+      this.operand = operand;
+    }
+
+    static Node create(final Node operand) {
+      return new NotNode(operand).fold(operand);
+    }
+
+    @Override
+    Object calculate(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+      return operand.eval(inputValues, parser).equals(Boolean.TRUE) ? Boolean.FALSE : Boolean.TRUE;
+    }
+  }
+
+  private static final class NegationNode extends CompositeNode {
+
+    private final Node operand;
+
+    private NegationNode(final Node operand) {
+      this.operand = operand;
+    }
+
+    static Node create(final Node operand) {
+      return new NegationNode(operand).fold(operand);
+    }
+
+    @Override
+    Object calculate(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+      return new Double(-((Number) operand.eval(inputValues, parser)).doubleValue());
+    }
+  }
+
+  private static final class BinaryNode extends CompositeNode {
+
+    private final Node left;
+
+    private final Operator op;
+
+    private final Node right;
+
+    private BinaryNode(final Node left, final Operator op, final Node right) {
+      this.left = left;
+      this.op = op;
+      this.right = right;
+    }
+
+    static Node create(final Node left, final Operator op, final Node right) {
+      return new BinaryNode(left, op, right).fold(left, right);
+    }
+
+    @Override
+    Object calculate(final Object[] inputValues, final AbstractParser parser) throws RuleEvaluationException {
+      Object xResult = left.eval(inputValues, parser);
+      Object yResult = right.eval(inputValues, parser);
+      return parser.calculateExpr(xResult, yResult, op);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.rule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cern.c2mon.shared.common.rule.RuleInputValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the compiled {@link SimpleRuleExpression} gives the same results
+ * (and fails in the same way) as the interpreter.
+ */
+public class CompiledRuleExpressionTest {
+
+  private static final String[] EXPRESSIONS = {
+      "#1",
+      "#1 + #2",
+      "#1 - #2 - 3",
+      "#1 * 2 + #2 / 4",
+      "(#1 * 2) + (#2 / 4)",
+      "((#1 > 2) | (#2 < 1)) & #3",
+      "#1 >= 3 & #3 = true",
+      "#3 | #4",
+      "#3 & #4",
+      "!(#3)",
+      "!(#3) & #4",
+      "-(#1) + 10",
+      "-(5) * #2",
+      "(1 = 2) | (#3 = true)",
+      "((1 = 2) | (3 = 2)) & (#1 = 2)",
+      "((2 = 2) | (3 = 2)) | (#1 = 2)",
+      "(1 + 2) * (3 + 4) + #1",
+      "#1 ^ 2",
+      "#1 && 6",
+      "#1 || 6",
+      "#1 != #2",
+      "#5 = \"ON\"",
+      "#5 != \"OFF\" & #3",
+      "#1 = $INVALID",
+      "#1 != $INVALID",
+      "#3 > $INVALID",
+      "(#1 > 3) + $INVALID",
+      "#1 + #1 * #2",
+      "(#1 + #2",
+      "#1 +",
+      "#1 #2",
+      "\"(\" = #5",
+      "1 / 0 + #1",
+      "true + 1 + #1",
+      "!(true) | !(#4)",
+  };
+
+  @Test
+  public void testCompiledResultsMatchInterpreter() throws Exception {
+    for (Map<Long, Object> inputs : inputCombinations()) {
+      for (String expression : EXPRESSIONS) {
+        SimpleRuleExpression compiled = new SimpleRuleExpression(expression);
+        SimpleRuleExpression interpreted = new SimpleRuleExpression(expression, false);
+
+        assertEquals(expression + " with " + inputs, outcome(interpreted, inputs, false), outcome(compiled, inputs, false));
+        assertEquals(expression + " with " + inputs, outcome(interpreted, inputs, true), outcome(compiled, inputs, true));
+      }
+    }
+  }
+
+  @Test
+  public void testMostExpressionsAreCompiled() throws Exception {
+    assertTrue(new SimpleRuleExpression("((#1 > 2) | (#2 < 1)) & #3").isCompiled());
+    assertTrue(new SimpleRuleExpression("#1 = $INVALID").isCompiled());
+    assertFalse(new SimpleRuleExpression("(#1 + #2").isCompiled());
+    assertFalse(new SimpleRuleExpression("#1 + 2", false).isCompiled());
+  }
+
+  @Test
+  public void testCompiledExpressionSurvivesSerialization() throws Exception {
+    SimpleRuleExpression expression = new SimpleRuleExpression("(#1 * 2) + 3");
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new ObjectOutputStream(baos).writeObject(expression);
+    SimpleRuleExpression copy = (SimpleRuleExpression) new ObjectInputStream(
+        new ByteArrayInputStream(baos.toByteArray())).readObject();
+
+    assertTrue(copy.isCompiled());
+    Map<Long, Object> inputs = new HashMap<>();
+    inputs.put(1L, new TestInput(1L, 4, true));
+    assertEquals(11.0, copy.evaluate(inputs));
+  }
+
+  @Test
+  public void testConditionedExpressionUsesCompiledConditions() throws Exception {
+    RuleExpression expression = RuleExpression.createExpression("(#1 > 2) & #3 [1], true [0]");
+    Map<Long, Object> inputs = new HashMap<>();
+    inputs.put(1L, new TestInput(1L, 5.0f, true));
+    inputs.put(3L, new TestInput(3L, true, true));
+    assertEquals(1, expression.evaluate(inputs, Integer.class).intValue());
+
+    inputs.put(3L, new TestInput(3L, false, true));
+    assertEquals(0, expression.evaluate(inputs, Integer.class).intValue());
+  }
+
+  private static List<Map<Long, Object>> inputCombinations() {
+    List<Map<Long, Object>> combinations = new ArrayList<>();
+
+    Map<Long, Object> valid = new HashMap<>();
+    valid.put(1L, new TestInput(1L, 5.0f, true));
+    valid.put(2L, new TestInput(2L, 2, true));
+    valid.put(3L, new TestInput(3L, true, true));
+    valid.put(4L, new TestInput(4L, false, true));
+    valid.put(5L, new TestInput(5L, "ON", true));
+    combinations.add(valid);
+
+    Map<Long, Object> raw = new HashMap<>();
+    raw.put(1L, 2L);
+    raw.put(2L, 0.5d);
+    raw.put(3L, false);
+    raw.put(4L, true);
+    raw.put(5L, "OFF");
+    combinations.add(raw);
+
+    Map<Long, Object> invalid = new HashMap<>(valid);
+    invalid.put(1L, new TestInput(1L, 5.0f, false));
+    invalid.put(4L, new TestInput(4L, null, false));
+    combinations.add(invalid);
+
+    Map<Long, Object> missing = new HashMap<>(valid);
+    missing.remove(2L);
+    missing.put(3L, new TestInput(3L, null, true));
+    combinations.add(missing);
+
+    Map<Long, Object> strings = new HashMap<>(valid);
+    strings.put(1L, "(");
+    strings.put(3L, new TestInput(3L, "-", true));
+    strings.put(5L, ")");
+    combinations.add(strings);
+
+    Map<Long, Object> empty = new HashMap<>(valid);
+    empty.put(5L, "");
+    combinations.add(empty);
+
+    return combinations;
+  }
+
+  /**
+   * @return the result, or the type and message of the exception
+   */
+  private static String outcome(final SimpleRuleExpression expression, final Map<Long, Object> inputs, final boolean force) {
+    try {
+      Object result = force ? expression.forceEvaluate(inputs) : expression.evaluate(inputs);
+      return result == null ? "null" : result.getClass().getName() + ":" + result;
+    } catch (Exception e) {
+      return e.getClass().getName() + ":" + e.getMessage();
+    }
+  }
+
+  private static final class TestInput implements RuleInputValue {
+
+    private final Long id;
+
+    private final Object value;
+
+    private final boolean valid;
+
+    TestInput(final Long id, final Object value, final boolean valid) {
+      this.id = id;
+      this.value = value;
+      this.valid = valid;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+
+    @Override
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public boolean isValid() {
+      return valid;
+    }
+
+    @Override
+    public String toString() {
+      return value + (valid ? "" : " (invalid)");
+    }
+  }
+}
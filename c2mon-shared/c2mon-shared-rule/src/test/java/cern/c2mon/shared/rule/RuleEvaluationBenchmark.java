@@ -0,0 +1,144 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.rule;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import cern.c2mon.shared.common.rule.RuleInputValue;
+
+/**
+ * JMH comparison of compiled and interpreted {@link SimpleRuleExpression}s.
+ *
+ * <p>Each invocation does the same work as the rule evaluation of
+ * <code>RuleEvaluatorImpl.evaluateRule</code> once the rule is locked: collect
+ * the input tags of the rule into a map and call
+ * {@link RuleExpression#evaluate(Map, Class)}.
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.shared.rule.RuleEvaluationBenchmark</code>
+ * and compare the <code>compiled</code> with the <code>interpreted</code> results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleEvaluationBenchmark {
+
+  @Param({
+      "#1 > 2",
+      "((#1 > 2) | (#2 < 1)) & #3",
+      "((((#1 * 2) + #2) / 4) >= ((10 * 3.5) - 1)) | (!(#4) & (#3 | #4))",
+  })
+  private String ruleText;
+
+  /** Stands for the tag caches looked up by the rule evaluator */
+  private Map<Long, RuleInputValue> tagCache;
+
+  private SimpleRuleExpression compiled;
+
+  private SimpleRuleExpression interpreted;
+
+  @Setup
+  public void setUp() throws RuleFormatException {
+    tagCache = new HashMap<>();
+    tagCache.put(1L, new BenchmarkInput(1L, 5.0f));
+    tagCache.put(2L, new BenchmarkInput(2L, 2));
+    tagCache.put(3L, new BenchmarkInput(3L, true));
+    tagCache.put(4L, new BenchmarkInput(4L, false));
+
+    compiled = new SimpleRuleExpression(ruleText);
+    interpreted = new SimpleRuleExpression(ruleText, false);
+    if (!compiled.isCompiled()) {
+      throw new IllegalStateException("Benchmark rule is not compiled: " + ruleText);
+    }
+  }
+
+  @Benchmark
+  public Boolean compiled() throws RuleEvaluationException {
+    return evaluateRule(compiled);
+  }
+
+  @Benchmark
+  public Boolean interpreted() throws RuleEvaluationException {
+    return evaluateRule(interpreted);
+  }
+
+  private Boolean evaluateRule(final RuleExpression ruleExpression) throws RuleEvaluationException {
+    final Collection<Long> ruleInputTagIds = ruleExpression.getInputTagIds();
+    final Map<Long, Object> tags = new HashMap<>(ruleInputTagIds.size());
+    for (Long inputTagId : ruleInputTagIds) {
+      tags.put(inputTagId, tagCache.get(inputTagId));
+    }
+    return ruleExpression.evaluate(tags, Boolean.class);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(RuleEvaluationBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+
+  private static final class BenchmarkInput implements RuleInputValue {
+
+    private final Long id;
+
+    private final Object value;
+
+    BenchmarkInput(final Long id, final Object value) {
+      this.id = id;
+      this.value = value;
+    }
+
+    @Override
+    public Long getId() {
+      return id;
+    }
+
+    @Override
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,490 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.util.buffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drop-in replacement of the {@link SynchroBuffer} for buffers pushed to by
+ * many threads at a high rate. The window semantics (minimum and maximum
+ * window size, growth factor), the duplicate policies, the capacity and the
+ * listener life cycle are those of the {@link SynchroBuffer}.
+ *
+ * <p>Pushing threads do not lock: the objects are pushed onto a lock-free
+ * stack, which the firing thread detaches with a single atomic swap and
+ * reverses into the pulled collection, instead of copying a synchronized
+ * list. With a duplicate policy, the latest object of each key is kept in a
+ * concurrent map and the stack only records the order of the keys.
+ *
+ * <p>Like the {@link SynchroBuffer}, each buffer has its own firing thread:
+ * the listeners may block (for instance while a broker is unreachable) and
+ * must not delay the other buffers.
+ */
+@Slf4j
+public class ConcurrentSynchroBuffer {
+
+  /** Allows object duplication. */
+  public static final int DUPLICATE_OK = SynchroBuffer.DUPLICATE_OK;
+
+  /** Replaces duplicated objects. */
+  public static final int DUPLICATE_REPLACE = SynchroBuffer.DUPLICATE_REPLACE;
+
+  /** Discards duplicated objects. */
+  public static final int DUPLICATE_DISCARD = SynchroBuffer.DUPLICATE_DISCARD;
+
+  /** Constant indicating infinite capacity of the buffer (can lead to out of memory crashes). */
+  private static final int INFINITE_CAPACITY = 0;
+
+  /** If the capacity is reached, a warning is logged every WARNING_FREQUENCY removals. */
+  private static final int WARNING_FREQUENCY = 500;
+
+  private long minWindowSize;
+
+  private long maxWindowSize;
+
+  private int windowGrowthFactor;
+
+  private int duplicatePolicy;
+
+  /** The maximum number of objects in the buffer, after which the oldest are removed */
+  private int capacity;
+
+  /** Most recently pushed node; the nodes link to the previously pushed ones */
+  private final AtomicReference<Node> top = new AtomicReference<>();
+
+  /** Number of objects in the stack and in the trimmed queue */
+  private final AtomicInteger size = new AtomicInteger();
+
+  /** Latest pushed object of each key, for the DUPLICATE_DISCARD and DUPLICATE_REPLACE policies */
+  private final ConcurrentMap<Object, Object> latestByKey = new ConcurrentHashMap<>();
+
+  /** Objects taken from the stack when the capacity was exceeded, oldest first; guarded by drainLock */
+  private final ArrayDeque<Object> trimmed = new ArrayDeque<>();
+
+  /** Held while objects are taken from the stack, by the firing thread or a trimming pushing thread */
+  private final ReentrantLock drainLock = new ReentrantLock();
+
+  /** Guarded by drainLock */
+  private int warningCounter = 0;
+
+  private Thread checkingThread;
+
+  private volatile boolean closed = false;
+
+  private volatile boolean firing = false;
+
+  private volatile boolean enabled = false;
+
+  private volatile SynchroBufferListener listener = null;
+
+  /**
+   * Constructor. The duplicate policy is set as DUPLICATE_OK, since the maximum capacity feature
+   * is only implemented in this case.
+   * @param minWindowSize the buffer window min size (msec)
+   * @param maxWindowSize the buffer window max size (msec)
+   * @param windowGrowthFactor the buffer window growth factor (size = minWindowSize + msg/sec x windowGrowthFactor)
+   * @param duplicatePolicy ignored, DUPLICATE_OK is used
+   * @param capacity the maximum size of the buffer (FIFO once this size is reached); 0 for an infinite capacity
+   * @param daemon set as true if the firing thread should be a daemon thread (e.g. if the fire() method could be
+   *               frozen at shutdown)
+   */
+  public ConcurrentSynchroBuffer(long minWindowSize, long maxWindowSize, int windowGrowthFactor, int duplicatePolicy,
+                                 int capacity, boolean daemon) {
+    warnIfDuplicatePolicyIgnored(duplicatePolicy);
+    init("", minWindowSize, maxWindowSize, windowGrowthFactor, DUPLICATE_OK, capacity, daemon);
+  }
+
+  /**
+   * Constructor. The duplicate policy is set as DUPLICATE_OK, since the maximum capacity feature
+   * is only implemented in this case.
+   * @param minWindowSize the buffer window min size (msec)
+   * @param maxWindowSize the buffer window max size (msec)
+   * @param windowGrowthFactor the buffer window growth factor (size = minWindowSize + msg/sec x windowGrowthFactor)
+   * @param duplicatePolicy ignored, DUPLICATE_OK is used
+   * @param capacity the maximum size of the buffer (FIFO once this size is reached); 0 for an infinite capacity
+   */
+  public ConcurrentSynchroBuffer(long minWindowSize, long maxWindowSize, int windowGrowthFactor, int duplicatePolicy,
+                                 int capacity) {
+    warnIfDuplicatePolicyIgnored(duplicatePolicy);
+    init("", minWindowSize, maxWindowSize, windowGrowthFactor, DUPLICATE_OK, capacity, false);
+  }
+
+  /**
+   * Constructor.
+   * @param minWindowSize the buffer window min size (msec)
+   * @param maxWindowSize the buffer window max size (msec)
+   * @param windowGrowthFactor the buffer window growth factor (size = minWindowSize + msg/sec x windowGrowthFactor)
+   * @param duplicatePolicy the buffer object duplication policy
+   */
+  public ConcurrentSynchroBuffer(long minWindowSize, long maxWindowSize, int windowGrowthFactor, int duplicatePolicy) {
+    init("", minWindowSize, maxWindowSize, windowGrowthFactor, duplicatePolicy, INFINITE_CAPACITY, false);
+  }
+
+  /**
+   * Constructor.
+   * @param name the name of the firing thread
+   * @param minWindowSize the buffer window min size (msec)
+   * @param maxWindowSize the buffer window max size (msec)
+   * @param windowGrowthFactor the buffer window growth factor (size = minWindowSize + msg/sec x windowGrowthFactor)
+   * @param duplicatePolicy the buffer object duplication policy
+   */
+  public ConcurrentSynchroBuffer(String name, long minWindowSize, long maxWindowSize, int windowGrowthFactor,
+                                 int duplicatePolicy) {
+    init(name, minWindowSize, maxWindowSize, windowGrowthFactor, duplicatePolicy, INFINITE_CAPACITY, false);
+  }
+
+  /**
+   * Default constructor, configured like the {@link SynchroBuffer#SynchroBuffer()}.
+   */
+  public ConcurrentSynchroBuffer() {
+    Properties properties = SynchroBufferConfig.getProperties(this.getClass().getClassLoader());
+    init("",
+        Long.parseLong(properties.getProperty(SynchroBufferConfig.MIN_WINDOW_SIZE_PROPERTY)),
+        Long.parseLong(properties.getProperty(SynchroBufferConfig.MAX_WINDOW_SIZE_PROPERTY)),
+        Integer.parseInt(properties.getProperty(SynchroBufferConfig.WINDOW_GROWTH_FACTOR_PROPERTY)),
+        Integer.parseInt(properties.getProperty(SynchroBufferConfig.DUPLICATE_POLICY_PROPERTY)),
+        INFINITE_CAPACITY, false);
+  }
+
+  private static void warnIfDuplicatePolicyIgnored(final int duplicatePolicy) {
+    if (duplicatePolicy != DUPLICATE_OK) {
+      log.warn("The maximum capacity of the ConcurrentSynchroBuffer is only supported with the duplicatePolicy set to DUPLICATE_OK...");
+      log.warn("...switching duplicate policy to DUPLICATE_OK");
+    }
+  }
+
+  private void init(String name, long minSize, long maxSize, int growthFactor, int policy, int capacity, boolean daemon) {
+    log.debug("ConcurrentSynchroBuffer[minWindowSize={},maxWindowSize={},windowGrowthFactor={},duplicatePolicy={},capacity={},daemon thread={}]",
+        minSize, maxSize, growthFactor, policy, capacity == INFINITE_CAPACITY ? "INFINITE_CAPACITY" : capacity, daemon);
+    if ((minSize <= 0) || (maxSize <= 0) || (growthFactor <= 0)) {
+      throw new IllegalArgumentException("arguments must be greater than zero");
+    } else if (maxSize <= minSize) {
+      throw new IllegalArgumentException("maximum window size must be greater than minimum window size");
+    }
+    this.minWindowSize = minSize;
+    this.maxWindowSize = maxSize;
+    this.windowGrowthFactor = growthFactor;
+    this.duplicatePolicy = policy;
+    this.capacity = capacity;
+    checkingThread = "".equalsIgnoreCase(name) ? new CheckingThread() : new CheckingThread(name);
+    checkingThread.setDaemon(daemon);
+    checkingThread.start();
+  }
+
+  /**
+   * Push an object into the buffer.
+   * If the duplicate policy is DUPLICATE_DISCARD the object is discarded if the buffer already contains it.
+   * If the duplicate policy is DUPLICATE_REPLACE the object replaces any previously pushed duplicated instance.
+   * The object is appended otherwise.
+   * <code>equals</code> method is used to determine duplications.
+   * @param object the object to push
+   */
+  public void push(Object object) {
+    if (closed) {
+      throw new IllegalArgumentException("buffer closed");
+    }
+    switch (duplicatePolicy) {
+      case DUPLICATE_DISCARD:
+        if (latestByKey.putIfAbsent(object, object) != null) {
+          return;
+        }
+        break;
+      case DUPLICATE_REPLACE:
+        if (latestByKey.put(object, object) != null) {
+          return;
+        }
+        break;
+      default:
+    }
+    Node node = new Node(object);
+    pushChain(node, node, 1);
+  }
+
+  /**
+   * Push a collection of objects into the buffer.
+   * @param collection the collection of objects to push
+   */
+  public void push(Collection collection) {
+    if (closed) {
+      throw new IllegalArgumentException("buffer closed");
+    }
+    if (collection == null || collection.isEmpty()) {
+      return;
+    }
+    if (duplicatePolicy == DUPLICATE_DISCARD || duplicatePolicy == DUPLICATE_REPLACE) {
+      for (Object object : collection) {
+        push(object);
+      }
+      return;
+    }
+    Node bottom = null;
+    Node chainTop = null;
+    int count = 0;
+    for (Object object : collection) {
+      Node node = new Node(object);
+      if (bottom == null) {
+        bottom = node;
+      } else {
+        node.next = chainTop;
+      }
+      chainTop = node;
+      count++;
+    }
+    pushChain(bottom, chainTop, count);
+  }
+
+  /**
+   * Pushes a chain of nodes, linked from the most recent to the oldest.
+   */
+  private void pushChain(final Node bottom, final Node chainTop, final int count) {
+    Node current;
+    do {
+      current = top.get();
+      bottom.next = current;
+    } while (!top.compareAndSet(current, chainTop));
+
+    if (size.addAndGet(count) > capacity && capacity != INFINITE_CAPACITY) {
+      trim();
+    }
+  }
+
+  /**
+   * Removes the oldest objects until the size is back to the capacity. Does
+   * nothing if another thread is taking objects from the stack: the last
+   * thread pushing above the capacity trims the buffer.
+   */
+  private void trim() {
+    if (!drainLock.tryLock()) {
+      return;
+    }
+    try {
+      takeStack(trimmed);
+      int removed = 0;
+      while (size.get() > capacity && !trimmed.isEmpty()) {
+        trimmed.pollFirst();
+        size.decrementAndGet();
+        removed++;
+      }
+      if (removed > 0) {
+        if (warningCounter <= 0) {
+          log.warn("The maximum capacity of the ConcurrentSynchroBuffer was reached (current size is {}) - FIFO was applied to the buffer.",
+              size.get());
+          warningCounter = WARNING_FREQUENCY;
+        } else {
+          warningCounter -= removed;
+        }
+      }
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  /**
+   * Detaches the stack and appends its objects, oldest first, to the given
+   * collection. Must be called with the drainLock held.
+   * @return the number of nodes taken
+   */
+  private int takeStack(final Collection<Object> target) {
+    Node node = top.getAndSet(null);
+    if (node == null) {
+      return 0;
+    }
+    List<Object> newestFirst = new ArrayList<>();
+    for (; node != null; node = node.next) {
+      newestFirst.add(node.value);
+    }
+    Collections.reverse(newestFirst);
+    target.addAll(newestFirst);
+    return newestFirst.size();
+  }
+
+  /**
+   * Takes all objects from the buffer, oldest first.
+   */
+  private List<Object> drain() {
+    drainLock.lock();
+    try {
+      List<Object> pulled = new ArrayList<>(trimmed.size() + 16);
+      pulled.addAll(trimmed);
+      trimmed.clear();
+      takeStack(pulled);
+      size.addAndGet(-pulled.size());
+      if (duplicatePolicy == DUPLICATE_DISCARD || duplicatePolicy == DUPLICATE_REPLACE) {
+        List<Object> latest = new ArrayList<>(pulled.size());
+        for (Object key : pulled) {
+          Object object = latestByKey.remove(key);
+          if (object != null) {
+            latest.add(object);
+          }
+        }
+        return latest;
+      }
+      return pulled;
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  private long fire() {
+    firing = true;
+    List<Object> pulled = drain();
+    long timeBefore = System.currentTimeMillis();
+    SynchroBufferListener currentListener = listener;
+    if (currentListener != null && !pulled.isEmpty()) {
+      try {
+        currentListener.pull(new PullEvent(this, pulled));
+      } catch (Exception ex) {
+        log.error("Exception caught when calling registered ConcurrentSynchroBuffer listener", ex);
+      }
+    }
+    long timeElapsed = System.currentTimeMillis() - timeBefore;
+    firing = false;
+    return timeElapsed;
+  }
+
+  /**
+   * Set the buffer consumer listener.
+   * @param listener the listener
+   */
+  public void setSynchroBufferListener(SynchroBufferListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Enable the listener. The listener is disabled by default.
+   */
+  public void enable() {
+    enabled = true;
+  }
+
+  /**
+   * Disable the listener. Pushed object are kept in the buffer and delivered when the listener is enabled.
+   */
+  public void disable() {
+    enabled = false;
+  }
+
+  private boolean isEmpty() {
+    return size.get() <= 0;
+  }
+
+  /**
+   * Return the number of objects in the buffer.
+   * @return the current size of the buffer
+   */
+  public final int getSize() {
+    return Math.max(0, size.get());
+  }
+
+  /**
+   * Empties the buffer of all its current content.
+   */
+  public final void empty() {
+    drainLock.lock();
+    try {
+      int removed = trimmed.size() + takeStack(new ArrayList<>());
+      trimmed.clear();
+      latestByKey.clear();
+      size.addAndGet(-removed);
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  /**
+   * Close the buffer and deallocate resources. Waits for the buffer to empty
+   * in all cases. Empty the buffer first if the listener may not be able to
+   * treat requests.
+   *
+   * <p>If the thread is a daemon thread, this method does not wait for the
+   * firing thread to finish, as it may be frozen and we wish to release
+   * this thread.
+   */
+  public void close() {
+    closed = true;
+    while (!isEmpty() || firing && !checkingThread.isDaemon()) {
+      try {
+        Thread.sleep(minWindowSize);
+      } catch (InterruptedException e) {
+        log.debug("Interrupted while closing", e);
+      }
+    }
+  }
+
+  /**
+   * Stack node.
+   */
+  private static final class Node {
+
+    private final Object value;
+
+    /** The previously pushed node; written before the node is published by the CAS */
+    private Node next;
+
+    Node(final Object value) {
+      this.value = value;
+    }
+  }
+
+  private final class CheckingThread extends Thread {
+
+    CheckingThread() {
+      super();
+    }
+
+    CheckingThread(String name) {
+      super(name);
+    }
+
+    @Override
+    public void run() {
+      long firingTime = 0;
+      long waitTime = minWindowSize;
+      while (!closed || (!isEmpty() && enabled)) {
+        if (enabled) {
+          float objectsPerSec = (1000 * getSize()) / (waitTime + firingTime);
+          long calculatedWindowSize = minWindowSize + ((long) (windowGrowthFactor * objectsPerSec));
+          waitTime = Math.min(calculatedWindowSize, maxWindowSize);
+          firingTime = fire();
+          pause(waitTime);
+        } else {
+          pause(maxWindowSize);
+        }
+      }
+    }
+
+    private void pause(final long millis) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        log.debug("InterruptedException", e);
+      }
+    }
+  }
+}
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.shared.util.jms;
 
+import java.util.Map;
+
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -117,6 +119,30 @@ public class ActiveJmsSender implements JmsSender {
     });
   }
   
+  @Override
+  public void sendToTopic(final String text, final String jmsTopicName, final Map<String, ?> messageProperties) {
+    if (messageProperties == null || messageProperties.isEmpty()) {
+      sendToTopic(text, jmsTopicName);
+      return;
+    }
+    if (text == null) {
+      throw new NullPointerException("Attempting to send a null text message.");
+    }
+    Destination topic = new ActiveMQTopic(jmsTopicName);
+    jmsTemplate.send(topic, new MessageCreator() {
+
+      @Override
+      public Message createMessage(Session session) throws JMSException {
+        TextMessage message = session.createTextMessage(text);
+        for (Map.Entry<String, ?> property : messageProperties.entrySet()) {
+          message.setObjectProperty(property.getKey(), property.getValue());
+        }
+        return message;
+      }
+
+    });
+  }
+
   @Override
   public void sendToQueue(final String text, final String jmsQueueName) {
     if (text == null) {
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.shared.util.jms;
 
+import java.util.Map;
+
 import org.springframework.jms.JmsException;
 
 /**
@@ -52,6 +54,25 @@ public interface JmsSender {
    * @throws JmsException if problem encountered with JMS
    */
   void sendToTopic(String text, String jmsTopic);
+
+  /**
+   * Sends a text message with the given message properties to the specified
+   * topic, so that subscribers can filter it with a message selector or
+   * before reading the text. Does not expect any response.
+   *
+   * <p>The default implementation ignores the properties and calls
+   * {@link #sendToTopic(String, String)}; implementations supporting message
+   * properties override it.
+   * @param text the message
+   * @param jmsTopic the topic name
+   * @param messageProperties the properties to set on the message; the values
+   *                          must be of a type accepted by {@link javax.jms.Message#setObjectProperty}
+   * @throws NullPointerException if the text or topic argument is null
+   * @throws JmsException if problem encountered with JMS
+   */
+  default void sendToTopic(String text, String jmsTopic, Map<String, ?> messageProperties) {
+    sendToTopic(text, jmsTopic);
+  }
   
   /**
    * Sends a text message to a default destination (the implementation must provide
@@ -0,0 +1,179 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.util.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link ConcurrentSynchroBuffer}.
+ */
+public class ConcurrentSynchroBufferTest {
+
+  private ConcurrentSynchroBuffer buffer;
+
+  private final LinkedBlockingQueue<Collection> pulls = new LinkedBlockingQueue<>();
+
+  @After
+  public void afterTest() {
+    buffer.empty();
+    buffer.close();
+  }
+
+  @Test
+  public void testAllObjectsOfConcurrentProducersArePulledInOrder() throws Exception {
+    buffer = new ConcurrentSynchroBuffer(10, 50, 100, ConcurrentSynchroBuffer.DUPLICATE_OK);
+    buffer.setSynchroBufferListener(event -> pulls.add(event.getPulled()));
+    buffer.enable();
+
+    int producers = 4;
+    int perProducer = 50000;
+    CountDownLatch done = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      new Thread(() -> {
+        for (int i = 0; i < perProducer; i++) {
+          if (i % 100 == 0) {
+            buffer.push(Arrays.asList(new long[] {producer, i}, new long[] {producer, i + 1}));
+            i++;
+          } else {
+            buffer.push(new long[] {producer, i});
+          }
+        }
+        done.countDown();
+      }).start();
+    }
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+
+    long[] next = new long[producers];
+    int received = 0;
+    while (received < producers * perProducer) {
+      Collection pulled = pulls.poll(5, TimeUnit.SECONDS);
+      for (Object object : pulled) {
+        long[] value = (long[]) object;
+        assertEquals(next[(int) value[0]], value[1]);
+        next[(int) value[0]]++;
+        received++;
+      }
+    }
+    assertEquals(0, buffer.getSize());
+  }
+
+  @Test
+  public void testReplacePolicyKeepsPositionAndLatestObject() throws Exception {
+    buffer = new ConcurrentSynchroBuffer(10, 50, 100, ConcurrentSynchroBuffer.DUPLICATE_REPLACE);
+    buffer.setSynchroBufferListener(event -> pulls.add(event.getPulled()));
+    buffer.push(new Keyed("a", 1));
+    buffer.push(new Keyed("b", 1));
+    buffer.push(new Keyed("a", 2));
+    assertEquals(2, buffer.getSize());
+
+    buffer.enable();
+    List<Keyed> pulled = new ArrayList<>(pulls.poll(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(new Keyed("a", 2), new Keyed("b", 1)), pulled);
+    assertEquals(2, pulled.get(0).version);
+  }
+
+  @Test
+  public void testDiscardPolicyKeepsFirstObject() throws Exception {
+    buffer = new ConcurrentSynchroBuffer(10, 50, 100, ConcurrentSynchroBuffer.DUPLICATE_DISCARD);
+    buffer.setSynchroBufferListener(event -> pulls.add(event.getPulled()));
+    buffer.push(Arrays.asList(new Keyed("a", 1), new Keyed("b", 1), new Keyed("a", 2)));
+
+    buffer.enable();
+    List<Keyed> pulled = new ArrayList<>(pulls.poll(5, TimeUnit.SECONDS));
+    assertEquals(2, pulled.size());
+    assertEquals(1, pulled.get(0).version);
+
+    buffer.push(new Keyed("a", 3));
+    pulled = new ArrayList<>(pulls.poll(5, TimeUnit.SECONDS));
+    assertEquals(3, pulled.get(0).version);
+  }
+
+  @Test
+  public void testOldestObjectsAreRemovedAboveCapacity() throws Exception {
+    buffer = new ConcurrentSynchroBuffer(10, 50, 100, ConcurrentSynchroBuffer.DUPLICATE_OK, 100);
+    buffer.setSynchroBufferListener(event -> pulls.add(event.getPulled()));
+    for (int i = 0; i < 1000; i++) {
+      buffer.push(i);
+    }
+    List<Integer> tail = new ArrayList<>();
+    for (int i = 1000; i < 1050; i++) {
+      tail.add(i);
+    }
+    buffer.push(tail);
+    assertEquals(100, buffer.getSize());
+
+    buffer.enable();
+    List<Object> pulled = new ArrayList<>(pulls.poll(5, TimeUnit.SECONDS));
+    assertEquals(100, pulled.size());
+    assertEquals(950, pulled.get(0));
+    assertEquals(1049, pulled.get(99));
+  }
+
+  @Test
+  public void testEmpty() {
+    buffer = new ConcurrentSynchroBuffer(10, 50, 100, ConcurrentSynchroBuffer.DUPLICATE_REPLACE);
+    buffer.push(new Keyed("a", 1));
+    buffer.push(new Keyed("b", 1));
+    buffer.empty();
+    assertEquals(0, buffer.getSize());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPushAfterCloseIsRejected() {
+    buffer = new ConcurrentSynchroBuffer(10, 50, 100, ConcurrentSynchroBuffer.DUPLICATE_OK);
+    buffer.close();
+    buffer.push("object");
+  }
+
+  /**
+   * Object equal to the objects with the same key, whatever the version.
+   */
+  private static final class Keyed {
+
+    private final String key;
+
+    private final int version;
+
+    Keyed(final String key, final int version) {
+      this.key = key;
+      this.version = version;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      return other instanceof Keyed && ((Keyed) other).key.equals(key);
+    }
+
+    @Override
+    public int hashCode() {
+      return key.hashCode();
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.util.buffer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH comparison of the {@link SynchroBuffer} and the
+ * {@link ConcurrentSynchroBuffer} under multi-producer load, with the windows
+ * of the DAQ data tag buffer (200 to 1000 ms, growth factor 100).
+ *
+ * <p>The producer threads push objects as fast as they can; the listener only
+ * counts the pulled objects. The number of producers is set with the JMH
+ * <code>-t</code> option (default 8).
+ *
+ * <p>Not run as part of the unit tests. Run from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=cern.c2mon.shared.util.buffer.SynchroBufferBenchmark</code>
+ * and compare the throughput of the two implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class SynchroBufferBenchmark {
+
+  @Param({"SynchroBuffer", "ConcurrentSynchroBuffer"})
+  private String implementation;
+
+  /** Duplicate policy of the buffer */
+  @Param({"1", "2"})
+  private int duplicatePolicy;
+
+  private final AtomicLong pulled = new AtomicLong();
+
+  private Consumer<Object> pusher;
+
+  private Runnable closer;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    SynchroBufferListener listener = event -> pulled.addAndGet(event.getPulled().size());
+    if ("SynchroBuffer".equals(implementation)) {
+      SynchroBuffer buffer = new SynchroBuffer(200, 1000, 100, duplicatePolicy);
+      buffer.setSynchroBufferListener(listener);
+      buffer.enable();
+      pusher = buffer::push;
+      closer = () -> {
+        buffer.empty();
+        buffer.close();
+      };
+    } else {
+      ConcurrentSynchroBuffer buffer = new ConcurrentSynchroBuffer(200, 1000, 100, duplicatePolicy);
+      buffer.setSynchroBufferListener(listener);
+      buffer.enable();
+      pusher = buffer::push;
+      closer = () -> {
+        buffer.empty();
+        buffer.close();
+      };
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    closer.run();
+  }
+
+  /**
+   * Distinct objects with DUPLICATE_OK; with DUPLICATE_REPLACE, one of 10,000
+   * keys, as for the updates of a set of tags.
+   */
+  @State(Scope.Thread)
+  public static class Producer {
+
+    private long sequence;
+
+    Object next(final int duplicatePolicy) {
+      sequence++;
+      return duplicatePolicy == SynchroBuffer.DUPLICATE_OK ? Long.valueOf(sequence) : Long.valueOf(sequence % 10000);
+    }
+  }
+
+  @Benchmark
+  public void push(final Producer producer) {
+    pusher.accept(producer.next(duplicatePolicy));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(SynchroBufferBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}